@@ -0,0 +1,567 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A classe {@code AcervoDisco} guarda em disco as respostas JSON da OMDb, para
+ * que os filmes já consultados continuem disponíveis após reiniciar o
+ * servidor.
+ *
+ * Os registros são acrescentados ao final do arquivo {@code filmes.dat}
+ * (nunca sobrescritos) e localizados por uma tabela hash de endereçamento
+ * aberto no arquivo {@code filmes.idx}, mapeado em memória. Cada registro
+ * tem o formato:
+ *
+ * <pre>
+ * int mágico | int tamanho da chave | int tamanho do valor | int CRC32 | long gravado em | chave | valor
+ * </pre>
+ *
+ * O instante da gravação (em milissegundos desde 1970) permite saber a idade
+ * da resposta depois de reiniciar o servidor. Registros de versões anteriores
+ * não têm esse campo, têm outro número mágico e contam como de idade
+ * desconhecida. O CRC32 cobre tudo o que vem depois dos quatro inteiros.
+ *
+ * Cada posição da tabela guarda o hash da chave e a posição do registro no
+ * arquivo de dados. O cabeçalho do índice registra se o servidor foi
+ * encerrado corretamente; caso contrário, o índice é reconstruído lendo o
+ * arquivo de dados, e um registro incompleto no final (escrita interrompida)
+ * é descartado.
+ *
+ * Quando um título é regravado, o registro antigo passa a ocupar espaço sem
+ * uso. Se esse espaço passar da metade do arquivo, o acervo é compactado em
+ * segundo plano.
+ */
+public class AcervoDisco implements Closeable {
+  private static final int MAGICO_INDICE = 0x42464958;
+  private static final int MAGICO_REGISTRO = 0x42465247;
+  private static final int MAGICO_REGISTRO_DATADO = 0x42465244;
+  private static final int CABECALHO_INDICE = 32;
+  private static final int TAMANHO_SLOT = 16;
+  private static final int CABECALHO_REGISTRO = 16;
+  private static final int CABECALHO_DATADO = 24;
+  private static final int SLOTS_INICIAIS = 1024;
+  private static final int MAX_CHAVE = 1024;
+  private static final int MAX_VALOR = 1 << 20;
+  private static final long MIN_COMPACTACAO = 1 << 20;
+
+  private final Path arquivoDados;
+  private final Path arquivoIndice;
+  private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+  private final AtomicBoolean compactando = new AtomicBoolean();
+  private final ExecutorService compactador = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "acervo-compactador");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private FileChannel dados;
+  private FileChannel indice;
+  private MappedByteBuffer mapa;
+  private int slots;
+  private int ocupados;
+  private long fim;
+  private long bytesMortos;
+  private int compactacoes;
+
+  /**
+   * Resposta guardada no acervo.
+   *
+   * @param json       o JSON retornado pela API.
+   * @param gravadoEm  o instante da gravação em milissegundos desde 1970, ou
+   *                   {@code 0} se desconhecido (registro de versão anterior).
+   */
+  public record Registro(String json, long gravadoEm) {
+    /**
+     * @return a idade da resposta em milissegundos, ou {@link Long#MAX_VALUE}
+     *         se desconhecida.
+     */
+    public long idade() {
+      return gravadoEm == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - gravadoEm);
+    }
+  }
+
+  private AcervoDisco(Path diretorio) {
+    this.arquivoDados = diretorio.resolve("filmes.dat");
+    this.arquivoIndice = diretorio.resolve("filmes.idx");
+  }
+
+  /**
+   * Abre o acervo no diretório informado, criando-o se necessário.
+   *
+   * @param diretorio o diretório dos arquivos do acervo.
+   * @return o acervo aberto.
+   * @throws IOException em caso de falha ao abrir ou reparar os arquivos.
+   */
+  public static AcervoDisco abrir(Path diretorio) throws IOException {
+    Files.createDirectories(diretorio);
+    AcervoDisco acervo = new AcervoDisco(diretorio);
+    acervo.carregar();
+    return acervo;
+  }
+
+  private void carregar() throws IOException {
+    // Sobras de uma compactação interrompida
+    Files.deleteIfExists(temporario(arquivoDados));
+    Files.deleteIfExists(temporario(arquivoIndice));
+
+    dados = FileChannel.open(arquivoDados, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    fim = dados.size();
+
+    boolean integro = false;
+    if (Files.exists(arquivoIndice) && Files.size(arquivoIndice) >= CABECALHO_INDICE) {
+      mapearIndice();
+      integro = mapa.getInt(0) == MAGICO_INDICE
+          && Files.size(arquivoIndice) == CABECALHO_INDICE + (long) mapa.getInt(4) * TAMANHO_SLOT
+          && mapa.getInt(20) == 1
+          && mapa.getLong(8) == fim;
+    }
+
+    if (integro) {
+      slots = mapa.getInt(4);
+      ocupados = mapa.getInt(16);
+      bytesMortos = mapa.getLong(24);
+    } else {
+      reconstruirIndice();
+    }
+    // Marca o índice como em uso até o fechamento correto
+    mapa.putInt(20, 0);
+    mapa.force();
+  }
+
+  /**
+   * Reconstrói o índice percorrendo o arquivo de dados e descarta o que houver
+   * após o último registro válido.
+   */
+  private void reconstruirIndice() throws IOException {
+    if (indice != null) {
+      indice.close();
+    }
+    criarIndice(arquivoIndice, SLOTS_INICIAIS);
+    mapearIndice();
+    slots = SLOTS_INICIAIS;
+    ocupados = 0;
+    bytesMortos = 0;
+
+    long posicao = 0;
+    ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_REGISTRO);
+    while (posicao + CABECALHO_REGISTRO <= fim) {
+      cabecalho.clear();
+      lerCompleto(cabecalho, posicao);
+      cabecalho.flip();
+      int magico = cabecalho.getInt();
+      int tamChave = cabecalho.getInt();
+      int tamValor = cabecalho.getInt();
+      int crc = cabecalho.getInt();
+      if ((magico != MAGICO_REGISTRO && magico != MAGICO_REGISTRO_DATADO) || tamChave <= 0
+          || tamChave > MAX_CHAVE || tamValor < 0 || tamValor > MAX_VALOR
+          || posicao + tamanhoCabecalho(magico) + tamChave + tamValor > fim) {
+        break;
+      }
+      int extra = tamanhoCabecalho(magico) - CABECALHO_REGISTRO;
+      ByteBuffer corpo = ByteBuffer.allocate(extra + tamChave + tamValor);
+      lerCompleto(corpo, posicao + CABECALHO_REGISTRO);
+      CRC32 verificador = new CRC32();
+      verificador.update(corpo.array());
+      if ((int) verificador.getValue() != crc) {
+        break;
+      }
+      indexar(Arrays.copyOfRange(corpo.array(), extra, extra + tamChave), posicao);
+      posicao += tamanhoCabecalho(magico) + tamChave + tamValor;
+    }
+
+    if (posicao < fim) {
+      System.out.println("Acervo: descartando " + (fim - posicao) + " bytes corrompidos no final de " + arquivoDados);
+      dados.truncate(posicao);
+      fim = posicao;
+    }
+    gravarCabecalho();
+  }
+
+  /**
+   * Busca a resposta guardada para a chave.
+   *
+   * @param chave a chave montada por {@link CacheFilmes#chave(String, boolean)}.
+   * @return a resposta guardada ou {@code null} se ausente.
+   * @throws IOException em caso de falha na leitura.
+   */
+  public Registro obter(String chave) throws IOException {
+    byte[] bytesChave = chave.getBytes(StandardCharsets.UTF_8);
+    long hash = hash(bytesChave);
+    trava.readLock().lock();
+    try {
+      int mascara = slots - 1;
+      for (int i = (int) hash & mascara;; i = (i + 1) & mascara) {
+        int base = CABECALHO_INDICE + i * TAMANHO_SLOT;
+        long posicao = mapa.getLong(base + 8);
+        if (posicao == 0) {
+          return null;
+        }
+        if (mapa.getLong(base) == hash) {
+          Registro registro = lerRegistro(posicao - 1, bytesChave);
+          if (registro != null) {
+            return registro;
+          }
+        }
+      }
+    } finally {
+      trava.readLock().unlock();
+    }
+  }
+
+  /**
+   * Acrescenta uma resposta ao acervo, substituindo a anterior de mesma chave.
+   * O registro é datado com o instante atual.
+   *
+   * @param chave a chave montada por {@link CacheFilmes#chave(String, boolean)}.
+   * @param json  o JSON retornado pela API.
+   * @throws IOException em caso de falha na escrita.
+   */
+  public void guardar(String chave, String json) throws IOException {
+    byte[] bytesChave = chave.getBytes(StandardCharsets.UTF_8);
+    byte[] bytesValor = json.getBytes(StandardCharsets.UTF_8);
+    if (bytesChave.length > MAX_CHAVE || bytesValor.length > MAX_VALOR) {
+      return;
+    }
+    ByteBuffer registro = ByteBuffer.allocate(CABECALHO_DATADO + bytesChave.length + bytesValor.length);
+    registro.putInt(MAGICO_REGISTRO_DATADO).putInt(bytesChave.length).putInt(bytesValor.length).putInt(0)
+        .putLong(System.currentTimeMillis()).put(bytesChave).put(bytesValor);
+    CRC32 verificador = new CRC32();
+    verificador.update(registro.array(), CABECALHO_REGISTRO, registro.limit() - CABECALHO_REGISTRO);
+    registro.putInt(12, (int) verificador.getValue()).flip();
+
+    trava.writeLock().lock();
+    try {
+      long posicao = fim;
+      while (registro.hasRemaining()) {
+        dados.write(registro, posicao + registro.position());
+      }
+      fim += registro.limit();
+      indexar(bytesChave, posicao);
+      gravarCabecalho();
+    } finally {
+      trava.writeLock().unlock();
+    }
+
+    if (bytesMortos > MIN_COMPACTACAO && bytesMortos * 2 > fim && compactando.compareAndSet(false, true)) {
+      compactador.execute(() -> {
+        try {
+          compactar();
+        } catch (IOException e) {
+          e.printStackTrace();
+        } finally {
+          compactando.set(false);
+        }
+      });
+    }
+  }
+
+  /**
+   * Reescreve o acervo apenas com os registros em uso, liberando o espaço das
+   * respostas substituídas. Os novos arquivos são criados ao lado dos atuais e
+   * só os substituem quando completos.
+   *
+   * @throws IOException em caso de falha na reescrita.
+   */
+  public void compactar() throws IOException {
+    trava.writeLock().lock();
+    try {
+      Path novosDados = temporario(arquivoDados);
+      Path novoIndice = temporario(arquivoIndice);
+      MappedByteBuffer novoMapa = criarIndice(novoIndice, slots);
+      long novoFim = 0;
+      try (FileChannel saida = FileChannel.open(novosDados, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        for (int i = 0; i < slots; i++) {
+          int base = CABECALHO_INDICE + i * TAMANHO_SLOT;
+          long posicao = mapa.getLong(base + 8);
+          if (posicao == 0) {
+            continue;
+          }
+          ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_REGISTRO);
+          lerCompleto(cabecalho, posicao - 1);
+          int tamanho = tamanhoCabecalho(cabecalho.getInt(0)) + cabecalho.getInt(4) + cabecalho.getInt(8);
+          ByteBuffer registro = ByteBuffer.allocate(tamanho);
+          lerCompleto(registro, posicao - 1);
+          registro.flip();
+          while (registro.hasRemaining()) {
+            saida.write(registro, novoFim + registro.position());
+          }
+          inserirSlot(novoMapa, slots, mapa.getLong(base), novoFim);
+          novoFim += tamanho;
+        }
+        saida.force(true);
+      }
+      novoMapa.putInt(16, ocupados).putLong(8, novoFim).putLong(24, 0).putInt(20, 0);
+      novoMapa.force();
+
+      long antes = fim;
+      dados.close();
+      indice.close();
+      Files.move(novosDados, arquivoDados, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      Files.move(novoIndice, arquivoIndice, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      dados = FileChannel.open(arquivoDados, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      mapearIndice();
+      fim = novoFim;
+      bytesMortos = 0;
+      compactacoes++;
+      System.out.println("Acervo compactado de " + antes + " para " + fim + " bytes");
+    } finally {
+      trava.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Percorre as respostas guardadas, uma por chave, na ordem do índice.
+   *
+   * As posições são copiadas sob a trava de leitura e cada registro é lido
+   * com a trava tomada só durante a leitura; o consumidor roda fora dela, e
+   * inclusões não aguardam o fim do percurso. Respostas guardadas depois da
+   * cópia podem não ser percorridas.
+   *
+   * @param consumidor recebe o JSON de cada resposta.
+   * @throws IOException em caso de falha na leitura.
+   */
+  public void percorrer(Consumer<String> consumidor) throws IOException {
+    long[] copia;
+    int compactacao;
+    trava.readLock().lock();
+    try {
+      copia = copiarIndice();
+      compactacao = compactacoes;
+    } finally {
+      trava.readLock().unlock();
+    }
+    Set<Long> percorridas = new HashSet<>();
+    ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_REGISTRO);
+    for (int i = 0; i < copia.length; i += 2) {
+      byte[] valor;
+      trava.readLock().lock();
+      try {
+        if (compactacao != compactacoes) {
+          // A compactação moveu os registros: continua pelas novas posições,
+          // pulando as chaves já percorridas
+          for (int j = 0; j < i; j += 2) {
+            percorridas.add(copia[j]);
+          }
+          copia = copiarIndice();
+          compactacao = compactacoes;
+          i = -2;
+          continue;
+        }
+        if (percorridas.contains(copia[i])) {
+          continue;
+        }
+        long posicao = copia[i + 1];
+        cabecalho.clear();
+        lerCompleto(cabecalho, posicao);
+        ByteBuffer corpo = ByteBuffer.allocate(cabecalho.getInt(8));
+        lerCompleto(corpo, posicao + tamanhoCabecalho(cabecalho.getInt(0)) + cabecalho.getInt(4));
+        valor = corpo.array();
+      } finally {
+        trava.readLock().unlock();
+      }
+      consumidor.accept(new String(valor, StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Copia as posições ocupadas do índice. Deve ser chamado com a trava.
+   *
+   * @return pares de hash da chave e posição do registro no arquivo de dados.
+   */
+  private long[] copiarIndice() {
+    long[] copia = new long[ocupados * 2];
+    int n = 0;
+    for (int i = 0; i < slots && n < copia.length; i++) {
+      int base = CABECALHO_INDICE + i * TAMANHO_SLOT;
+      long posicao = mapa.getLong(base + 8);
+      if (posicao != 0) {
+        copia[n++] = mapa.getLong(base);
+        copia[n++] = posicao - 1;
+      }
+    }
+    return n == copia.length ? copia : Arrays.copyOf(copia, n);
+  }
+
+  /**
+   * @return quantidade de respostas guardadas.
+   */
+  public int getTamanho() {
+    return ocupados;
+  }
+
+  /**
+   * Grava o índice e marca o acervo como fechado corretamente.
+   */
+  @Override
+  public void close() throws IOException {
+    compactador.shutdown();
+    try {
+      compactador.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    trava.writeLock().lock();
+    try {
+      dados.force(true);
+      gravarCabecalho();
+      mapa.putInt(20, 1);
+      mapa.force();
+      dados.close();
+      indice.close();
+    } finally {
+      trava.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Registra a posição da chave no índice, marcando como sem uso o registro
+   * anterior da mesma chave.
+   */
+  private void indexar(byte[] chave, long posicao) throws IOException {
+    if ((ocupados + 1) * 10L > slots * 7L) {
+      crescerIndice();
+    }
+    long hash = hash(chave);
+    int mascara = slots - 1;
+    for (int i = (int) hash & mascara;; i = (i + 1) & mascara) {
+      int base = CABECALHO_INDICE + i * TAMANHO_SLOT;
+      long atual = mapa.getLong(base + 8);
+      if (atual == 0) {
+        mapa.putLong(base, hash).putLong(base + 8, posicao + 1);
+        ocupados++;
+        return;
+      }
+      if (mapa.getLong(base) == hash) {
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_REGISTRO);
+        lerCompleto(cabecalho, atual - 1);
+        if (lerRegistro(atual - 1, chave) != null) {
+          bytesMortos += tamanhoCabecalho(cabecalho.getInt(0)) + cabecalho.getInt(4) + cabecalho.getInt(8);
+          mapa.putLong(base + 8, posicao + 1);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Dobra a quantidade de posições do índice.
+   */
+  private void crescerIndice() throws IOException {
+    int novosSlots = slots * 2;
+    Path novoIndice = temporario(arquivoIndice);
+    MappedByteBuffer novoMapa = criarIndice(novoIndice, novosSlots);
+    for (int i = 0; i < slots; i++) {
+      int base = CABECALHO_INDICE + i * TAMANHO_SLOT;
+      long posicao = mapa.getLong(base + 8);
+      if (posicao != 0) {
+        inserirSlot(novoMapa, novosSlots, mapa.getLong(base), posicao - 1);
+      }
+    }
+    novoMapa.force();
+    indice.close();
+    Files.move(novoIndice, arquivoIndice, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    mapearIndice();
+    slots = novosSlots;
+    gravarCabecalho();
+  }
+
+  /**
+   * Insere uma posição em um índice que ainda não contém a chave.
+   */
+  private static void inserirSlot(MappedByteBuffer destino, int totalSlots, long hash, long posicao) {
+    int mascara = totalSlots - 1;
+    for (int i = (int) hash & mascara;; i = (i + 1) & mascara) {
+      int base = CABECALHO_INDICE + i * TAMANHO_SLOT;
+      if (destino.getLong(base + 8) == 0) {
+        destino.putLong(base, hash).putLong(base + 8, posicao + 1);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Lê o registro na posição se a chave dele for a informada.
+   *
+   * @return o registro ou {@code null} se for de outra chave.
+   */
+  private Registro lerRegistro(long posicao, byte[] chave) throws IOException {
+    ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_REGISTRO);
+    lerCompleto(cabecalho, posicao);
+    int extra = tamanhoCabecalho(cabecalho.getInt(0)) - CABECALHO_REGISTRO;
+    int tamChave = cabecalho.getInt(4);
+    int tamValor = cabecalho.getInt(8);
+    if (tamChave != chave.length) {
+      return null;
+    }
+    ByteBuffer corpo = ByteBuffer.allocate(extra + tamChave + tamValor);
+    lerCompleto(corpo, posicao + CABECALHO_REGISTRO);
+    byte[] bytes = corpo.array();
+    if (!Arrays.equals(bytes, extra, extra + tamChave, chave, 0, tamChave)) {
+      return null;
+    }
+    long gravadoEm = extra == 0 ? 0 : corpo.getLong(0);
+    return new Registro(new String(bytes, extra + tamChave, tamValor, StandardCharsets.UTF_8), gravadoEm);
+  }
+
+  private static int tamanhoCabecalho(int magico) {
+    return magico == MAGICO_REGISTRO_DATADO ? CABECALHO_DATADO : CABECALHO_REGISTRO;
+  }
+
+  private void lerCompleto(ByteBuffer destino, long posicao) throws IOException {
+    long inicio = posicao - destino.position();
+    while (destino.hasRemaining()) {
+      if (dados.read(destino, inicio + destino.position()) < 0) {
+        throw new EOFException("Registro incompleto em " + arquivoDados + " na posição " + posicao);
+      }
+    }
+  }
+
+  private void gravarCabecalho() {
+    mapa.putInt(0, MAGICO_INDICE).putInt(4, slots).putLong(8, fim).putInt(16, ocupados).putLong(24, bytesMortos);
+  }
+
+  private void mapearIndice() throws IOException {
+    indice = FileChannel.open(arquivoIndice, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    mapa = indice.map(FileChannel.MapMode.READ_WRITE, 0, indice.size());
+  }
+
+  private static MappedByteBuffer criarIndice(Path arquivo, int totalSlots) throws IOException {
+    long tamanho = CABECALHO_INDICE + (long) totalSlots * TAMANHO_SLOT;
+    try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer novo = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+      novo.putInt(0, MAGICO_INDICE).putInt(4, totalSlots);
+      return novo;
+    }
+  }
+
+  private static Path temporario(Path arquivo) {
+    return arquivo.resolveSibling(arquivo.getFileName() + ".compactando");
+  }
+
+  /**
+   * Hash FNV-1a de 64 bits, com os bits misturados para distribuir melhor as
+   * posições da tabela.
+   */
+  private static long hash(byte[] chave) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : chave) {
+      h ^= b & 0xff;
+      h *= 0x100000001b3L;
+    }
+    return h ^ (h >>> 32);
+  }
+}
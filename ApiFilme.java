@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A classe {@code ApiFilme} atende {@code /api/filme}, a versão em JSON da
+ * busca para uso por outros serviços.
+ *
+ * Em vez do JSON completo da OMDb, cada filme é um documento enxuto e
+ * normalizado, escrito direto no buffer de saída: {@code "N/A"} vira
+ * {@code null}, listas separadas por vírgula viram vetores e duração e nota
+ * viram números. Um único título ({@code GET /api/filme?t=Alien}) é
+ * respondido com um documento JSON; vários títulos (repetindo {@code t}, ou
+ * em um {@code POST}, como em {@link BuscaLote}) são respondidos em NDJSON,
+ * uma linha por filme, enviada assim que sua consulta termina.
+ */
+public class ApiFilme {
+  public static final String TIPO_JSON = "application/json; charset=utf-8";
+  public static final String TIPO_NDJSON = "application/x-ndjson; charset=utf-8";
+
+  private static final byte[] BUSCA = ascii("{\"busca\":");
+  private static final byte[] NAO_ENCONTRADO = ascii(",\"encontrado\":false,\"erro\":");
+  private static final byte[] IMDB_ID = ascii(",\"encontrado\":true,\"imdbID\":");
+  private static final byte[] TITULO = ascii(",\"titulo\":");
+  private static final byte[] ANO = ascii(",\"ano\":");
+  private static final byte[] DURACAO = ascii(",\"duracaoMinutos\":");
+  private static final byte[] NOTA = ascii(",\"nota\":");
+  private static final byte[] GENEROS = ascii(",\"generos\":");
+  private static final byte[] DIRETORES = ascii(",\"diretores\":");
+  private static final byte[] ELENCO = ascii(",\"elenco\":");
+  private static final byte[] SINOPSE = ascii(",\"sinopse\":");
+  private static final byte[] POSTER = ascii(",\"poster\":");
+  private static final byte[] NULO = ascii("null");
+  private static final byte[] ABRE_LISTA = ascii("[");
+  private static final byte[] FECHA_LISTA = ascii("]");
+  private static final byte[] VIRGULA = ascii(",");
+  private static final byte[] FECHA = ascii("}");
+  private static final byte[] FIM_LINHA = ascii("\n");
+  private static final byte[] SUGESTOES_Q = ascii("{\"q\":");
+  private static final byte[] SUGESTOES = ascii(",\"sugestoes\":[");
+  private static final byte[] SUGESTAO_TITULO = ascii("{\"titulo\":");
+  private static final byte[] SUGESTAO_IMDB_ID = ascii(",\"imdbID\":");
+  private static final byte[] APROXIMADA = ascii(",\"aproximada\":true}");
+  private static final byte[] EXATA = ascii(",\"aproximada\":false}");
+  private static final byte[] FECHA_SUGESTOES = ascii("]}");
+
+  /**
+   * Um documento JSON por linha, na ordem em que as consultas terminam.
+   */
+  public static final BuscaLote.Formato NDJSON = new BuscaLote.Formato() {
+    @Override
+    public String tipo() {
+      return TIPO_NDJSON;
+    }
+
+    @Override
+    public void inicio(int quantidade, SaidaBytes saida) {
+    }
+
+    @Override
+    public void item(String busca, Filme filme, String falha, SaidaBytes saida) {
+      escreverFilme(busca, filme, falha, saida);
+      saida.escrever(FIM_LINHA);
+    }
+
+    @Override
+    public void fim(SaidaBytes saida) {
+    }
+
+    @Override
+    public void erro(String mensagem, SaidaBytes saida) {
+      escreverErro(mensagem, saida);
+      saida.escreverTexto("\n");
+    }
+  };
+
+  /**
+   * Indica se o pedido é respondido em NDJSON, com um filme por linha.
+   *
+   * @param method o método HTTP.
+   * @param pedido os títulos pedidos.
+   * @return {@code true} para vários títulos ou {@code POST}.
+   */
+  public static boolean emLote(String method, BuscaLote.Pedido pedido) {
+    return method.equals("POST") || pedido.titulos().size() > 1;
+  }
+
+  /**
+   * Consulta um único título e escreve o documento do filme.
+   *
+   * @param titulo          o título buscado.
+   * @param sinopseResumida se a sinopse é a resumida.
+   * @param corpo           o buffer onde o JSON é escrito.
+   * @return o status da resposta: 200, 404 se o filme não foi encontrado, 503
+   *         se o limite da OMDb foi atingido ou 502 se a OMDb falhou.
+   */
+  public static String responderUm(String titulo, boolean sinopseResumida, SaidaBytes corpo) {
+    Filme filme;
+    try {
+      filme = Cliente.consultar(titulo, sinopseResumida, LimiteOMDB.Prioridade.INTERATIVA).filme();
+    } catch (LimiteOMDB.Esgotado e) {
+      escreverFilme(titulo, null, e.getMessage(), corpo);
+      return "503 Service Unavailable";
+    } catch (IOException e) {
+      escreverFilme(titulo, null, "Falha na consulta: " + e.getMessage(), corpo);
+      return "502 Bad Gateway";
+    }
+    escreverFilme(titulo, filme, null, corpo);
+    return filme.encontrado() ? "200 OK" : "404 Not Found";
+  }
+
+  /**
+   * Escreve um documento de erro.
+   *
+   * @param mensagem a descrição do erro.
+   * @param corpo    o buffer de saída.
+   */
+  public static void escreverErro(String mensagem, SaidaBytes corpo) {
+    corpo.escreverTexto("{\"erro\":");
+    corpo.escreverJson(mensagem);
+    corpo.escreverTexto("}");
+  }
+
+  /**
+   * Escreve a resposta de {@code /sugerir}.
+   *
+   * @param texto     o texto digitado, ou {@code null}.
+   * @param sugestoes os títulos sugeridos.
+   * @param corpo     o buffer de saída.
+   */
+  public static void escreverSugestoes(String texto, List<IndiceTitulos.Sugestao> sugestoes, SaidaBytes corpo) {
+    corpo.escrever(SUGESTOES_Q);
+    corpo.escreverJson(texto);
+    corpo.escrever(SUGESTOES);
+    for (int i = 0; i < sugestoes.size(); i++) {
+      IndiceTitulos.Sugestao sugestao = sugestoes.get(i);
+      if (i > 0) {
+        corpo.escrever(VIRGULA);
+      }
+      corpo.escrever(SUGESTAO_TITULO);
+      corpo.escreverJson(sugestao.titulo());
+      corpo.escrever(ANO);
+      corpo.escreverJson(texto(sugestao.ano()));
+      corpo.escrever(SUGESTAO_IMDB_ID);
+      corpo.escreverJson(sugestao.imdbID());
+      corpo.escrever(sugestao.aproximada() ? APROXIMADA : EXATA);
+    }
+    corpo.escrever(FECHA_SUGESTOES);
+  }
+
+  /**
+   * Escreve o documento de um título buscado.
+   *
+   * @param busca o título buscado.
+   * @param filme os dados do filme, ou {@code null} se a consulta falhou.
+   * @param falha o motivo da falha, quando não há filme.
+   * @param saida o buffer de saída.
+   */
+  public static void escreverFilme(String busca, Filme filme, String falha, SaidaBytes saida) {
+    saida.escrever(BUSCA);
+    saida.escreverJson(busca);
+    if (filme == null || !filme.encontrado()) {
+      saida.escrever(NAO_ENCONTRADO);
+      saida.escreverJson(filme != null ? filme.erro() : falha);
+      saida.escrever(FECHA);
+      return;
+    }
+    saida.escrever(IMDB_ID);
+    saida.escreverJson(texto(filme.imdbID()));
+    saida.escrever(TITULO);
+    saida.escreverJson(texto(filme.titulo()));
+    saida.escrever(ANO);
+    saida.escreverJson(texto(filme.ano()));
+    saida.escrever(DURACAO);
+    numero(filme.duracao(), false, saida);
+    saida.escrever(NOTA);
+    numero(filme.nota(), true, saida);
+    saida.escrever(GENEROS);
+    lista(filme.genero(), saida);
+    saida.escrever(DIRETORES);
+    lista(filme.diretor(), saida);
+    saida.escrever(ELENCO);
+    lista(filme.elenco(), saida);
+    saida.escrever(SINOPSE);
+    saida.escreverJson(texto(filme.sinopse()));
+    saida.escrever(POSTER);
+    String poster = texto(filme.poster());
+    saida.escreverJson(poster != null && (poster.startsWith("https://") || poster.startsWith("http://")) ? poster : null);
+    saida.escrever(FECHA);
+  }
+
+  /**
+   * @return o valor, ou {@code null} se vazio ou {@code "N/A"}.
+   */
+  private static String texto(String valor) {
+    return valor == null || valor.isEmpty() || valor.equals("N/A") ? null : valor;
+  }
+
+  /**
+   * Escreve o número do início do valor, como em {@code "136 min"} ou
+   * {@code "8.7"}, ou {@code null} se não houver.
+   */
+  private static void numero(String valor, boolean decimal, SaidaBytes saida) {
+    int fim = 0;
+    int n = valor == null ? 0 : valor.length();
+    while (fim < n && digito(valor.charAt(fim))) {
+      fim++;
+    }
+    if (decimal && fim > 0 && fim + 1 < n && valor.charAt(fim) == '.' && digito(valor.charAt(fim + 1))) {
+      fim += 2;
+      while (fim < n && digito(valor.charAt(fim))) {
+        fim++;
+      }
+    }
+    if (fim == 0) {
+      saida.escrever(NULO);
+    } else {
+      // Apenas dígitos ASCII, já no formato de número JSON
+      saida.escreverTexto(fim == n ? valor : valor.substring(0, fim));
+    }
+  }
+
+  /**
+   * @return {@code true} só para os dígitos ASCII; {@link Character#isDigit}
+   *         aceitaria outros, que não formam um número JSON.
+   */
+  private static boolean digito(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Escreve uma lista separada por vírgulas como vetor JSON.
+   */
+  private static void lista(String valor, SaidaBytes saida) {
+    saida.escrever(ABRE_LISTA);
+    if (texto(valor) != null) {
+      int inicio = 0;
+      boolean primeiro = true;
+      while (inicio <= valor.length()) {
+        int virgula = valor.indexOf(',', inicio);
+        int fim = virgula < 0 ? valor.length() : virgula;
+        String item = valor.substring(inicio, fim).trim();
+        if (!item.isEmpty()) {
+          if (!primeiro) {
+            saida.escrever(VIRGULA);
+          }
+          saida.escreverJson(item);
+          primeiro = false;
+        }
+        inicio = fim + 1;
+      }
+    }
+    saida.escrever(FECHA_LISTA);
+  }
+
+  private static byte[] ascii(String texto) {
+    return texto.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,265 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code AquecedorCache} busca títulos na OMDb em segundo plano, para
+ * que os primeiros usuários depois de reiniciar o servidor, e os que chegam
+ * quando uma entrada popular expira, não esperem pela API.
+ *
+ * São aquecidos os títulos de um arquivo de sementes (um por linha, linhas
+ * começando com {@code #} são ignoradas) e os mais buscados desde o início do
+ * servidor, cuja contagem cai pela metade a cada planejamento para favorecer
+ * os recentes. Um título é buscado quando não está no cache (nem no acervo em
+ * disco) ou quando falta menos que a antecedência para expirar.
+ *
+ * As requisições saem uma por intervalo, de uma única thread própria, e
+ * apenas quando há conexões com a OMDb livres além da reserva, para não
+ * disputar vagas com as buscas dos usuários. Um orçamento diário (dia UTC)
+ * limita quantas requisições o aquecimento gasta da cota da API, e o
+ * {@link LimiteOMDB} o adia antes das buscas em lote e das interativas quando
+ * a cota ou o ritmo estão perto do fim.
+ */
+public class AquecedorCache implements Closeable {
+  /**
+   * Quantidade máxima de títulos buscados acompanhados.
+   */
+  private static final int MAXIMO_PROCURAS = 10_000;
+  /**
+   * Intervalo, em segundos, entre os planejamentos.
+   */
+  private static final long INTERVALO_PLANEJAMENTO = 60;
+
+  /**
+   * Um título buscado pelos usuários e quantas vezes.
+   */
+  private record Procura(Cliente.Busca busca, AtomicLong vezes) {
+  }
+
+  private final String arquivo;
+  private final int orcamento;
+  private final int populares;
+  private final long intervalo;
+  private final long antecedencia;
+  private final int reserva;
+  private final Map<String, Procura> procuras = new ConcurrentHashMap<>();
+  private final AtomicInteger usadasHoje = new AtomicInteger();
+  private final LongAdder requisicoes = new LongAdder();
+  private final LongAdder adiadas = new LongAdder();
+  private volatile ScheduledExecutorService executor;
+
+  // Usados apenas pela thread do aquecimento
+  private final List<Cliente.Busca> sementes = new ArrayList<>();
+  private final Map<String, Cliente.Busca> fila = new LinkedHashMap<>();
+  private final Set<String> semFilme = new HashSet<>();
+  private LocalDate dia;
+
+  /**
+   * @param arquivo              o arquivo de sementes, ou vazio para nenhum.
+   * @param orcamentoDiario      requisições à OMDb por dia; zero desativa o
+   *                             aquecimento.
+   * @param populares            quantos dos títulos mais buscados manter
+   *                             aquecidos.
+   * @param intervaloMs          intervalo mínimo entre duas requisições.
+   * @param antecedenciaSegundos quanto antes de expirar uma entrada é renovada.
+   * @param reserva              conexões com a OMDb que devem continuar livres.
+   */
+  public AquecedorCache(String arquivo, int orcamentoDiario, int populares, long intervaloMs,
+      long antecedenciaSegundos, int reserva) {
+    this.arquivo = arquivo;
+    this.orcamento = orcamentoDiario;
+    this.populares = populares;
+    this.intervalo = Math.max(1, intervaloMs);
+    this.antecedencia = antecedenciaSegundos * 1_000_000_000L;
+    this.reserva = reserva;
+  }
+
+  /**
+   * Inicia o aquecimento em sua própria thread.
+   */
+  public void iniciar() {
+    if (orcamento <= 0) {
+      return;
+    }
+    ScheduledExecutorService novo = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "aquecedor-cache");
+      t.setDaemon(true);
+      // Nunca à frente das threads que atendem os usuários
+      t.setPriority(Thread.MIN_PRIORITY);
+      return t;
+    });
+    executor = novo;
+    novo.execute(this::carregarSementes);
+    novo.scheduleWithFixedDelay(this::planejar, 0, INTERVALO_PLANEJAMENTO, TimeUnit.SECONDS);
+    novo.scheduleWithFixedDelay(this::aquecerProximo, intervalo, intervalo, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Conta uma busca de usuário, para manter aquecidos os títulos populares.
+   *
+   * @param chave           a chave da consulta.
+   * @param titulo          o título buscado.
+   * @param sinopseResumida o tipo da sinopse.
+   */
+  public void registrarProcura(String chave, String titulo, boolean sinopseResumida) {
+    if (executor == null) {
+      return;
+    }
+    Procura procura = procuras.get(chave);
+    if (procura == null) {
+      if (procuras.size() >= MAXIMO_PROCURAS) {
+        return;
+      }
+      procura = procuras.computeIfAbsent(chave,
+          c -> new Procura(new Cliente.Busca(titulo, sinopseResumida), new AtomicLong()));
+    }
+    procura.vezes().incrementAndGet();
+  }
+
+  /**
+   * @return requisições feitas à OMDb pelo aquecimento.
+   */
+  public long getRequisicoes() {
+    return requisicoes.sum();
+  }
+
+  /**
+   * @return vezes em que o aquecimento esperou por falta de conexão livre ou
+   *         de cota na OMDb.
+   */
+  public long getAdiadas() {
+    return adiadas.sum();
+  }
+
+  /**
+   * @return requisições que ainda cabem no orçamento de hoje.
+   */
+  public int getOrcamentoRestante() {
+    return Math.max(0, orcamento - usadasHoje.get());
+  }
+
+  /**
+   * Interrompe o aquecimento.
+   */
+  @Override
+  public void close() {
+    ScheduledExecutorService atual = executor;
+    if (atual != null) {
+      atual.shutdownNow();
+    }
+  }
+
+  private void carregarSementes() {
+    if (arquivo.isEmpty()) {
+      return;
+    }
+    try {
+      for (String linha : Files.readAllLines(Paths.get(arquivo), StandardCharsets.UTF_8)) {
+        String titulo = linha.trim();
+        if (!titulo.isEmpty() && !titulo.startsWith("#")) {
+          sementes.add(new Cliente.Busca(titulo, false));
+        }
+      }
+      System.out.println("Aquecimento do cache: " + sementes.size() + " títulos de " + arquivo + ", até "
+          + orcamento + " requisições por dia");
+    } catch (IOException e) {
+      System.out.println("Sementes do aquecimento indisponíveis: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Enfileira as sementes e os títulos mais buscados que estão fora do cache
+   * ou perto de expirar.
+   */
+  private void planejar() {
+    try {
+      for (Cliente.Busca semente : sementes) {
+        enfileirarSeExpirando(semente);
+      }
+      List<Procura> ordenadas = new ArrayList<>(procuras.values());
+      ordenadas.sort(Comparator.comparingLong((Procura p) -> p.vezes().get()).reversed());
+      for (int i = 0; i < ordenadas.size() && i < populares; i++) {
+        enfileirarSeExpirando(ordenadas.get(i).busca());
+      }
+      // Decaimento: as buscas antigas perdem peso e as esquecidas saem
+      procuras.values().removeIf(procura -> procura.vezes().updateAndGet(v -> v / 2) == 0);
+    } catch (RuntimeException e) {
+      // Uma exceção cancelaria as próximas execuções
+      Metricas.registrarErro(e);
+      e.printStackTrace();
+    }
+  }
+
+  private void enfileirarSeExpirando(Cliente.Busca busca) {
+    String chave = CacheFilmes.chave(busca.titulo(), busca.sinopseResumida());
+    // Em um grupo, cada título é aquecido só pelo seu dono
+    if (!semFilme.contains(chave) && Cliente.ehDono(chave) && Cliente.CACHE.restante(chave) <= antecedencia) {
+      fila.putIfAbsent(chave, busca);
+    }
+  }
+
+  /**
+   * Faz no máximo uma requisição à OMDb, para o primeiro título da fila que
+   * ainda precisa dela.
+   */
+  private void aquecerProximo() {
+    try {
+      LocalDate hoje = LocalDate.now(ZoneOffset.UTC);
+      if (!hoje.equals(dia)) {
+        dia = hoje;
+        usadasHoje.set(0);
+        semFilme.clear();
+      }
+      Iterator<Map.Entry<String, Cliente.Busca>> pendentes = fila.entrySet().iterator();
+      while (pendentes.hasNext()) {
+        Map.Entry<String, Cliente.Busca> pendente = pendentes.next();
+        String chave = pendente.getKey();
+        long restante = Cliente.CACHE.restante(chave);
+        if (restante < 0 && Cliente.carregarDoAcervo(chave)) {
+          // O acervo guarda a data da resposta: só dispensa a API se ela
+          // ainda estiver longe de expirar
+          restante = Cliente.CACHE.restante(chave);
+        }
+        if (restante > antecedencia) {
+          // Já renovado por uma busca de usuário, ou disponível sem a API
+          pendentes.remove();
+          continue;
+        }
+        if (usadasHoje.get() >= orcamento) {
+          return;
+        }
+        Cliente.Busca busca = pendente.getValue();
+        try {
+          RespostaFilme resposta = Cliente.renovarOMDBAPI(busca.titulo(), busca.sinopseResumida(), reserva);
+          if (resposta != null) {
+            usadasHoje.incrementAndGet();
+            requisicoes.increment();
+            if (!resposta.filme().encontrado()) {
+              semFilme.add(chave);
+            }
+          }
+        } catch (ClienteOMDB.Ocupado | LimiteOMDB.Esgotado e) {
+          // Nada foi enviado; continua na fila para o próximo intervalo
+          adiadas.increment();
+          return;
+        } catch (IOException e) {
+          usadasHoje.incrementAndGet();
+          requisicoes.increment();
+          Metricas.registrarErro(e);
+        }
+        pendentes.remove();
+        return;
+      }
+    } catch (RuntimeException e) {
+      Metricas.registrarErro(e);
+      e.printStackTrace();
+    }
+  }
+}
@@ -1,5 +1,8 @@
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
 
 /**
  * A classe {@code BuscaFilmes} implementa um servidor HTTP simples que escuta
@@ -17,8 +20,9 @@ import java.net.*;
  * Endpoint de busca:
  * /buscar?t=Titulo&amp;plot=full
  *
- * Requests e Response são manipulados manualmente utilizando sockets.
- * A resposta é construída em HTML, e o JSON é tratado como texto.
+ * Requests e Response são manipulados manualmente utilizando sockets, por
+ * {@link Cliente#handleClient(Socket)} ou pelo {@link ServidorNIO}; os dois
+ * atendem as rotas pelo {@link Roteador}.
  * 
  * @author Emanuel Rawã Gurgel de Araújo Freitas
  * @author José Ivo Schwade Araújo
@@ -28,11 +32,47 @@ public class BuscaFilmes {
   /**
    * Porta onde o servidor irá executar as conexões.
    */
-  private static final int PORT = 80;
+  private static final int PORT = Integer.getInteger("buscafilmes.porta", 80);
   /**
-   * Chave da API da OMDb (máximo de 1000 requisições por dia)
+   * Modo de execução das conexões: {@code "virtual"} (uma thread virtual por
+   * conexão) ou {@code "pool"} (pool limitado de threads de plataforma).
    */
-  private static final String OMDB_API_KEY = "da70d648";
+  private static final String MODO_EXECUCAO = System.getProperty("buscafilmes.execucao", "pool");
+  /**
+   * Modo do servidor: {@code "bloqueante"} (uma thread por conexão, com
+   * {@link ServerSocket}) ou {@code "nio"} (seletor não bloqueante, com as
+   * buscas entregues ao executor).
+   */
+  private static final String MODO_SERVIDOR = System.getProperty("buscafilmes.servidor", "bloqueante");
+  /**
+   * Quantidade de threads do pool limitado.
+   */
+  private static final int TAMANHO_POOL = Integer.getInteger("buscafilmes.threads",
+      Runtime.getRuntime().availableProcessors() * 8);
+  /**
+   * Quantidade máxima de conexões aguardando uma thread livre no pool.
+   */
+  private static final int LIMITE_FILA = Integer.getInteger("buscafilmes.fila", 256);
+  /**
+   * Tempo máximo, em segundos, para concluir as requisições em andamento no
+   * desligamento.
+   */
+  private static final int TEMPO_DRENAGEM = Integer.getInteger("buscafilmes.drenagem", 30);
+  /**
+   * Tempo, em segundos, para as threads terminarem depois que as conexões
+   * restantes são fechadas.
+   */
+  private static final int TEMPO_FECHAMENTO = 5;
+  /**
+   * Resposta enviada quando a fila do pool está cheia.
+   */
+  private static final byte[] RESPOSTA_OCUPADO = ("HTTP/1.1 503 Service Unavailable\r\n" +
+      "Content-Type: text/html\r\n" +
+      "Content-Length: 29\r\n" +
+      "Retry-After: 1\r\n" +
+      "Connection: close\r\n" +
+      "\r\n" +
+      "<h1>503 Servidor ocupado</h1>").getBytes(StandardCharsets.US_ASCII);
 
   /**
    * Método principal que inicializa o servidor e escuta conexões de clientes
@@ -42,254 +82,112 @@ public class BuscaFilmes {
    */
   public static void main(String[] args) throws IOException {
     System.out.println("Servidor rodando na porta " + PORT + "...");
-    ServerSocket serverSocket = new ServerSocket(PORT);
-
-    while (true) {
-      Socket client = serverSocket.accept();
-      new Thread(() -> handleClient(client)).start();
+    ExecutorService executor = criarExecutor();
+    Cliente.AQUECEDOR.iniciar();
+    if (Cliente.GRUPO != null) {
+      Cliente.GRUPO.iniciar();
+      System.out.println("Grupo de " + Cliente.GRUPO.getNos().size() + " nós; consultas dos outros em "
+          + Cliente.GRUPO.getLocal());
     }
-  }
-
-  /**
-   * Lida com a requisição de um cliente individual.
-   * Interpreta os dados da requisição HTTP e envia a resposta correspondente.
-   *
-   * @param client o socket do cliente conectado.
-   */
-  private static void handleClient(Socket client) {
-    try (
-        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-        OutputStream out = client.getOutputStream();
-        PrintWriter writer = new PrintWriter(out, true);) {
-      String line = in.readLine();
-      if (line == null || line.isEmpty()) {
-        client.close();
-        return;
-      }
 
-      String[] requestParts = line.split(" ");
-      String method = requestParts[0];
-      String path = requestParts[1];
+    if (MODO_SERVIDOR.equals("nio")) {
+      System.out.println("Atendendo conexões com seletor NIO");
+      ServidorNIO servidor = new ServidorNIO(PORT, executor, RESPOSTA_OCUPADO, TEMPO_DRENAGEM);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> desligar(servidor, executor)));
+      servidor.executar();
+      return;
+    }
 
-      // Lê as demais linhas do header até linha vazia
-      while (!(line = in.readLine()).isEmpty()) {
+    ServerSocket serverSocket = new ServerSocket(PORT);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> desligar(serverSocket, executor)));
+
+    while (!serverSocket.isClosed()) {
+      Socket client;
+      try {
+        client = serverSocket.accept();
+      } catch (SocketException e) {
+        // Socket do servidor fechado pelo desligamento
+        break;
       }
-
-      if (method.equals("GET") && path.equals("/")) {
-        // Página inicial com formulário de busca
-        sendHttpResponse(writer, "text/html", getHtmlForm());
-      } else if (method.equals("GET") && path.startsWith("/buscar")) {
-        String query = path.substring(path.indexOf('?') + 1);
-        String titulo = null;
-        boolean sinopseResumida = false;
-        for (String param : query.split("&")) {
-          String[] keyVal = param.split("=");
-          if (keyVal.length == 2 && keyVal[0].equals("t")) {
-            titulo = URLDecoder.decode(keyVal[1], "UTF-8");
-          }
-          if (keyVal[0].equals("plot")) {
-            sinopseResumida = true;
-          }
-        }
-
-        if (titulo == null || titulo.isEmpty()) {
-          sendHttpResponse(writer, "text/html", "<h1>Parâmetro 't' (título) não informado</h1>");
-          client.close();
-          return;
-        }
-
-        String json = consultOMDBAPI(titulo, sinopseResumida);
-        String html = HTMLResponseForm(json);
-        sendHttpResponse(writer, "text/html; charset=UTF-8", html);
-      } else {
-        sendHttpResponse(writer, "text/html", "<h1>404 Not Found</h1>");
+      try {
+        executor.execute(() -> Cliente.handleClient(client));
+      } catch (RejectedExecutionException e) {
+        Metricas.registrarErro(e);
+        recusarConexao(client);
       }
-
-      client.close();
-
-    } catch (Exception e) {
-      e.printStackTrace();
     }
   }
 
   /**
-   * Envia uma resposta HTTP simples com cabeçalhos e conteúdo
-   *
-   * @param writer      o {@link PrintWriter} para enviar dados do cliente.
-   * @param contentType o tipo do conteúdo (ex.: "text/html").
-   * @param content     o conteúdo da resposta.
-   */
-  private static void sendHttpResponse(PrintWriter writer, String contentType, String content) {
-    writer.print("HTTP/1.1 200 OK\r\n");
-    writer.print("Content-Type: " + contentType + "\r\n");
-    writer.print("Connection: close\r\n");
-    writer.print("\r\n");
-    writer.print(content);
-    writer.flush();
-  }
-
-  /**
-   * Gera e retorna o HTML e CSS da página inicial com o formulário de busca.
+   * Cria o executor das conexões conforme o modo configurado em
+   * {@code buscafilmes.execucao}. Threads virtuais só existem a partir do Java
+   * 21; em versões anteriores é usado o pool limitado.
    *
-   * @return HTML e CSS em formato de {@code String}.
+   * @return o executor que atenderá as conexões.
    */
-  private static String getHtmlForm() {
-    return "<!DOCTYPE html>\n" +
-        "<html lang=\"pt-BR\">\n" +
-        "<head>\n" +
-        "    <meta charset=\"UTF-8\">\n" +
-        "    <title>BuscaFilmes</title>\n" +
-        "    <style>\n" +
-        "        @keyframes slip-fade { 0% { opacity: 0; transform: translateY(20px); } 100% { opacity: 1; transform: translateY(0); } }\n"
-        +
-        "        body {\n" +
-        "            margin: 0;\n" +
-        "            height: 100vh;\n" +
-        "            display: flex;\n" +
-        "            flex-direction: column;\n" +
-        "            align-items: center;\n" +
-        "            justify-content: center;\n" +
-        "            background: #202020;\n" +
-        "            color: #f0f0f0;\n" +
-        "            font-family: 'Montserrat', sans-serif;\n" +
-        "            animation: slip-fade 1s ease-in-out;\n" +
-        "            text-align: center;\n" +
-        "        }\n" +
-        "        input[type='text'] {\n" +
-        "            width: 130px;\n" +
-        "            transition: width 0.4s ease-in-out;\n" +
-        "            padding: 5px;\n" +
-        "            margin: 5px;\n" +
-        "        }\n" +
-        "        input[type='text']:focus { width: 200px; }\n" +
-        "        input[type='checkbox'] { margin: 15px; }\n" +
-        "        button[type='submit'] {\n" +
-        "            background-color: #cd3b3b;\n" +
-        "            color: #f0f0f0;\n" +
-        "            padding: 7px 15px;\n" +
-        "            border: none;\n" +
-        "            border-radius: 15px;\n" +
-        "            font-weight: bold;\n" +
-        "            transition: background-color 0.3s;\n" +
-        "        }\n" +
-        "        button[type='submit']:hover { background-color: #a53131; }\n" +
-        "    </style>\n" +
-        "</head>\n" +
-        "<body>\n" +
-        "    <h1>BuscaFilmes</h1>\n" +
-        "    <form action=\"/buscar\" method=\"GET\">\n" +
-        "        <input type=\"text\" name=\"t\" placeholder=\"Nome do filme\" required><br>\n" +
-        "        <input type=\"checkbox\" name=\"plot\">\n" +
-        "        <label for=\"plot\">Sinopse Resumida?</label><br>\n" +
-        "        <button type=\"submit\">Buscar</button>\n" +
-        "    </form>\n" +
-        "</body>\n" +
-        "</html>";
-  }
-
-  /**
-   * Consulta a OMDb API com base no título do filme e se deve mostrar a sinópse
-   * resumida ou não.
-   *
-   * @param titulo          o título do filme a ser buscado.
-   * @param sinopseResumida o {@code Boolean} que verifica o tipo da sinópse.
-   * @return resposta do JSON como {@code String}.
-   * @throws IOException em caso de falha na comunicação com a API.
-   */
-  private static String consultOMDBAPI(String titulo, boolean sinopseResumida) throws IOException {
-    Socket socket = new Socket("www.omdbapi.com", 80);
-    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-    String path;
-
-    if (sinopseResumida) {
-      path = "/?apikey=" + OMDB_API_KEY + "&t=" + URLEncoder.encode(titulo, "UTF-8");
-    } else {
-      path = "/?apikey=" + OMDB_API_KEY + "&t=" + URLEncoder.encode(titulo, "UTF-8") + "&plot=full";
-    }
-
-    out.write("GET " + path + " HTTP/1.1\r\n");
-    out.write("Host: www.omdbapi.com\r\n");
-    out.write("Connection: close\r\n");
-    out.write("\r\n");
-    out.flush();
-
-    StringBuilder response = new StringBuilder();
-    String line;
-    boolean jsonStarted = false;
-    while ((line = in.readLine()) != null) {
-      if (jsonStarted) {
-        response.append(line).append("\n");
-      }
-      if (line.isEmpty()) {
-        jsonStarted = true;
+  private static ExecutorService criarExecutor() {
+    if (MODO_EXECUCAO.equals("virtual")) {
+      try {
+        Method fabrica = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        System.out.println("Atendendo conexões com threads virtuais");
+        return (ExecutorService) fabrica.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        System.out.println("Threads virtuais indisponíveis nesta JVM, usando pool limitado");
       }
     }
-
-    socket.close();
-    return response.toString();
+    System.out.println("Atendendo conexões com pool de " + TAMANHO_POOL + " threads (fila de " + LIMITE_FILA + ")");
+    return new ThreadPoolExecutor(TAMANHO_POOL, TAMANHO_POOL, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(LIMITE_FILA), new ThreadPoolExecutor.AbortPolicy());
   }
 
   /**
-   * Extrai valor de campo específico de um JSON em string.
+   * Responde 503 a uma conexão que não coube na fila do pool e a fecha, sem
+   * ler a requisição.
    *
-   * @param json  o JSON como {@code String}.
-   * @param campo o nome do campo a ser extraído.
-   * @return valor correspondente ou "N/A" se não encontrado.
+   * @param client o socket do cliente recusado.
    */
-  private static String extractFieldJSON(String json, String campo) {
-    String busca = "\"" + campo + "\":\"";
-    int idx = json.indexOf(busca);
-    if (idx == -1)
-      return "N/A";
-    int start = idx + busca.length();
-    int end = json.indexOf("\"", start);
-    if (end == -1)
-      return "N/A";
-    return json.substring(start, end);
+  private static void recusarConexao(Socket client) {
+    try (Socket s = client) {
+      s.setSoTimeout(1000);
+      s.getOutputStream().write(RESPOSTA_OCUPADO);
+    } catch (IOException e) {
+      // Cliente já desconectou, nada a fazer
+    }
   }
 
   /**
-   * Monta o HTML e o CSS para exibir os dados do filme a partir do JSON response
-   * da API.
+   * Para de aceitar conexões e aguarda as requisições em andamento terminarem,
+   * até o limite de {@code buscafilmes.drenagem} segundos. As conexões
+   * persistentes param de aceitar novas requisições, e as que passarem do
+   * limite são fechadas antes de liberar os recursos compartilhados, para que
+   * nenhuma requisição os use depois de fechados.
    *
-   * @param json o conteúdo do JSON com os dados dos filmes.
-   * @return HTML e CSS formatado contendo informações como título, diretor,
-   *         elenco, etc.
+   * @param servidor o socket do servidor ou o {@link ServidorNIO}.
+   * @param executor o executor das conexões.
    */
-  private static String HTMLResponseForm(String json) {
-    String title = extractFieldJSON(json, "Title");
-    String year = extractFieldJSON(json, "Year");
-    String director = extractFieldJSON(json, "Director");
-    String actors = extractFieldJSON(json, "Actors");
-    String plot = extractFieldJSON(json, "Plot");
-    String poster = extractFieldJSON(json, "Poster");
-
-    StringBuilder sb = new StringBuilder();
-    sb.append("<!DOCTYPE html>\n");
-    sb.append("<html lang=\"pt-BR\">\n<head>\n<meta charset=\"UTF-8\">\n");
-    sb.append("<title>").append(title).append("</title>\n");
-    sb.append("<style>\n" +
-        "@keyframes slip-fade{0%{bottom:20px; opacity: 0}100%{bottom:0px; opacity: 1}}" +
-        "body{ position: relative; background: #202020; color:#f0f0f0; text-align: center; font-family:'Montserrat'; animation: slip-fade 1s ease-in-out;}"
-        +
-        "a{text-decoration: none; color: #f0f0f0; font-weight: bold;}");
-    sb.append("</style>\n");
-    sb.append("</head>\n<body>\n");
-    sb.append("<h1>").append(title).append(" (").append(year).append(")</h1>\n");
-
-    if (!poster.equals("N/A")) {
-      sb.append("<img src=\"").append(poster).append("\" alt=\"Poster do filme\" style=\"max-width:300px;\"><br>\n");
-    } else {
-      sb.append("<p>Poster não disponível.</p>\n");
+  private static void desligar(Closeable servidor, ExecutorService executor) {
+    System.out.println("Desligando servidor...");
+    // Um único prazo para o ServidorNIO e para o executor
+    long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(TEMPO_DRENAGEM);
+    try {
+      servidor.close();
+    } catch (IOException e) {
+      e.printStackTrace();
     }
-
-    sb.append("<p><b>Diretor:</b> ").append(director).append("</p>\n");
-    sb.append("<p><b>Elenco:</b> ").append(actors).append("</p>\n");
-    sb.append("<p><b>Sinopse:</b> ").append(plot).append("</p>\n");
-    sb.append("<p><a href=\"/\">Nova busca</a></p>\n");
-    sb.append("</body>\n</html>");
-    return sb.toString();
+    Cliente.iniciarDesligamento();
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+        // Uma thread bloqueada lendo do socket não atende a interrupção
+        Cliente.fecharConexoes();
+        executor.shutdownNow();
+        executor.awaitTermination(TEMPO_FECHAMENTO, TimeUnit.SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Cliente.fecharConexoes();
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    Cliente.encerrar();
   }
 }
-
@@ -0,0 +1,428 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A classe {@code BuscaLote} atende {@code /buscar/lote}, que busca vários
+ * títulos em uma única requisição.
+ *
+ * Os títulos vêm repetidos no parâmetro {@code t} da query string
+ * ({@code GET /buscar/lote?t=Alien&t=Heat}) ou no corpo de um {@code POST},
+ * como formulário ({@code t=Alien&t=Heat}) ou um título por linha. As
+ * consultas são feitas em paralelo, com no máximo
+ * {@code buscafilmes.lote.paralelas} ao mesmo tempo por requisição, e cada
+ * filme é enviado ao cliente assim que sua consulta termina, em uma resposta
+ * com {@code Transfer-Encoding: chunked}. Títulos ainda sem resposta quando
+ * o prazo de {@code buscafilmes.lote.prazo} milissegundos se esgota são
+ * listados como não concluídos, e a resposta é encerrada.
+ *
+ * As consultas de todos os lotes dividem um pool de threads com fila
+ * limitada ({@code buscafilmes.lote.threads} e {@code buscafilmes.lote.fila}).
+ * Um lote que não cabe no pool é recusado com 503 antes do envio de qualquer
+ * byte da resposta.
+ *
+ * O conteúdo de cada trecho é definido por um {@link Formato}: cartões HTML
+ * em {@code /buscar/lote} ({@link #HTML}) ou linhas NDJSON em
+ * {@code /api/filme} ({@link ApiFilme#NDJSON}).
+ */
+public class BuscaLote {
+  /**
+   * Quantidade máxima de títulos por lote.
+   */
+  static final int MAXIMO = Integer.getInteger("buscafilmes.lote.maximo", 50);
+  /**
+   * Consultas simultâneas de um mesmo lote.
+   */
+  static final int PARALELAS = Integer.getInteger("buscafilmes.lote.paralelas", 8);
+  /**
+   * Prazo, em milissegundos, para concluir todas as consultas de um lote.
+   */
+  static final long PRAZO = Long.getLong("buscafilmes.lote.prazo", 8000);
+  /**
+   * Tamanho máximo do corpo de um {@code POST}.
+   */
+  static final int MAXIMO_CORPO = 64 * 1024;
+  private static final byte[] FIM_CHUNKED = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * Threads que fazem as consultas dos lotes, compartilhadas por todas as
+   * requisições e encerradas quando ociosas, com fila limitada.
+   */
+  private static final ThreadPoolExecutor CONSULTAS = criarExecutor();
+
+  /**
+   * Indica que o pool de consultas está cheio. Nada do lote foi enviado, e ele
+   * pode ser recusado com 503.
+   */
+  static final class Lotado extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    Lotado() {
+      super("Servidor ocupado; tente novamente em instantes");
+    }
+  }
+
+  /**
+   * Títulos pedidos e tipo de sinopse de um lote.
+   */
+  record Pedido(List<String> titulos, boolean sinopseResumida) {
+  }
+
+  /**
+   * Conteúdo dos trechos de uma resposta em lote.
+   */
+  public interface Formato {
+    /**
+     * @return o tipo do conteúdo da resposta.
+     */
+    String tipo();
+
+    /**
+     * Escreve o início da resposta.
+     *
+     * @param quantidade a quantidade de títulos buscados.
+     * @param saida      o buffer de saída.
+     */
+    void inicio(int quantidade, SaidaBytes saida);
+
+    /**
+     * Escreve o resultado de um título.
+     *
+     * @param busca o título buscado.
+     * @param filme os dados do filme, ou {@code null} se a consulta falhou.
+     * @param falha o motivo da falha, quando não há filme.
+     * @param saida o buffer de saída.
+     */
+    void item(String busca, Filme filme, String falha, SaidaBytes saida);
+
+    /**
+     * Escreve o fim da resposta.
+     *
+     * @param saida o buffer de saída.
+     */
+    void fim(SaidaBytes saida);
+
+    /**
+     * Escreve o corpo de uma resposta de erro, no lugar do lote.
+     *
+     * @param mensagem a descrição do erro.
+     * @param saida    o buffer de saída.
+     */
+    void erro(String mensagem, SaidaBytes saida);
+  }
+
+  /**
+   * Página HTML com um cartão por filme.
+   */
+  public static final Formato HTML = new Formato() {
+    @Override
+    public String tipo() {
+      return Cliente.TIPO_HTML;
+    }
+
+    @Override
+    public void inicio(int quantidade, SaidaBytes saida) {
+      Site.renderizarInicioLote(quantidade, saida);
+    }
+
+    @Override
+    public void item(String busca, Filme filme, String falha, SaidaBytes saida) {
+      Site.renderizarCartao(busca, filme, falha, saida);
+    }
+
+    @Override
+    public void fim(SaidaBytes saida) {
+      Site.renderizarFimLote(saida);
+    }
+
+    @Override
+    public void erro(String mensagem, SaidaBytes saida) {
+      saida.escreverHtml(mensagem);
+    }
+  };
+
+  /**
+   * Destino dos trechos da resposta, enviados à medida que ficam prontos.
+   */
+  public interface Saida {
+    /**
+     * @param trecho bytes prontos para envio; o buffer é reaproveitado após
+     *               a chamada.
+     */
+    void enviar(SaidaBytes trecho) throws IOException;
+  }
+
+  private record Resultado(int indice, Filme filme, String falha) {
+  }
+
+  /**
+   * Consultas de um lote já entregues ao pool, cujos resultados aguardam o
+   * envio.
+   */
+  static final class Andamento {
+    private final Pedido pedido;
+    private final long limite;
+    private final BlockingQueue<Resultado> prontos = new LinkedBlockingQueue<>();
+    private final AtomicInteger proximo = new AtomicInteger();
+    private final AtomicBoolean encerrado = new AtomicBoolean();
+
+    private Andamento(Pedido pedido) {
+      this.pedido = pedido;
+      this.limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PRAZO);
+    }
+  }
+
+  /**
+   * Lê os títulos de um lote da query string e do corpo da requisição.
+   *
+   * @param path        o caminho requisitado, com a query string.
+   * @param contentType o cabeçalho {@code Content-Type} ou {@code null}.
+   * @param corpo       o corpo da requisição, já decodificado, ou vazio.
+   * @return os títulos, na ordem recebida, e o tipo de sinopse.
+   */
+  static Pedido lerPedido(String path, String contentType, String corpo) {
+    List<String> titulos = new ArrayList<>();
+    boolean sinopseResumida = lerFormulario(ParametrosConsulta.daQuery(path), titulos);
+    if (!corpo.isEmpty()) {
+      if (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("application/x-www-form-urlencoded")) {
+        String formulario = corpo.trim();
+        ParametrosConsulta parametros = ParametrosConsulta.daThread();
+        parametros.ler(formulario, 0, formulario.length());
+        sinopseResumida |= lerFormulario(parametros, titulos);
+      } else {
+        corpo.lines().filter(linha -> !linha.isBlank()).forEach(linha -> titulos.add(linha.trim()));
+      }
+    }
+    return new Pedido(titulos, sinopseResumida);
+  }
+
+  /**
+   * Acrescenta os valores de {@code t} à lista.
+   *
+   * @return {@code true} se o parâmetro {@code plot} estiver presente.
+   */
+  private static boolean lerFormulario(ParametrosConsulta parametros, List<String> titulos) {
+    for (int i = 0; i < parametros.tamanho(); i++) {
+      if (parametros.nome(i).equals("t")) {
+        String titulo = parametros.valor(i).trim();
+        if (!titulo.isEmpty()) {
+          titulos.add(titulo);
+        }
+      }
+    }
+    return parametros.contem("plot");
+  }
+
+  /**
+   * Verifica se o lote pode ser atendido.
+   *
+   * @param pedido o lote lido.
+   * @return a mensagem de erro, ou {@code null} se o lote é válido.
+   */
+  static String validar(Pedido pedido) {
+    if (pedido.titulos().isEmpty()) {
+      return "Nenhum título informado no parâmetro 't'";
+    }
+    if (pedido.titulos().size() > MAXIMO) {
+      return "Máximo de " + MAXIMO + " títulos por lote";
+    }
+    return null;
+  }
+
+  /**
+   * Escreve a resposta de um lote em um fluxo bloqueante, descarregando a
+   * saída a cada filme. Se o pool de consultas estiver cheio, escreve um 503
+   * no lugar do lote.
+   *
+   * @param out       o fluxo de saída do cliente.
+   * @param pedido    o lote, já validado.
+   * @param formato   o conteúdo da resposta.
+   * @param chunked   se a resposta usa {@code Transfer-Encoding: chunked}
+   *                  (HTTP/1.1); caso contrário o fim da resposta é o
+   *                  fechamento da conexão.
+   * @param keepAlive se a conexão continuará aberta após a resposta.
+   * @throws IOException em caso de falha na escrita.
+   */
+  static void responder(OutputStream out, Pedido pedido, Formato formato, boolean chunked, boolean keepAlive)
+      throws IOException {
+    Andamento andamento;
+    try {
+      andamento = consultar(pedido);
+    } catch (Lotado e) {
+      Metricas.registrarErro(e);
+      out.write(recusa(formato, keepAlive));
+      return;
+    }
+    out.write(cabecalho(formato, chunked, keepAlive));
+    enviar(andamento, formato, trecho -> {
+      escreverTrecho(out, trecho, chunked);
+      out.flush();
+    });
+    if (chunked) {
+      out.write(FIM_CHUNKED);
+    }
+  }
+
+  /**
+   * @param formato   o conteúdo da resposta.
+   * @param chunked   se a resposta usa {@code Transfer-Encoding: chunked}.
+   * @param keepAlive se a conexão continuará aberta após a resposta.
+   * @return o cabeçalho da resposta de um lote.
+   */
+  static byte[] cabecalho(Formato formato, boolean chunked, boolean keepAlive) {
+    return Cliente.cabecalhoResposta("200 OK", formato.tipo(), -1,
+        chunked ? "Transfer-Encoding: chunked\r\n" : "", chunked && keepAlive);
+  }
+
+  /**
+   * Escreve um trecho da resposta, com o enquadramento do chunked se for o
+   * caso.
+   *
+   * @param out     o fluxo de saída.
+   * @param trecho  os bytes do trecho.
+   * @param chunked se a resposta usa {@code Transfer-Encoding: chunked}.
+   * @throws IOException em caso de falha na escrita.
+   */
+  static void escreverTrecho(OutputStream out, SaidaBytes trecho, boolean chunked) throws IOException {
+    if (trecho.tamanho() == 0) {
+      // Um trecho vazio encerraria o chunked
+      return;
+    }
+    if (chunked) {
+      out.write((Integer.toHexString(trecho.tamanho()) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+    trecho.escreverEm(out);
+    if (chunked) {
+      out.write('\r');
+      out.write('\n');
+    }
+  }
+
+  /**
+   * @return o trecho final de uma resposta chunked.
+   */
+  static byte[] fimChunked() {
+    return FIM_CHUNKED.clone();
+  }
+
+  /**
+   * Entrega as consultas dos títulos do lote ao pool, em paralelo. Se o pool
+   * aceitar só parte dos consultores, o lote segue com menos paralelismo.
+   *
+   * @param pedido o lote, já validado.
+   * @return as consultas em andamento, a enviar com
+   *         {@link #enviar(Andamento, Formato, Saida)}.
+   * @throws Lotado se o pool não aceitar nenhum consultor.
+   */
+  static Andamento consultar(Pedido pedido) throws Lotado {
+    Andamento andamento = new Andamento(pedido);
+    List<String> titulos = pedido.titulos();
+    int total = titulos.size();
+
+    Runnable consultor = () -> {
+      int indice;
+      while (!andamento.encerrado.get() && (indice = andamento.proximo.getAndIncrement()) < total) {
+        String titulo = titulos.get(indice);
+        try {
+          Filme filme = Cliente.consultar(titulo, pedido.sinopseResumida(), LimiteOMDB.Prioridade.LOTE).filme();
+          andamento.prontos.add(new Resultado(indice, filme, null));
+        } catch (LimiteOMDB.Esgotado e) {
+          andamento.prontos.add(new Resultado(indice, null, e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+          andamento.prontos.add(new Resultado(indice, null, "Falha na consulta: " + e.getMessage()));
+        }
+      }
+    };
+    int consultores = Math.min(PARALELAS, total);
+    for (int i = 0; i < consultores; i++) {
+      try {
+        CONSULTAS.execute(consultor);
+      } catch (RejectedExecutionException e) {
+        if (i == 0) {
+          andamento.encerrado.set(true);
+          throw new Lotado();
+        }
+        break;
+      }
+    }
+    return andamento;
+  }
+
+  /**
+   * Envia à saída o início da resposta, o resultado de cada título na ordem
+   * em que as consultas terminam e o fim da resposta. Retorna quando todas
+   * as consultas terminam ou o prazo se esgota; consultas ainda em andamento
+   * continuam em segundo plano e alimentam o cache.
+   *
+   * @param andamento as consultas do lote, de {@link #consultar(Pedido)}.
+   * @param formato   o conteúdo dos trechos.
+   * @param saida     o destino dos trechos.
+   * @throws IOException em caso de falha no envio.
+   */
+  static void enviar(Andamento andamento, Formato formato, Saida saida) throws IOException {
+    List<String> titulos = andamento.pedido.titulos();
+    int total = titulos.size();
+    SaidaBytes trecho = new SaidaBytes(4096);
+    formato.inicio(total, trecho);
+    boolean[] recebidos = new boolean[total];
+    try {
+      saida.enviar(trecho);
+      for (int recebidas = 0; recebidas < total; recebidas++) {
+        long restante = andamento.limite - System.nanoTime();
+        Resultado resultado = restante > 0 ? andamento.prontos.poll(restante, TimeUnit.NANOSECONDS) : null;
+        if (resultado == null) {
+          break;
+        }
+        recebidos[resultado.indice()] = true;
+        trecho.reiniciar();
+        formato.item(titulos.get(resultado.indice()), resultado.filme(), resultado.falha(), trecho);
+        saida.enviar(trecho);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrompido aguardando o lote");
+    } finally {
+      andamento.encerrado.set(true);
+    }
+
+    trecho.reiniciar();
+    for (int i = 0; i < total; i++) {
+      if (!recebidos[i]) {
+        formato.item(titulos.get(i), null, "Tempo esgotado", trecho);
+      }
+    }
+    formato.fim(trecho);
+    saida.enviar(trecho);
+  }
+
+  /**
+   * @param formato   o conteúdo da resposta.
+   * @param keepAlive se a conexão continuará aberta após a resposta.
+   * @return a resposta completa a um lote recusado por {@link Lotado}.
+   */
+  static byte[] recusa(Formato formato, boolean keepAlive) {
+    SaidaBytes corpo = new SaidaBytes(128);
+    formato.erro(new Lotado().getMessage(), corpo);
+    byte[] cabecalho = Cliente.cabecalhoResposta("503 Service Unavailable", formato.tipo(), corpo.tamanho(),
+        "Retry-After: 1\r\n", keepAlive);
+    byte[] resposta = Arrays.copyOf(cabecalho, cabecalho.length + corpo.tamanho());
+    System.arraycopy(corpo.bytes(), 0, resposta, cabecalho.length, corpo.tamanho());
+    return resposta;
+  }
+
+  private static ThreadPoolExecutor criarExecutor() {
+    int threads = Integer.getInteger("buscafilmes.lote.threads", 64);
+    AtomicInteger contador = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(Integer.getInteger("buscafilmes.lote.fila", 256)), tarefa -> {
+          Thread thread = new Thread(tarefa, "lote-" + contador.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
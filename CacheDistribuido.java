@@ -0,0 +1,544 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code CacheDistribuido} divide as consultas à OMDb entre várias
+ * instâncias do BuscaFilmes atrás de um balanceador, para que cada título
+ * seja buscado na API por um único nó em vez de um por instância.
+ *
+ * Os nós formam um anel de hash consistente montado a partir da mesma lista
+ * estática em todos eles: cada chave de consulta (título e tipo de sinopse,
+ * como em {@link CacheFilmes#chave}) tem um nó dono, o único que a busca na
+ * OMDb e a guarda no cache e no acervo. Os demais perguntam ao dono por uma
+ * conexão TCP interna, em um protocolo binário mínimo, e guardam a resposta
+ * por pouco tempo em um cache próximo e pequeno. Se o dono não responde, ele
+ * é considerado fora do ar por uma pausa e suas chaves são buscadas
+ * localmente, como em um servidor sozinho.
+ *
+ * Protocolo, sobre conexões persistentes: o pedido é um byte de operação
+ * ({@code 1}, consulta), um booleano com o tipo de sinopse, um byte com a
+ * prioridade e o título; a resposta é um byte de situação (ok, cota esgotada
+ * ou falha) seguido do JSON ou da mensagem de erro. Os textos vão como um
+ * {@code int} com o tamanho seguido dos bytes em UTF-8, sem o limite de
+ * 64 KB de {@link DataOutput#writeUTF}.
+ *
+ * O protocolo não tem autenticação. A porta interna é aberta só no endereço
+ * do nó local como aparece na lista, e aceita só conexões vindas dos
+ * endereços dos nós da lista; mesmo assim, deve ficar em uma rede privada.
+ * Cada conexão aceita ocupa uma thread de um pool limitado, e as que não
+ * cabem são fechadas, o que leva o outro nó a buscar o título localmente.
+ * A prioridade pedida por outro nó é rebaixada até a máxima configurada,
+ * para que os pedidos internos não usem a parte da cota reservada às buscas
+ * interativas deste nó.
+ */
+public class CacheDistribuido implements Closeable {
+  /**
+   * Pontos de cada nó no anel, para dividir as chaves de maneira uniforme.
+   */
+  private static final int PONTOS_POR_NO = 128;
+  /**
+   * Tempo, em milissegundos, após o qual uma conexão ociosa com outro nó é
+   * descartada, pois ele provavelmente já a fechou.
+   */
+  private static final long MAX_OCIOSIDADE = 30_000;
+  /**
+   * Tempo, em milissegundos, que o servidor interno mantém uma conexão ociosa.
+   */
+  private static final int OCIOSIDADE_SERVIDOR = 60_000;
+  /**
+   * Conexões ociosas mantidas com cada nó.
+   */
+  private static final int MAXIMO_OCIOSAS = 16;
+  /**
+   * Tamanho máximo de um texto do protocolo, contra um nó com defeito.
+   */
+  private static final int MAXIMO_TEXTO = 1 << 20;
+
+  private static final byte CONSULTA = 1;
+  private static final byte OK = 0;
+  private static final byte ESGOTADO = 1;
+  private static final byte FALHA = 2;
+
+  /**
+   * Indica que o nó dono da chave não pôde ser consultado e que ela deve ser
+   * buscada localmente.
+   */
+  public static final class Indisponivel extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    Indisponivel(String mensagem, Throwable causa) {
+      super(mensagem, causa);
+    }
+  }
+
+  /**
+   * Um nó do grupo, identificado pelo endereço da sua porta interna.
+   */
+  public static final class No {
+    final String endereco;
+    final String host;
+    final int porta;
+    final ConcurrentLinkedDeque<Conexao> ociosas = new ConcurrentLinkedDeque<>();
+    volatile long indisponivelAte;
+
+    No(String endereco) {
+      int separador = endereco.lastIndexOf(':');
+      if (separador <= 0) {
+        throw new IllegalArgumentException("Nó sem porta: " + endereco);
+      }
+      this.endereco = endereco;
+      this.host = endereco.substring(0, separador);
+      this.porta = Integer.parseInt(endereco.substring(separador + 1));
+    }
+
+    @Override
+    public String toString() {
+      return endereco;
+    }
+  }
+
+  /**
+   * Conexão persistente com outro nó.
+   */
+  private static final class Conexao {
+    final Socket socket;
+    final DataInputStream in;
+    final DataOutputStream out;
+    long ultimoUso;
+
+    Conexao(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    void fechar() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Conexão já encerrada
+      }
+    }
+  }
+
+  /**
+   * Resposta lida de outro nó.
+   */
+  private record Resposta(byte situacao, String conteudo) {
+  }
+
+  private final No local;
+  private final List<No> nos;
+  private final TreeMap<Long, No> anel = new TreeMap<>();
+  private final CacheFilmes proximo;
+  private final int tempoConexao;
+  private final int tempoLeitura;
+  private final long pausa;
+  private final LimiteOMDB.Prioridade prioridadeMaxima;
+  private final ThreadPoolExecutor atendentes;
+  private final Set<InetAddress> permitidos = new HashSet<>();
+  private final LongAdder repassadas = new LongAdder();
+  private final LongAdder atendidas = new LongAdder();
+  private final LongAdder falhas = new LongAdder();
+  private final LongAdder recusadas = new LongAdder();
+  private volatile ServerSocket servidor;
+
+  /**
+   * @param nos                os endereços {@code host:porta} das portas
+   *                           internas de todos os nós, iguais em todos eles.
+   * @param local              o endereço deste nó, que deve estar na lista.
+   * @param capacidadeProxima  entradas do cache próximo.
+   * @param ttlProximoSegundos tempo de vida das entradas do cache próximo.
+   * @param tempoConexaoMs     tempo máximo para conectar a outro nó.
+   * @param tempoLeituraMs     tempo máximo de espera pela resposta do dono;
+   *                           deve cobrir todas as tentativas do dono à OMDb.
+   * @param pausaMs            tempo que um nó fica fora do anel após uma
+   *                           falha.
+   * @param maxConexoes        conexões de outros nós atendidas ao mesmo
+   *                           tempo.
+   * @param prioridadeMaxima   a prioridade mais alta concedida aos pedidos
+   *                           de outros nós.
+   * @throws IllegalArgumentException se a lista ou o endereço local forem
+   *                                  inválidos.
+   */
+  public CacheDistribuido(List<String> nos, String local, int capacidadeProxima, long ttlProximoSegundos,
+      int tempoConexaoMs, int tempoLeituraMs, long pausaMs, int maxConexoes,
+      LimiteOMDB.Prioridade prioridadeMaxima) {
+    List<No> lista = new ArrayList<>();
+    No esteNo = null;
+    for (String endereco : new LinkedHashSet<>(nos)) {
+      No no = new No(endereco);
+      lista.add(no);
+      if (endereco.equals(local)) {
+        esteNo = no;
+      }
+    }
+    if (esteNo == null) {
+      throw new IllegalArgumentException("O nó local " + local + " não está na lista " + nos);
+    }
+    this.local = esteNo;
+    this.nos = List.copyOf(lista);
+    for (No no : this.nos) {
+      for (int i = 0; i < PONTOS_POR_NO; i++) {
+        anel.put(hash(no.endereco + "#" + i), no);
+      }
+    }
+    this.proximo = new CacheFilmes(capacidadeProxima, ttlProximoSegundos, ttlProximoSegundos);
+    this.tempoConexao = tempoConexaoMs;
+    this.tempoLeitura = tempoLeituraMs;
+    this.pausa = pausaMs * 1_000_000L;
+    this.prioridadeMaxima = prioridadeMaxima;
+    AtomicInteger contador = new AtomicInteger();
+    // Sem fila: uma conexão sem thread livre é recusada na hora
+    this.atendentes = new ThreadPoolExecutor(maxConexoes, maxConexoes, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), tarefa -> {
+          Thread thread = new Thread(tarefa, "grupo-conexao-" + contador.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    atendentes.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Abre a porta interna, no endereço do nó local, e começa a atender as
+   * consultas dos outros nós.
+   *
+   * @throws IOException se a porta não puder ser aberta.
+   */
+  public void iniciar() throws IOException {
+    for (No no : nos) {
+      try {
+        Collections.addAll(permitidos, InetAddress.getAllByName(no.host));
+      } catch (UnknownHostException e) {
+        System.out.println("Grupo: endereço de " + no + " desconhecido; conexões dele serão recusadas");
+      }
+    }
+    servidor = new ServerSocket(local.porta, 128, InetAddress.getByName(local.host));
+    Thread aceitador = new Thread(this::aceitar, "grupo");
+    aceitador.setDaemon(true);
+    aceitador.start();
+  }
+
+  /**
+   * Encontra o nó dono de uma chave no anel.
+   *
+   * @param chave a chave da consulta.
+   * @return o nó dono, ou {@code null} se for este nó.
+   */
+  public No dono(String chave) {
+    Map.Entry<Long, No> ponto = anel.ceilingEntry(hash(chave));
+    No dono = (ponto != null ? ponto : anel.firstEntry()).getValue();
+    return dono == local ? null : dono;
+  }
+
+  /**
+   * Busca uma resposta de outro nó no cache próximo.
+   *
+   * @param chave a chave da consulta.
+   * @return a resposta guardada ou {@code null} se ausente ou expirada.
+   */
+  public RespostaFilme obterProximo(String chave) {
+    return proximo.obter(chave);
+  }
+
+  /**
+   * Busca uma resposta de outro nó no cache próximo, mesmo que expirada.
+   *
+   * @param chave a chave da consulta.
+   * @return a resposta guardada ou {@code null} se ausente.
+   */
+  public RespostaFilme obterProximoVencida(String chave) {
+    return proximo.obterVencida(chave);
+  }
+
+  /**
+   * Guarda no cache próximo uma resposta obtida de outro nó.
+   *
+   * @param chave    a chave da consulta.
+   * @param resposta a resposta recebida.
+   */
+  public void guardarProximo(String chave, RespostaFilme resposta) {
+    proximo.guardar(chave, resposta);
+  }
+
+  /**
+   * Pede ao nó dono a resposta da OMDb para um título. Uma conexão ociosa
+   * fechada pelo outro lado é trocada por uma nova sem contar como falha.
+   *
+   * @param dono            o nó dono da chave.
+   * @param titulo          o título buscado.
+   * @param sinopseResumida o tipo da sinopse.
+   * @param prioridade      a prioridade da busca na OMDb do dono.
+   * @return o JSON da OMDb.
+   * @throws Indisponivel        se o dono estiver fora do ar ou o título não
+   *                             couber no protocolo.
+   * @throws LimiteOMDB.Esgotado se o dono não tiver cota para a busca.
+   * @throws IOException         se a busca falhar no dono.
+   */
+  public String consultar(No dono, String titulo, boolean sinopseResumida, LimiteOMDB.Prioridade prioridade)
+      throws IOException {
+    if (dono.indisponivelAte - System.nanoTime() > 0) {
+      falhas.increment();
+      throw new Indisponivel("Nó " + dono + " fora do ar", null);
+    }
+    byte[] bytes = titulo.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAXIMO_TEXTO) {
+      // O dono recusaria o pedido, e o problema não é dele
+      throw new Indisponivel("Título grande demais para o nó " + dono, null);
+    }
+    repassadas.increment();
+    Resposta resposta;
+    try {
+      resposta = trocar(dono, bytes, sinopseResumida, prioridade);
+    } catch (IOException e) {
+      dono.indisponivelAte = System.nanoTime() + pausa;
+      falhas.increment();
+      throw new Indisponivel("Nó " + dono + " não respondeu: " + e.getMessage(), e);
+    }
+    return switch (resposta.situacao()) {
+      case OK -> resposta.conteudo();
+      case ESGOTADO -> throw new LimiteOMDB.Esgotado(resposta.conteudo());
+      default -> throw new IOException("Nó " + dono + ": " + resposta.conteudo());
+    };
+  }
+
+  /**
+   * @return os nós do grupo, incluindo este.
+   */
+  public List<No> getNos() {
+    return nos;
+  }
+
+  /**
+   * @return o endereço da porta interna deste nó.
+   */
+  public String getLocal() {
+    return local.endereco;
+  }
+
+  /**
+   * @return quantidade de consultas enviadas ao nó dono.
+   */
+  public long getRepassadas() {
+    return repassadas.sum();
+  }
+
+  /**
+   * @return quantidade de consultas de outros nós atendidas por este.
+   */
+  public long getAtendidas() {
+    return atendidas.sum();
+  }
+
+  /**
+   * @return quantidade de consultas cujo dono estava fora do ar.
+   */
+  public long getFalhas() {
+    return falhas.sum();
+  }
+
+  /**
+   * @return quantidade de conexões de outros nós recusadas por falta de
+   *         thread livre ou por virem de fora do grupo.
+   */
+  public long getRecusadas() {
+    return recusadas.sum();
+  }
+
+  /**
+   * @return quantidade de respostas servidas pelo cache próximo.
+   */
+  public long getAcertosProximo() {
+    return proximo.getAcertos();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (servidor != null) {
+      servidor.close();
+    }
+    atendentes.shutdownNow();
+    for (No no : nos) {
+      Conexao conexao;
+      while ((conexao = no.ociosas.pollFirst()) != null) {
+        conexao.fechar();
+      }
+    }
+  }
+
+  /**
+   * Envia o pedido por uma conexão ociosa ou nova e lê a resposta.
+   */
+  private Resposta trocar(No dono, byte[] titulo, boolean sinopseResumida, LimiteOMDB.Prioridade prioridade)
+      throws IOException {
+    while (true) {
+      Conexao conexao = ociosa(dono);
+      boolean reaproveitada = conexao != null;
+      if (!reaproveitada) {
+        conexao = conectar(dono);
+      }
+      try {
+        conexao.out.writeByte(CONSULTA);
+        conexao.out.writeBoolean(sinopseResumida);
+        conexao.out.writeByte(prioridade.ordinal());
+        conexao.out.writeInt(titulo.length);
+        conexao.out.write(titulo);
+        conexao.out.flush();
+        Resposta resposta = new Resposta(conexao.in.readByte(), ler(conexao.in));
+        conexao.ultimoUso = System.currentTimeMillis();
+        if (dono.ociosas.size() < MAXIMO_OCIOSAS) {
+          dono.ociosas.offerFirst(conexao);
+        } else {
+          conexao.fechar();
+        }
+        return resposta;
+      } catch (IOException e) {
+        conexao.fechar();
+        // Só uma conexão nova que falha indica o nó fora do ar; se o tempo de
+        // leitura esgotou, repetir só dobraria a espera
+        if (!reaproveitada || e instanceof SocketTimeoutException) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private Conexao ociosa(No no) {
+    long limite = System.currentTimeMillis() - MAX_OCIOSIDADE;
+    Conexao conexao;
+    while ((conexao = no.ociosas.pollFirst()) != null) {
+      if (conexao.ultimoUso >= limite) {
+        return conexao;
+      }
+      conexao.fechar();
+    }
+    return null;
+  }
+
+  private Conexao conectar(No no) throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(no.host, no.porta), tempoConexao);
+      socket.setSoTimeout(tempoLeitura);
+      socket.setTcpNoDelay(true);
+      return new Conexao(socket);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  private void aceitar() {
+    while (!servidor.isClosed()) {
+      Socket socket;
+      try {
+        socket = servidor.accept();
+      } catch (IOException e) {
+        return;
+      }
+      if (!permitidos.contains(socket.getInetAddress())) {
+        recusar(socket);
+        continue;
+      }
+      try {
+        atendentes.execute(() -> atender(socket));
+      } catch (RejectedExecutionException e) {
+        recusar(socket);
+      }
+    }
+  }
+
+  private void recusar(Socket socket) {
+    recusadas.increment();
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Conexão já encerrada
+    }
+  }
+
+  /**
+   * Responde, em ordem, às consultas de outro nó por uma conexão persistente.
+   * As consultas são buscadas localmente, sem repassar a outro nó, mesmo que
+   * as listas dos dois nós discordem sobre o dono.
+   */
+  private void atender(Socket socket) {
+    try (Socket s = socket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+      s.setSoTimeout(OCIOSIDADE_SERVIDOR);
+      s.setTcpNoDelay(true);
+      int operacao;
+      while ((operacao = in.read()) != -1) {
+        if (operacao != CONSULTA) {
+          throw new IOException("Operação desconhecida de " + s.getRemoteSocketAddress() + ": " + operacao);
+        }
+        boolean sinopseResumida = in.readBoolean();
+        int prioridade = in.readUnsignedByte();
+        String titulo = ler(in);
+        if (prioridade >= LimiteOMDB.Prioridade.values().length) {
+          throw new IOException("Prioridade desconhecida: " + prioridade);
+        }
+        // Ordem do enum: quanto menor, mais alta a prioridade
+        LimiteOMDB.Prioridade concedida = LimiteOMDB.Prioridade.values()[Math.max(prioridade,
+            prioridadeMaxima.ordinal())];
+        atendidas.increment();
+        try {
+          RespostaFilme resposta = Cliente.consultarLocal(titulo, sinopseResumida, concedida);
+          escrever(out, OK, resposta.json());
+        } catch (LimiteOMDB.Esgotado e) {
+          escrever(out, ESGOTADO, e.getMessage());
+        } catch (IOException e) {
+          escrever(out, FALHA, String.valueOf(e.getMessage()));
+        }
+        out.flush();
+      }
+    } catch (SocketTimeoutException | EOFException e) {
+      // Conexão ociosa ou encerrada pelo outro nó
+    } catch (IOException e) {
+      Metricas.registrarErro(e);
+    }
+  }
+
+  private static void escrever(DataOutputStream out, byte situacao, String conteudo) throws IOException {
+    byte[] bytes = conteudo.getBytes(StandardCharsets.UTF_8);
+    out.writeByte(situacao);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String ler(DataInputStream in) throws IOException {
+    int tamanho = in.readInt();
+    if (tamanho < 0 || tamanho > MAXIMO_TEXTO) {
+      throw new IOException("Texto de tamanho inválido: " + tamanho);
+    }
+    byte[] bytes = new byte[tamanho];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Posição no anel: os primeiros 8 bytes do MD5, iguais em todas as JVMs.
+   */
+  private static long hash(String texto) {
+    MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] resumo = md5.digest(texto.getBytes(StandardCharsets.UTF_8));
+    long valor = 0;
+    for (int i = 0; i < 8; i++) {
+      valor = (valor << 8) | (resumo[i] & 0xff);
+    }
+    return valor;
+  }
+}
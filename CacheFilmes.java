@@ -0,0 +1,219 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code CacheFilmes} guarda em memória as respostas da OMDb, já
+ * lidas, evitando consultas repetidas à API para os mesmos títulos.
+ *
+ * As entradas são indexadas pelo título normalizado e pelo tipo de sinopse,
+ * expiram após um tempo de vida e, quando a capacidade é atingida, as menos
+ * usadas recentemente são descartadas (LRU). Respostas "Movie not found!"
+ * também são guardadas, com tempo de vida menor. Uma entrada expirada não é
+ * mais servida por {@link #obter(String)}, mas continua disponível em
+ * {@link #obterVencida(String)} até ser substituída ou descartada.
+ *
+ * Para reduzir a disputa entre threads, o cache é dividido em segmentos
+ * independentes, cada um com sua própria trava e lista LRU.
+ */
+public class CacheFilmes {
+  /**
+   * Quantidade de segmentos do cache.
+   */
+  private static final int SEGMENTOS = 16;
+
+  /**
+   * Entrada do cache: a resposta e o instante (em nanossegundos) em que
+   * expira.
+   */
+  private static final class Entrada {
+    final RespostaFilme resposta;
+    final long expiraEm;
+
+    Entrada(RespostaFilme resposta, long expiraEm) {
+      this.resposta = resposta;
+      this.expiraEm = expiraEm;
+    }
+  }
+
+  private final List<Map<String, Entrada>> segmentos;
+  private final long ttl;
+  private final long ttlNegativo;
+  private final LongAdder acertos = new LongAdder();
+  private final LongAdder falhas = new LongAdder();
+  private final LongAdder remocoes = new LongAdder();
+
+  /**
+   * Cria um cache vazio.
+   *
+   * @param capacidade         quantidade máxima de entradas.
+   * @param ttlSegundos        tempo de vida das respostas encontradas.
+   * @param ttlNegativoSegundos tempo de vida das respostas "Movie not found!".
+   */
+  public CacheFilmes(int capacidade, long ttlSegundos, long ttlNegativoSegundos) {
+    this.ttl = ttlSegundos * 1_000_000_000L;
+    this.ttlNegativo = ttlNegativoSegundos * 1_000_000_000L;
+    int capacidadeSegmento = Math.max(1, capacidade / SEGMENTOS);
+    List<Map<String, Entrada>> segmentos = new ArrayList<>(SEGMENTOS);
+    for (int i = 0; i < SEGMENTOS; i++) {
+      segmentos.add(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> maisAntiga) {
+          if (size() > capacidadeSegmento) {
+            remocoes.increment();
+            return true;
+          }
+          return false;
+        }
+      });
+    }
+    this.segmentos = List.copyOf(segmentos);
+  }
+
+  /**
+   * Monta a chave do cache a partir do título e do tipo de sinopse. Títulos
+   * que diferem apenas em maiúsculas ou espaços compartilham a mesma chave.
+   *
+   * @param titulo          o título buscado.
+   * @param sinopseResumida se a sinopse é a resumida.
+   * @return a chave normalizada.
+   */
+  public static String chave(String titulo, boolean sinopseResumida) {
+    String normalizado = titulo.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    return (sinopseResumida ? "short|" : "full|") + normalizado;
+  }
+
+  /**
+   * Busca uma resposta no cache.
+   *
+   * @param chave a chave montada por {@link #chave(String, boolean)}.
+   * @return a resposta guardada ou {@code null} se ausente ou expirada.
+   */
+  public RespostaFilme obter(String chave) {
+    Map<String, Entrada> segmento = segmento(chave);
+    synchronized (segmento) {
+      Entrada entrada = segmento.get(chave);
+      if (entrada != null && entrada.expiraEm - System.nanoTime() > 0) {
+        acertos.increment();
+        return entrada.resposta;
+      }
+    }
+    falhas.increment();
+    return null;
+  }
+
+  /**
+   * Busca uma resposta mesmo que já tenha expirado, para quando a OMDb não
+   * pode ser consultada. As entradas expiradas continuam guardadas até serem
+   * substituídas ou descartadas pela ordem LRU.
+   *
+   * @param chave a chave montada por {@link #chave(String, boolean)}.
+   * @return a resposta guardada, talvez vencida, ou {@code null} se ausente.
+   */
+  public RespostaFilme obterVencida(String chave) {
+    Map<String, Entrada> segmento = segmento(chave);
+    synchronized (segmento) {
+      Entrada entrada = segmento.get(chave);
+      return entrada == null ? null : entrada.resposta;
+    }
+  }
+
+  /**
+   * Informa quanto falta para uma entrada expirar, sem contar como acerto ou
+   * falha. A entrada conta como usada na ordem LRU.
+   *
+   * @param chave a chave montada por {@link #chave(String, boolean)}.
+   * @return o tempo restante em nanossegundos, ou {@code -1} se ausente ou
+   *         expirada.
+   */
+  public long restante(String chave) {
+    Map<String, Entrada> segmento = segmento(chave);
+    synchronized (segmento) {
+      Entrada entrada = segmento.get(chave);
+      long restante = entrada == null ? -1 : entrada.expiraEm - System.nanoTime();
+      return restante > 0 ? restante : -1;
+    }
+  }
+
+  /**
+   * Guarda uma resposta da OMDb no cache. Apenas filmes encontrados e
+   * respostas "Movie not found!" são guardados; outros erros da API (como
+   * limite de requisições) não.
+   *
+   * @param chave    a chave montada por {@link #chave(String, boolean)}.
+   * @param resposta a resposta da API.
+   */
+  public void guardar(String chave, RespostaFilme resposta) {
+    guardar(chave, resposta, 0);
+  }
+
+  /**
+   * Guarda uma resposta obtida da OMDb há algum tempo (por exemplo, lida do
+   * acervo em disco), descontando a idade do tempo de vida. Uma resposta mais
+   * velha que o tempo de vida é guardada já expirada: não é servida por
+   * {@link #obter(String)}, mas fica disponível em
+   * {@link #obterVencida(String)}.
+   *
+   * @param chave      a chave montada por {@link #chave(String, boolean)}.
+   * @param resposta   a resposta da API.
+   * @param idadeNanos há quanto tempo a resposta foi obtida, em
+   *                   nanossegundos.
+   * @return {@code true} se a resposta foi guardada e ainda não expirou.
+   */
+  public boolean guardar(String chave, RespostaFilme resposta, long idadeNanos) {
+    Filme filme = resposta.filme();
+    long vida;
+    if (filme.encontrado()) {
+      vida = ttl;
+    } else if (filme.erro().equals("Movie not found!")) {
+      vida = ttlNegativo;
+    } else {
+      return false;
+    }
+    long idade = Math.min(Math.max(0, idadeNanos), vida + 1);
+    Map<String, Entrada> segmento = segmento(chave);
+    synchronized (segmento) {
+      segmento.put(chave, new Entrada(resposta, System.nanoTime() + vida - idade));
+    }
+    return idade < vida;
+  }
+
+  /**
+   * @return quantidade de consultas atendidas pelo cache.
+   */
+  public long getAcertos() {
+    return acertos.sum();
+  }
+
+  /**
+   * @return quantidade de consultas que não estavam no cache.
+   */
+  public long getFalhas() {
+    return falhas.sum();
+  }
+
+  /**
+   * @return quantidade de entradas descartadas por falta de espaço.
+   */
+  public long getRemocoes() {
+    return remocoes.sum();
+  }
+
+  /**
+   * @return quantidade de entradas guardadas, incluindo as já expiradas que
+   *         ainda não foram removidas.
+   */
+  public int getTamanho() {
+    int tamanho = 0;
+    for (Map<String, Entrada> segmento : segmentos) {
+      synchronized (segmento) {
+        tamanho += segmento.size();
+      }
+    }
+    return tamanho;
+  }
+
+  private Map<String, Entrada> segmento(String chave) {
+    int h = chave.hashCode();
+    return segmentos.get((h ^ (h >>> 16)) & (SEGMENTOS - 1));
+  }
+}
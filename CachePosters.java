@@ -0,0 +1,352 @@
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code CachePosters} guarda em disco as imagens dos posters, para
+ * que o navegador as receba do próprio servidor em {@code /poster/{imdbID}}
+ * em vez de buscá-las na CDN da OMDb a cada página.
+ *
+ * O endereço de cada poster vem das respostas da OMDb já obtidas, registradas
+ * por {@link #registrar(Filme)}. Cada imagem é baixada uma única vez, mesmo
+ * com pedidos simultâneos, e gravada em um arquivo {@code <imdbID>.<ext>} no
+ * diretório do cache. Quando o total passa da capacidade, as imagens menos
+ * usadas recentemente são apagadas (LRU); ao abrir o cache, a data de
+ * modificação dos arquivos define a ordem inicial.
+ *
+ * As imagens são enviadas direto do arquivo para o socket (ver
+ * {@link Roteador.Resposta#arquivo}), sem passar por buffers da JVM no
+ * {@link ServidorNIO}.
+ */
+public class CachePosters {
+  /**
+   * Tamanho máximo de uma imagem baixada.
+   */
+  private static final long MAXIMO_IMAGEM = 5 << 20;
+
+  /**
+   * Uma imagem guardada.
+   *
+   * @param arquivo o arquivo da imagem.
+   * @param tamanho o tamanho em bytes.
+   * @param tipo    o tipo do conteúdo.
+   * @param etag    a ETag, entre aspas.
+   */
+  public record Poster(Path arquivo, long tamanho, String tipo, String etag) {
+  }
+
+  private final Path diretorio;
+  private final long capacidade;
+  private final Duration tempo;
+  private final HttpClient http;
+  private final Map<String, String> enderecos = new ConcurrentHashMap<>();
+  private final LinkedHashMap<String, Poster> guardados = new LinkedHashMap<>(16, 0.75f, true);
+  private final ConsultasEmAndamento<String> downloads;
+  private long ocupado;
+  private final LongAdder acertos = new LongAdder();
+  private final LongAdder baixados = new LongAdder();
+  private final LongAdder remocoes = new LongAdder();
+
+  private CachePosters(Path diretorio, long capacidade, int tempoMs) {
+    this.diretorio = diretorio;
+    this.capacidade = capacidade;
+    this.tempo = Duration.ofMillis(tempoMs);
+    this.http = HttpClient.newBuilder()
+        .connectTimeout(tempo)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+    this.downloads = new ConsultasEmAndamento<>(tempoMs * 2L);
+  }
+
+  /**
+   * Abre o cache no diretório informado, criando-o se necessário, e carrega
+   * as imagens já guardadas.
+   *
+   * @param diretorio  o diretório das imagens.
+   * @param capacidade o total máximo de bytes em disco.
+   * @param tempoMs    tempo máximo para conectar e para baixar uma imagem.
+   * @return o cache aberto.
+   * @throws IOException em caso de falha ao ler o diretório.
+   */
+  public static CachePosters abrir(Path diretorio, long capacidade, int tempoMs) throws IOException {
+    Files.createDirectories(diretorio);
+    CachePosters cache = new CachePosters(diretorio, capacidade, tempoMs);
+    List<Path> arquivos = new ArrayList<>();
+    try (DirectoryStream<Path> lista = Files.newDirectoryStream(diretorio)) {
+      for (Path arquivo : lista) {
+        if (arquivo.getFileName().toString().endsWith(".tmp")) {
+          // Download interrompido
+          Files.deleteIfExists(arquivo);
+        } else if (tipo(arquivo) != null) {
+          arquivos.add(arquivo);
+        }
+      }
+    }
+    arquivos.sort(Comparator.comparing(arquivo -> arquivo.toFile().lastModified()));
+    synchronized (cache) {
+      for (Path arquivo : arquivos) {
+        cache.adicionar(arquivo);
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Registra o endereço do poster de um filme, se houver.
+   *
+   * @param filme os dados do filme.
+   */
+  public void registrar(Filme filme) {
+    String poster = filme.poster();
+    if (filme.encontrado() && valido(filme.imdbID()) && poster != null
+        && (poster.startsWith("https://") || poster.startsWith("http://"))) {
+      enderecos.put(filme.imdbID(), poster);
+    }
+  }
+
+  /**
+   * @param imdbID o identificador do filme.
+   * @return {@code true} se o poster do filme pode ser servido.
+   */
+  public boolean conhece(String imdbID) {
+    return imdbID != null && enderecos.containsKey(imdbID);
+  }
+
+  /**
+   * Busca o poster de um filme, baixando-o se ainda não estiver no disco.
+   *
+   * @param imdbID o identificador do filme.
+   * @return o poster guardado, ou {@code null} se o filme não tem poster
+   *         conhecido.
+   * @throws IOException em caso de falha ao baixar ou gravar a imagem.
+   */
+  public Poster obter(String imdbID) throws IOException {
+    if (!valido(imdbID) || !enderecos.containsKey(imdbID)) {
+      return null;
+    }
+    synchronized (this) {
+      Poster poster = guardados.get(imdbID);
+      if (poster != null) {
+        acertos.increment();
+        return poster;
+      }
+    }
+    downloads.executar(imdbID, () -> baixar(imdbID));
+    synchronized (this) {
+      return guardados.get(imdbID);
+    }
+  }
+
+  /**
+   * Abre o arquivo de um poster para leitura. A imagem pode ter sido apagada
+   * desde {@link #obter(String)}; um arquivo já aberto continua legível mesmo
+   * se apagado.
+   *
+   * @param poster o poster guardado.
+   * @return o canal aberto, que deve ser fechado por quem o recebe.
+   * @throws IOException se o arquivo não existir mais.
+   */
+  public synchronized FileChannel abrirArquivo(Poster poster) throws IOException {
+    return FileChannel.open(poster.arquivo(), StandardOpenOption.READ);
+  }
+
+  /**
+   * @return quantidade de posters servidos do disco.
+   */
+  public long getAcertos() {
+    return acertos.sum();
+  }
+
+  /**
+   * @return quantidade de posters baixados da origem.
+   */
+  public long getBaixados() {
+    return baixados.sum();
+  }
+
+  /**
+   * @return quantidade de posters apagados por falta de espaço.
+   */
+  public long getRemocoes() {
+    return remocoes.sum();
+  }
+
+  /**
+   * @return total de bytes dos posters em disco.
+   */
+  public synchronized long getOcupado() {
+    return ocupado;
+  }
+
+  /**
+   * Baixa a imagem para um arquivo temporário e só então a publica com o nome
+   * definitivo, para que uma falha no meio nunca deixe uma imagem truncada.
+   * O download inteiro, do pedido ao último byte, tem o prazo de
+   * {@code tempo}.
+   *
+   * @return o nome do arquivo gravado.
+   */
+  private String baixar(String imdbID) throws IOException {
+    long limite = System.nanoTime() + tempo.toNanos();
+    HttpRequest pedido = HttpRequest.newBuilder(URI.create(enderecos.get(imdbID))).timeout(tempo).GET().build();
+    HttpResponse<InputStream> resposta;
+    try {
+      resposta = http.send(pedido, HttpResponse.BodyHandlers.ofInputStream());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Download do poster interrompido");
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Endereço de poster inválido", e);
+    }
+    Path temporario = diretorio.resolve(imdbID + ".tmp");
+    // O timeout do pedido só vale até o cabeçalho: o corpo é fechado ao fim
+    // do prazo, o que destrava uma leitura parada
+    InputStream corpo = resposta.body();
+    AtomicBoolean esgotado = new AtomicBoolean();
+    CompletableFuture.delayedExecutor(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS).execute(() -> {
+      esgotado.set(true);
+      try {
+        corpo.close();
+      } catch (IOException e) {
+        // Já fechado
+      }
+    });
+    try (corpo) {
+      String extensao = extensao(resposta.headers().firstValue("Content-Type").orElse(""));
+      if (resposta.statusCode() != 200 || extensao == null) {
+        throw new IOException("Origem do poster respondeu " + resposta.statusCode());
+      }
+      try (OutputStream arquivo = Files.newOutputStream(temporario)) {
+        byte[] buffer = new byte[16 * 1024];
+        long total = 0;
+        int lidos;
+        while ((lidos = ler(corpo, buffer, esgotado)) != -1) {
+          total += lidos;
+          if (total > MAXIMO_IMAGEM) {
+            throw new IOException("Poster maior que " + MAXIMO_IMAGEM + " bytes");
+          }
+          arquivo.write(buffer, 0, lidos);
+        }
+      }
+      if (esgotado.get()) {
+        throw prazoEsgotado();
+      }
+      Path definitivo = diretorio.resolve(imdbID + extensao);
+      synchronized (this) {
+        Files.move(temporario, definitivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        adicionar(definitivo);
+      }
+      baixados.increment();
+      return definitivo.getFileName().toString();
+    } finally {
+      Files.deleteIfExists(temporario);
+    }
+  }
+
+  /**
+   * Lê do corpo até o fim do prazo; o fechamento pelo prazo pode aparecer
+   * como fim do corpo ou como erro de leitura.
+   *
+   * @return bytes lidos, ou {@code -1} no fim do corpo.
+   * @throws HttpTimeoutException se o prazo acabou.
+   */
+  private int ler(InputStream corpo, byte[] buffer, AtomicBoolean esgotado) throws IOException {
+    if (esgotado.get()) {
+      throw prazoEsgotado();
+    }
+    try {
+      return corpo.read(buffer);
+    } catch (IOException e) {
+      if (esgotado.get()) {
+        throw prazoEsgotado();
+      }
+      throw e;
+    }
+  }
+
+  private HttpTimeoutException prazoEsgotado() {
+    return new HttpTimeoutException("Download do poster passou de " + tempo.toMillis() + " ms");
+  }
+
+  /**
+   * Inclui um arquivo já gravado e apaga os menos usados até caber na
+   * capacidade. Chamado com a trava do objeto.
+   */
+  private void adicionar(Path arquivo) throws IOException {
+    String nome = arquivo.getFileName().toString();
+    String imdbID = nome.substring(0, nome.lastIndexOf('.'));
+    long tamanho = Files.size(arquivo);
+    String etag = "\"" + imdbID + "-" + Long.toHexString(tamanho) + "-"
+        + Long.toHexString(Files.getLastModifiedTime(arquivo).toMillis()) + "\"";
+    Poster anterior = guardados.put(imdbID, new Poster(arquivo, tamanho, tipo(arquivo), etag));
+    if (anterior != null) {
+      ocupado -= anterior.tamanho();
+      if (!anterior.arquivo().equals(arquivo)) {
+        // A mesma imagem com outra extensão: a antiga não seria mais contada
+        Files.deleteIfExists(anterior.arquivo());
+      }
+    }
+    ocupado += tamanho;
+    Iterator<Poster> menosUsados = guardados.values().iterator();
+    while (ocupado > capacidade && menosUsados.hasNext()) {
+      Poster poster = menosUsados.next();
+      if (poster.arquivo().equals(arquivo)) {
+        continue;
+      }
+      menosUsados.remove();
+      ocupado -= poster.tamanho();
+      remocoes.increment();
+      Files.deleteIfExists(poster.arquivo());
+    }
+  }
+
+  /**
+   * Aceita só identificadores do IMDb, que também são nomes de arquivo
+   * seguros.
+   */
+  private static boolean valido(String imdbID) {
+    if (imdbID == null || imdbID.length() < 3 || imdbID.length() > 12 || !imdbID.startsWith("tt")) {
+      return false;
+    }
+    for (int i = 2; i < imdbID.length(); i++) {
+      if (imdbID.charAt(i) < '0' || imdbID.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String extensao(String tipo) {
+    int fim = tipo.indexOf(';');
+    return switch ((fim < 0 ? tipo : tipo.substring(0, fim)).trim().toLowerCase(Locale.ROOT)) {
+      case "image/jpeg" -> ".jpg";
+      case "image/png" -> ".png";
+      case "image/webp" -> ".webp";
+      case "image/gif" -> ".gif";
+      default -> null;
+    };
+  }
+
+  private static String tipo(Path arquivo) {
+    String nome = arquivo.getFileName().toString();
+    return switch (nome.substring(nome.lastIndexOf('.') + 1)) {
+      case "jpg" -> "image/jpeg";
+      case "png" -> "image/png";
+      case "webp" -> "image/webp";
+      case "gif" -> "image/gif";
+      default -> null;
+    };
+  }
+}
@@ -1,31 +1,172 @@
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class Cliente {
+  /**
+   * Parâmetros de uma busca: o título e se a sinopse é a resumida.
+   */
+  record Busca(String titulo, boolean sinopseResumida) {
+  }
+
   /**
    * Chave da API da OMDb (máximo de 1000 requisições por dia)
    */
   private static final String OMDB_API_KEY = "da70d648";
+  /**
+   * Tempo, em segundos, que uma conexão persistente pode ficar ociosa
+   * aguardando a próxima requisição.
+   */
+  static final int TEMPO_OCIOSO = Integer.getInteger("buscafilmes.ociosidade", 5);
+  /**
+   * Quantidade máxima de requisições atendidas por conexão antes de fechá-la.
+   */
+  static final int MAX_REQUISICOES = Integer.getInteger("buscafilmes.maxRequisicoes", 100);
+  /**
+   * Conexões em atendimento por {@link #handleClient}, indicando se estão
+   * ociosas entre requisições, para que o desligamento as encerre. A troca
+   * de ociosa para ocupada e o encerramento pelo desligamento são atômicos:
+   * uma conexão cuja requisição começou a ser lida nunca é fechada como
+   * ociosa.
+   */
+  private static final Map<Socket, Boolean> CONEXOES = new ConcurrentHashMap<>();
+  /**
+   * Indica que o servidor está desligando: cada conexão responde à requisição
+   * em andamento com {@code Connection: close} e não lê outras.
+   */
+  private static volatile boolean desligando;
+  /**
+   * Cache das respostas da OMDb, compartilhado por todas as conexões.
+   */
+  static final CacheFilmes CACHE = new CacheFilmes(
+      Integer.getInteger("buscafilmes.cache.capacidade", 4096),
+      Long.getLong("buscafilmes.cache.ttl", 86400),
+      Long.getLong("buscafilmes.cache.ttlNegativo", 600));
+  /**
+   * Consultas à OMDb em andamento, para que buscas simultâneas pelo mesmo
+   * título compartilhem uma única requisição.
+   */
+  static final ConsultasEmAndamento<RespostaFilme> EM_ANDAMENTO = new ConsultasEmAndamento<>(
+      Long.getLong("buscafilmes.espera", 10000));
+  /**
+   * Títulos de todos os filmes já obtidos, para sugestões e correção de
+   * erros de digitação.
+   */
+  static final IndiceTitulos TITULOS = new IndiceTitulos(Integer.getInteger("buscafilmes.sugestoes", 10));
+  /**
+   * Conexões persistentes com a OMDb.
+   */
+  static final ClienteOMDB OMDB = new ClienteOMDB(
+      System.getProperty("buscafilmes.omdb.host", "www.omdbapi.com"),
+      Integer.getInteger("buscafilmes.omdb.porta", 80),
+      Integer.getInteger("buscafilmes.omdb.conexoes", 8),
+      Integer.getInteger("buscafilmes.omdb.tempoConexao", 2000),
+      Integer.getInteger("buscafilmes.omdb.tempoLeitura", 5000),
+      Integer.getInteger("buscafilmes.omdb.tentativas", 3));
+  /**
+   * Ritmo e cota diária das requisições à OMDb, com as chaves da API em
+   * rodízio.
+   */
+  static final LimiteOMDB LIMITE = new LimiteOMDB(
+      System.getProperty("buscafilmes.omdb.chaves", OMDB_API_KEY).split("\\s*,\\s*"),
+      Integer.getInteger("buscafilmes.omdb.cota", 1000),
+      Integer.getInteger("buscafilmes.omdb.taxa", 10),
+      Integer.getInteger("buscafilmes.omdb.rajada", 20),
+      Long.getLong("buscafilmes.omdb.fila", 500));
+  /**
+   * Acervo em disco das respostas da OMDb, ou {@code null} se desativado.
+   */
+  static final AcervoDisco ACERVO = abrirAcervo();
+  /**
+   * Cache em disco das imagens dos posters, ou {@code null} se desativado.
+   */
+  static final CachePosters POSTERS = abrirPosters();
+  /**
+   * Grupo de instâncias que dividem as consultas à OMDb, ou {@code null} se
+   * o servidor atende sozinho. Declarado depois de {@link #OMDB} e
+   * {@link #LIMITE}, cujos tempos usa.
+   */
+  static final CacheDistribuido GRUPO = abrirGrupo();
+  /**
+   * Aquecimento do cache em segundo plano, iniciado pelo servidor.
+   */
+  static final AquecedorCache AQUECEDOR = new AquecedorCache(
+      System.getProperty("buscafilmes.aquecimento.arquivo", ""),
+      Integer.getInteger("buscafilmes.aquecimento.orcamento", 200),
+      Integer.getInteger("buscafilmes.aquecimento.populares", 100),
+      Long.getLong("buscafilmes.aquecimento.intervalo", 2000),
+      Long.getLong("buscafilmes.aquecimento.antecedencia", 3600),
+      Integer.getInteger("buscafilmes.aquecimento.reserva", 4));
+  /**
+   * Tipo de conteúdo das páginas HTML.
+   */
+  static final String TIPO_HTML = "text/html; charset=UTF-8";
+
+  /**
+   * Monta o cabeçalho de uma resposta.
+   *
+   * @param status      o código e a descrição do status (ex.: "200 OK").
+   * @param contentType o tipo do conteúdo, ou {@code null} se não houver corpo.
+   * @param tamanho     o tamanho do corpo em bytes, ou negativo para omitir o
+   *                    {@code Content-Length}.
+   * @param extras      cabeçalhos adicionais, cada um terminado em CRLF.
+   * @param keepAlive   se a conexão continuará aberta após a resposta.
+   * @return o cabeçalho em bytes, incluindo a linha em branco final.
+   */
+  static byte[] cabecalhoResposta(String status, String contentType, long tamanho, String extras,
+      boolean keepAlive) {
+    StringBuilder cabecalho = new StringBuilder(256);
+    cabecalho.append("HTTP/1.1 ").append(status).append("\r\n");
+    if (contentType != null) {
+      cabecalho.append("Content-Type: ").append(contentType).append("\r\n");
+    }
+    if (tamanho >= 0) {
+      cabecalho.append("Content-Length: ").append(tamanho).append("\r\n");
+    }
+    cabecalho.append(extras);
+    if (keepAlive) {
+      cabecalho.append("Connection: keep-alive\r\n");
+      cabecalho.append("Keep-Alive: timeout=").append(TEMPO_OCIOSO).append(", max=").append(MAX_REQUISICOES)
+          .append("\r\n");
+    } else {
+      cabecalho.append("Connection: close\r\n");
+    }
+    cabecalho.append("\r\n");
+    return cabecalho.toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Lê os parâmetros da query string de uma busca.
+   *
+   * @param path o caminho requisitado, com a query string.
+   * @return o título decodificado ({@code null} se ausente) e o tipo de
+   *         sinopse.
+   */
+  static Busca lerBusca(String path) {
+    ParametrosConsulta parametros = ParametrosConsulta.daQuery(path);
+    return new Busca(parametros.obter("t"), parametros.contem("plot"));
+  }
 
   /**
-   * Envia uma resposta HTTP simples com cabeçalhos e conteúdo
+   * Lê um parâmetro da query string.
    *
-   * @param writer      o {@link PrintWriter} para enviar dados do cliente.
-   * @param contentType o tipo do conteúdo (ex.: "text/html").
-   * @param content     o conteúdo da resposta.
+   * @param path o caminho requisitado, com a query string.
+   * @param nome o nome do parâmetro.
+   * @return o valor decodificado, ou {@code null} se ausente.
    */
-  public static void sendHttpResponse(PrintWriter writer, String contentType, String content) {
-    writer.print("HTTP/1.1 200 OK\r\n");
-    writer.print("Content-Type: " + contentType + "\r\n");
-    writer.print("Connection: close\r\n");
-    writer.print("\r\n");
-    writer.print(content);
-    writer.flush();
+  static String lerParametro(String path, String nome) {
+    return ParametrosConsulta.daQuery(path).obter(nome);
   }
 
   /**
    * Consulta a OMDb API com base no título do filme e se deve mostrar a sinópse
-   * resumida ou não.
+   * resumida ou não, com a prioridade de uma busca interativa.
    *
    * @param titulo          o título do filme a ser buscado.
    * @param sinopseResumida o {@code Boolean} que verifica o tipo da sinópse.
@@ -33,117 +174,624 @@ public class Cliente {
    * @throws IOException em caso de falha na comunicação com a API.
    */
   public static String consultOMDBAPI(String titulo, boolean sinopseResumida) throws IOException {
-    Socket socket = new Socket("www.omdbapi.com", 80);
-    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-    String path;
+    return consultar(titulo, sinopseResumida, LimiteOMDB.Prioridade.INTERATIVA).json();
+  }
 
-    if (sinopseResumida) {
-      path = "/?apikey=" + OMDB_API_KEY + "&t=" + URLEncoder.encode(titulo, "UTF-8");
-    } else {
-      path = "/?apikey=" + OMDB_API_KEY + "&t=" + URLEncoder.encode(titulo, "UTF-8") + "&plot=full";
+  /**
+   * Consulta a OMDb API com base no título do filme e se deve mostrar a sinópse
+   * resumida ou não. Em um {@link #GRUPO}, os títulos de outro nó são pedidos
+   * a ele; os deste nó seguem {@link #consultarLocal}.
+   *
+   * @param titulo          o título do filme a ser buscado.
+   * @param sinopseResumida o {@code Boolean} que verifica o tipo da sinópse.
+   * @param prioridade      a prioridade da requisição à OMDb.
+   * @return a resposta da API, com o JSON já lido.
+   * @throws LimiteOMDB.Esgotado se não houver cota nem resposta vencida.
+   * @throws IOException         em caso de falha na comunicação com a API.
+   */
+  public static RespostaFilme consultar(String titulo, boolean sinopseResumida, LimiteOMDB.Prioridade prioridade)
+      throws IOException {
+    if (GRUPO != null) {
+      String chave = CacheFilmes.chave(titulo, sinopseResumida);
+      CacheDistribuido.No dono = GRUPO.dono(chave);
+      if (dono != null) {
+        return consultarDono(dono, chave, titulo, sinopseResumida, prioridade);
+      }
     }
+    return consultarLocal(titulo, sinopseResumida, prioridade);
+  }
 
-    out.write("GET " + path + " HTTP/1.1\r\n");
-    out.write("Host: www.omdbapi.com\r\n");
-    out.write("Connection: close\r\n");
-    out.write("\r\n");
-    out.flush();
+  /**
+   * Consulta a OMDb API neste nó. Respostas já conhecidas são servidas pelo
+   * {@link #CACHE} ou pelo {@link #ACERVO} sem acessar a API, e buscas
+   * simultâneas pelo mesmo título aguardam uma única requisição. Se o
+   * {@link #LIMITE} não permitir a requisição, uma resposta vencida ainda no
+   * cache é servida. Também atende as consultas recebidas de outros nós do
+   * {@link #GRUPO}.
+   *
+   * @param titulo          o título do filme a ser buscado.
+   * @param sinopseResumida o tipo da sinopse.
+   * @param prioridade      a prioridade da requisição à OMDb.
+   * @return a resposta da API, com o JSON já lido.
+   * @throws LimiteOMDB.Esgotado se não houver cota nem resposta vencida.
+   * @throws IOException         em caso de falha na comunicação com a API.
+   */
+  static RespostaFilme consultarLocal(String titulo, boolean sinopseResumida, LimiteOMDB.Prioridade prioridade)
+      throws IOException {
+    String chave = CacheFilmes.chave(titulo, sinopseResumida);
+    AQUECEDOR.registrarProcura(chave, titulo, sinopseResumida);
+    RespostaFilme resposta = CACHE.obter(chave);
+    if (resposta != null) {
+      return resposta;
+    }
+    // Do acervo, só uma resposta ainda dentro do tempo de vida é servida; uma
+    // mais velha fica no cache como vencida, para quando a OMDb faltar
+    AcervoDisco.Registro registro = lerAcervo(chave);
+    if (registro != null) {
+      resposta = RespostaFilme.ler(registro.json());
+      if (CACHE.guardar(chave, resposta, TimeUnit.MILLISECONDS.toNanos(registro.idade()))) {
+        return resposta;
+      }
+    }
+    return EM_ANDAMENTO.executar(chave, () -> {
+      // Outra thread pode ter concluído a mesma consulta desde a verificação acima
+      RespostaFilme atual = CACHE.obter(chave);
+      if (atual == null) {
+        try {
+          atual = requisitarOMDBAPI(titulo, sinopseResumida, prioridade, -1);
+        } catch (LimiteOMDB.Esgotado e) {
+          RespostaFilme vencida = CACHE.obterVencida(chave);
+          if (vencida == null) {
+            throw e;
+          }
+          Metricas.registrarRespostaVencida();
+          return vencida;
+        }
+        guardarResposta(chave, atual);
+      }
+      return atual;
+    });
+  }
 
-    StringBuilder response = new StringBuilder();
-    String line;
-    boolean jsonStarted = false;
-    while ((line = in.readLine()) != null) {
-      if (jsonStarted) {
-        response.append(line).append("\n");
+  /**
+   * Pede a resposta ao nó dono do título, guardando-a no cache próximo do
+   * {@link #GRUPO}. Buscas simultâneas pelo mesmo título fazem um único
+   * pedido, e com o dono fora do ar o título é buscado neste nó.
+   *
+   * @param dono  o nó dono da chave.
+   * @param chave a chave da consulta.
+   * @return a resposta da API, com o JSON já lido.
+   * @throws LimiteOMDB.Esgotado se o dono não tiver cota nem houver resposta
+   *                             vencida.
+   * @throws IOException         em caso de falha na busca.
+   */
+  private static RespostaFilme consultarDono(CacheDistribuido.No dono, String chave, String titulo,
+      boolean sinopseResumida, LimiteOMDB.Prioridade prioridade) throws IOException {
+    RespostaFilme resposta = GRUPO.obterProximo(chave);
+    if (resposta != null) {
+      return resposta;
+    }
+    // Prefixo próprio: com o dono fora do ar, a busca local agrupa-se pela
+    // chave simples sem esperar por si mesma
+    return EM_ANDAMENTO.executar("grupo|" + chave, () -> {
+      RespostaFilme atual;
+      try {
+        atual = RespostaFilme.ler(GRUPO.consultar(dono, titulo, sinopseResumida, prioridade));
+      } catch (CacheDistribuido.Indisponivel e) {
+        return consultarLocal(titulo, sinopseResumida, prioridade);
+      } catch (LimiteOMDB.Esgotado e) {
+        RespostaFilme vencida = GRUPO.obterProximoVencida(chave);
+        if (vencida == null) {
+          throw e;
+        }
+        Metricas.registrarRespostaVencida();
+        return vencida;
       }
-      if (line.isEmpty()) {
-        jsonStarted = true;
+      GRUPO.guardarProximo(chave, atual);
+      if (atual.filme().encontrado()) {
+        indexar(atual.filme());
       }
+      return atual;
+    });
+  }
+
+  /**
+   * Indica se os títulos da chave são buscados na OMDb por este nó, e não
+   * por outro do {@link #GRUPO}.
+   *
+   * @param chave a chave da consulta.
+   * @return {@code true} se este nó é o dono da chave.
+   */
+  static boolean ehDono(String chave) {
+    return GRUPO == null || GRUPO.dono(chave) == null;
+  }
+
+  /**
+   * Busca o título na OMDb mesmo que já esteja no cache, para renová-lo antes
+   * de expirar, e guarda a resposta como {@link #consultOMDBAPI} faria. Usada
+   * pelo {@link #AQUECEDOR}: só ocupa uma conexão com a OMDb se houver outras
+   * livres para as buscas dos usuários.
+   *
+   * @param titulo          o título do filme a ser buscado.
+   * @param sinopseResumida o tipo da sinopse.
+   * @param reserva         conexões com a OMDb que devem continuar livres.
+   * @return a resposta obtida, ou {@code null} se uma busca de usuário pelo
+   *         mesmo título já está em andamento e vai guardá-la.
+   * @throws ClienteOMDB.Ocupado se não houver conexão livre além da reserva.
+   * @throws LimiteOMDB.Esgotado se o aquecimento não tiver cota ou ficha.
+   * @throws IOException         em caso de falha na comunicação com a API.
+   */
+  static RespostaFilme renovarOMDBAPI(String titulo, boolean sinopseResumida, int reserva) throws IOException {
+    String chave = CacheFilmes.chave(titulo, sinopseResumida);
+    if (EM_ANDAMENTO.emAndamento(chave)) {
+      return null;
+    }
+    RespostaFilme resposta = requisitarOMDBAPI(titulo, sinopseResumida, LimiteOMDB.Prioridade.AQUECIMENTO, reserva);
+    guardarResposta(chave, resposta);
+    return resposta;
+  }
+
+  /**
+   * Copia para o cache uma resposta guardada no acervo em disco, com o tempo
+   * de vida que ainda lhe resta.
+   *
+   * @param chave a chave da consulta.
+   * @return {@code true} se a resposta estava no acervo e ainda não expirou.
+   */
+  static boolean carregarDoAcervo(String chave) {
+    AcervoDisco.Registro registro = lerAcervo(chave);
+    if (registro == null) {
+      return false;
     }
+    RespostaFilme resposta = RespostaFilme.ler(registro.json());
+    indexar(resposta.filme());
+    return CACHE.guardar(chave, resposta, TimeUnit.MILLISECONDS.toNanos(registro.idade()));
+  }
 
-    socket.close();
-    return response.toString();
+  /**
+   * Guarda uma resposta da OMDb no cache e, se o filme foi encontrado, no
+   * acervo, no índice de títulos e no cache de posters.
+   *
+   * @param chave    a chave da consulta.
+   * @param resposta a resposta da API.
+   */
+  private static void guardarResposta(String chave, RespostaFilme resposta) {
+    CACHE.guardar(chave, resposta);
+    if (resposta.filme().encontrado()) {
+      guardarAcervo(chave, resposta.json());
+      indexar(resposta.filme());
+    }
   }
 
   /**
-   * Extrai valor de campo específico de um JSON em string.
+   * Torna um filme conhecido pelas sugestões e pelo cache de posters.
    *
-   * @param json  o JSON como {@code String}.
-   * @param campo o nome do campo a ser extraído.
-   * @return valor correspondente ou "N/A" se não encontrado.
+   * @param filme os dados do filme.
    */
-  public static String extractFieldJSON(String json, String campo) {
-    String busca = "\"" + campo + "\":\"";
-    int idx = json.indexOf(busca);
-    if (idx == -1)
-      return "N/A";
-    int start = idx + busca.length();
-    int end = json.indexOf("\"", start);
-    if (end == -1)
-      return "N/A";
-    return json.substring(start, end);
+  private static void indexar(Filme filme) {
+    TITULOS.adicionar(filme);
+    if (POSTERS != null) {
+      POSTERS.registrar(filme);
+    }
   }
 
   /**
-   * Lida com a requisição de um cliente individual.
-   * Interpreta os dados da requisição HTTP e envia a resposta correspondente.
+   * Abre o acervo no diretório de {@code buscafilmes.acervo}. Um valor vazio
+   * desativa o acervo, assim como uma falha ao abri-lo.
    *
-   * @param client o socket do cliente conectado.
+   * @return o acervo aberto ou {@code null}.
    */
-  public static void handleClient(Socket client) {
-    try (
-        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-        OutputStream out = client.getOutputStream();
-        PrintWriter writer = new PrintWriter(out, true);) {
-      String line = in.readLine();
-      if (line == null || line.isEmpty()) {
-        client.close();
-        return;
+  private static AcervoDisco abrirAcervo() {
+    String diretorio = System.getProperty("buscafilmes.acervo", "acervo");
+    if (diretorio.isEmpty()) {
+      return null;
+    }
+    try {
+      AcervoDisco acervo = AcervoDisco.abrir(Paths.get(diretorio));
+      System.out.println("Acervo carregado com " + acervo.getTamanho() + " respostas de " + diretorio);
+      indexarAcervo(acervo);
+      return acervo;
+    } catch (IOException e) {
+      System.out.println("Acervo indisponível, seguindo só com o cache em memória: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Abre o cache de posters no diretório de {@code buscafilmes.posters}, com
+   * até {@code buscafilmes.posters.capacidade} megabytes. Um valor vazio
+   * desativa o cache, assim como uma falha ao abri-lo; as páginas então
+   * apontam direto para a imagem na origem.
+   *
+   * @return o cache aberto ou {@code null}.
+   */
+  private static CachePosters abrirPosters() {
+    String diretorio = System.getProperty("buscafilmes.posters", "posters");
+    if (diretorio.isEmpty()) {
+      return null;
+    }
+    try {
+      return CachePosters.abrir(Paths.get(diretorio),
+          Long.getLong("buscafilmes.posters.capacidade", 256) << 20,
+          Integer.getInteger("buscafilmes.posters.tempo", 5000));
+    } catch (IOException e) {
+      System.out.println("Cache de posters indisponível, usando as imagens da origem: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Monta o {@link #GRUPO} a partir da lista estática de
+   * {@code buscafilmes.grupo.nos}, com este nó em
+   * {@code buscafilmes.grupo.local}. Uma lista vazia mantém o servidor
+   * sozinho, assim como uma configuração inválida.
+   *
+   * @return o grupo configurado ou {@code null}.
+   */
+  private static CacheDistribuido abrirGrupo() {
+    String nos = System.getProperty("buscafilmes.grupo.nos", "").trim();
+    if (nos.isEmpty()) {
+      return null;
+    }
+    // O dono pode levar todas as tentativas à OMDb para responder; esperar
+    // menos o daria por fora do ar e o título seria buscado aqui também
+    int tempoLeitura = (int) Math.min(Integer.MAX_VALUE, OMDB.getTempoMaximo(LIMITE.getEspera()) + 1000);
+    try {
+      return new CacheDistribuido(Arrays.asList(nos.split("\\s*,\\s*")),
+          System.getProperty("buscafilmes.grupo.local", ""),
+          Integer.getInteger("buscafilmes.grupo.proximo.capacidade", 512),
+          Long.getLong("buscafilmes.grupo.proximo.ttl", 60),
+          Integer.getInteger("buscafilmes.grupo.tempoConexao", 500),
+          Integer.getInteger("buscafilmes.grupo.tempoLeitura", tempoLeitura),
+          Long.getLong("buscafilmes.grupo.pausa", 5000),
+          Integer.getInteger("buscafilmes.grupo.conexoes", 64),
+          LimiteOMDB.Prioridade.valueOf(
+              System.getProperty("buscafilmes.grupo.prioridadeMaxima", "LOTE").trim().toUpperCase(Locale.ROOT)));
+    } catch (IllegalArgumentException e) {
+      System.out.println("Grupo desativado, atendendo sozinho: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Indexa em segundo plano os títulos do acervo, para que as sugestões
+   * incluam os filmes consultados antes de reiniciar o servidor.
+   *
+   * @param acervo o acervo aberto.
+   */
+  private static void indexarAcervo(AcervoDisco acervo) {
+    Thread indexador = new Thread(() -> {
+      try {
+        acervo.percorrer(json -> indexar(LeitorJSON.lerFilme(json)));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }, "indice-titulos");
+    indexador.setDaemon(true);
+    indexador.start();
+  }
+
+  /**
+   * Busca uma resposta no acervo em disco, tratando falhas de leitura como
+   * ausência.
+   *
+   * @param chave a chave da consulta.
+   * @return a resposta guardada ou {@code null}.
+   */
+  private static AcervoDisco.Registro lerAcervo(String chave) {
+    if (ACERVO == null) {
+      return null;
+    }
+    try {
+      return ACERVO.obter(chave);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Guarda no acervo em disco a resposta de um filme encontrado.
+   *
+   * @param chave a chave da consulta.
+   * @param json  o JSON retornado pela API.
+   */
+  private static void guardarAcervo(String chave, String json) {
+    if (ACERVO == null) {
+      return;
+    }
+    try {
+      ACERVO.guardar(chave, json);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Começa o desligamento: as conexões ociosas são fechadas e as demais
+   * terminam depois de responder à requisição em andamento.
+   */
+  public static void iniciarDesligamento() {
+    desligando = true;
+    CONEXOES.forEach((socket, ociosa) -> {
+      if (ociosa && CONEXOES.remove(socket, true)) {
+        fechar(socket);
+      }
+    });
+  }
+
+  /**
+   * Fecha as conexões que não terminaram dentro do tempo de drenagem,
+   * interrompendo leituras e escritas bloqueadas nelas.
+   */
+  public static void fecharConexoes() {
+    CONEXOES.keySet().forEach(Cliente::fechar);
+  }
+
+  private static void fechar(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Conexão já encerrada
+    }
+  }
+
+  /**
+   * Libera os recursos compartilhados entre as conexões. Deve ser chamado no
+   * desligamento, depois que as requisições em andamento terminarem.
+   */
+  public static void encerrar() {
+    AQUECEDOR.close();
+    OMDB.close();
+    if (GRUPO != null) {
+      try {
+        GRUPO.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    if (ACERVO != null) {
+      try {
+        ACERVO.close();
+      } catch (IOException e) {
+        e.printStackTrace();
       }
+    }
+  }
 
-      String[] requestParts = line.split(" ");
-      String method = requestParts[0];
-      String path = requestParts[1];
+  /**
+   * Faz a requisição à OMDb API, sem passar pelo cache, com uma das chaves
+   * liberadas pelo {@link #LIMITE}. Cada tentativa do {@link #OMDB} faz sua
+   * própria reserva, pois cada uma conta na cota e no ritmo da API.
+   *
+   * @param titulo          o título do filme a ser buscado.
+   * @param sinopseResumida o {@code Boolean} que verifica o tipo da sinópse.
+   * @param prioridade      a prioridade da requisição no {@link #LIMITE}.
+   * @param reserva         conexões com a OMDb que devem continuar livres, em
+   *                        uma requisição de segundo plano; negativo para
+   *                        aguardar uma conexão, como nas buscas dos usuários.
+   * @return a resposta da API, com o JSON lido enquanto era recebido.
+   * @throws LimiteOMDB.Esgotado se não houver cota ou ficha para a requisição.
+   * @throws IOException         em caso de falha na comunicação com a API.
+   */
+  private static RespostaFilme requisitarOMDBAPI(String titulo, boolean sinopseResumida,
+      LimiteOMDB.Prioridade prioridade, int reserva) throws IOException {
+    String consulta = "&t=" + URLEncoder.encode(titulo, "UTF-8") + (sinopseResumida ? "" : "&plot=full");
+    // Cada tentativa é uma nova requisição à OMDb e reserva sua própria vez,
+    // já com a conexão garantida; a que não chega a ser enviada é devolvida
+    String[] apiKey = new String[1];
+    ClienteOMDB.Caminho caminho = new ClienteOMDB.Caminho() {
+      @Override
+      public String montar() throws IOException {
+        apiKey[0] = LIMITE.reservar(prioridade);
+        return "/?apikey=" + apiKey[0] + consulta;
+      }
 
-      // Lê as demais linhas do header até linha vazia
-      while (!(line = in.readLine()).isEmpty()) {
+      @Override
+      public void cancelar() {
+        LIMITE.devolver(apiKey[0]);
       }
+    };
+
+    long inicio = System.nanoTime();
+    ClienteOMDB.Resposta resposta;
+    try {
+      resposta = reserva < 0 ? OMDB.get(caminho) : OMDB.getSeLivre(caminho, reserva);
+    } catch (ClienteOMDB.Ocupado | LimiteOMDB.Esgotado e) {
+      // Nada foi enviado à OMDb
+      throw e;
+    } catch (IOException e) {
+      Metricas.OMDB.registrar(System.nanoTime() - inicio);
+      Metricas.registrarFalhaOmdb();
+      throw e;
+    }
+    Metricas.OMDB.registrar(System.nanoTime() - inicio);
+    Metricas.registrarStatusOmdb(resposta.status());
+    if (resposta.status() == 401 && resposta.corpo().contains("limit")) {
+      // "Request limit reached!": a OMDb contou mais do que o limite local
+      LIMITE.esgotar(apiKey[0]);
+      throw new LimiteOMDB.Esgotado("Limite diário de consultas à OMDb atingido; tente mais tarde");
+    }
+    // Erros 4xx da OMDb (como chave inválida) também vêm como JSON
+    if (resposta.status() != 200 && !resposta.corpo().startsWith("{")) {
+      throw new IOException("OMDb respondeu " + resposta.status());
+    }
+    return new RespostaFilme(resposta.corpo(), resposta.filme());
+  }
 
-      if (method.equals("GET") && path.equals("/")) {
-        // Página inicial com formulário de busca
-        sendHttpResponse(writer, "text/html", Site.getHtmlForm());
-      } else if (method.equals("GET") && path.startsWith("/buscar")) {
-        String query = path.substring(path.indexOf('?') + 1);
-        String titulo = null;
-        boolean sinopseResumida = false;
-        for (String param : query.split("&")) {
-          String[] keyVal = param.split("=");
-          if (keyVal.length == 2 && keyVal[0].equals("t")) {
-            titulo = URLDecoder.decode(keyVal[1], "UTF-8");
+  /**
+   * Lida com as requisições de um cliente individual.
+   * A conexão é mantida aberta (HTTP/1.1 keep-alive) e as requisições são
+   * atendidas em sequência, na ordem em que chegam, até o cliente pedir
+   * {@code Connection: close}, ficar ocioso por mais de
+   * {@code buscafilmes.ociosidade} segundos ou atingir
+   * {@code buscafilmes.maxRequisicoes} requisições. Requisições enviadas em
+   * pipeline têm as respostas acumuladas e descarregadas de uma só vez.
+   * O cabeçalho é lido por {@link RequisicaoHttp}: uma requisição inválida,
+   * grande demais ou que não chega inteira em
+   * {@code buscafilmes.tempoRequisicao} milissegundos é recusada e a conexão
+   * é fechada. Depois de {@link #iniciarDesligamento()}, a requisição em
+   * andamento é a última da conexão.
+   *
+   * @param client o socket do cliente conectado.
+   */
+  public static void handleClient(Socket client) {
+    Metricas.conexaoAberta();
+    try (
+        Socket socket = client;
+        InputStream in = client.getInputStream();
+        OutputStream out = new BufferedOutputStream(client.getOutputStream());) {
+      // Bytes recebidos e ainda não atendidos, sempre a partir do início
+      byte[] entrada = new byte[RequisicaoHttp.MAXIMO_CABECALHO];
+      int recebidos = 0;
+      RequisicaoHttp requisicao = new RequisicaoHttp();
+      int atendidas = 0;
+
+      conexao: while (true) {
+        if (recebidos == 0) {
+          // Marcada antes de verificar o desligamento: ou ele a encontra
+          // ociosa e a fecha, ou ela encerra aqui
+          CONEXOES.put(socket, true);
+          if (desligando) {
+            break;
+          }
+        }
+        // O prazo da requisição conta a partir do seu primeiro byte
+        long inicio = System.nanoTime();
+        long prazo = recebidos > 0 ? System.currentTimeMillis() + RequisicaoHttp.TEMPO_REQUISICAO : 0;
+        RequisicaoHttp.Estado estado;
+        while ((estado = requisicao.analisar(entrada, recebidos)) == RequisicaoHttp.Estado.INCOMPLETA) {
+          int lidos;
+          try {
+            lidos = lerComPrazo(socket, in, entrada, recebidos, entrada.length - recebidos, prazo);
+          } catch (SocketTimeoutException e) {
+            // Ociosa entre requisições fecha em silêncio; no meio de uma, 408
+            if (prazo != 0) {
+              out.write(RequisicaoHttp.resposta("408 Request Timeout"));
+            }
+            break conexao;
+          }
+          if (lidos < 0) {
+            break conexao;
           }
-          if (keyVal[0].equals("plot")) {
-            sinopseResumida = true;
+          if (prazo == 0) {
+            // Ocupada desde o primeiro byte, a menos que o desligamento já
+            // a tenha fechado como ociosa
+            if (!CONEXOES.replace(socket, true, false)) {
+              break conexao;
+            }
+            inicio = System.nanoTime();
+            prazo = System.currentTimeMillis() + RequisicaoHttp.TEMPO_REQUISICAO;
           }
+          recebidos += lidos;
+        }
+        if (estado == RequisicaoHttp.Estado.INVALIDA) {
+          out.write(RequisicaoHttp.resposta(requisicao.getErro()));
+          break;
         }
 
-        if (titulo == null || titulo.isEmpty()) {
-          sendHttpResponse(writer, "text/html", "<h1>Parâmetro 't' (título) não informado</h1>");
-          client.close();
-          return;
+        String method = requisicao.getMethod();
+        String path = requisicao.getPath();
+        String version = requisicao.getVersion();
+        boolean keepAlive = requisicao.isKeepAlive();
+        String ifNoneMatch = requisicao.getIfNoneMatch();
+        String acceptEncoding = requisicao.getAcceptEncoding();
+        String contentType = requisicao.getContentType();
+        if (requisicao.getContentLength() > BuscaLote.MAXIMO_CORPO) {
+          out.write(RequisicaoHttp.resposta("413 Content Too Large"));
+          break;
         }
+        int fimCabecalho = requisicao.getFimCabecalho();
+        byte[] corpoBytes = new byte[(int) requisicao.getContentLength()];
+        int lido = Math.min(recebidos - fimCabecalho, corpoBytes.length);
+        System.arraycopy(entrada, fimCabecalho, corpoBytes, 0, lido);
+        while (lido < corpoBytes.length) {
+          int n;
+          try {
+            n = lerComPrazo(socket, in, corpoBytes, lido, corpoBytes.length - lido, prazo);
+          } catch (SocketTimeoutException e) {
+            out.write(RequisicaoHttp.resposta("408 Request Timeout"));
+            break conexao;
+          }
+          if (n < 0) {
+            throw new EOFException("Corpo da requisição incompleto");
+          }
+          lido += n;
+        }
+        String corpoRequisicao = new String(corpoBytes, StandardCharsets.UTF_8);
+        // O que sobra no buffer já é de requisições seguintes, em pipeline
+        int consumidos = Math.min(recebidos, fimCabecalho + corpoBytes.length);
+        System.arraycopy(entrada, consumidos, entrada, 0, recebidos - consumidos);
+        recebidos -= consumidos;
+        requisicao.reiniciar();
+        if (++atendidas >= MAX_REQUISICOES || desligando) {
+          keepAlive = false;
+        }
+        Metricas.LEITURA.registrar(System.nanoTime() - inicio);
 
-        String json = consultOMDBAPI(titulo, sinopseResumida);
-        String html = Site.HTMLResponseForm(json);
-        sendHttpResponse(writer, "text/html; charset=UTF-8", html);
-      } else {
-        sendHttpResponse(writer, "text/html", "<h1>404 Not Found</h1>");
-      }
+        Roteador.Rota rota = Roteador.encontrar(method, path);
+        Roteador.Requisicao pedido = new Roteador.Requisicao(method, path, version, keepAlive, ifNoneMatch,
+            acceptEncoding, contentType, corpoRequisicao);
+        Roteador.Atendimento atendimento = rota.preparar(pedido);
+        long escrita;
+        if (atendimento.lote() != null) {
+          // O envio do lote se mistura às consultas e não entra na fase de escrita
+          escrita = -1;
+          // Sem chunked (HTTP/1.0), o fim da resposta é o fechamento da conexão
+          boolean chunked = version.equals("HTTP/1.1");
+          keepAlive &= chunked;
+          BuscaLote.responder(out, atendimento.lote(), atendimento.formato(), chunked, keepAlive);
+        } else {
+          Roteador.Resposta resposta = Roteador.atender(atendimento, pedido);
+          // O desligamento pode ter começado durante a consulta
+          keepAlive &= !desligando;
+          escrita = System.nanoTime();
+          resposta.escreverEm(out, keepAlive);
+        }
+        // Só descarrega quando não há outra requisição em pipeline já recebida
+        if (!keepAlive || (recebidos == 0 && in.available() == 0)) {
+          out.flush();
+        }
+        long fim = System.nanoTime();
+        if (escrita >= 0) {
+          Metricas.ESCRITA.registrar(fim - escrita);
+        }
+        Metricas.registrarRequisicao(rota.indice(), fim - inicio);
 
-      client.close();
+        if (!keepAlive) {
+          break;
+        }
+      }
+      out.flush();
 
     } catch (Exception e) {
-      e.printStackTrace();
+      // Conexão fechada pelo desligamento não é um erro
+      if (!desligando || !client.isClosed()) {
+        Metricas.registrarErro(e);
+        e.printStackTrace();
+      }
+    } finally {
+      CONEXOES.remove(client);
+      Metricas.conexaoFechada();
+    }
+  }
+
+  /**
+   * Lê do cliente aguardando, no máximo, até o prazo da requisição em
+   * andamento ou, entre requisições, o tempo de ociosidade.
+   *
+   * @param prazo o instante limite em milissegundos, ou {@code 0} entre
+   *              requisições.
+   * @return a quantidade de bytes lidos, ou {@code -1} no fim da conexão.
+   * @throws SocketTimeoutException se nada chegar a tempo.
+   */
+  private static int lerComPrazo(Socket socket, InputStream in, byte[] destino, int inicio, int tamanho, long prazo)
+      throws IOException {
+    long espera = prazo == 0 ? TEMPO_OCIOSO * 1000L : prazo - System.currentTimeMillis();
+    if (espera <= 0) {
+      throw new SocketTimeoutException("Prazo da requisição esgotado");
     }
+    socket.setSoTimeout((int) espera);
+    return in.read(destino, inicio, tamanho);
   }
 }
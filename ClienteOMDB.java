@@ -0,0 +1,581 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A classe {@code ClienteOMDB} faz requisições HTTP/1.1 à OMDb reaproveitando
+ * um conjunto limitado de conexões persistentes.
+ *
+ * As respostas são delimitadas por {@code Content-Length} ou
+ * {@code Transfer-Encoding: chunked}, o que permite manter a conexão aberta
+ * para a próxima requisição. Conexões e leituras têm tempo máximo, falhas são
+ * repetidas com espera exponencial aleatória e, após várias falhas seguidas,
+ * o circuito é aberto: as requisições falham imediatamente por um tempo, sem
+ * ocupar threads esperando um servidor fora do ar.
+ *
+ * O JSON do corpo é lido pelo {@link LeitorJSON} à medida que os bytes chegam
+ * do socket, sem montar o corpo inteiro antes da leitura.
+ */
+public class ClienteOMDB implements Closeable {
+  /**
+   * Tempo, em milissegundos, após o qual uma conexão ociosa é descartada em vez
+   * de reaproveitada, pois o servidor provavelmente já a fechou.
+   */
+  private static final long MAX_OCIOSIDADE = 30_000;
+  /**
+   * Falhas seguidas que abrem o circuito.
+   */
+  private static final int FALHAS_PARA_ABRIR = 5;
+  /**
+   * Tempo, em milissegundos, que o circuito fica aberto.
+   */
+  private static final long TEMPO_ABERTO = 10_000;
+  /**
+   * Tamanho máximo, em bytes, da linha de status, de cada linha do cabeçalho
+   * e das linhas de tamanho dos chunks.
+   */
+  private static final int MAXIMO_LINHA = 8192;
+  /**
+   * Quantidade máxima de linhas no cabeçalho de uma resposta.
+   */
+  private static final int MAXIMO_CAMPOS = 100;
+  /**
+   * Tamanho máximo, em bytes, do corpo de uma resposta, qualquer que seja a
+   * delimitação.
+   */
+  private static final int MAXIMO_CORPO = 1 << 20;
+
+  /**
+   * Resposta de uma requisição.
+   *
+   * @param status o código de status HTTP.
+   * @param corpo  o corpo da resposta, decodificado como UTF-8.
+   * @param filme  o filme lido do corpo enquanto era recebido; os campos
+   *               ficam como {@code "N/A"} se o corpo não for JSON.
+   */
+  public record Resposta(int status, String corpo, Filme filme) {
+  }
+
+  /**
+   * Conexão persistente com o servidor.
+   */
+  private static final class Conexao {
+    final Socket socket;
+    final InputStream in;
+    final OutputStream out;
+    long ultimoUso;
+
+    Conexao(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new BufferedInputStream(socket.getInputStream());
+      this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    void fechar() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Conexão já encerrada
+      }
+    }
+  }
+
+  private final String host;
+  private final int porta;
+  private final String cabecalhoHost;
+  private final int tempoConexao;
+  private final int tempoLeitura;
+  private final int tentativas;
+  private final Semaphore vagas;
+  private final ConcurrentLinkedDeque<Conexao> ociosas = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger falhasSeguidas = new AtomicInteger();
+  private final AtomicBoolean testando = new AtomicBoolean();
+  private volatile long abertoAte;
+
+  /**
+   * @param host           o servidor da API.
+   * @param porta          a porta do servidor.
+   * @param maxConexoes    quantidade máxima de conexões simultâneas.
+   * @param tempoConexaoMs tempo máximo para estabelecer uma conexão.
+   * @param tempoLeituraMs tempo máximo de espera por dados da resposta.
+   * @param tentativas     quantidade de tentativas por requisição.
+   */
+  public ClienteOMDB(String host, int porta, int maxConexoes, int tempoConexaoMs, int tempoLeituraMs,
+      int tentativas) {
+    this.host = host;
+    this.porta = porta;
+    this.cabecalhoHost = porta == 80 ? host : host + ":" + porta;
+    this.tempoConexao = tempoConexaoMs;
+    this.tempoLeitura = tempoLeituraMs;
+    this.tentativas = Math.max(1, tentativas);
+    this.vagas = new Semaphore(maxConexoes, true);
+  }
+
+  /**
+   * Monta o caminho de cada tentativa de uma requisição.
+   */
+  @FunctionalInterface
+  public interface Caminho {
+    /**
+     * Chamado antes de cada tentativa, que pode ser uma nova requisição à
+     * API e deve então ser contada no limite de uso. Só é chamado com uma
+     * conexão livre já garantida para a tentativa.
+     *
+     * @return o caminho com a query string.
+     * @throws IOException se a tentativa não puder ser feita; a requisição
+     *                     falha com este erro, sem novas tentativas.
+     */
+    String montar() throws IOException;
+
+    /**
+     * Chamado quando a tentativa do último {@link #montar()} falha antes de
+     * enviar qualquer byte ao servidor, como ao não conseguir conectar.
+     */
+    default void cancelar() {
+    }
+  }
+
+  /**
+   * Faz uma requisição GET, repetindo em caso de falha de rede ou erro 5xx.
+   *
+   * @param caminho monta o caminho com a query string de cada tentativa.
+   * @return a resposta do servidor.
+   * @throws IOException se todas as tentativas falharem, o circuito estiver
+   *                     aberto ou {@link Caminho#montar()} falhar.
+   */
+  public Resposta get(Caminho caminho) throws IOException {
+    boolean teste = liberarCircuito();
+    IOException ultimoErro = null;
+    try {
+      for (int tentativa = 0; tentativa < tentativas; tentativa++) {
+        if (tentativa > 0) {
+          aguardar(tentativa);
+        }
+        if (!obterVaga()) {
+          ultimoErro = new SocketTimeoutException("Nenhuma conexão livre com " + host);
+          continue;
+        }
+        try {
+          String atual = caminho.montar();
+          try {
+            Resposta resposta = enviarComVaga(caminho, atual);
+            if (resposta.status() < 500) {
+              falhasSeguidas.set(0);
+              abertoAte = 0;
+              return resposta;
+            }
+            ultimoErro = new IOException("OMDb respondeu " + resposta.status());
+          } catch (IOException e) {
+            ultimoErro = e;
+          }
+        } finally {
+          vagas.release();
+        }
+      }
+      if (falhasSeguidas.incrementAndGet() >= FALHAS_PARA_ABRIR || teste) {
+        abertoAte = System.currentTimeMillis() + TEMPO_ABERTO;
+      }
+      throw ultimoErro;
+    } finally {
+      if (teste) {
+        testando.set(false);
+      }
+    }
+  }
+
+  /**
+   * Faz uma requisição GET de baixa prioridade, em uma única tentativa e só se
+   * houver conexões livres além da reserva, para não disputar vagas com as
+   * buscas dos usuários.
+   *
+   * @param caminho monta o caminho com a query string, só depois de obtida a
+   *                vaga.
+   * @param reserva quantidade de vagas que devem continuar livres.
+   * @return a resposta do servidor.
+   * @throws Ocupado     se não houver vaga livre além da reserva ou o
+   *                     circuito não estiver fechado; nada foi enviado e
+   *                     {@link Caminho#montar()} não foi chamado.
+   * @throws IOException se a requisição falhar.
+   */
+  public Resposta getSeLivre(Caminho caminho, int reserva) throws IOException {
+    if (abertoAte != 0) {
+      throw new Ocupado("Circuito aberto: OMDb indisponível");
+    }
+    if (vagas.availablePermits() <= reserva || !vagas.tryAcquire()) {
+      throw new Ocupado("Nenhuma conexão livre além da reserva com " + host);
+    }
+    try {
+      return enviarComVaga(caminho, caminho.montar());
+    } finally {
+      vagas.release();
+    }
+  }
+
+  /**
+   * @return quantidade de conexões livres no momento.
+   */
+  public int getVagasLivres() {
+    return vagas.availablePermits();
+  }
+
+  /**
+   * Calcula quanto uma requisição de {@link #get(Caminho)} pode levar no pior
+   * caso: em cada tentativa, a espera por uma conexão livre, a conexão, a
+   * leitura e a espera antes da tentativa, mais as pausas entre elas.
+   *
+   * @param esperaPorTentativaMs espera adicional antes de cada tentativa,
+   *                             como a vez no limite de requisições.
+   * @return o tempo máximo em milissegundos.
+   */
+  public long getTempoMaximo(long esperaPorTentativaMs) {
+    long total = 0;
+    for (int tentativa = 0; tentativa < tentativas; tentativa++) {
+      total += 2L * tempoConexao + tempoLeitura + esperaPorTentativaMs;
+      if (tentativa > 0) {
+        total += 100L << Math.min(tentativa, 6);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Indica que uma requisição de baixa prioridade não foi feita por falta de
+   * conexão livre.
+   */
+  public static final class Ocupado extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    Ocupado(String mensagem) {
+      super(mensagem);
+    }
+
+    Ocupado(String mensagem, Throwable causa) {
+      super(mensagem, causa);
+    }
+  }
+
+  /**
+   * Verifica o circuito. Com o circuito aberto as requisições falham; vencido o
+   * tempo, uma única requisição de teste é liberada.
+   *
+   * @return {@code true} se esta é a requisição de teste.
+   * @throws IOException se o circuito estiver aberto.
+   */
+  private boolean liberarCircuito() throws IOException {
+    long ate = abertoAte;
+    if (ate == 0) {
+      return false;
+    }
+    if (System.currentTimeMillis() >= ate && testando.compareAndSet(false, true)) {
+      return true;
+    }
+    throw new IOException("Circuito aberto: OMDb indisponível");
+  }
+
+  /**
+   * Espera exponencial com variação aleatória completa entre as tentativas.
+   */
+  private static void aguardar(int tentativa) throws InterruptedIOException {
+    long limite = 100L << Math.min(tentativa, 6);
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(limite / 2, limite + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrompido entre tentativas");
+    }
+  }
+
+  /**
+   * Aguarda uma conexão livre por até o tempo de conexão.
+   *
+   * @return {@code true} se a vaga foi obtida e deve ser liberada depois.
+   */
+  private boolean obterVaga() throws InterruptedIOException {
+    try {
+      return vagas.tryAcquire(tempoConexao, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrompido aguardando conexão");
+    }
+  }
+
+  /**
+   * Envia a requisição por uma conexão ociosa ou nova; a vaga já deve ter
+   * sido obtida. Se uma conexão reaproveitada falhar antes de receber
+   * qualquer byte (o servidor a fechou por ociosidade), a requisição é
+   * refeita em uma conexão nova. Se nem a conexão nova for aberta, a
+   * tentativa é cancelada no {@link Caminho}.
+   */
+  private Resposta enviarComVaga(Caminho caminho, String atual) throws IOException {
+    Conexao conexao = obterOciosa();
+    if (conexao != null) {
+      try {
+        return enviar(conexao, atual);
+      } catch (ConexaoEncerrada e) {
+        conexao.fechar();
+      }
+    }
+    Conexao nova;
+    try {
+      nova = conectar();
+    } catch (IOException e) {
+      caminho.cancelar();
+      throw e;
+    }
+    return enviar(nova, atual);
+  }
+
+  private Conexao obterOciosa() {
+    Conexao conexao;
+    while ((conexao = ociosas.pollFirst()) != null) {
+      if (System.currentTimeMillis() - conexao.ultimoUso < MAX_OCIOSIDADE && !conexao.socket.isClosed()) {
+        return conexao;
+      }
+      conexao.fechar();
+    }
+    return null;
+  }
+
+  private Conexao conectar() throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(host, porta), tempoConexao);
+      socket.setSoTimeout(tempoLeitura);
+      socket.setTcpNoDelay(true);
+      return new Conexao(socket);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Indica que a conexão foi fechada pelo servidor antes da resposta.
+   */
+  private static final class ConexaoEncerrada extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    ConexaoEncerrada() {
+      super("Conexão encerrada pelo servidor");
+    }
+  }
+
+  /**
+   * Envia a requisição e lê a resposta, devolvendo a conexão ao conjunto de
+   * ociosas se ela puder ser reaproveitada.
+   */
+  private Resposta enviar(Conexao conexao, String caminho) throws IOException {
+    boolean reaproveitar = false;
+    try {
+      String request = "GET " + caminho + " HTTP/1.1\r\n" +
+          "Host: " + cabecalhoHost + "\r\n" +
+          "Accept: application/json\r\n" +
+          "\r\n";
+      String statusLine;
+      try {
+        conexao.out.write(request.getBytes(StandardCharsets.US_ASCII));
+        conexao.out.flush();
+        statusLine = lerLinha(conexao.in);
+      } catch (SocketException e) {
+        throw new ConexaoEncerrada();
+      }
+      if (statusLine == null) {
+        throw new ConexaoEncerrada();
+      }
+      String[] partes = statusLine.split(" ", 3);
+      if (partes.length < 2 || !partes[0].startsWith("HTTP/")) {
+        throw new IOException("Resposta inválida da OMDb: " + statusLine);
+      }
+      int status = Integer.parseInt(partes[1]);
+
+      long tamanho = -1;
+      boolean chunked = false;
+      boolean fechar = partes[0].equals("HTTP/1.0");
+      String linha;
+      int campos = 0;
+      while ((linha = lerLinha(conexao.in)) != null && !linha.isEmpty()) {
+        if (++campos > MAXIMO_CAMPOS) {
+          throw new IOException("Cabeçalho da OMDb com mais de " + MAXIMO_CAMPOS + " linhas");
+        }
+        int sep = linha.indexOf(':');
+        if (sep <= 0) {
+          continue;
+        }
+        String nome = linha.substring(0, sep).trim();
+        String valor = linha.substring(sep + 1).trim();
+        if (nome.equalsIgnoreCase("Content-Length")) {
+          tamanho = Long.parseLong(valor);
+          if (tamanho < 0 || tamanho > MAXIMO_CORPO) {
+            throw new IOException("Content-Length inválido da OMDb: " + valor);
+          }
+        } else if (nome.equalsIgnoreCase("Transfer-Encoding")) {
+          chunked = valor.toLowerCase().contains("chunked");
+        } else if (nome.equalsIgnoreCase("Connection")) {
+          fechar = valor.equalsIgnoreCase("close");
+        }
+      }
+      if (linha == null) {
+        throw new EOFException("Cabeçalho da OMDb incompleto");
+      }
+
+      if (!chunked && tamanho < 0) {
+        // Sem delimitação, o corpo vai até o fim da conexão
+        fechar = true;
+      }
+      Corpo corpo = new Corpo(conexao.in, chunked, chunked ? 0 : tamanho);
+      Filme filme = LeitorJSON.lerFilme(corpo);
+      String texto = corpo.terminar();
+      reaproveitar = !fechar;
+      return new Resposta(status, texto, filme);
+    } catch (NumberFormatException e) {
+      throw new IOException("Resposta inválida da OMDb", e);
+    } finally {
+      if (reaproveitar) {
+        conexao.ultimoUso = System.currentTimeMillis();
+        ociosas.offerFirst(conexao);
+      } else {
+        conexao.fechar();
+      }
+    }
+  }
+
+  /**
+   * Corpo de uma resposta, delimitado pelo {@code Content-Length}, pelos
+   * chunks ou pelo fim da conexão. Os bytes lidos são copiados, para que o
+   * texto da resposta fique disponível depois da leitura do JSON.
+   */
+  private static final class Corpo extends InputStream {
+    private final InputStream in;
+    private final boolean chunked;
+    private final SaidaBytes copia = new SaidaBytes(4096);
+    private long restante;
+    private boolean primeiroChunk = true;
+    private boolean fim;
+
+    /**
+     * @param restante tamanho do corpo, ou negativo se for até o fim da
+     *                 conexão; ignorado com chunks.
+     */
+    Corpo(InputStream in, boolean chunked, long restante) {
+      this.in = in;
+      this.chunked = chunked;
+      this.restante = restante;
+      this.fim = !chunked && restante == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] um = new byte[1];
+      return read(um, 0, 1) < 0 ? -1 : um[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] destino, int inicio, int quantidade) throws IOException {
+      if (chunked && restante == 0 && !fim) {
+        iniciarChunk();
+      }
+      if (fim) {
+        return -1;
+      }
+      int maximo = restante < 0 ? quantidade : (int) Math.min(quantidade, restante);
+      int lidos = in.read(destino, inicio, maximo);
+      if (lidos > 0 && copia.tamanho() + lidos > MAXIMO_CORPO) {
+        throw new IOException("Corpo da OMDb maior que " + MAXIMO_CORPO + " bytes");
+      }
+      if (lidos < 0) {
+        if (restante < 0) {
+          fim = true;
+          return -1;
+        }
+        throw new EOFException(chunked ? "Chunk incompleto" : "Corpo da OMDb incompleto");
+      }
+      if (restante > 0) {
+        restante -= lidos;
+        fim = !chunked && restante == 0;
+      }
+      copia.escrever(destino, inicio, lidos);
+      return lidos;
+    }
+
+    /**
+     * Lê a linha de tamanho do próximo chunk; no último, ignora os trailers
+     * até a linha vazia.
+     */
+    private void iniciarChunk() throws IOException {
+      if (!primeiroChunk) {
+        // CRLF que fecha os dados do chunk anterior
+        lerLinha(in);
+      }
+      primeiroChunk = false;
+      String linha = lerLinha(in);
+      if (linha == null) {
+        throw new EOFException("Chunk incompleto");
+      }
+      int fimTamanho = linha.indexOf(';');
+      restante = Integer.parseInt((fimTamanho < 0 ? linha : linha.substring(0, fimTamanho)).trim(), 16);
+      if (restante < 0) {
+        throw new IOException("Tamanho de chunk inválido: " + linha);
+      }
+      if (restante == 0) {
+        int trailers = 0;
+        while ((linha = lerLinha(in)) != null && !linha.isEmpty()) {
+          if (++trailers > MAXIMO_CAMPOS) {
+            throw new IOException("Trailers da OMDb com mais de " + MAXIMO_CAMPOS + " linhas");
+          }
+        }
+        fim = true;
+      }
+    }
+
+    /**
+     * Lê o que restar do corpo, que o JSON pode não ter consumido.
+     *
+     * @return o corpo inteiro decodificado como UTF-8.
+     */
+    String terminar() throws IOException {
+      byte[] descarte = new byte[4096];
+      while (read(descarte, 0, descarte.length) >= 0) {
+      }
+      return copia.toString();
+    }
+  }
+
+  /**
+   * Lê uma linha terminada em CRLF (ou LF) como ISO-8859-1.
+   *
+   * @return a linha sem o terminador, ou {@code null} no fim do fluxo.
+   * @throws IOException se a linha passar de {@link #MAXIMO_LINHA} bytes.
+   */
+  private static String lerLinha(InputStream in) throws IOException {
+    StringBuilder linha = new StringBuilder(64);
+    int b;
+    while ((b = in.read()) != -1) {
+      if (linha.length() > MAXIMO_LINHA) {
+        throw new IOException("Linha da resposta da OMDb maior que " + MAXIMO_LINHA + " bytes");
+      }
+      if (b == '\n') {
+        int fim = linha.length();
+        if (fim > 0 && linha.charAt(fim - 1) == '\r') {
+          linha.setLength(fim - 1);
+        }
+        return linha.toString();
+      }
+      linha.append((char) b);
+    }
+    return linha.length() == 0 ? null : linha.toString();
+  }
+
+  /**
+   * Fecha as conexões ociosas.
+   */
+  @Override
+  public void close() {
+    Conexao conexao;
+    while ((conexao = ociosas.pollFirst()) != null) {
+      conexao.fechar();
+    }
+  }
+}
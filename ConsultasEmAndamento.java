@@ -0,0 +1,108 @@
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code ConsultasEmAndamento} agrupa consultas idênticas feitas ao
+ * mesmo tempo por threads diferentes.
+ *
+ * Enquanto uma consulta para uma chave está em andamento, as demais threads
+ * que pedem a mesma chave aguardam o resultado dela em vez de fazer sua
+ * própria requisição. Se a consulta falhar, cada thread que aguardou recebe
+ * sua própria exceção, com o erro da consulta como causa.
+ *
+ * @param <T> o tipo do resultado das consultas.
+ */
+public class ConsultasEmAndamento<T> {
+  /**
+   * Consulta que pode ser compartilhada entre várias threads.
+   */
+  @FunctionalInterface
+  public interface Consulta<T> {
+    /**
+     * Executa a consulta.
+     *
+     * @return o resultado da consulta.
+     * @throws IOException em caso de falha na consulta.
+     */
+    T executar() throws IOException;
+  }
+
+  private final ConcurrentHashMap<String, CompletableFuture<T>> emAndamento = new ConcurrentHashMap<>();
+  private final long tempoEspera;
+  private final LongAdder agrupadas = new LongAdder();
+
+  /**
+   * @param tempoEsperaMs tempo máximo, em milissegundos, que uma thread aguarda
+   *                      a consulta de outra.
+   */
+  public ConsultasEmAndamento(long tempoEsperaMs) {
+    this.tempoEspera = tempoEsperaMs;
+  }
+
+  /**
+   * Executa a consulta para a chave, ou aguarda a que já está em andamento.
+   *
+   * @param chave    identifica consultas equivalentes.
+   * @param consulta a consulta a executar caso nenhuma esteja em andamento.
+   * @return o resultado da consulta.
+   * @throws IOException se a consulta falhar ou a espera exceder o tempo
+   *                     máximo.
+   */
+  public T executar(String chave, Consulta<T> consulta) throws IOException {
+    CompletableFuture<T> nova = new CompletableFuture<>();
+    CompletableFuture<T> existente = emAndamento.putIfAbsent(chave, nova);
+    if (existente == null) {
+      try {
+        T resultado = consulta.executar();
+        nova.complete(resultado);
+        return resultado;
+      } catch (IOException | RuntimeException e) {
+        nova.completeExceptionally(e);
+        throw e;
+      } finally {
+        emAndamento.remove(chave, nova);
+      }
+    }
+
+    agrupadas.increment();
+    try {
+      return existente.get(tempoEspera, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new InterruptedIOException("Tempo esgotado aguardando consulta de " + chave);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrompido aguardando consulta de " + chave);
+    } catch (ExecutionException e) {
+      // Uma exceção por thread: a mesma instância lançada em várias threads
+      // acumularia as exceções suprimidas de todas. Os tipos que mudam o
+      // tratamento (cota esgotada, conexão ocupada) são mantidos
+      Throwable causa = e.getCause();
+      if (causa instanceof LimiteOMDB.Esgotado) {
+        throw new LimiteOMDB.Esgotado(causa.getMessage(), causa);
+      }
+      if (causa instanceof ClienteOMDB.Ocupado) {
+        throw new ClienteOMDB.Ocupado(causa.getMessage(), causa);
+      }
+      if (causa instanceof IOException) {
+        throw new IOException(causa.getMessage(), causa);
+      }
+      throw new IllegalStateException("Falha na consulta de " + chave + ": " + causa.getMessage(), causa);
+    }
+  }
+
+  /**
+   * @param chave identifica consultas equivalentes.
+   * @return {@code true} se há uma consulta em andamento para a chave.
+   */
+  public boolean emAndamento(String chave) {
+    return emAndamento.containsKey(chave);
+  }
+
+  /**
+   * @return quantidade de consultas que aproveitaram o resultado de outra.
+   */
+  public long getAgrupadas() {
+    return agrupadas.sum();
+  }
+}
@@ -0,0 +1,22 @@
+/**
+ * Dados de um filme retornados pela OMDb, apenas com os campos usados pelo
+ * servidor. Campos ausentes na resposta valem {@code "N/A"}, como na própria
+ * API.
+ *
+ * @param titulo     campo {@code Title}.
+ * @param ano        campo {@code Year}.
+ * @param diretor    campo {@code Director}.
+ * @param elenco     campo {@code Actors}.
+ * @param sinopse    campo {@code Plot}.
+ * @param poster     campo {@code Poster} (URL da imagem).
+ * @param imdbID     campo {@code imdbID}.
+ * @param genero     campo {@code Genre}.
+ * @param duracao    campo {@code Runtime}.
+ * @param nota       campo {@code imdbRating}.
+ * @param encontrado se o campo {@code Response} é {@code "True"}.
+ * @param erro       campo {@code Error}, presente quando o filme não foi
+ *                   encontrado.
+ */
+public record Filme(String titulo, String ano, String diretor, String elenco, String sinopse, String poster,
+    String imdbID, String genero, String duracao, String nota, boolean encontrado, String erro) {
+}
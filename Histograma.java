@@ -0,0 +1,68 @@
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code Histograma} conta durações em faixas de escala
+ * logarítmica, sem travas e sem criar objetos ao registrar, para poder ficar
+ * sempre ativa no caminho das requisições.
+ *
+ * A faixa {@code i} conta as durações menores que 2<sup>i</sup>
+ * microssegundos (a última acumula também as maiores), o que dá erro relativo
+ * de no máximo 2x em qualquer escala, de microssegundos a minutos, com um
+ * vetor fixo de contadores.
+ */
+public class Histograma {
+  /**
+   * Quantidade de faixas; a última vai até 2<sup>26</sup> µs (cerca de 67 s)
+   * e acumula o excedente.
+   */
+  static final int FAIXAS = 28;
+  /**
+   * Limite superior de cada faixa em segundos, já formatado para exposição.
+   */
+  private static final String[] LIMITES = new String[FAIXAS];
+
+  static {
+    for (int i = 0; i < FAIXAS - 1; i++) {
+      LIMITES[i] = BigDecimal.valueOf(1L << i).movePointLeft(6).toPlainString();
+    }
+    LIMITES[FAIXAS - 1] = "+Inf";
+  }
+
+  private final AtomicLongArray contagens = new AtomicLongArray(FAIXAS);
+  private final LongAdder somaNanos = new LongAdder();
+
+  /**
+   * Registra uma duração.
+   *
+   * @param nanos a duração em nanossegundos.
+   */
+  public void registrar(long nanos) {
+    long micros = Math.max(0, nanos) / 1000;
+    int faixa = Math.min(FAIXAS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    contagens.incrementAndGet(faixa);
+    somaNanos.add(nanos);
+  }
+
+  /**
+   * Escreve o histograma no formato de texto do Prometheus, com as contagens
+   * acumuladas por faixa ({@code _bucket}), a soma ({@code _sum}) e o total
+   * ({@code _count}).
+   *
+   * @param saida   o buffer de saída.
+   * @param nome    o nome da métrica, sem sufixo.
+   * @param rotulos os rótulos da série (ex.: {@code rota="buscar"}), ou vazio.
+   */
+  public void escrever(SaidaBytes saida, String nome, String rotulos) {
+    String prefixo = rotulos.isEmpty() ? "" : rotulos + ",";
+    long acumulado = 0;
+    for (int i = 0; i < FAIXAS; i++) {
+      acumulado += contagens.get(i);
+      saida.escreverTexto(nome + "_bucket{" + prefixo + "le=\"" + LIMITES[i] + "\"} " + acumulado + "\n");
+    }
+    String serie = rotulos.isEmpty() ? "" : "{" + rotulos + "}";
+    saida.escreverTexto(nome + "_sum" + serie + " " + somaNanos.sum() / 1e9 + "\n");
+    saida.escreverTexto(nome + "_count" + serie + " " + acumulado + "\n");
+  }
+}
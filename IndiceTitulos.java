@@ -0,0 +1,462 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A classe {@code IndiceTitulos} guarda em memória os títulos de todos os
+ * filmes já obtidos da OMDb, para sugerir títulos enquanto o usuário digita e
+ * para corrigir erros de digitação sem consultar a API.
+ *
+ * Os títulos são normalizados (minúsculas, sem acentos e com a pontuação
+ * trocada por espaços) e inseridos em uma árvore de prefixos a partir do
+ * início de cada palavra, de modo que "matrix" encontra "The Matrix". Cada nó
+ * guarda os melhores filmes da sua subárvore, então uma busca por prefixo
+ * custa apenas o tamanho do prefixo. Para buscas aproximadas, um índice de
+ * trigramas seleciona os candidatos, que são ordenados pela distância de
+ * edição entre a busca e o início de cada palavra do título.
+ *
+ * As inserções são serializadas e nunca alteram um vetor já publicado (os nós
+ * trocam seus vetores por cópias), então as consultas não usam travas e podem
+ * ocorrer durante a inserção de novos títulos.
+ */
+public class IndiceTitulos {
+  /**
+   * Um título sugerido.
+   *
+   * @param titulo     o título original.
+   * @param ano        o ano do filme.
+   * @param imdbID     o identificador no IMDb.
+   * @param aproximada se a sugestão veio da busca aproximada, e não do
+   *                   prefixo exato.
+   */
+  public record Sugestao(String titulo, String ano, String imdbID, boolean aproximada) {
+  }
+
+  /**
+   * Um filme indexado e seu título normalizado.
+   */
+  private record Entrada(String titulo, String ano, String imdbID, String normalizado) {
+  }
+
+  /**
+   * Um nó da árvore de prefixos. Os vetores são imutáveis depois de
+   * publicados.
+   */
+  private static final class No {
+    final char letra;
+    volatile No[] filhos = new No[0];
+    /** Os melhores filmes da subárvore, em ordem de relevância. */
+    volatile int[] melhores = new int[0];
+
+    No(char letra) {
+      this.letra = letra;
+    }
+  }
+
+  /**
+   * Lista de filmes de um trigrama, que só cresce. O total é publicado depois
+   * do elemento, então quem lê o total antes do vetor vê todos os elementos.
+   */
+  private static final class Lista {
+    volatile int[] ids = new int[4];
+    volatile int total;
+  }
+
+  /**
+   * Contadores de trigramas em comum por filme, reaproveitados pela thread.
+   * Apenas as posições tocadas são zeradas ao fim de cada busca.
+   */
+  private static final class Contagem {
+    int[] porId = new int[0];
+    int[] tocados = new int[64];
+    int quantos;
+
+    void preparar(int total) {
+      if (porId.length < total) {
+        porId = new int[Math.max(total, porId.length * 2)];
+      }
+    }
+
+    void tocar(int id) {
+      if (quantos == tocados.length) {
+        tocados = Arrays.copyOf(tocados, quantos * 2);
+      }
+      tocados[quantos++] = id;
+    }
+  }
+
+  private static final ThreadLocal<Contagem> CONTAGEM = ThreadLocal.withInitial(Contagem::new);
+
+  /** Letras a-z, dígitos, espaço e uma classe para os demais caracteres. */
+  private static final int SIMBOLOS = 38;
+  private static final int MAXIMO_CANDIDATOS = 64;
+
+  private final int limite;
+  private final No raiz = new No(' ');
+  private final Lista[] trigramas = new Lista[SIMBOLOS * SIMBOLOS * SIMBOLOS];
+  /** Relevância de cada entrada: quanto menor, melhor. */
+  private volatile int[] relevancias = new int[64];
+  private volatile Entrada[] entradas = new Entrada[64];
+  private volatile int total;
+  /** Usado só por quem insere, sob a trava do objeto. */
+  private final Map<String, Integer> porChave = new HashMap<>();
+
+  /**
+   * @param limite quantidade máxima de sugestões por busca.
+   */
+  public IndiceTitulos(int limite) {
+    this.limite = limite;
+  }
+
+  /**
+   * Indexa um filme encontrado. Um filme já indexado é ignorado.
+   *
+   * @param filme os dados do filme.
+   */
+  public void adicionar(Filme filme) {
+    if (!filme.encontrado() || filme.titulo() == null || filme.titulo().equals("N/A")) {
+      return;
+    }
+    String normalizado = normalizar(filme.titulo());
+    if (normalizado.isEmpty()) {
+      return;
+    }
+    String imdbID = filme.imdbID() == null || filme.imdbID().equals("N/A") ? null : filme.imdbID();
+    String chave = imdbID != null ? imdbID : normalizado + "|" + filme.ano();
+    synchronized (this) {
+      if (porChave.containsKey(chave)) {
+        return;
+      }
+      int id = total;
+      if (id == entradas.length) {
+        relevancias = Arrays.copyOf(relevancias, id * 2);
+        entradas = Arrays.copyOf(entradas, id * 2);
+      }
+      // Títulos curtos são os mais prováveis de uma busca curta
+      relevancias[id] = normalizado.length();
+      entradas[id] = new Entrada(filme.titulo(), filme.ano(), imdbID, normalizado);
+      porChave.put(chave, id);
+      total = id + 1;
+
+      for (int inicio = 0; inicio < normalizado.length(); inicio = proximaPalavra(normalizado, inicio)) {
+        inserir(normalizado, inicio, id);
+      }
+      int[] vistos = new int[normalizado.length() + 2];
+      int quantos = 0;
+      String preenchido = " " + normalizado + " ";
+      for (int i = 0; i + 3 <= preenchido.length(); i++) {
+        int codigo = trigrama(preenchido, i);
+        boolean repetido = false;
+        for (int j = 0; j < quantos && !repetido; j++) {
+          repetido = vistos[j] == codigo;
+        }
+        if (!repetido) {
+          vistos[quantos++] = codigo;
+          acrescentar(codigo, id);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return quantidade de filmes indexados.
+   */
+  public int getTamanho() {
+    return total;
+  }
+
+  /**
+   * Sugere títulos para o texto digitado: primeiro os que têm uma palavra
+   * começando pelo texto e, se não bastarem, os mais parecidos.
+   *
+   * @param texto o texto digitado.
+   * @return até o limite de sugestões, das mais relevantes às menos.
+   */
+  public List<Sugestao> sugerir(String texto) {
+    String busca = normalizar(texto);
+    List<Sugestao> sugestoes = new ArrayList<>(limite);
+    if (busca.isEmpty()) {
+      return sugestoes;
+    }
+    Entrada[] todas = null;
+    No no = descer(busca);
+    if (no != null) {
+      int[] melhores = no.melhores;
+      todas = entradas;
+      for (int i = 0; i < melhores.length && sugestoes.size() < limite; i++) {
+        Entrada entrada = todas[melhores[i]];
+        sugestoes.add(new Sugestao(entrada.titulo(), entrada.ano(), entrada.imdbID(), false));
+      }
+    }
+    if (sugestoes.size() < limite && busca.length() >= 3) {
+      aproximadas(busca, no != null ? no.melhores : new int[0], sugestoes);
+    }
+    return sugestoes;
+  }
+
+  /**
+   * Completa as sugestões com os títulos cujo início de alguma palavra está a
+   * poucas edições da busca.
+   */
+  private void aproximadas(String busca, int[] jaSugeridos, List<Sugestao> sugestoes) {
+    int tolerancia = busca.length() <= 5 ? 1 : busca.length() <= 9 ? 2 : 3;
+    // Cada edição desfaz no máximo três trigramas da busca, então um título
+    // próximo o bastante tem pelo menos esta quantidade em comum
+    String preenchido = " " + busca;
+    int minimo = Math.max(1, preenchido.length() - 2 - 3 * tolerancia);
+
+    Contagem contagem = CONTAGEM.get();
+    contagem.preparar(total);
+    int[] porId = contagem.porId;
+    for (int i = 0; i + 3 <= preenchido.length(); i++) {
+      Lista lista = trigramas[trigrama(preenchido, i)];
+      if (lista == null) {
+        continue;
+      }
+      int quantos = lista.total;
+      int[] ids = lista.ids;
+      for (int j = 0; j < quantos; j++) {
+        int id = ids[j];
+        if (id < porId.length && porId[id]++ == 0) {
+          contagem.tocar(id);
+        }
+      }
+    }
+    int maximo = 0;
+    for (int i = 0; i < contagem.quantos; i++) {
+      maximo = Math.max(maximo, porId[contagem.tocados[i]]);
+    }
+
+    // Avalia os candidatos dos que têm mais trigramas em comum aos que têm
+    // menos; a contagem é pequena, então basta uma passada por valor
+    Entrada[] todas = entradas;
+    int[] relevancia = relevancias;
+    char[] letras = busca.toCharArray();
+    List<int[]> aceitos = new ArrayList<>();
+    int avaliados = 0;
+    for (int comuns = maximo; comuns >= minimo && avaliados < MAXIMO_CANDIDATOS; comuns--) {
+      for (int i = 0; i < contagem.quantos && avaliados < MAXIMO_CANDIDATOS; i++) {
+        int id = contagem.tocados[i];
+        if (porId[id] != comuns || contem(jaSugeridos, id)) {
+          continue;
+        }
+        avaliados++;
+        int distancia = distanciaPrefixo(letras, todas[id].normalizado(), tolerancia);
+        if (distancia <= tolerancia) {
+          aceitos.add(new int[] { id, distancia });
+        }
+      }
+    }
+    for (int i = 0; i < contagem.quantos; i++) {
+      porId[contagem.tocados[i]] = 0;
+    }
+    contagem.quantos = 0;
+    aceitos.sort((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1])
+        : Integer.compare(relevancia[a[0]], relevancia[b[0]]));
+    for (int i = 0; i < aceitos.size() && sugestoes.size() < limite; i++) {
+      Entrada entrada = todas[aceitos.get(i)[0]];
+      sugestoes.add(new Sugestao(entrada.titulo(), entrada.ano(), entrada.imdbID(), true));
+    }
+  }
+
+  /**
+   * Menor distância de edição entre a busca e o início de alguma palavra do
+   * título, contando o título apenas até onde for melhor (a busca pode ser
+   * um título incompleto).
+   *
+   * @return a distância, ou {@code tolerancia + 1} se for maior que ela.
+   */
+  private static int distanciaPrefixo(char[] busca, String titulo, int tolerancia) {
+    int melhor = tolerancia + 1;
+    int m = busca.length;
+    int fora = tolerancia + 1;
+    int[] anterior = new int[m + 1];
+    int[] atual = new int[m + 1];
+    for (int inicio = 0; inicio < titulo.length() && melhor > 0; inicio = proximaPalavra(titulo, inicio)) {
+      // Linhas indexadas pelo título, para parar no melhor prefixo dele; só a
+      // faixa de largura 2 * tolerancia em torno da diagonal pode ficar dentro
+      // da tolerância
+      for (int i = 0; i <= m; i++) {
+        anterior[i] = Math.min(i, fora);
+      }
+      int fim = Math.min(titulo.length(), inicio + m + tolerancia);
+      for (int j = inicio; j < fim; j++) {
+        int linha = j - inicio + 1;
+        int de = Math.max(1, linha - tolerancia);
+        int ate = Math.min(m, linha + tolerancia);
+        atual[de - 1] = de == 1 ? Math.min(linha, fora) : fora;
+        int minimo = atual[de - 1];
+        char c = titulo.charAt(j);
+        for (int i = de; i <= ate; i++) {
+          int valor = anterior[i - 1] + (busca[i - 1] == c ? 0 : 1);
+          valor = Math.min(valor, atual[i - 1] + 1);
+          valor = Math.min(valor, anterior[i] + 1);
+          atual[i] = Math.min(valor, fora);
+          minimo = Math.min(minimo, atual[i]);
+        }
+        if (ate < m) {
+          atual[ate + 1] = fora;
+        }
+        if (ate == m) {
+          melhor = Math.min(melhor, atual[m]);
+        }
+        int[] troca = anterior;
+        anterior = atual;
+        atual = troca;
+        if (minimo > tolerancia) {
+          break;
+        }
+      }
+    }
+    return melhor;
+  }
+
+  private No descer(String busca) {
+    No no = raiz;
+    for (int i = 0; i < busca.length() && no != null; i++) {
+      no = filho(no, busca.charAt(i));
+    }
+    return no;
+  }
+
+  private void inserir(String normalizado, int inicio, int id) {
+    No no = raiz;
+    for (int i = inicio; i < normalizado.length(); i++) {
+      char c = normalizado.charAt(i);
+      No proximo = filho(no, c);
+      if (proximo == null) {
+        proximo = new No(c);
+        No[] filhos = no.filhos;
+        // Filhos ordenados pela letra, para a busca binária
+        int posicao = 0;
+        while (posicao < filhos.length && filhos[posicao].letra < c) {
+          posicao++;
+        }
+        No[] novos = new No[filhos.length + 1];
+        System.arraycopy(filhos, 0, novos, 0, posicao);
+        novos[posicao] = proximo;
+        System.arraycopy(filhos, posicao, novos, posicao + 1, filhos.length - posicao);
+        no.filhos = novos;
+      }
+      no = proximo;
+      promover(no, id);
+    }
+  }
+
+  /**
+   * Inclui o filme entre os melhores do nó, se couber.
+   */
+  private void promover(No no, int id) {
+    int[] melhores = no.melhores;
+    if (contem(melhores, id)) {
+      return;
+    }
+    int relevancia = relevancias[id];
+    int posicao = 0;
+    while (posicao < melhores.length && relevancias[melhores[posicao]] <= relevancia) {
+      posicao++;
+    }
+    if (posicao >= limite) {
+      return;
+    }
+    int tamanho = Math.min(melhores.length + 1, limite);
+    int[] novos = new int[tamanho];
+    System.arraycopy(melhores, 0, novos, 0, posicao);
+    novos[posicao] = id;
+    System.arraycopy(melhores, posicao, novos, posicao + 1, tamanho - posicao - 1);
+    no.melhores = novos;
+  }
+
+  private void acrescentar(int codigo, int id) {
+    Lista lista = trigramas[codigo];
+    if (lista == null) {
+      lista = new Lista();
+      trigramas[codigo] = lista;
+    }
+    int quantos = lista.total;
+    if (quantos == lista.ids.length) {
+      lista.ids = Arrays.copyOf(lista.ids, quantos * 2);
+    }
+    lista.ids[quantos] = id;
+    lista.total = quantos + 1;
+  }
+
+  private static No filho(No no, char c) {
+    No[] filhos = no.filhos;
+    int baixo = 0;
+    int alto = filhos.length - 1;
+    while (baixo <= alto) {
+      int meio = (baixo + alto) >>> 1;
+      char letra = filhos[meio].letra;
+      if (letra < c) {
+        baixo = meio + 1;
+      } else if (letra > c) {
+        alto = meio - 1;
+      } else {
+        return filhos[meio];
+      }
+    }
+    return null;
+  }
+
+  private static boolean contem(int[] ids, int id) {
+    for (int outro : ids) {
+      if (outro == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int proximaPalavra(String normalizado, int inicio) {
+    int espaco = normalizado.indexOf(' ', inicio);
+    return espaco < 0 ? normalizado.length() : espaco + 1;
+  }
+
+  private static int trigrama(String texto, int i) {
+    return (simbolo(texto.charAt(i)) * SIMBOLOS + simbolo(texto.charAt(i + 1))) * SIMBOLOS
+        + simbolo(texto.charAt(i + 2));
+  }
+
+  private static int simbolo(char c) {
+    if (c >= 'a' && c <= 'z') {
+      return c - 'a';
+    }
+    if (c >= '0' && c <= '9') {
+      return 26 + c - '0';
+    }
+    return c == ' ' ? 36 : 37;
+  }
+
+  /**
+   * Deixa o texto em minúsculas, sem acentos e com cada sequência de
+   * caracteres que não são letras nem dígitos trocada por um espaço.
+   *
+   * @param texto o texto original.
+   * @return o texto normalizado, sem espaços nas pontas.
+   */
+  static String normalizar(String texto) {
+    String decomposto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+    StringBuilder normalizado = new StringBuilder(decomposto.length());
+    boolean espaco = false;
+    for (int i = 0; i < decomposto.length(); i++) {
+      char c = decomposto.charAt(i);
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;
+      }
+      if (Character.isLetterOrDigit(c)) {
+        if (espaco && normalizado.length() > 0) {
+          normalizado.append(' ');
+        }
+        normalizado.append(Character.toLowerCase(c));
+        espaco = false;
+      } else {
+        espaco = true;
+      }
+    }
+    return normalizado.toString();
+  }
+}
@@ -0,0 +1,357 @@
+import java.io.*;
+
+/**
+ * A classe {@code LeitorJSON} lê uma resposta JSON da OMDb em uma única
+ * passada e preenche um {@link Filme}.
+ *
+ * Apenas os valores de texto do objeto principal com nomes conhecidos são
+ * guardados; os demais (como o vetor {@code Ratings}) são percorridos sem
+ * gerar objetos. As sequências de escape do JSON, incluindo {@code \\uXXXX},
+ * são decodificadas. A leitura pode ser feita a partir de uma
+ * {@code String} ou diretamente dos bytes UTF-8 de um {@link InputStream}.
+ *
+ * Em caso de JSON malformado, a leitura para e os campos ainda não lidos
+ * ficam como {@code "N/A"}.
+ */
+public class LeitorJSON {
+  /**
+   * Nomes dos campos lidos, na ordem dos índices de {@link #valores}.
+   */
+  private static final String[] CAMPOS = { "Title", "Year", "Director", "Actors", "Plot", "Poster", "imdbID",
+      "Genre", "Runtime", "imdbRating", "Response", "Error" };
+  private static final int RESPONSE = 10;
+  private static final int ERROR = 11;
+
+  /**
+   * Interrompe a leitura de um JSON malformado.
+   */
+  private static final class JSONMalformado extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    JSONMalformado() {
+      super("JSON malformado");
+    }
+  }
+
+  private final String texto;
+  private final InputStream entrada;
+  private final byte[] bytes;
+  private int posicao;
+  private int limite;
+  private int pendente = -1;
+  private int proximaBarra = -1;
+  private StringBuilder buffer;
+  private final String[] valores = new String[CAMPOS.length];
+
+  private LeitorJSON(String texto, InputStream entrada) {
+    this.texto = texto;
+    this.entrada = entrada;
+    this.bytes = entrada == null ? null : new byte[4096];
+    this.limite = texto == null ? 0 : texto.length();
+  }
+
+  /**
+   * Lê um filme a partir do JSON em texto.
+   *
+   * @param json o JSON retornado pela API.
+   * @return o filme com os campos encontrados.
+   */
+  public static Filme lerFilme(String json) {
+    try {
+      return new LeitorJSON(json, null).ler();
+    } catch (IOException e) {
+      // Leitura de String não gera IOException
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Lê um filme diretamente dos bytes UTF-8 de um fluxo, sem montar o JSON em
+   * memória. O fluxo é lido até o fim do objeto principal.
+   *
+   * @param entrada o fluxo com o JSON.
+   * @return o filme com os campos encontrados.
+   * @throws IOException em caso de falha na leitura do fluxo.
+   */
+  public static Filme lerFilme(InputStream entrada) throws IOException {
+    return new LeitorJSON(null, entrada).ler();
+  }
+
+  private Filme ler() throws IOException {
+    try {
+      lerObjeto();
+    } catch (JSONMalformado e) {
+      // Mantém os campos lidos até o ponto do erro
+    }
+    return new Filme(valor(0), valor(1), valor(2), valor(3), valor(4), valor(5), valor(6), valor(7), valor(8),
+        valor(9), "True".equals(valores[RESPONSE]), valor(ERROR));
+  }
+
+  private String valor(int indice) {
+    return valores[indice] == null ? "N/A" : valores[indice];
+  }
+
+  /**
+   * Percorre o objeto principal guardando os campos conhecidos.
+   */
+  private void lerObjeto() throws IOException {
+    if (proximoSignificativo() != '{') {
+      return;
+    }
+    int c = proximoSignificativo();
+    if (c == '}') {
+      return;
+    }
+    while (c == '"') {
+      int campo = lerNomeCampo();
+      if (proximoSignificativo() != ':') {
+        return;
+      }
+      c = proximoSignificativo();
+      if (c == '"') {
+        String valor = lerValorTexto(campo >= 0);
+        if (campo >= 0) {
+          valores[campo] = valor;
+        }
+      } else if (!pularValor(c)) {
+        return;
+      }
+      c = proximoSignificativo();
+      if (c != ',') {
+        return;
+      }
+      c = proximoSignificativo();
+    }
+  }
+
+  /**
+   * Lê o nome de um campo (após as aspas iniciais).
+   *
+   * @return o índice do campo em {@link #CAMPOS} ou -1 se não for usado.
+   */
+  private int lerNomeCampo() throws IOException {
+    int aspas = aspasSemEscape();
+    if (aspas >= 0) {
+      // Compara o nome direto no texto, sem copiá-lo
+      int tamanho = aspas - posicao;
+      int encontrado = -1;
+      for (int i = 0; i < CAMPOS.length; i++) {
+        String nome = CAMPOS[i];
+        if (nome.length() == tamanho && texto.startsWith(nome, posicao)) {
+          encontrado = i;
+          break;
+        }
+      }
+      posicao = aspas + 1;
+      return encontrado;
+    }
+    lerTexto(true);
+    for (int i = 0; i < CAMPOS.length; i++) {
+      if (CAMPOS[i].contentEquals(buffer)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Lê um valor de texto (após as aspas iniciais).
+   *
+   * @param guardar se o valor será usado.
+   * @return o valor decodificado, ou {@code null} se não for guardado.
+   */
+  private String lerValorTexto(boolean guardar) throws IOException {
+    int aspas = aspasSemEscape();
+    if (aspas >= 0) {
+      String valor = guardar ? texto.substring(posicao, aspas) : null;
+      posicao = aspas + 1;
+      return valor;
+    }
+    lerTexto(guardar);
+    return guardar ? buffer.toString() : null;
+  }
+
+  /**
+   * Na leitura de {@code String}, localiza as aspas que fecham o texto atual
+   * quando não há escapes antes delas, caso em que o texto pode ser usado
+   * sem decodificação.
+   *
+   * @return a posição das aspas ou -1 se for preciso decodificar.
+   */
+  private int aspasSemEscape() {
+    if (texto == null || pendente >= 0) {
+      return -1;
+    }
+    if (proximaBarra < posicao) {
+      proximaBarra = texto.indexOf('\\', posicao);
+      if (proximaBarra < 0) {
+        proximaBarra = limite;
+      }
+    }
+    int aspas = texto.indexOf('"', posicao);
+    return aspas >= 0 && aspas < proximaBarra ? aspas : -1;
+  }
+
+  /**
+   * Lê um texto JSON (após as aspas iniciais) caractere a caractere,
+   * decodificando os escapes.
+   *
+   * @param guardar se o texto deve ser guardado no {@link #buffer} ou apenas
+   *                percorrido.
+   */
+  private void lerTexto(boolean guardar) throws IOException {
+    if (buffer == null) {
+      // Só é criado quando há escapes a decodificar ou na leitura de fluxo
+      buffer = new StringBuilder(256);
+    }
+    buffer.setLength(0);
+    while (true) {
+      int c = proximo();
+      if (c == '"') {
+        return;
+      }
+      if (c < 0) {
+        throw new JSONMalformado();
+      }
+      if (c != '\\') {
+        if (guardar) {
+          buffer.append((char) c);
+        }
+        continue;
+      }
+      c = proximo();
+      char decodificado = switch (c) {
+        case 'b' -> '\b';
+        case 'f' -> '\f';
+        case 'n' -> '\n';
+        case 'r' -> '\r';
+        case 't' -> '\t';
+        case 'u' -> {
+          int codigo = 0;
+          for (int i = 0; i < 4; i++) {
+            int digito = Character.digit(proximo(), 16);
+            if (digito < 0) {
+              throw new JSONMalformado();
+            }
+            codigo = (codigo << 4) | digito;
+          }
+          // Pares substitutos chegam como dois escapes e são montados pelo buffer
+          yield (char) codigo;
+        }
+        case -1 -> throw new JSONMalformado();
+        default -> (char) c;
+      };
+      if (guardar) {
+        buffer.append(decodificado);
+      }
+    }
+  }
+
+  /**
+   * Pula um valor que não é texto (número, literal, objeto ou vetor), cujo
+   * primeiro caractere já foi lido.
+   *
+   * @return {@code false} se o JSON estiver malformado.
+   */
+  private boolean pularValor(int c) throws IOException {
+    if (c != '{' && c != '[') {
+      // Número ou literal: termina antes de ',', '}' ou espaço
+      while (true) {
+        c = proximo();
+        if (c == ',' || c == '}' || c == ']') {
+          pendente = c;
+          return true;
+        }
+        if (c < 0) {
+          return false;
+        }
+        if (Character.isWhitespace(c)) {
+          return true;
+        }
+      }
+    }
+    int profundidade = 1;
+    while (profundidade > 0) {
+      c = proximo();
+      if (c < 0) {
+        return false;
+      } else if (c == '"') {
+        lerValorTexto(false);
+      } else if (c == '{' || c == '[') {
+        profundidade++;
+      } else if (c == '}' || c == ']') {
+        profundidade--;
+      }
+    }
+    return true;
+  }
+
+  private int proximoSignificativo() throws IOException {
+    int c;
+    do {
+      c = proximo();
+    } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+    return c;
+  }
+
+  /**
+   * @return o próximo caractere (unidade UTF-16) ou -1 no fim da entrada.
+   */
+  private int proximo() throws IOException {
+    if (pendente >= 0) {
+      int c = pendente;
+      pendente = -1;
+      return c;
+    }
+    if (texto != null) {
+      return posicao < limite ? texto.charAt(posicao++) : -1;
+    }
+    int b = proximoByte();
+    if (b < 0x80) {
+      return b;
+    }
+    // Decodificação UTF-8 de sequências de 2 a 4 bytes
+    int extras;
+    int codigo;
+    if ((b & 0xE0) == 0xC0) {
+      extras = 1;
+      codigo = b & 0x1F;
+    } else if ((b & 0xF0) == 0xE0) {
+      extras = 2;
+      codigo = b & 0x0F;
+    } else if ((b & 0xF8) == 0xF0) {
+      extras = 3;
+      codigo = b & 0x07;
+    } else {
+      return 0xFFFD;
+    }
+    for (int i = 0; i < extras; i++) {
+      int continuacao = proximoByte();
+      if ((continuacao & 0xC0) != 0x80) {
+        if (continuacao >= 0) {
+          // O byte que interrompeu a sequência é lido de novo como o próximo
+          posicao--;
+        }
+        return 0xFFFD;
+      }
+      codigo = (codigo << 6) | (continuacao & 0x3F);
+    }
+    if (codigo > 0xFFFF) {
+      pendente = Character.lowSurrogate(codigo);
+      return Character.highSurrogate(codigo);
+    }
+    return codigo;
+  }
+
+  private int proximoByte() throws IOException {
+    if (posicao == limite) {
+      limite = entrada.read(bytes, 0, bytes.length);
+      posicao = 0;
+      if (limite <= 0) {
+        limite = 0;
+        return -1;
+      }
+    }
+    return bytes[posicao++] & 0xFF;
+  }
+}
@@ -0,0 +1,273 @@
+import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code LimiteOMDB} controla o uso da OMDb por todas as threads: o
+ * ritmo das requisições e a cota diária de cada chave da API.
+ *
+ * O ritmo segue um balde de fichas (na forma de GCRA: um único instante
+ * teórico de chegada, atualizado por compare-and-set), que admite rajadas
+ * curtas e depois uma requisição a cada {@code 1 / taxa} segundos. A cota
+ * diária (dia UTC) é contada por chave em um {@code long} com o dia e as
+ * requisições usadas, também por compare-and-set, e as chaves são usadas em
+ * rodízio. Nenhuma conta usa travas.
+ *
+ * Cada requisição tem uma {@link Prioridade}. As buscas interativas podem usar
+ * todo o balde e toda a cota e, com o balde vazio, aguardam na fila por uma
+ * ficha futura; as buscas em lote e o aquecimento do cache só usam o que
+ * sobra acima de uma reserva e nunca aguardam. Quando não há ficha ou cota, a
+ * reserva falha com {@link Esgotado} antes de qualquer envio.
+ */
+public class LimiteOMDB {
+  /**
+   * Prioridade de uma requisição à OMDb.
+   */
+  public enum Prioridade {
+    /** Busca de um usuário aguardando a página ou o JSON. */
+    INTERATIVA(0, 0),
+    /** Título de uma busca em lote. */
+    LOTE(10, 25),
+    /** Aquecimento do cache em segundo plano. */
+    AQUECIMENTO(30, 50);
+
+    /** Percentual da cota diária que esta prioridade deixa para as maiores. */
+    final int reservaCota;
+    /** Percentual do balde que esta prioridade deixa para as maiores. */
+    final int reservaBalde;
+
+    Prioridade(int reservaCota, int reservaBalde) {
+      this.reservaCota = reservaCota;
+      this.reservaBalde = reservaBalde;
+    }
+  }
+
+  /**
+   * Indica que a requisição não foi feita por falta de ficha ou de cota.
+   */
+  public static final class Esgotado extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    Esgotado(String mensagem) {
+      super(mensagem);
+    }
+
+    Esgotado(String mensagem, Throwable causa) {
+      super(mensagem, causa);
+    }
+  }
+
+  private final String[] chaves;
+  private final int cota;
+  private final long intervalo;
+  private final long rajada;
+  private final long espera;
+  private final AtomicLong chegadaTeorica = new AtomicLong(System.nanoTime());
+  /** Por chave: o dia UTC nos 32 bits altos e as requisições usadas nos baixos. */
+  private final AtomicLongArray usos;
+  private final AtomicInteger proxima = new AtomicInteger();
+  private final LongAdder[] negadas = new LongAdder[Prioridade.values().length];
+
+  /**
+   * @param chaves      as chaves da API, usadas em rodízio.
+   * @param cota        requisições por dia permitidas para cada chave.
+   * @param taxa        requisições por segundo depois de uma rajada.
+   * @param rajada      requisições seguidas permitidas com o balde cheio.
+   * @param esperaMs    tempo máximo que uma busca interativa aguarda na fila.
+   */
+  public LimiteOMDB(String[] chaves, int cota, double taxa, int rajada, long esperaMs) {
+    this.chaves = chaves.clone();
+    this.cota = cota;
+    this.intervalo = (long) (1_000_000_000L / taxa);
+    this.rajada = Math.max(1, rajada) * intervalo;
+    this.espera = esperaMs * 1_000_000L;
+    this.usos = new AtomicLongArray(chaves.length);
+    for (int i = 0; i < negadas.length; i++) {
+      negadas[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Reserva uma requisição à OMDb: uma ficha do balde e uma unidade da cota
+   * de alguma chave. Uma busca interativa pode aguardar pela ficha.
+   *
+   * @param prioridade a prioridade da requisição.
+   * @return a chave da API a usar.
+   * @throws Esgotado              se não houver cota ou ficha disponível.
+   * @throws InterruptedIOException se interrompida aguardando a ficha.
+   */
+  public String reservar(Prioridade prioridade) throws IOException {
+    int chave = consumirCota(prioridade);
+    if (chave < 0) {
+      negadas[prioridade.ordinal()].increment();
+      throw new Esgotado("Limite diário de consultas à OMDb atingido; tente mais tarde");
+    }
+    long atraso = consumirFicha(prioridade);
+    if (atraso < 0) {
+      devolverCota(chave);
+      negadas[prioridade.ordinal()].increment();
+      throw new Esgotado("Muitas consultas à OMDb no momento; tente mais tarde");
+    }
+    if (atraso > 0) {
+      try {
+        Thread.sleep(atraso / 1_000_000, (int) (atraso % 1_000_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrompido aguardando vez na OMDb");
+      }
+    }
+    return chaves[chave];
+  }
+
+  /**
+   * Devolve à cota e ao balde uma reserva que não chegou a ser enviada.
+   *
+   * @param chave a chave obtida em {@link #reservar(Prioridade)}.
+   */
+  public void devolver(String chave) {
+    int indice = indice(chave);
+    if (indice < 0) {
+      return;
+    }
+    devolverCota(indice);
+    devolverFicha();
+  }
+
+  private void devolverCota(int indice) {
+    long hoje = hoje();
+    long uso;
+    do {
+      uso = usos.get(indice);
+      if (uso >>> 32 != hoje || (int) uso == 0) {
+        return;
+      }
+    } while (!usos.compareAndSet(indice, uso, uso - 1));
+  }
+
+  /**
+   * Recua o instante teórico de chegada em um intervalo, sem passar do
+   * instante atual: com o balde já cheio, não há ficha a devolver.
+   */
+  private void devolverFicha() {
+    while (true) {
+      long agora = System.nanoTime();
+      long chegada = chegadaTeorica.get();
+      if (chegada - agora <= 0) {
+        return;
+      }
+      long nova = chegada - intervalo - agora > 0 ? chegada - intervalo : agora;
+      if (chegadaTeorica.compareAndSet(chegada, nova)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Marca a cota da chave como esgotada até o fim do dia, quando a própria
+   * OMDb recusa a requisição por limite.
+   *
+   * @param chave a chave recusada.
+   */
+  public void esgotar(String chave) {
+    int indice = indice(chave);
+    if (indice >= 0) {
+      usos.set(indice, hoje() << 32 | cota);
+    }
+  }
+
+  /**
+   * @param indice a posição da chave na configuração.
+   * @return requisições que a chave ainda pode fazer hoje.
+   */
+  public int getRestante(int indice) {
+    long uso = usos.get(indice);
+    return uso >>> 32 == hoje() ? Math.max(0, cota - (int) uso) : cota;
+  }
+
+  /**
+   * @return quantidade de chaves configuradas.
+   */
+  public int getChaves() {
+    return chaves.length;
+  }
+
+  /**
+   * @return o tempo máximo, em milissegundos, que uma busca interativa
+   *         aguarda na fila.
+   */
+  public long getEspera() {
+    return espera / 1_000_000L;
+  }
+
+  /**
+   * @param prioridade a prioridade.
+   * @return requisições recusadas por falta de ficha ou cota.
+   */
+  public long getNegadas(Prioridade prioridade) {
+    return negadas[prioridade.ordinal()].sum();
+  }
+
+  /**
+   * Consome uma unidade da cota da primeira chave, a partir da vez do
+   * rodízio, que ainda esteja acima da reserva da prioridade.
+   *
+   * @return o índice da chave, ou {@code -1} se nenhuma tiver cota.
+   */
+  private int consumirCota(Prioridade prioridade) {
+    long hoje = hoje();
+    int limite = cota - cota * prioridade.reservaCota / 100;
+    int inicio = proxima.getAndIncrement();
+    for (int i = 0; i < chaves.length; i++) {
+      int indice = Math.floorMod(inicio + i, chaves.length);
+      while (true) {
+        long uso = usos.get(indice);
+        int usadas = uso >>> 32 == hoje ? (int) uso : 0;
+        if (usadas >= limite) {
+          break;
+        }
+        if (usos.compareAndSet(indice, uso, hoje << 32 | (usadas + 1))) {
+          return indice;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Retira uma ficha do balde.
+   *
+   * @return quanto aguardar pela ficha em nanossegundos, ou {@code -1} se não
+   *         houver ficha dentro da espera permitida à prioridade.
+   */
+  private long consumirFicha(Prioridade prioridade) {
+    long limite = rajada - rajada * prioridade.reservaBalde / 100;
+    long tolerada = prioridade == Prioridade.INTERATIVA ? espera : 0;
+    while (true) {
+      long agora = System.nanoTime();
+      long chegada = chegadaTeorica.get();
+      long nova = (chegada - agora > 0 ? chegada : agora) + intervalo;
+      long atraso = nova - agora - limite;
+      if (atraso > tolerada) {
+        return -1;
+      }
+      if (chegadaTeorica.compareAndSet(chegada, nova)) {
+        return Math.max(0, atraso);
+      }
+    }
+  }
+
+  private int indice(String chave) {
+    for (int i = 0; i < chaves.length; i++) {
+      if (chaves[i].equals(chave)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static long hoje() {
+    return System.currentTimeMillis() / 86_400_000L;
+  }
+}
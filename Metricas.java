@@ -0,0 +1,227 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe {@code Metricas} reúne os contadores e histogramas do servidor,
+ * expostos em {@code /metrics} no formato de texto do Prometheus.
+ *
+ * São medidos o tempo total de cada requisição por rota e o tempo de cada
+ * fase do atendimento (leitura do cabeçalho, consulta com cache, requisição
+ * à OMDb, montagem do HTML e escrita no socket), além das respostas da OMDb
+ * por status, do uso do cache, das conexões abertas e dos erros por tipo.
+ * Nenhum registro trava ou cria objetos, exceto o primeiro erro de cada tipo.
+ *
+ * No {@link ServidorNIO} a escrita é feita pelo seletor sem bloquear, então
+ * não há fase de escrita e o tempo da requisição vai até a resposta entrar
+ * na fila de saída.
+ */
+public class Metricas {
+  /**
+   * Tipo de conteúdo do formato de texto do Prometheus.
+   */
+  public static final String TIPO_CONTEUDO = "text/plain; version=0.0.4; charset=utf-8";
+
+  public static final Histograma LEITURA = new Histograma();
+  public static final Histograma CONSULTA = new Histograma();
+  public static final Histograma OMDB = new Histograma();
+  public static final Histograma RENDERIZACAO = new Histograma();
+  public static final Histograma ESCRITA = new Histograma();
+
+  private static final Histograma[] REQUISICOES = new Histograma[Roteador.rotas().size()];
+  private static final AtomicLongArray STATUS_OMDB = new AtomicLongArray(600);
+  private static final LongAdder FALHAS_OMDB = new LongAdder();
+  private static final LongAdder RESPOSTAS_VENCIDAS = new LongAdder();
+  private static final AtomicLongArray RECUSADAS = new AtomicLongArray(600);
+  private static final LongAdder CONEXOES = new LongAdder();
+  private static final Map<String, LongAdder> ERROS = new ConcurrentHashMap<>();
+
+  static {
+    for (int i = 0; i < REQUISICOES.length; i++) {
+      REQUISICOES[i] = new Histograma();
+    }
+  }
+
+  /**
+   * Registra o tempo total de atendimento de uma requisição.
+   *
+   * @param rota  o índice da rota, de {@link Roteador.Rota#indice()}.
+   * @param nanos a duração em nanossegundos.
+   */
+  public static void registrarRequisicao(int rota, long nanos) {
+    REQUISICOES[rota].registrar(nanos);
+  }
+
+  /**
+   * Registra o status de uma resposta da OMDb.
+   *
+   * @param status o status HTTP.
+   */
+  public static void registrarStatusOmdb(int status) {
+    if (status >= 0 && status < STATUS_OMDB.length()) {
+      STATUS_OMDB.incrementAndGet(status);
+    }
+  }
+
+  /**
+   * Registra uma requisição à OMDb que falhou sem resposta.
+   */
+  public static void registrarFalhaOmdb() {
+    FALHAS_OMDB.increment();
+  }
+
+  /**
+   * Registra uma requisição recusada pela leitura do cabeçalho.
+   *
+   * @param status o código e a descrição do status da recusa.
+   */
+  public static void registrarRecusada(String status) {
+    int codigo = Integer.parseInt(status.substring(0, 3));
+    if (codigo < RECUSADAS.length()) {
+      RECUSADAS.incrementAndGet(codigo);
+    }
+  }
+
+  /**
+   * Registra uma resposta vencida do cache servida porque o limite da OMDb
+   * não permitiu renová-la.
+   */
+  public static void registrarRespostaVencida() {
+    RESPOSTAS_VENCIDAS.increment();
+  }
+
+  /**
+   * Registra a abertura de uma conexão de cliente.
+   */
+  public static void conexaoAberta() {
+    CONEXOES.increment();
+  }
+
+  /**
+   * Registra o fechamento de uma conexão de cliente.
+   */
+  public static void conexaoFechada() {
+    CONEXOES.decrement();
+  }
+
+  /**
+   * Registra um erro no atendimento, contado pelo nome da exceção.
+   *
+   * @param erro o erro ocorrido.
+   */
+  public static void registrarErro(Throwable erro) {
+    ERROS.computeIfAbsent(erro.getClass().getSimpleName(), tipo -> new LongAdder()).increment();
+  }
+
+  /**
+   * Escreve todas as métricas no formato de texto do Prometheus.
+   *
+   * @param saida o buffer de saída.
+   */
+  public static void escrever(SaidaBytes saida) {
+    cabecalho(saida, "buscafilmes_requisicao_segundos", "histogram", "Tempo de atendimento das requisições por rota.");
+    for (Roteador.Rota rota : Roteador.rotas()) {
+      REQUISICOES[rota.indice()].escrever(saida, "buscafilmes_requisicao_segundos", "rota=\"" + rota.nome() + "\"");
+    }
+    cabecalho(saida, "buscafilmes_fase_segundos", "histogram", "Tempo de cada fase do atendimento.");
+    LEITURA.escrever(saida, "buscafilmes_fase_segundos", "fase=\"leitura\"");
+    CONSULTA.escrever(saida, "buscafilmes_fase_segundos", "fase=\"consulta\"");
+    OMDB.escrever(saida, "buscafilmes_fase_segundos", "fase=\"omdb\"");
+    RENDERIZACAO.escrever(saida, "buscafilmes_fase_segundos", "fase=\"renderizacao\"");
+    ESCRITA.escrever(saida, "buscafilmes_fase_segundos", "fase=\"escrita\"");
+
+    cabecalho(saida, "buscafilmes_omdb_respostas_total", "counter", "Respostas da OMDb por status.");
+    for (int status = 0; status < STATUS_OMDB.length(); status++) {
+      long total = STATUS_OMDB.get(status);
+      if (total > 0) {
+        saida.escreverTexto("buscafilmes_omdb_respostas_total{status=\"" + status + "\"} " + total + "\n");
+      }
+    }
+    contador(saida, "buscafilmes_omdb_falhas_total", "Requisições à OMDb sem resposta.", FALHAS_OMDB.sum());
+    cabecalho(saida, "buscafilmes_omdb_negadas_total", "counter",
+        "Requisições à OMDb recusadas pelo limite local, por prioridade.");
+    for (LimiteOMDB.Prioridade prioridade : LimiteOMDB.Prioridade.values()) {
+      saida.escreverTexto("buscafilmes_omdb_negadas_total{prioridade=\"" + prioridade.name().toLowerCase(Locale.ROOT)
+          + "\"} " + Cliente.LIMITE.getNegadas(prioridade) + "\n");
+    }
+    // As chaves são identificadas pela posição, para não expô-las
+    cabecalho(saida, "buscafilmes_omdb_cota_restante", "gauge", "Requisições que cada chave da API ainda pode fazer hoje.");
+    for (int i = 0; i < Cliente.LIMITE.getChaves(); i++) {
+      saida.escreverTexto("buscafilmes_omdb_cota_restante{chave=\"" + i + "\"} " + Cliente.LIMITE.getRestante(i) + "\n");
+    }
+    contador(saida, "buscafilmes_cache_vencidas_total", "Respostas vencidas servidas por falta de cota na OMDb.",
+        RESPOSTAS_VENCIDAS.sum());
+
+    cabecalho(saida, "buscafilmes_requisicoes_recusadas_total", "counter",
+        "Requisições recusadas na leitura, por status (cabeçalho inválido, grande demais ou lento demais).");
+    for (int status = 0; status < RECUSADAS.length(); status++) {
+      long total = RECUSADAS.get(status);
+      if (total > 0) {
+        saida.escreverTexto("buscafilmes_requisicoes_recusadas_total{status=\"" + status + "\"} " + total + "\n");
+      }
+    }
+
+    contador(saida, "buscafilmes_cache_acertos_total", "Consultas atendidas pelo cache.", Cliente.CACHE.getAcertos());
+    contador(saida, "buscafilmes_cache_falhas_total", "Consultas que não estavam no cache.",
+        Cliente.CACHE.getFalhas());
+    contador(saida, "buscafilmes_cache_remocoes_total", "Entradas descartadas do cache por falta de espaço.",
+        Cliente.CACHE.getRemocoes());
+    medida(saida, "buscafilmes_cache_entradas", "Entradas no cache.", Cliente.CACHE.getTamanho());
+    contador(saida, "buscafilmes_consultas_agrupadas_total", "Buscas que aproveitaram outra idêntica em andamento.",
+        Cliente.EM_ANDAMENTO.getAgrupadas());
+    if (Cliente.ACERVO != null) {
+      medida(saida, "buscafilmes_acervo_respostas", "Respostas guardadas no acervo em disco.",
+          Cliente.ACERVO.getTamanho());
+    }
+    if (Cliente.POSTERS != null) {
+      contador(saida, "buscafilmes_posters_acertos_total", "Posters servidos do cache em disco.",
+          Cliente.POSTERS.getAcertos());
+      contador(saida, "buscafilmes_posters_baixados_total", "Posters baixados da origem.",
+          Cliente.POSTERS.getBaixados());
+      contador(saida, "buscafilmes_posters_remocoes_total", "Posters apagados do disco por falta de espaço.",
+          Cliente.POSTERS.getRemocoes());
+      medida(saida, "buscafilmes_posters_bytes", "Bytes dos posters em disco.", Cliente.POSTERS.getOcupado());
+    }
+    if (Cliente.GRUPO != null) {
+      contador(saida, "buscafilmes_grupo_repassadas_total", "Consultas pedidas ao nó dono do título.",
+          Cliente.GRUPO.getRepassadas());
+      contador(saida, "buscafilmes_grupo_atendidas_total", "Consultas de outros nós atendidas por este.",
+          Cliente.GRUPO.getAtendidas());
+      contador(saida, "buscafilmes_grupo_falhas_total", "Consultas buscadas localmente com o dono fora do ar.",
+          Cliente.GRUPO.getFalhas());
+      contador(saida, "buscafilmes_grupo_recusadas_total",
+          "Conexões de outros nós recusadas por falta de thread ou origem fora do grupo.", Cliente.GRUPO.getRecusadas());
+      contador(saida, "buscafilmes_grupo_proximo_acertos_total", "Respostas de outros nós servidas do cache próximo.",
+          Cliente.GRUPO.getAcertosProximo());
+    }
+    medida(saida, "buscafilmes_titulos_indexados", "Títulos no índice de sugestões.", Cliente.TITULOS.getTamanho());
+    contador(saida, "buscafilmes_aquecimento_requisicoes_total", "Requisições à OMDb feitas pelo aquecimento do cache.",
+        Cliente.AQUECEDOR.getRequisicoes());
+    contador(saida, "buscafilmes_aquecimento_adiadas_total",
+        "Vezes em que o aquecimento esperou por uma conexão livre ou por cota na OMDb.", Cliente.AQUECEDOR.getAdiadas());
+    medida(saida, "buscafilmes_aquecimento_orcamento_restante", "Requisições do aquecimento que restam hoje.",
+        Cliente.AQUECEDOR.getOrcamentoRestante());
+    medida(saida, "buscafilmes_conexoes_ativas", "Conexões de clientes abertas.", CONEXOES.sum());
+
+    cabecalho(saida, "buscafilmes_erros_total", "counter", "Erros no atendimento por tipo.");
+    new TreeMap<>(ERROS).forEach((tipo, total) -> saida
+        .escreverTexto("buscafilmes_erros_total{tipo=\"" + tipo + "\"} " + total.sum() + "\n"));
+  }
+
+  private static void cabecalho(SaidaBytes saida, String nome, String tipo, String ajuda) {
+    saida.escreverTexto("# HELP " + nome + " " + ajuda + "\n# TYPE " + nome + " " + tipo + "\n");
+  }
+
+  private static void contador(SaidaBytes saida, String nome, String ajuda, long valor) {
+    cabecalho(saida, nome, "counter", ajuda);
+    saida.escreverTexto(nome + " " + valor + "\n");
+  }
+
+  private static void medida(SaidaBytes saida, String nome, String ajuda, long valor) {
+    cabecalho(saida, nome, "gauge", ajuda);
+    saida.escreverTexto(nome + " " + valor + "\n");
+  }
+}
@@ -0,0 +1,166 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A classe {@code Modelo} é um template HTML compilado uma única vez em uma
+ * sequência de trechos fixos, já codificados em UTF-8, e de campos.
+ *
+ * A sintaxe é um subconjunto do Mustache:
+ * <ul>
+ * <li>{@code {{nome}}} insere o valor escapado para HTML;</li>
+ * <li>{@code {{nome:url}}} insere o valor escapado se for uma URL
+ * {@code http} ou {@code https} ou um caminho do próprio servidor, e nada
+ * caso contrário;</li>
+ * <li>{@code {{#nome}}...{{/nome}}} inclui o trecho se o valor existir e não
+ * for {@code "N/A"};</li>
+ * <li>{@code {{^nome}}...{{/nome}}} inclui o trecho no caso contrário.</li>
+ * </ul>
+ *
+ * Os nomes dos campos são fixados na compilação e os valores são passados na
+ * mesma ordem em {@link #renderizar(SaidaBytes, String...)}, que escreve
+ * direto no buffer de saída.
+ */
+public class Modelo {
+  private static final int ESTATICO = 0;
+  private static final int TEXTO = 1;
+  private static final int URL = 2;
+  private static final int SECAO = 3;
+  private static final int SECAO_INVERTIDA = 4;
+
+  /**
+   * Trecho compilado do template.
+   */
+  private static final class Segmento {
+    final int tipo;
+    final byte[] bytes;
+    final int campo;
+    final Segmento[] filhos;
+
+    Segmento(int tipo, byte[] bytes, int campo, Segmento[] filhos) {
+      this.tipo = tipo;
+      this.bytes = bytes;
+      this.campo = campo;
+      this.filhos = filhos;
+    }
+  }
+
+  private final Segmento[] segmentos;
+  private final int campos;
+
+  private Modelo(Segmento[] segmentos, int campos) {
+    this.segmentos = segmentos;
+    this.campos = campos;
+  }
+
+  /**
+   * Compila um template.
+   *
+   * @param template o texto do template.
+   * @param nomes    os nomes dos campos, na ordem em que os valores serão
+   *                 passados.
+   * @return o template compilado.
+   * @throws IllegalArgumentException se o template usar um campo não listado
+   *                                  ou tiver seções mal aninhadas.
+   */
+  public static Modelo compilar(String template, String... nomes) {
+    List<String> lista = Arrays.asList(nomes);
+    Deque<List<Segmento>> pilha = new ArrayDeque<>();
+    Deque<Segmento> abertas = new ArrayDeque<>();
+    List<Segmento> atual = new ArrayList<>();
+    int posicao = 0;
+
+    while (posicao < template.length()) {
+      int inicio = template.indexOf("{{", posicao);
+      if (inicio < 0) {
+        inicio = template.length();
+      }
+      if (inicio > posicao) {
+        byte[] fixo = template.substring(posicao, inicio).getBytes(StandardCharsets.UTF_8);
+        atual.add(new Segmento(ESTATICO, fixo, -1, null));
+      }
+      if (inicio == template.length()) {
+        break;
+      }
+      int fim = template.indexOf("}}", inicio);
+      if (fim < 0) {
+        throw new IllegalArgumentException("Marcação não fechada na posição " + inicio);
+      }
+      String marcacao = template.substring(inicio + 2, fim).trim();
+      posicao = fim + 2;
+
+      char prefixo = marcacao.charAt(0);
+      if (prefixo == '#' || prefixo == '^') {
+        int campo = indice(lista, marcacao.substring(1));
+        abertas.push(new Segmento(prefixo == '#' ? SECAO : SECAO_INVERTIDA, null, campo, null));
+        pilha.push(atual);
+        atual = new ArrayList<>();
+      } else if (prefixo == '/') {
+        int campo = indice(lista, marcacao.substring(1));
+        if (abertas.isEmpty() || abertas.peek().campo != campo) {
+          throw new IllegalArgumentException("Seção fechada sem abrir: " + marcacao);
+        }
+        Segmento aberta = abertas.pop();
+        Segmento secao = new Segmento(aberta.tipo, null, campo, atual.toArray(new Segmento[0]));
+        atual = pilha.pop();
+        atual.add(secao);
+      } else if (marcacao.endsWith(":url")) {
+        atual.add(new Segmento(URL, null, indice(lista, marcacao.substring(0, marcacao.length() - 4)), null));
+      } else {
+        atual.add(new Segmento(TEXTO, null, indice(lista, marcacao), null));
+      }
+    }
+    if (!abertas.isEmpty()) {
+      throw new IllegalArgumentException("Seção não fechada");
+    }
+    return new Modelo(atual.toArray(new Segmento[0]), nomes.length);
+  }
+
+  private static int indice(List<String> nomes, String nome) {
+    int indice = nomes.indexOf(nome.trim());
+    if (indice < 0) {
+      throw new IllegalArgumentException("Campo desconhecido no template: " + nome);
+    }
+    return indice;
+  }
+
+  /**
+   * Escreve o template preenchido no buffer de saída.
+   *
+   * @param saida   o buffer de saída.
+   * @param valores os valores dos campos, na ordem da compilação.
+   */
+  public void renderizar(SaidaBytes saida, String... valores) {
+    if (valores.length != campos) {
+      throw new IllegalArgumentException("Esperados " + campos + " valores, recebidos " + valores.length);
+    }
+    renderizar(segmentos, saida, valores);
+  }
+
+  private static void renderizar(Segmento[] segmentos, SaidaBytes saida, String[] valores) {
+    for (Segmento segmento : segmentos) {
+      switch (segmento.tipo) {
+        case ESTATICO -> saida.escrever(segmento.bytes);
+        case TEXTO -> {
+          String valor = valores[segmento.campo];
+          if (valor != null) {
+            saida.escreverHtml(valor);
+          }
+        }
+        case URL -> {
+          String valor = valores[segmento.campo];
+          if (valor != null && (valor.startsWith("https://") || valor.startsWith("http://")
+              || (valor.startsWith("/") && !valor.startsWith("//")))) {
+            saida.escreverHtml(valor);
+          }
+        }
+        default -> {
+          String valor = valores[segmento.campo];
+          boolean presente = valor != null && !valor.isEmpty() && !valor.equals("N/A");
+          if (presente == (segmento.tipo == SECAO)) {
+            renderizar(segmento.filhos, saida, valores);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,189 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A classe {@code PaginaEstatica} guarda as respostas HTTP completas
+ * (cabeçalho e corpo) de uma página que não muda, montadas uma única vez.
+ *
+ * Para cada combinação de conexão persistente ou não, corpo original ou
+ * compactado com gzip, e resposta 200 ou 304 (quando o {@code If-None-Match}
+ * do cliente coincide com o {@code ETag} da variante) existe uma resposta
+ * pronta, em um vetor de bytes para os fluxos bloqueantes e em um buffer
+ * direto para o {@link ServidorNIO}. Atender a página é só copiar os bytes
+ * para a saída.
+ *
+ * Como os bytes das duas variantes diferem, cada uma tem seu próprio
+ * {@code ETag} forte: o do corpo compactado termina em {@code -gz}. Um 304 só
+ * é respondido quando o cliente já tem a variante que receberia.
+ */
+public class PaginaEstatica {
+  private static final int COMPLETA = 0;
+  private static final int GZIP = 1;
+  private static final int NAO_MODIFICADA = 2;
+  private static final int NAO_MODIFICADA_GZIP = 3;
+
+  private final String etag;
+  private final String etagGzip;
+  private final byte[][] respostas = new byte[8][];
+  private final ByteBuffer[] diretas = new ByteBuffer[8];
+
+  /**
+   * Monta as respostas da página.
+   *
+   * @param contentType o tipo do conteúdo (ex.: "text/html").
+   * @param conteudo    o conteúdo da página.
+   */
+  public PaginaEstatica(String contentType, String conteudo) {
+    byte[] corpo = conteudo.getBytes(StandardCharsets.UTF_8);
+    byte[] compactado = compactar(corpo);
+    String hash = resumo(corpo);
+    this.etag = "\"" + hash + "\"";
+    this.etagGzip = "\"" + hash + "-gz\"";
+    String validacao = "ETag: " + etag + "\r\nCache-Control: no-cache\r\nVary: Accept-Encoding\r\n";
+    String validacaoGzip = "ETag: " + etagGzip + "\r\nCache-Control: no-cache\r\nVary: Accept-Encoding\r\n";
+
+    for (int i = 0; i < 2; i++) {
+      boolean keepAlive = i == 0;
+      respostas[indice(COMPLETA, keepAlive)] = juntar(Cliente.cabecalhoResposta("200 OK", contentType,
+          corpo.length, validacao, keepAlive), corpo);
+      respostas[indice(GZIP, keepAlive)] = juntar(Cliente.cabecalhoResposta("200 OK", contentType,
+          compactado.length, validacaoGzip + "Content-Encoding: gzip\r\n", keepAlive), compactado);
+      respostas[indice(NAO_MODIFICADA, keepAlive)] = Cliente.cabecalhoResposta("304 Not Modified", null, -1,
+          validacao, keepAlive);
+      respostas[indice(NAO_MODIFICADA_GZIP, keepAlive)] = Cliente.cabecalhoResposta("304 Not Modified", null, -1,
+          validacaoGzip, keepAlive);
+    }
+    for (int i = 0; i < respostas.length; i++) {
+      ByteBuffer direta = ByteBuffer.allocateDirect(respostas[i].length);
+      direta.put(respostas[i]).flip();
+      diretas[i] = direta.asReadOnlyBuffer();
+    }
+  }
+
+  /**
+   * Escreve a resposta adequada à requisição no fluxo.
+   *
+   * @param out            o fluxo de saída do cliente.
+   * @param ifNoneMatch    o cabeçalho {@code If-None-Match} ou {@code null}.
+   * @param acceptEncoding o cabeçalho {@code Accept-Encoding} ou {@code null}.
+   * @param keepAlive      se a conexão continuará aberta após a resposta.
+   * @throws IOException em caso de falha na escrita.
+   */
+  public void escrever(OutputStream out, String ifNoneMatch, String acceptEncoding, boolean keepAlive)
+      throws IOException {
+    out.write(respostas[escolher(ifNoneMatch, acceptEncoding, keepAlive)]);
+  }
+
+  /**
+   * Devolve a resposta adequada à requisição como um buffer direto próprio
+   * para escrita em canal. O buffer é uma visão independente e pode ser
+   * consumido sem afetar as demais requisições.
+   *
+   * @param ifNoneMatch    o cabeçalho {@code If-None-Match} ou {@code null}.
+   * @param acceptEncoding o cabeçalho {@code Accept-Encoding} ou {@code null}.
+   * @param keepAlive      se a conexão continuará aberta após a resposta.
+   * @return a resposta completa.
+   */
+  public ByteBuffer resposta(String ifNoneMatch, String acceptEncoding, boolean keepAlive) {
+    return diretas[escolher(ifNoneMatch, acceptEncoding, keepAlive)].duplicate();
+  }
+
+  /**
+   * @return o {@code ETag} do corpo original, entre aspas.
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @return o {@code ETag} do corpo compactado com gzip, entre aspas.
+   */
+  public String getEtagGzip() {
+    return etagGzip;
+  }
+
+  private int escolher(String ifNoneMatch, String acceptEncoding, boolean keepAlive) {
+    if (aceitaGzip(acceptEncoding)) {
+      return indice(coincide(ifNoneMatch, etagGzip) ? NAO_MODIFICADA_GZIP : GZIP, keepAlive);
+    }
+    return indice(coincide(ifNoneMatch, etag) ? NAO_MODIFICADA : COMPLETA, keepAlive);
+  }
+
+  /**
+   * Verifica se o {@code If-None-Match} inclui o {@code ETag}, com a
+   * comparação fraca exigida para esse cabeçalho (o prefixo {@code W/} é
+   * ignorado). Usado também pelos posters.
+   *
+   * @param ifNoneMatch o cabeçalho {@code If-None-Match} ou {@code null}.
+   * @param etag        o {@code ETag} da resposta, entre aspas.
+   * @return {@code true} se o cliente já tem a resposta.
+   */
+  static boolean coincide(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String opcao : ifNoneMatch.split(",")) {
+      String valor = opcao.trim();
+      if (valor.startsWith("W/")) {
+        valor = valor.substring(2);
+      }
+      if (valor.equals(etag) || valor.equals("*")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int indice(int variante, boolean keepAlive) {
+    return variante * 2 + (keepAlive ? 0 : 1);
+  }
+
+  /**
+   * Verifica se o cliente aceita gzip, respeitando {@code q=0}.
+   */
+  private static boolean aceitaGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String opcao : acceptEncoding.split(",")) {
+      String[] partes = opcao.trim().split(";");
+      if (partes[0].trim().equalsIgnoreCase("gzip")) {
+        return partes.length < 2 || !partes[1].replace(" ", "").matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  private static byte[] juntar(byte[] cabecalho, byte[] corpo) {
+    byte[] resposta = new byte[cabecalho.length + corpo.length];
+    System.arraycopy(cabecalho, 0, resposta, 0, cabecalho.length);
+    System.arraycopy(corpo, 0, resposta, cabecalho.length, corpo.length);
+    return resposta;
+  }
+
+  private static byte[] compactar(byte[] corpo) {
+    ByteArrayOutputStream saida = new ByteArrayOutputStream(corpo.length / 2);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(saida)) {
+      gzip.write(corpo);
+    } catch (IOException e) {
+      // Escrita em memória não falha
+      throw new UncheckedIOException(e);
+    }
+    return saida.toByteArray();
+  }
+
+  private static String resumo(byte[] corpo) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(corpo);
+      return HexFormat.of().formatHex(hash, 0, 8);
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-256 é obrigatório em toda JVM
+      throw new IllegalStateException(e);
+    }
+  }
+}
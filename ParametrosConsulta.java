@@ -0,0 +1,180 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A classe {@code ParametrosConsulta} lê os pares {@code nome=valor} de uma
+ * query string ou de um formulário {@code application/x-www-form-urlencoded},
+ * decodificando {@code %XX} (em UTF-8) e {@code +} sem expressões regulares
+ * nem {@code split}.
+ *
+ * Cada thread reaproveita a sua própria instância (ver {@link #daThread()}),
+ * e os valores lidos devem ser copiados antes da próxima leitura. Escapes
+ * malformados são mantidos como estão, em vez de recusar o texto inteiro.
+ */
+public class ParametrosConsulta {
+  private static final ThreadLocal<ParametrosConsulta> POR_THREAD = ThreadLocal
+      .withInitial(ParametrosConsulta::new);
+
+  private String[] nomes = new String[8];
+  private String[] valores = new String[8];
+  private int tamanho;
+  private byte[] decodificados = new byte[256];
+
+  /**
+   * @return a instância da thread atual, vazia.
+   */
+  public static ParametrosConsulta daThread() {
+    ParametrosConsulta parametros = POR_THREAD.get();
+    parametros.tamanho = 0;
+    return parametros;
+  }
+
+  /**
+   * Lê os parâmetros da query string de um caminho, se houver.
+   *
+   * @param path o caminho requisitado, com a query string.
+   * @return a instância da thread atual com os parâmetros lidos.
+   */
+  public static ParametrosConsulta daQuery(String path) {
+    ParametrosConsulta parametros = daThread();
+    int interrogacao = path.indexOf('?');
+    if (interrogacao >= 0) {
+      // O caminho guarda os bytes recebidos, um por char (ISO-8859-1)
+      parametros.ler(path, interrogacao + 1, path.length(), true);
+    }
+    return parametros;
+  }
+
+  /**
+   * Acrescenta os parâmetros de um trecho no formato {@code a=1&b=2}.
+   * Parâmetros sem {@code =} têm valor vazio.
+   *
+   * @param texto  o texto com os parâmetros.
+   * @param inicio a posição do primeiro caractere.
+   * @param fim    a posição logo após o último caractere.
+   */
+  public void ler(String texto, int inicio, int fim) {
+    ler(texto, inicio, fim, false);
+  }
+
+  private void ler(String texto, int inicio, int fim, boolean bytes) {
+    int i = inicio;
+    while (i < fim) {
+      int fimPar = texto.indexOf('&', i);
+      if (fimPar < 0 || fimPar > fim) {
+        fimPar = fim;
+      }
+      if (fimPar > i) {
+        int igual = texto.indexOf('=', i);
+        if (igual < 0 || igual > fimPar) {
+          adicionar(decodificar(texto, i, fimPar, bytes), "");
+        } else {
+          adicionar(decodificar(texto, i, igual, bytes), decodificar(texto, igual + 1, fimPar, bytes));
+        }
+      }
+      i = fimPar + 1;
+    }
+  }
+
+  /**
+   * @param nome o nome do parâmetro.
+   * @return o primeiro valor do parâmetro, ou {@code null} se ausente.
+   */
+  public String obter(String nome) {
+    for (int i = 0; i < tamanho; i++) {
+      if (nomes[i].equals(nome)) {
+        return valores[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param nome o nome do parâmetro.
+   * @return {@code true} se o parâmetro está presente, mesmo sem valor.
+   */
+  public boolean contem(String nome) {
+    return obter(nome) != null;
+  }
+
+  /**
+   * @return quantidade de parâmetros lidos, contando os repetidos.
+   */
+  public int tamanho() {
+    return tamanho;
+  }
+
+  /**
+   * @param i a posição do parâmetro, na ordem em que aparece.
+   * @return o nome do parâmetro.
+   */
+  public String nome(int i) {
+    return nomes[i];
+  }
+
+  /**
+   * @param i a posição do parâmetro, na ordem em que aparece.
+   * @return o valor do parâmetro.
+   */
+  public String valor(int i) {
+    return valores[i];
+  }
+
+  private void adicionar(String nome, String valor) {
+    if (tamanho == nomes.length) {
+      nomes = Arrays.copyOf(nomes, tamanho * 2);
+      valores = Arrays.copyOf(valores, tamanho * 2);
+    }
+    nomes[tamanho] = nome;
+    valores[tamanho++] = valor;
+  }
+
+  /**
+   * Decodifica um trecho. Sem escapes nem {@code +}, é apenas uma cópia.
+   *
+   * @param bytes se cada char do texto é um byte recebido, e não um caractere
+   *              já decodificado.
+   */
+  private String decodificar(String texto, int inicio, int fim, boolean bytes) {
+    int i = inicio;
+    while (i < fim && texto.charAt(i) != '%' && texto.charAt(i) != '+' && (!bytes || texto.charAt(i) < 0x80)) {
+      i++;
+    }
+    if (i == fim) {
+      return texto.substring(inicio, fim);
+    }
+    // Pior caso: 3 bytes UTF-8 por char (pares substitutos ocupam 4 em 2 chars)
+    if (decodificados.length < (fim - inicio) * 3) {
+      decodificados = new byte[(fim - inicio) * 3];
+    }
+    int n = 0;
+    for (i = inicio; i < fim; i++) {
+      char c = texto.charAt(i);
+      int alto;
+      int baixo;
+      if (c == '+') {
+        decodificados[n++] = ' ';
+      } else if (c == '%' && i + 2 < fim && (alto = Character.digit(texto.charAt(i + 1), 16)) >= 0
+          && (baixo = Character.digit(texto.charAt(i + 2), 16)) >= 0) {
+        decodificados[n++] = (byte) (alto << 4 | baixo);
+        i += 2;
+      } else if (c < 0x80 || (bytes && c <= 0xFF)) {
+        decodificados[n++] = (byte) c;
+      } else if (c < 0x800) {
+        decodificados[n++] = (byte) (0xC0 | (c >> 6));
+        decodificados[n++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < fim && Character.isLowSurrogate(texto.charAt(i + 1))) {
+        int codigo = Character.toCodePoint(c, texto.charAt(++i));
+        decodificados[n++] = (byte) (0xF0 | (codigo >> 18));
+        decodificados[n++] = (byte) (0x80 | ((codigo >> 12) & 0x3F));
+        decodificados[n++] = (byte) (0x80 | ((codigo >> 6) & 0x3F));
+        decodificados[n++] = (byte) (0x80 | (codigo & 0x3F));
+      } else {
+        decodificados[n++] = (byte) (0xE0 | (c >> 12));
+        decodificados[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        decodificados[n++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return new String(decodificados, 0, n, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,479 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A classe {@code RequisicaoHttp} lê o cabeçalho de uma requisição HTTP/1.x
+ * direto dos bytes recebidos, compartilhada pelos dois modos do servidor.
+ *
+ * A leitura é incremental: os bytes de uma requisição ficam acumulados no
+ * início de um buffer da conexão e, a cada chegada, {@link #analisar} examina
+ * apenas as linhas novas, sem expressões regulares nem {@code split}. Só os
+ * valores usados pelo servidor viram {@code String}. Os limites de tamanho
+ * são verificados durante a leitura, e uma requisição inválida é recusada
+ * com o status adequado (400, 414, 431, 501 ou 505) antes de ocupar mais
+ * memória. O corpo só é delimitado por um único {@code Content-Length}:
+ * {@code Transfer-Encoding} não é suportado, para que o servidor e um proxy
+ * à frente dele nunca discordem de onde termina a requisição.
+ * O prazo para receber a requisição inteira, que responde 408, é controlado
+ * por quem lê da rede, com {@link #TEMPO_REQUISICAO}.
+ *
+ * Uma mesma instância é reaproveitada entre as requisições de uma conexão,
+ * chamando {@link #reiniciar()} depois de consumir cada uma.
+ */
+public class RequisicaoHttp {
+  /**
+   * Tamanho máximo do cabeçalho inteiro, em bytes, e do buffer de entrada das
+   * conexões.
+   */
+  static final int MAXIMO_CABECALHO = 8192;
+  /**
+   * Tamanho máximo do alvo (caminho e query string), em bytes.
+   */
+  static final int MAXIMO_URI = Integer.getInteger("buscafilmes.maxUri", 2048);
+  /**
+   * Tamanho máximo de cada linha do cabeçalho, em bytes.
+   */
+  static final int MAXIMO_LINHA = Integer.getInteger("buscafilmes.maxLinhaCabecalho", 4096);
+  /**
+   * Quantidade máxima de campos no cabeçalho.
+   */
+  static final int MAXIMO_CAMPOS = Integer.getInteger("buscafilmes.maxCabecalhos", 64);
+  /**
+   * Tempo, em milissegundos, para receber uma requisição inteira depois do seu
+   * primeiro byte, contra clientes que enviam o cabeçalho aos poucos.
+   */
+  static final long TEMPO_REQUISICAO = Long.getLong("buscafilmes.tempoRequisicao", 10000);
+
+  /**
+   * Situação da leitura do cabeçalho.
+   */
+  public enum Estado {
+    /** Faltam bytes para completar o cabeçalho. */
+    INCOMPLETA,
+    /** Cabeçalho lido; o corpo começa em {@link #getFimCabecalho()}. */
+    COMPLETA,
+    /** Requisição recusada com {@link #getErro()}. */
+    INVALIDA
+  }
+
+  private static final byte[] CONNECTION = ascii("connection");
+  private static final byte[] IF_NONE_MATCH = ascii("if-none-match");
+  private static final byte[] ACCEPT_ENCODING = ascii("accept-encoding");
+  private static final byte[] CONTENT_TYPE = ascii("content-type");
+  private static final byte[] CONTENT_LENGTH = ascii("content-length");
+  private static final byte[] TRANSFER_ENCODING = ascii("transfer-encoding");
+  private static final byte[] CLOSE = ascii("close");
+  private static final byte[] KEEP_ALIVE = ascii("keep-alive");
+
+  private Estado estado;
+  private int posicao;
+  private int inicioLinha;
+  private int campos;
+  private int fimCabecalho;
+  private String erro;
+  private String method;
+  private String path;
+  private String version;
+  private boolean keepAlive;
+  private String ifNoneMatch;
+  private String acceptEncoding;
+  private String contentType;
+  private long contentLength;
+  private boolean temContentLength;
+  private boolean temTransferEncoding;
+
+  /**
+   * Cria um leitor pronto para a primeira requisição.
+   */
+  public RequisicaoHttp() {
+    reiniciar();
+  }
+
+  /**
+   * Descarta a requisição lida, para ler a próxima a partir do início do
+   * buffer.
+   */
+  public void reiniciar() {
+    estado = Estado.INCOMPLETA;
+    posicao = 0;
+    inicioLinha = 0;
+    campos = 0;
+    fimCabecalho = -1;
+    erro = null;
+    method = null;
+    path = null;
+    version = null;
+    keepAlive = false;
+    ifNoneMatch = null;
+    acceptEncoding = null;
+    contentType = null;
+    contentLength = 0;
+    temContentLength = false;
+    temTransferEncoding = false;
+  }
+
+  /**
+   * Continua a leitura do cabeçalho com os bytes recebidos até agora. A
+   * requisição começa na posição 0 do buffer; os bytes já examinados em
+   * chamadas anteriores não são lidos de novo.
+   *
+   * @param dados   o buffer de entrada da conexão.
+   * @param tamanho quantidade de bytes válidos no buffer.
+   * @return a situação da leitura.
+   */
+  public Estado analisar(byte[] dados, int tamanho) {
+    while (estado == Estado.INCOMPLETA && posicao < tamanho) {
+      if (dados[posicao++] != '\n') {
+        continue;
+      }
+      int fim = posicao - 1;
+      if (fim > inicioLinha && dados[fim - 1] == '\r') {
+        fim--;
+      }
+      if (fim - inicioLinha > (method == null ? MAXIMO_URI + 32 : MAXIMO_LINHA)) {
+        return recusar(method == null ? "414 URI Too Long" : "431 Request Header Fields Too Large");
+      }
+      if (method == null) {
+        // Linhas em branco antes da requisição devem ser ignoradas
+        if (fim > inicioLinha) {
+          lerLinhaRequisicao(dados, inicioLinha, fim);
+        }
+      } else if (fim == inicioLinha) {
+        if (temTransferEncoding) {
+          // O corpo seria lido com um tamanho diferente do que o cliente
+          // enviou, e o resto viraria a próxima requisição da conexão
+          return recusar(temContentLength ? "400 Bad Request" : "501 Not Implemented");
+        }
+        fimCabecalho = posicao;
+        estado = Estado.COMPLETA;
+      } else if (++campos > MAXIMO_CAMPOS) {
+        return recusar("431 Request Header Fields Too Large");
+      } else {
+        lerCampo(dados, inicioLinha, fim);
+      }
+      inicioLinha = posicao;
+    }
+    if (estado == Estado.INCOMPLETA) {
+      // Linha ou cabeçalho ainda sem fim, mas já maior que o permitido
+      if (method == null && posicao - inicioLinha > MAXIMO_URI + 32) {
+        return recusar("414 URI Too Long");
+      }
+      if (posicao - inicioLinha > MAXIMO_LINHA || tamanho >= MAXIMO_CABECALHO) {
+        return recusar("431 Request Header Fields Too Large");
+      }
+    }
+    return estado;
+  }
+
+  /**
+   * Monta a resposta, sem corpo e encerrando a conexão, de uma requisição
+   * recusada.
+   *
+   * @param status o código e a descrição do status.
+   * @return o cabeçalho da resposta.
+   */
+  static byte[] resposta(String status) {
+    Metricas.registrarRecusada(status);
+    return Cliente.cabecalhoResposta(status, null, 0, "", false);
+  }
+
+  /**
+   * @return o status da recusa, quando {@link Estado#INVALIDA}.
+   */
+  public String getErro() {
+    return erro;
+  }
+
+  /**
+   * @return a posição logo após a linha em branco que encerra o cabeçalho.
+   */
+  public int getFimCabecalho() {
+    return fimCabecalho;
+  }
+
+  /**
+   * @return o método HTTP.
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return o caminho requisitado, com a query string.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return a versão do protocolo ({@code HTTP/1.0} ou {@code HTTP/1.1}).
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * @return se a conexão deve continuar aberta, pela versão e pelo campo
+   *         {@code Connection}.
+   */
+  public boolean isKeepAlive() {
+    return keepAlive;
+  }
+
+  /**
+   * @return o campo {@code If-None-Match}, ou {@code null}.
+   */
+  public String getIfNoneMatch() {
+    return ifNoneMatch;
+  }
+
+  /**
+   * @return o campo {@code Accept-Encoding}, ou {@code null}.
+   */
+  public String getAcceptEncoding() {
+    return acceptEncoding;
+  }
+
+  /**
+   * @return o campo {@code Content-Type}, ou {@code null}.
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * @return o tamanho do corpo, zero se não informado.
+   */
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Lê {@code METHOD SP alvo SP HTTP/1.x}.
+   */
+  private void lerLinhaRequisicao(byte[] dados, int inicio, int fim) {
+    int espaco = indice(dados, inicio, fim, (byte) ' ');
+    int espaco2 = espaco < 0 ? -1 : indice(dados, espaco + 1, fim, (byte) ' ');
+    if (espaco <= inicio || espaco2 < 0 || espaco2 == espaco + 1 || !token(dados, inicio, espaco)) {
+      recusar("400 Bad Request");
+      return;
+    }
+    if (espaco2 - espaco - 1 > MAXIMO_URI) {
+      recusar("414 URI Too Long");
+      return;
+    }
+    if (!alvoValido(dados, espaco + 1, espaco2)) {
+      recusar("400 Bad Request");
+      return;
+    }
+    int v = espaco2 + 1;
+    if (fim - v != 8 || !comeca(dados, v, "HTTP/") || dados[v + 6] != '.' || !digito(dados[v + 5])
+        || !digito(dados[v + 7])) {
+      recusar("400 Bad Request");
+      return;
+    }
+    if (dados[v + 5] != '1' || (dados[v + 7] != '0' && dados[v + 7] != '1')) {
+      recusar("505 HTTP Version Not Supported");
+      return;
+    }
+    method = metodo(dados, inicio, espaco);
+    path = new String(dados, espaco + 1, espaco2 - espaco - 1, StandardCharsets.ISO_8859_1);
+    keepAlive = dados[v + 7] == '1';
+    version = keepAlive ? "HTTP/1.1" : "HTTP/1.0";
+  }
+
+  /**
+   * Lê um campo {@code Nome: valor}, guardando apenas os usados pelo
+   * servidor.
+   */
+  private void lerCampo(byte[] dados, int inicio, int fim) {
+    int sep = indice(dados, inicio, fim, (byte) ':');
+    // Sem nome, com espaço antes dos dois-pontos ou continuação obsoleta em
+    // várias linhas
+    if (sep <= inicio || !token(dados, inicio, sep)) {
+      recusar("400 Bad Request");
+      return;
+    }
+    int valor = sep + 1;
+    while (valor < fim && (dados[valor] == ' ' || dados[valor] == '\t')) {
+      valor++;
+    }
+    int fimValor = fim;
+    while (fimValor > valor && (dados[fimValor - 1] == ' ' || dados[fimValor - 1] == '\t')) {
+      fimValor--;
+    }
+    if (nome(dados, inicio, sep, CONNECTION)) {
+      if (contemOpcao(dados, valor, fimValor, CLOSE)) {
+        keepAlive = false;
+      } else if (contemOpcao(dados, valor, fimValor, KEEP_ALIVE)) {
+        keepAlive = true;
+      }
+    } else if (nome(dados, inicio, sep, IF_NONE_MATCH)) {
+      ifNoneMatch = texto(dados, valor, fimValor);
+    } else if (nome(dados, inicio, sep, ACCEPT_ENCODING)) {
+      acceptEncoding = texto(dados, valor, fimValor);
+    } else if (nome(dados, inicio, sep, CONTENT_TYPE)) {
+      contentType = texto(dados, valor, fimValor);
+    } else if (nome(dados, inicio, sep, CONTENT_LENGTH)) {
+      long tamanho = 0;
+      // Até 18 dígitos, sem sinal: cabe em um long
+      if (valor == fimValor || fimValor - valor > 18) {
+        recusar("400 Bad Request");
+        return;
+      }
+      for (int i = valor; i < fimValor; i++) {
+        if (!digito(dados[i])) {
+          recusar("400 Bad Request");
+          return;
+        }
+        tamanho = tamanho * 10 + (dados[i] - '0');
+      }
+      // Um campo repetido torna o fim do corpo ambíguo
+      if (temContentLength) {
+        recusar("400 Bad Request");
+        return;
+      }
+      temContentLength = true;
+      contentLength = tamanho;
+    } else if (nome(dados, inicio, sep, TRANSFER_ENCODING)) {
+      // Nenhuma codificação do corpo é aceita, nem mesmo chunked
+      temTransferEncoding = true;
+    }
+  }
+
+  private Estado recusar(String status) {
+    erro = status;
+    estado = Estado.INVALIDA;
+    return estado;
+  }
+
+  /**
+   * Aceita apenas caminhos absolutos, sem caracteres de controle nem espaços
+   * e com os escapes {@code %XX} bem formados.
+   */
+  private static boolean alvoValido(byte[] dados, int inicio, int fim) {
+    if (dados[inicio] != '/') {
+      return false;
+    }
+    for (int i = inicio; i < fim; i++) {
+      int b = dados[i] & 0xFF;
+      if (b <= ' ' || b == 0x7F) {
+        return false;
+      }
+      if (b == '%' && (i + 2 >= fim || !hexa(dados[i + 1]) || !hexa(dados[i + 2]))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reaproveita as constantes dos métodos conhecidos.
+   */
+  private static String metodo(byte[] dados, int inicio, int fim) {
+    if (fim - inicio == 3 && comeca(dados, inicio, "GET")) {
+      return "GET";
+    }
+    if (fim - inicio == 4 && comeca(dados, inicio, "POST")) {
+      return "POST";
+    }
+    if (fim - inicio == 4 && comeca(dados, inicio, "HEAD")) {
+      return "HEAD";
+    }
+    return new String(dados, inicio, fim - inicio, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Compara o nome de um campo, sem diferenciar maiúsculas, com um nome em
+   * minúsculas.
+   */
+  private static boolean nome(byte[] dados, int inicio, int fim, byte[] esperado) {
+    if (fim - inicio != esperado.length) {
+      return false;
+    }
+    for (int i = 0; i < esperado.length; i++) {
+      int c = dados[inicio + i];
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      if (c != esperado[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Procura uma opção em uma lista separada por vírgulas, como
+   * {@code Connection: keep-alive, Upgrade}.
+   */
+  private static boolean contemOpcao(byte[] dados, int inicio, int fim, byte[] opcao) {
+    int i = inicio;
+    while (i < fim) {
+      int fimItem = indice(dados, i, fim, (byte) ',');
+      if (fimItem < 0) {
+        fimItem = fim;
+      }
+      int a = i;
+      int b = fimItem;
+      while (a < b && (dados[a] == ' ' || dados[a] == '\t')) {
+        a++;
+      }
+      while (b > a && (dados[b - 1] == ' ' || dados[b - 1] == '\t')) {
+        b--;
+      }
+      if (nome(dados, a, b, opcao)) {
+        return true;
+      }
+      i = fimItem + 1;
+    }
+    return false;
+  }
+
+  /**
+   * Caracteres permitidos em métodos e nomes de campos (RFC 9110, token).
+   */
+  private static boolean token(byte[] dados, int inicio, int fim) {
+    for (int i = inicio; i < fim; i++) {
+      int b = dados[i] & 0xFF;
+      boolean alfanumerico = (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9');
+      if (!alfanumerico && "!#$%&'*+-.^_`|~".indexOf(b) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indice(byte[] dados, int inicio, int fim, byte procurado) {
+    for (int i = inicio; i < fim; i++) {
+      if (dados[i] == procurado) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean comeca(byte[] dados, int inicio, String prefixo) {
+    for (int i = 0; i < prefixo.length(); i++) {
+      if (dados[inicio + i] != prefixo.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean digito(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private static boolean hexa(byte b) {
+    return digito(b) || ((b | 0x20) >= 'a' && (b | 0x20) <= 'f');
+  }
+
+  private static String texto(byte[] dados, int inicio, int fim) {
+    return new String(dados, inicio, fim - inicio, StandardCharsets.ISO_8859_1);
+  }
+
+  private static byte[] ascii(String texto) {
+    return texto.getBytes(StandardCharsets.US_ASCII);
+  }
+}
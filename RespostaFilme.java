@@ -0,0 +1,17 @@
+/**
+ * Uma resposta da OMDb: o JSON como recebido, que é guardado no acervo e
+ * repassado aos outros nós do grupo, e o {@link Filme} lido dele uma única
+ * vez, usado pelo cache e pelas páginas.
+ *
+ * @param json  o JSON retornado pela API.
+ * @param filme os dados lidos do JSON.
+ */
+public record RespostaFilme(String json, Filme filme) {
+  /**
+   * @param json o JSON retornado pela API.
+   * @return a resposta com o filme lido do JSON.
+   */
+  public static RespostaFilme ler(String json) {
+    return new RespostaFilme(json, LeitorJSON.lerFilme(json));
+  }
+}
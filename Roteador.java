@@ -0,0 +1,438 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * A classe {@code Roteador} decide e executa o atendimento de cada requisição,
+ * igual para os dois modos do servidor.
+ *
+ * As rotas ficam em uma tabela montada uma única vez, indexada pelo método e
+ * pelo caminho sem a query string; qualquer outro caminho cai na rota
+ * {@code outras} (404). O atendimento segue sempre as mesmas etapas: o
+ * servidor lê a requisição ({@link RequisicaoHttp}) e encontra a rota;
+ * {@link Rota#preparar} lê o que a rota precisa sem bloquear e diz como
+ * executá-la; o {@link Manipulador} consulta o cache e a OMDb quando preciso
+ * e escreve a {@link Resposta}; por fim o servidor envia a resposta, na hora
+ * ou, no {@link ServidorNIO}, pelo seletor. As buscas em lote são a exceção:
+ * o corpo é enviado em partes por {@link BuscaLote}.
+ */
+public class Roteador {
+  /**
+   * Uma requisição já lida, com o corpo decodificado.
+   *
+   * @param keepAlive se a conexão continuará aberta após a resposta.
+   */
+  public record Requisicao(String method, String path, String version, boolean keepAlive, String ifNoneMatch,
+      String acceptEncoding, String contentType, String corpo) {
+  }
+
+  /**
+   * Escreve a resposta de uma rota.
+   */
+  @FunctionalInterface
+  public interface Manipulador {
+    /**
+     * @param requisicao a requisição.
+     * @param resposta   a resposta a preencher.
+     * @throws IOException em caso de falha na consulta à OMDb.
+     */
+    void atender(Requisicao requisicao, Resposta resposta) throws IOException;
+  }
+
+  /**
+   * Como atender uma requisição: com um {@link Manipulador}, que pode
+   * aguardar a rede se {@code bloqueante}, ou enviando um lote em partes.
+   *
+   * @param manipulador o que monta a resposta, ou {@code null} para um lote.
+   * @param bloqueante  se o manipulador pode aguardar a OMDb ou o download de
+   *                    uma imagem, e portanto não deve rodar na thread do
+   *                    seletor.
+   * @param lote        os títulos do lote, ou {@code null}.
+   * @param formato     o conteúdo do lote.
+   */
+  public record Atendimento(Manipulador manipulador, boolean bloqueante, BuscaLote.Pedido lote,
+      BuscaLote.Formato formato) {
+  }
+
+  /**
+   * Lê da requisição o que a rota precisa, sem bloquear.
+   */
+  @FunctionalInterface
+  interface Preparo {
+    Atendimento preparar(Requisicao requisicao);
+  }
+
+  /**
+   * Uma rota da tabela.
+   *
+   * @param indice a posição da rota nas métricas.
+   * @param nome   o nome da rota nas métricas.
+   */
+  public record Rota(int indice, String nome, Preparo preparo) {
+    /**
+     * @param requisicao a requisição.
+     * @return como atendê-la.
+     */
+    public Atendimento preparar(Requisicao requisicao) {
+      return preparo.preparar(requisicao);
+    }
+  }
+
+  /**
+   * A resposta de um {@link Manipulador}: um status, um tipo e um corpo
+   * montado no buffer da thread, uma {@link PaginaEstatica} já pronta ou um
+   * arquivo. Cada thread reaproveita a sua própria instância.
+   */
+  public static final class Resposta {
+    private static final ThreadLocal<Resposta> POR_THREAD = ThreadLocal.withInitial(Resposta::new);
+
+    private String status;
+    private String tipo;
+    private SaidaBytes corpo;
+    private PaginaEstatica pagina;
+    private String ifNoneMatch;
+    private String acceptEncoding;
+    private String extras;
+    private FileChannel arquivo;
+    private long tamanhoArquivo;
+
+    private static Resposta daThread() {
+      Resposta resposta = POR_THREAD.get();
+      resposta.status = "200 OK";
+      resposta.tipo = Cliente.TIPO_HTML;
+      resposta.corpo = SaidaBytes.daThread();
+      resposta.pagina = null;
+      resposta.extras = "";
+      resposta.fecharArquivo();
+      return resposta;
+    }
+
+    /**
+     * @param status o código e a descrição do status.
+     * @param tipo   o tipo do conteúdo, ou {@code null} para uma resposta sem
+     *               corpo, como a 304.
+     */
+    public void definir(String status, String tipo) {
+      this.status = status;
+      this.tipo = tipo;
+    }
+
+    /**
+     * @param extras cabeçalhos adicionais, cada um terminado em CRLF.
+     */
+    public void extras(String extras) {
+      this.extras = extras;
+    }
+
+    /**
+     * Responde com o conteúdo de um arquivo, enviado depois do cabeçalho sem
+     * ser copiado para o heap quando o destino é um {@link SocketChannel}.
+     *
+     * @param arquivo o arquivo aberto, fechado pela resposta após o envio.
+     * @param tamanho a quantidade de bytes a enviar.
+     * @param tipo    o tipo do conteúdo.
+     */
+    public void arquivo(FileChannel arquivo, long tamanho, String tipo) {
+      fecharArquivo();
+      this.arquivo = arquivo;
+      this.tamanhoArquivo = tamanho;
+      definir("200 OK", tipo);
+    }
+
+    /**
+     * Entrega o arquivo da resposta a quem vai enviá-lo depois do cabeçalho
+     * de {@link #montar(boolean)}, e que passa a ser responsável por fechá-lo.
+     *
+     * @return o arquivo, ou {@code null} se a resposta não tem arquivo.
+     */
+    public FileChannel entregarArquivo() {
+      FileChannel entregue = arquivo;
+      arquivo = null;
+      return entregue;
+    }
+
+    /**
+     * @return a quantidade de bytes do arquivo da resposta.
+     */
+    public long tamanhoArquivo() {
+      return tamanhoArquivo;
+    }
+
+    /**
+     * @return o buffer onde o corpo é escrito em UTF-8.
+     */
+    public SaidaBytes corpo() {
+      return corpo;
+    }
+
+    /**
+     * Responde com uma página pronta, escolhendo a variante pelos cabeçalhos.
+     *
+     * @param pagina         a página.
+     * @param ifNoneMatch    o cabeçalho {@code If-None-Match} ou {@code null}.
+     * @param acceptEncoding o cabeçalho {@code Accept-Encoding} ou {@code null}.
+     */
+    public void pagina(PaginaEstatica pagina, String ifNoneMatch, String acceptEncoding) {
+      this.pagina = pagina;
+      this.ifNoneMatch = ifNoneMatch;
+      this.acceptEncoding = acceptEncoding;
+    }
+
+    /**
+     * Escreve a resposta completa no fluxo, sem descarregá-lo.
+     *
+     * @param out       o fluxo de saída do cliente.
+     * @param keepAlive se a conexão continuará aberta após a resposta.
+     * @throws IOException em caso de falha na escrita.
+     */
+    public void escreverEm(OutputStream out, boolean keepAlive) throws IOException {
+      if (pagina != null) {
+        pagina.escrever(out, ifNoneMatch, acceptEncoding, keepAlive);
+        return;
+      }
+      out.write(cabecalho(keepAlive));
+      if (arquivo == null) {
+        corpo.escreverEm(out);
+        return;
+      }
+      try (FileChannel origem = entregarArquivo()) {
+        // Sem SocketChannel no modo bloqueante, a cópia passa pelo buffer de saída
+        WritableByteChannel destino = Channels.newChannel(out);
+        for (long enviados = 0; enviados < tamanhoArquivo;) {
+          enviados += origem.transferTo(enviados, tamanhoArquivo - enviados, destino);
+        }
+      }
+    }
+
+    /**
+     * Copia a resposta completa para um buffer próprio, já que o buffer da
+     * thread será reaproveitado. Se a resposta tem um arquivo, só o cabeçalho
+     * é copiado, e o arquivo deve ser obtido com {@link #entregarArquivo()}.
+     *
+     * @param keepAlive se a conexão continuará aberta após a resposta.
+     * @return a resposta pronta para escrita em canal.
+     */
+    public ByteBuffer montar(boolean keepAlive) {
+      if (pagina != null) {
+        return pagina.resposta(ifNoneMatch, acceptEncoding, keepAlive);
+      }
+      byte[] cabecalho = cabecalho(keepAlive);
+      int tamanho = arquivo == null ? corpo.tamanho() : 0;
+      ByteBuffer resposta = ByteBuffer.allocate(cabecalho.length + tamanho);
+      resposta.put(cabecalho).put(corpo.bytes(), 0, tamanho).flip();
+      return resposta;
+    }
+
+    private byte[] cabecalho(boolean keepAlive) {
+      long tamanho = arquivo != null ? tamanhoArquivo : tipo != null ? corpo.tamanho() : -1;
+      return Cliente.cabecalhoResposta(status, tipo, tamanho, extras, keepAlive);
+    }
+
+    private void fecharArquivo() {
+      if (arquivo != null) {
+        try {
+          arquivo.close();
+        } catch (IOException e) {
+          // Nada a fazer
+        }
+        arquivo = null;
+      }
+    }
+  }
+
+  private static final List<Rota> ROTAS = new ArrayList<>();
+  private static final Map<String, Rota> TABELA = new HashMap<>();
+  private static final Rota OUTRAS;
+
+  static {
+    Atendimento formulario = new Atendimento((requisicao, resposta) -> resposta.pagina(Site.FORMULARIO,
+        requisicao.ifNoneMatch(), requisicao.acceptEncoding()), false, null, null);
+    Atendimento metricas = new Atendimento((requisicao, resposta) -> {
+      Metricas.escrever(resposta.corpo());
+      resposta.definir("200 OK", Metricas.TIPO_CONTEUDO);
+    }, false, null, null);
+    Atendimento sugerir = new Atendimento(Roteador::sugerir, false, null, null);
+    Atendimento buscar = new Atendimento(Roteador::buscar, true, null, null);
+    Atendimento naoEncontrada = new Atendimento((requisicao, resposta) -> {
+      resposta.corpo().escreverTexto("<h1>404 Not Found</h1>");
+      resposta.definir("404 Not Found", Cliente.TIPO_HTML);
+    }, false, null, null);
+
+    registrar("formulario", requisicao -> formulario, "GET /");
+    registrar("buscar", requisicao -> buscar, "GET /buscar");
+    registrar("metricas", requisicao -> metricas, "GET /metrics");
+    OUTRAS = registrar("outras", requisicao -> naoEncontrada);
+    registrar("lote", requisicao -> lote(requisicao, BuscaLote.HTML), "GET /buscar/lote", "POST /buscar/lote");
+    registrar("api", Roteador::api, "GET /api/filme", "POST /api/filme");
+    registrar("sugerir", requisicao -> sugerir, "GET /sugerir");
+    Atendimento poster = new Atendimento(Roteador::poster, true, null, null);
+    registrar("poster", requisicao -> poster, "GET /poster/*");
+  }
+
+  /**
+   * Encontra a rota de uma requisição. Chaves da tabela terminadas em
+   * {@code /*}, como {@code GET /poster/*}, valem para os caminhos logo abaixo
+   * do diretório.
+   *
+   * @param method o método HTTP.
+   * @param path   o caminho requisitado, com a query string.
+   * @return a rota, ou a rota {@code outras} se nenhuma corresponder.
+   */
+  public static Rota encontrar(String method, String path) {
+    int interrogacao = path.indexOf('?');
+    String caminho = interrogacao < 0 ? path : path.substring(0, interrogacao);
+    Rota rota = TABELA.get(method + ' ' + caminho);
+    if (rota == null) {
+      rota = TABELA.get(method + ' ' + caminho.substring(0, caminho.lastIndexOf('/') + 1) + '*');
+    }
+    return rota != null ? rota : OUTRAS;
+  }
+
+  /**
+   * @return todas as rotas, na ordem dos seus índices.
+   */
+  public static List<Rota> rotas() {
+    return Collections.unmodifiableList(ROTAS);
+  }
+
+  /**
+   * Executa o manipulador de um atendimento. Uma falha na consulta à OMDb
+   * vira uma resposta 502, em vez de derrubar a conexão.
+   *
+   * @param atendimento o atendimento, sem lote.
+   * @param requisicao  a requisição.
+   * @return a resposta, no objeto da thread atual.
+   */
+  public static Resposta atender(Atendimento atendimento, Requisicao requisicao) {
+    Resposta resposta = Resposta.daThread();
+    try {
+      atendimento.manipulador().atender(requisicao, resposta);
+    } catch (IOException e) {
+      Metricas.registrarErro(e);
+      resposta = Resposta.daThread();
+      resposta.corpo().escreverTexto("<h1>Falha na consulta à OMDb</h1>");
+      resposta.definir("502 Bad Gateway", Cliente.TIPO_HTML);
+    }
+    return resposta;
+  }
+
+  private static Rota registrar(String nome, Preparo preparo, String... chaves) {
+    Rota rota = new Rota(ROTAS.size(), nome, preparo);
+    ROTAS.add(rota);
+    for (String chave : chaves) {
+      TABELA.put(chave, rota);
+    }
+    return rota;
+  }
+
+  /**
+   * Os dados do filme em {@code /buscar}, ou uma página com títulos parecidos
+   * se não houver filme para mostrar.
+   */
+  private static void buscar(Requisicao requisicao, Resposta resposta) throws IOException {
+    Cliente.Busca busca = Cliente.lerBusca(requisicao.path());
+    SaidaBytes corpo = resposta.corpo();
+    if (busca.titulo() == null || busca.titulo().isEmpty()) {
+      corpo.escreverTexto("<h1>Parâmetro 't' (título) não informado</h1>");
+      resposta.definir("400 Bad Request", Cliente.TIPO_HTML);
+      return;
+    }
+    long inicio = System.nanoTime();
+    Filme filme;
+    try {
+      filme = Cliente.consultar(busca.titulo(), busca.sinopseResumida(), LimiteOMDB.Prioridade.INTERATIVA).filme();
+    } catch (LimiteOMDB.Esgotado e) {
+      // Sem cota nem cópia vencida: a página pede para tentar mais tarde
+      Site.renderizarSemFilme(busca.titulo(), e.getMessage(), Cliente.TITULOS.sugerir(busca.titulo()), corpo);
+      resposta.definir("503 Service Unavailable", Cliente.TIPO_HTML);
+      return;
+    }
+    long consultado = System.nanoTime();
+    Metricas.CONSULTA.registrar(consultado - inicio);
+    if (filme.encontrado()) {
+      Site.renderizarFilme(filme, corpo);
+    } else {
+      Site.renderizarSemFilme(busca.titulo(), filme.erro(), Cliente.TITULOS.sugerir(busca.titulo()), corpo);
+    }
+    Metricas.RENDERIZACAO.registrar(System.nanoTime() - consultado);
+    resposta.definir("200 OK", Cliente.TIPO_HTML);
+  }
+
+  /**
+   * As sugestões de títulos em {@code /sugerir}, respondidas pelo índice sem
+   * acessar a OMDb.
+   */
+  private static void sugerir(Requisicao requisicao, Resposta resposta) {
+    String texto = Cliente.lerParametro(requisicao.path(), "q");
+    ApiFilme.escreverSugestoes(texto, Cliente.TITULOS.sugerir(texto == null ? "" : texto), resposta.corpo());
+    resposta.definir("200 OK", ApiFilme.TIPO_JSON);
+  }
+
+  /**
+   * A imagem do poster em {@code /poster/{imdbID}}, do cache em disco. Como o
+   * arquivo de um filme não muda, o navegador pode guardá-lo por um ano.
+   */
+  private static void poster(Requisicao requisicao, Resposta resposta) {
+    int interrogacao = requisicao.path().indexOf('?');
+    String imdbID = requisicao.path().substring("/poster/".length(),
+        interrogacao < 0 ? requisicao.path().length() : interrogacao);
+    CachePosters.Poster poster;
+    try {
+      poster = Cliente.POSTERS == null ? null : Cliente.POSTERS.obter(imdbID);
+      if (poster == null) {
+        resposta.corpo().escreverTexto("<h1>Poster não encontrado</h1>");
+        resposta.definir("404 Not Found", Cliente.TIPO_HTML);
+        return;
+      }
+      resposta.extras("ETag: " + poster.etag() + "\r\nCache-Control: public, max-age=31536000, immutable\r\n");
+      if (PaginaEstatica.coincide(requisicao.ifNoneMatch(), poster.etag())) {
+        resposta.definir("304 Not Modified", null);
+        return;
+      }
+      resposta.arquivo(Cliente.POSTERS.abrirArquivo(poster), poster.tamanho(), poster.tipo());
+    } catch (IOException e) {
+      Metricas.registrarErro(e);
+      resposta.extras("");
+      resposta.corpo().escreverTexto("<h1>Poster indisponível</h1>");
+      resposta.definir("502 Bad Gateway", Cliente.TIPO_HTML);
+    }
+  }
+
+  /**
+   * {@code /api/filme}: um título é respondido como em {@code /buscar}, vários
+   * como um lote em NDJSON.
+   */
+  private static Atendimento api(Requisicao requisicao) {
+    BuscaLote.Pedido pedido = BuscaLote.lerPedido(requisicao.path(), requisicao.contentType(), requisicao.corpo());
+    if (BuscaLote.validar(pedido) != null || ApiFilme.emLote(requisicao.method(), pedido)) {
+      return lote(pedido, ApiFilme.NDJSON, true);
+    }
+    return new Atendimento((r, resposta) -> {
+      String status = ApiFilme.responderUm(pedido.titulos().get(0), pedido.sinopseResumida(), resposta.corpo());
+      resposta.definir(status, ApiFilme.TIPO_JSON);
+    }, true, null, null);
+  }
+
+  private static Atendimento lote(Requisicao requisicao, BuscaLote.Formato formato) {
+    return lote(BuscaLote.lerPedido(requisicao.path(), requisicao.contentType(), requisicao.corpo()), formato, false);
+  }
+
+  /**
+   * Um lote válido é enviado em partes; um inválido recebe 400 na hora.
+   */
+  private static Atendimento lote(BuscaLote.Pedido pedido, BuscaLote.Formato formato, boolean json) {
+    String erro = BuscaLote.validar(pedido);
+    if (erro == null) {
+      return new Atendimento(null, true, pedido, formato);
+    }
+    return new Atendimento((requisicao, resposta) -> {
+      if (json) {
+        ApiFilme.escreverErro(erro, resposta.corpo());
+      } else {
+        resposta.corpo().escreverHtml(erro);
+      }
+      resposta.definir("400 Bad Request", json ? ApiFilme.TIPO_JSON : Cliente.TIPO_HTML);
+    }, false, null, null);
+  }
+}
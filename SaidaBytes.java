@@ -0,0 +1,252 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A classe {@code SaidaBytes} é um buffer de bytes reaproveitável onde as
+ * respostas são montadas diretamente em UTF-8, sem criar {@code String}s
+ * intermediárias.
+ *
+ * Cada thread deve usar a sua própria instância (ver {@link #daThread()}) e
+ * chamar {@link #reiniciar()} antes de montar uma nova resposta.
+ */
+public class SaidaBytes {
+  private static final ThreadLocal<SaidaBytes> POR_THREAD = ThreadLocal.withInitial(() -> new SaidaBytes(8192));
+  private static final byte[] AMP = "&amp;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] LT = "&lt;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] GT = "&gt;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] QUOT = "&quot;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] APOS = "&#39;".getBytes(StandardCharsets.US_ASCII);
+  private static final char[] HEXA = "0123456789abcdef".toCharArray();
+
+  private byte[] bytes;
+  private int tamanho;
+
+  /**
+   * @param capacidade capacidade inicial em bytes.
+   */
+  public SaidaBytes(int capacidade) {
+    this.bytes = new byte[capacidade];
+  }
+
+  /**
+   * @return o buffer da thread atual, já reiniciado.
+   */
+  public static SaidaBytes daThread() {
+    SaidaBytes saida = POR_THREAD.get();
+    saida.reiniciar();
+    return saida;
+  }
+
+  /**
+   * Descarta o conteúdo, mantendo a capacidade.
+   */
+  public void reiniciar() {
+    tamanho = 0;
+  }
+
+  /**
+   * @param dados bytes a acrescentar.
+   */
+  public void escrever(byte[] dados) {
+    escrever(dados, 0, dados.length);
+  }
+
+  /**
+   * @param dados      vetor com os bytes a acrescentar.
+   * @param inicio     posição do primeiro byte.
+   * @param quantidade quantidade de bytes.
+   */
+  public void escrever(byte[] dados, int inicio, int quantidade) {
+    garantir(quantidade);
+    System.arraycopy(dados, inicio, bytes, tamanho, quantidade);
+    tamanho += quantidade;
+  }
+
+  /**
+   * Acrescenta o texto em UTF-8, sem escapar.
+   *
+   * @param texto o texto a acrescentar.
+   */
+  public void escreverTexto(String texto) {
+    int n = texto.length();
+    // Pior caso: 3 bytes por char (pares substitutos ocupam 4 bytes em 2 chars)
+    garantir(n * 3);
+    for (int i = 0; i < n; i++) {
+      char c = texto.charAt(i);
+      if (c < 0x80) {
+        bytes[tamanho++] = (byte) c;
+      } else {
+        i = codificar(texto, i);
+      }
+    }
+  }
+
+  /**
+   * Acrescenta o texto em UTF-8 escapando os caracteres especiais de HTML
+   * ({@code & < > " '}), podendo ser usado em conteúdo e em atributos.
+   *
+   * @param texto o texto a acrescentar.
+   */
+  @SuppressWarnings("deprecation")
+  public void escreverHtml(String texto) {
+    int n = texto.length();
+    // Pior caso: 6 bytes por char ("&quot;")
+    garantir(n * 6);
+    int i = 0;
+    while (i < n) {
+      // Trechos ASCII sem caracteres especiais são copiados de uma vez
+      int inicio = i;
+      char c = 0;
+      while (i < n && (c = texto.charAt(i)) < 0x80 && c != '&' && c != '<' && c != '>' && c != '"' && c != '\'') {
+        i++;
+      }
+      if (i > inicio) {
+        texto.getBytes(inicio, i, bytes, tamanho);
+        tamanho += i - inicio;
+      }
+      if (i == n) {
+        break;
+      }
+      byte[] entidade = switch (c) {
+        case '&' -> AMP;
+        case '<' -> LT;
+        case '>' -> GT;
+        case '"' -> QUOT;
+        case '\'' -> APOS;
+        default -> null;
+      };
+      if (entidade == null) {
+        i = codificar(texto, i);
+      } else {
+        System.arraycopy(entidade, 0, bytes, tamanho, entidade.length);
+        tamanho += entidade.length;
+      }
+      i++;
+    }
+  }
+
+  /**
+   * Acrescenta o texto como uma string JSON, entre aspas, em UTF-8 e com os
+   * caracteres de controle, as aspas e a barra invertida escapados. Um valor
+   * {@code null} é escrito como {@code null}.
+   *
+   * @param texto o texto a acrescentar.
+   */
+  @SuppressWarnings("deprecation")
+  public void escreverJson(String texto) {
+    if (texto == null) {
+      escreverTexto("null");
+      return;
+    }
+    int n = texto.length();
+    // Pior caso: 6 bytes por char ("\u0000") mais as aspas
+    garantir(n * 6 + 2);
+    bytes[tamanho++] = '"';
+    for (int i = 0; i < n; i++) {
+      // Trechos ASCII sem escapes são copiados de uma vez
+      int inicio = i;
+      char c = 0;
+      while (i < n && (c = texto.charAt(i)) >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+        i++;
+      }
+      if (i > inicio) {
+        texto.getBytes(inicio, i, bytes, tamanho);
+        tamanho += i - inicio;
+      }
+      if (i == n) {
+        break;
+      }
+      if (c == '"' || c == '\\') {
+        bytes[tamanho++] = '\\';
+        bytes[tamanho++] = (byte) c;
+      } else if (c < 0x20) {
+        bytes[tamanho++] = '\\';
+        switch (c) {
+          case '\n' -> bytes[tamanho++] = 'n';
+          case '\r' -> bytes[tamanho++] = 'r';
+          case '\t' -> bytes[tamanho++] = 't';
+          default -> {
+            bytes[tamanho++] = 'u';
+            bytes[tamanho++] = '0';
+            bytes[tamanho++] = '0';
+            bytes[tamanho++] = (byte) HEXA[c >> 4];
+            bytes[tamanho++] = (byte) HEXA[c & 0xF];
+          }
+        }
+      } else {
+        i = codificar(texto, i);
+      }
+    }
+    bytes[tamanho++] = '"';
+  }
+
+  /**
+   * Codifica em UTF-8 o caractere não ASCII na posição, juntando pares
+   * substitutos. A capacidade já deve ter sido garantida.
+   *
+   * @return a posição do último {@code char} consumido.
+   */
+  private int codificar(String texto, int i) {
+    char c = texto.charAt(i);
+    if (c < 0x800) {
+      bytes[tamanho++] = (byte) (0xC0 | (c >> 6));
+      bytes[tamanho++] = (byte) (0x80 | (c & 0x3F));
+    } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+        && Character.isLowSurrogate(texto.charAt(i + 1))) {
+      int codigo = Character.toCodePoint(c, texto.charAt(++i));
+      bytes[tamanho++] = (byte) (0xF0 | (codigo >> 18));
+      bytes[tamanho++] = (byte) (0x80 | ((codigo >> 12) & 0x3F));
+      bytes[tamanho++] = (byte) (0x80 | ((codigo >> 6) & 0x3F));
+      bytes[tamanho++] = (byte) (0x80 | (codigo & 0x3F));
+    } else if (Character.isSurrogate(c)) {
+      // Substituto isolado vira '?', como faz String.getBytes
+      bytes[tamanho++] = '?';
+    } else {
+      bytes[tamanho++] = (byte) (0xE0 | (c >> 12));
+      bytes[tamanho++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+      bytes[tamanho++] = (byte) (0x80 | (c & 0x3F));
+    }
+    return i;
+  }
+
+  /**
+   * @return o vetor interno; apenas os primeiros {@link #tamanho()} bytes são
+   *         válidos.
+   */
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * @return quantidade de bytes escritos.
+   */
+  public int tamanho() {
+    return tamanho;
+  }
+
+  /**
+   * Copia o conteúdo para o fluxo.
+   *
+   * @param out o fluxo de destino.
+   * @throws IOException em caso de falha na escrita.
+   */
+  public void escreverEm(OutputStream out) throws IOException {
+    out.write(bytes, 0, tamanho);
+  }
+
+  /**
+   * @return o conteúdo decodificado como UTF-8.
+   */
+  @Override
+  public String toString() {
+    return new String(bytes, 0, tamanho, StandardCharsets.UTF_8);
+  }
+
+  private void garantir(int adicionais) {
+    if (tamanho + adicionais > bytes.length) {
+      byte[] maior = new byte[Math.max(bytes.length * 2, tamanho + adicionais)];
+      System.arraycopy(bytes, 0, maior, 0, tamanho);
+      bytes = maior;
+    }
+  }
+}
@@ -0,0 +1,515 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A classe {@code ServidorNIO} é um modo alternativo do servidor que atende
+ * todas as conexões em uma única thread com {@link Selector}, sem bloquear.
+ *
+ * Cada conexão tem um buffer de entrada próprio, reaproveitado entre as
+ * requisições, onde os bytes recebidos são acumulados até o cabeçalho estar
+ * completo. As rotas que não consultam a OMDb são respondidas na própria
+ * thread do seletor; as de busca e de posters são entregues ao executor de
+ * trabalho e a resposta volta ao seletor quando pronta, de modo que o laço
+ * de eventos nunca espera pela rede externa. Os posters são enviados direto
+ * do arquivo para o socket. Conexões persistentes, pipeline e tempo de
+ * ociosidade seguem as mesmas regras de {@link Cliente#handleClient(Socket)}.
+ */
+public class ServidorNIO implements Closeable {
+  /**
+   * Tamanho do buffer de entrada de cada conexão, que limita o cabeçalho e o
+   * corpo das requisições.
+   */
+  private static final int TAMANHO_BUFFER = RequisicaoHttp.MAXIMO_CABECALHO;
+
+  /**
+   * Estado de uma conexão aberta.
+   */
+  private static final class Conexao {
+    final SocketChannel canal;
+    final SelectionKey chave;
+    final ByteBuffer entrada = ByteBuffer.allocate(TAMANHO_BUFFER);
+    final ArrayDeque<ByteBuffer> saida = new ArrayDeque<>();
+    final RequisicaoHttp requisicao = new RequisicaoHttp();
+    /** Instante em que chegou o primeiro byte da requisição incompleta, ou 0. */
+    long inicioRequisicao;
+    boolean ocupada;
+    boolean fecharAposEnvio;
+    /** Arquivo enviado depois da saída pendente; a conexão fica ocupada até o fim. */
+    FileChannel arquivo;
+    long posicaoArquivo;
+    long fimArquivo;
+    int atendidas;
+    long ultimoUso = System.currentTimeMillis();
+
+    Conexao(SocketChannel canal, SelectionKey chave) {
+      this.canal = canal;
+      this.chave = chave;
+    }
+  }
+
+  /**
+   * Resposta pronta para o laço de eventos: os bytes e, talvez, um arquivo
+   * enviado em seguida.
+   */
+  private record Pronta(ByteBuffer bytes, FileChannel arquivo, long tamanho) {
+    static Pronta de(Roteador.Resposta resposta, boolean keepAlive) {
+      ByteBuffer bytes = resposta.montar(keepAlive);
+      return new Pronta(bytes, resposta.entregarArquivo(), resposta.tamanhoArquivo());
+    }
+  }
+
+  private final ExecutorService trabalhadores;
+  private final byte[] respostaOcupado;
+  private final Selector seletor;
+  private final ServerSocketChannel servidor;
+  private final Set<Conexao> ativas = new HashSet<>();
+  private final ConcurrentLinkedQueue<Runnable> concluidas = new ConcurrentLinkedQueue<>();
+  private final CountDownLatch terminado = new CountDownLatch(1);
+  private final long tempoDrenagem;
+  private volatile boolean parando;
+
+  /**
+   * Abre o servidor na porta informada.
+   *
+   * @param porta           a porta do servidor.
+   * @param trabalhadores   executor das requisições que consultam a OMDb.
+   * @param respostaOcupado resposta enviada quando o executor recusa trabalho.
+   * @param drenagemSeg     tempo máximo, em segundos, para concluir as
+   *                        requisições em andamento no fechamento.
+   * @throws IOException se não for possível abrir a porta.
+   */
+  public ServidorNIO(int porta, ExecutorService trabalhadores, byte[] respostaOcupado, int drenagemSeg)
+      throws IOException {
+    this.trabalhadores = trabalhadores;
+    this.respostaOcupado = respostaOcupado;
+    this.tempoDrenagem = drenagemSeg * 1000L;
+    this.seletor = Selector.open();
+    this.servidor = ServerSocketChannel.open();
+    servidor.bind(new InetSocketAddress(porta), 1024);
+    servidor.configureBlocking(false);
+    servidor.register(seletor, SelectionKey.OP_ACCEPT);
+  }
+
+  /**
+   * Executa o laço de eventos na thread atual até o servidor ser fechado.
+   *
+   * @throws IOException em caso de falha no seletor.
+   */
+  public void executar() throws IOException {
+    long ultimaVerificacao = System.currentTimeMillis();
+    try {
+      while (true) {
+        seletor.select(1000);
+        Runnable tarefa;
+        while ((tarefa = concluidas.poll()) != null) {
+          tarefa.run();
+        }
+
+        Iterator<SelectionKey> selecionadas = seletor.selectedKeys().iterator();
+        while (selecionadas.hasNext()) {
+          SelectionKey chave = selecionadas.next();
+          selecionadas.remove();
+          if (!chave.isValid()) {
+            continue;
+          }
+          if (chave.isAcceptable()) {
+            aceitar();
+            continue;
+          }
+          Conexao conexao = (Conexao) chave.attachment();
+          try {
+            if (chave.isReadable()) {
+              ler(conexao);
+            }
+            if (chave.isValid() && chave.isWritable()) {
+              escrever(conexao);
+            }
+          } catch (IOException e) {
+            fechar(conexao);
+          }
+        }
+
+        long agora = System.currentTimeMillis();
+        if (agora - ultimaVerificacao >= 1000) {
+          ultimaVerificacao = agora;
+          fecharOciosas(agora);
+        }
+        if (parando) {
+          if (servidor.isOpen()) {
+            servidor.close();
+            fecharOciosas(Long.MAX_VALUE);
+          }
+          if (ativas.stream().noneMatch(c -> c.ocupada || !c.saida.isEmpty())) {
+            break;
+          }
+        }
+      }
+    } finally {
+      for (Conexao conexao : new ArrayList<>(ativas)) {
+        fechar(conexao);
+      }
+      seletor.close();
+      terminado.countDown();
+    }
+  }
+
+  /**
+   * Para de aceitar conexões e aguarda as respostas em andamento serem
+   * enviadas.
+   */
+  @Override
+  public void close() {
+    parando = true;
+    seletor.wakeup();
+    try {
+      terminado.await(tempoDrenagem, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void aceitar() throws IOException {
+    SocketChannel canal;
+    while ((canal = servidor.accept()) != null) {
+      canal.configureBlocking(false);
+      canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      SelectionKey chave = canal.register(seletor, SelectionKey.OP_READ);
+      Conexao conexao = new Conexao(canal, chave);
+      chave.attach(conexao);
+      ativas.add(conexao);
+      Metricas.conexaoAberta();
+    }
+  }
+
+  private void ler(Conexao conexao) throws IOException {
+    int lidos = conexao.canal.read(conexao.entrada);
+    if (lidos < 0) {
+      fechar(conexao);
+      return;
+    }
+    conexao.ultimoUso = System.currentTimeMillis();
+    if (conexao.inicioRequisicao == 0) {
+      conexao.inicioRequisicao = conexao.ultimoUso;
+    }
+    processar(conexao);
+  }
+
+  /**
+   * Atende as requisições completas no buffer de entrada, em ordem. Enquanto
+   * uma requisição aguarda o executor, as seguintes ficam no buffer.
+   */
+  private void processar(Conexao conexao) {
+    while (!conexao.ocupada && !conexao.fecharAposEnvio) {
+      ByteBuffer entrada = conexao.entrada;
+      RequisicaoHttp requisicao = conexao.requisicao;
+      RequisicaoHttp.Estado estado = requisicao.analisar(entrada.array(), entrada.position());
+      if (estado == RequisicaoHttp.Estado.INCOMPLETA) {
+        break;
+      }
+      if (estado == RequisicaoHttp.Estado.INVALIDA) {
+        enfileirar(conexao, ByteBuffer.wrap(RequisicaoHttp.resposta(requisicao.getErro())), false);
+        break;
+      }
+
+      long inicio = System.nanoTime();
+      String method = requisicao.getMethod();
+      String path = requisicao.getPath();
+      String version = requisicao.getVersion();
+      boolean keepAlive = requisicao.isKeepAlive();
+      String ifNoneMatch = requisicao.getIfNoneMatch();
+      String acceptEncoding = requisicao.getAcceptEncoding();
+      String contentType = requisicao.getContentType();
+      int fim = requisicao.getFimCabecalho();
+
+      // O corpo precisa caber no buffer junto com o cabeçalho
+      if (requisicao.getContentLength() > TAMANHO_BUFFER - fim) {
+        enfileirar(conexao, ByteBuffer.wrap(RequisicaoHttp.resposta("413 Content Too Large")), false);
+        break;
+      }
+      int contentLength = (int) requisicao.getContentLength();
+      if (entrada.position() < fim + contentLength) {
+        // Aguarda o restante do corpo
+        break;
+      }
+      String corpoRequisicao = new String(entrada.array(), fim, contentLength, StandardCharsets.UTF_8);
+      consumir(conexao, fim + contentLength);
+
+      if (++conexao.atendidas >= Cliente.MAX_REQUISICOES || parando) {
+        keepAlive = false;
+      }
+      Metricas.LEITURA.registrar(System.nanoTime() - inicio);
+
+      Roteador.Rota rota = Roteador.encontrar(method, path);
+      Roteador.Requisicao pedido = new Roteador.Requisicao(method, path, version, keepAlive, ifNoneMatch,
+          acceptEncoding, contentType, corpoRequisicao);
+      Roteador.Atendimento atendimento = rota.preparar(pedido);
+      if (atendimento.lote() != null) {
+        despacharLote(conexao, atendimento.lote(), atendimento.formato(), version.equals("HTTP/1.1"), keepAlive,
+            inicio, rota.indice());
+        continue;
+      }
+      if (atendimento.bloqueante()) {
+        despachar(conexao, keepAlive, inicio, rota.indice(),
+            () -> Roteador.atender(atendimento, pedido));
+        continue;
+      }
+      enviar(conexao, Pronta.de(Roteador.atender(atendimento, pedido), keepAlive), keepAlive);
+      Metricas.registrarRequisicao(rota.indice(), System.nanoTime() - inicio);
+    }
+    atualizarInteresse(conexao);
+  }
+
+  /**
+   * Monta, fora do laço de eventos, a resposta de uma requisição que pode
+   * bloquear.
+   */
+  private interface Montagem {
+    Roteador.Resposta montar();
+  }
+
+  /**
+   * Entrega uma requisição que pode bloquear ao executor. A resposta é
+   * devolvida ao laço de eventos pela fila {@link #concluidas}. O tempo da
+   * requisição é medido de {@code inicio} até a resposta ser posta na fila
+   * de saída.
+   */
+  private void despachar(Conexao conexao, boolean keepAlive, long inicio, int rota, Montagem montagem) {
+    conexao.ocupada = true;
+    try {
+      trabalhadores.execute(() -> {
+        Pronta resposta = null;
+        boolean keepAliveFinal = false;
+        try {
+          Roteador.Resposta montada = montagem.montar();
+          // O desligamento pode ter começado durante a consulta
+          keepAliveFinal = keepAlive && !parando;
+          resposta = Pronta.de(montada, keepAliveFinal);
+        } catch (Exception e) {
+          Metricas.registrarErro(e);
+          e.printStackTrace();
+        }
+        Pronta pronta = resposta;
+        boolean manter = keepAliveFinal;
+        concluidas.add(() -> {
+          Metricas.registrarRequisicao(rota, System.nanoTime() - inicio);
+          concluir(conexao, pronta, manter);
+        });
+        seletor.wakeup();
+      });
+    } catch (RejectedExecutionException e) {
+      Metricas.registrarErro(e);
+      conexao.ocupada = false;
+      enfileirar(conexao, ByteBuffer.wrap(respostaOcupado), false);
+    }
+  }
+
+  /**
+   * Entrega um lote ao executor. Cada trecho da página volta ao laço de
+   * eventos assim que fica pronto e é enviado na hora; o último libera a
+   * conexão para a próxima requisição.
+   */
+  private void despacharLote(Conexao conexao, BuscaLote.Pedido pedido, BuscaLote.Formato formato, boolean chunked,
+      boolean keepAlive, long inicio, int rota) {
+    // Sem chunked (HTTP/1.0), o fim da resposta é o fechamento da conexão
+    boolean manter = keepAlive && chunked;
+    conexao.ocupada = true;
+    try {
+      trabalhadores.execute(() -> {
+        ByteBuffer ultimo = null;
+        try {
+          BuscaLote.Andamento andamento = BuscaLote.consultar(pedido);
+          devolver(conexao, ByteBuffer.wrap(BuscaLote.cabecalho(formato, chunked, manter)));
+          BuscaLote.enviar(andamento, formato, trecho -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(trecho.tamanho() + 16);
+            BuscaLote.escreverTrecho(bytes, trecho, chunked);
+            devolver(conexao, ByteBuffer.wrap(bytes.toByteArray()));
+          });
+          ultimo = ByteBuffer.wrap(chunked ? BuscaLote.fimChunked() : new byte[0]);
+        } catch (BuscaLote.Lotado e) {
+          // Nada foi enviado ainda: o lote inteiro vira um 503
+          Metricas.registrarErro(e);
+          ultimo = ByteBuffer.wrap(BuscaLote.recusa(formato, manter));
+        } catch (Exception e) {
+          Metricas.registrarErro(e);
+          e.printStackTrace();
+        }
+        Pronta pronta = ultimo == null ? null : new Pronta(ultimo, null, 0);
+        concluidas.add(() -> {
+          Metricas.registrarRequisicao(rota, System.nanoTime() - inicio);
+          concluir(conexao, pronta, manter);
+        });
+        seletor.wakeup();
+      });
+    } catch (RejectedExecutionException e) {
+      Metricas.registrarErro(e);
+      conexao.ocupada = false;
+      enfileirar(conexao, ByteBuffer.wrap(respostaOcupado), false);
+    }
+  }
+
+  /**
+   * Envia, pelo laço de eventos, parte de uma resposta ainda em montagem.
+   */
+  private void devolver(Conexao conexao, ByteBuffer parte) {
+    concluidas.add(() -> {
+      if (conexao.canal.isOpen()) {
+        enfileirar(conexao, parte, true);
+      }
+    });
+    seletor.wakeup();
+  }
+
+  private void concluir(Conexao conexao, Pronta resposta, boolean keepAlive) {
+    conexao.ocupada = false;
+    if (!conexao.canal.isOpen()) {
+      fecharArquivo(resposta == null ? null : resposta.arquivo());
+      return;
+    }
+    if (resposta == null) {
+      fechar(conexao);
+      return;
+    }
+    // Um lote já enviou o cabeçalho, mas a conexão ainda pode ser fechada
+    // depois da resposta completa
+    enviar(conexao, resposta, keepAlive && !parando);
+    processar(conexao);
+  }
+
+  /**
+   * Enfileira uma resposta do {@link Roteador}. Com um arquivo, a conexão
+   * fica ocupada até ele ser enviado, para que as respostas seguintes não
+   * passem à frente.
+   */
+  private void enviar(Conexao conexao, Pronta resposta, boolean keepAlive) {
+    if (resposta.arquivo() != null) {
+      conexao.ocupada = true;
+      conexao.arquivo = resposta.arquivo();
+      conexao.posicaoArquivo = 0;
+      conexao.fimArquivo = resposta.tamanho();
+    }
+    enfileirar(conexao, resposta.bytes(), keepAlive);
+  }
+
+  private void enfileirar(Conexao conexao, ByteBuffer resposta, boolean keepAlive) {
+    conexao.saida.add(resposta);
+    if (!keepAlive) {
+      conexao.fecharAposEnvio = true;
+    }
+    try {
+      escrever(conexao);
+    } catch (IOException e) {
+      fechar(conexao);
+    }
+  }
+
+  /**
+   * Envia o máximo possível da fila de saída em uma escrita com vários
+   * buffers e, depois dela, do arquivo em envio, com
+   * {@link FileChannel#transferTo} (sendfile), sem copiá-lo para o heap. Ao
+   * fim do arquivo, a conexão volta a atender as requisições seguintes.
+   */
+  private void escrever(Conexao conexao) throws IOException {
+    if (!conexao.saida.isEmpty()) {
+      ByteBuffer[] pendentes = conexao.saida.toArray(new ByteBuffer[0]);
+      conexao.canal.write(pendentes);
+      while (!conexao.saida.isEmpty() && !conexao.saida.peekFirst().hasRemaining()) {
+        conexao.saida.pollFirst();
+      }
+    }
+    if (conexao.saida.isEmpty() && conexao.arquivo != null) {
+      conexao.posicaoArquivo += conexao.arquivo.transferTo(conexao.posicaoArquivo,
+          conexao.fimArquivo - conexao.posicaoArquivo, conexao.canal);
+      if (conexao.posicaoArquivo >= conexao.fimArquivo) {
+        fecharArquivo(conexao.arquivo);
+        conexao.arquivo = null;
+        conexao.ocupada = false;
+        if (!conexao.fecharAposEnvio) {
+          processar(conexao);
+          return;
+        }
+      }
+    }
+    if (conexao.saida.isEmpty() && conexao.arquivo == null && conexao.fecharAposEnvio) {
+      fechar(conexao);
+      return;
+    }
+    atualizarInteresse(conexao);
+  }
+
+  /**
+   * Lê apenas quando não há saída pendente e há espaço no buffer; escreve
+   * enquanto houver saída ou arquivo pendente.
+   */
+  private void atualizarInteresse(Conexao conexao) {
+    if (!conexao.chave.isValid()) {
+      return;
+    }
+    int interesse = 0;
+    if (!conexao.saida.isEmpty() || conexao.arquivo != null) {
+      interesse |= SelectionKey.OP_WRITE;
+    } else if (!conexao.fecharAposEnvio && conexao.entrada.hasRemaining()) {
+      interesse |= SelectionKey.OP_READ;
+    }
+    conexao.chave.interestOps(interesse);
+  }
+
+  /**
+   * Fecha as conexões ociosas e recusa com 408 as requisições que não chegaram
+   * inteiras no prazo, mesmo que os bytes venham aos poucos.
+   */
+  private void fecharOciosas(long agora) {
+    long limite = Cliente.TEMPO_OCIOSO * 1000L;
+    for (Conexao conexao : new ArrayList<>(ativas)) {
+      if (conexao.ocupada || !conexao.saida.isEmpty() || conexao.fecharAposEnvio) {
+        continue;
+      }
+      if (conexao.inicioRequisicao != 0 && agora - conexao.inicioRequisicao > RequisicaoHttp.TEMPO_REQUISICAO) {
+        enfileirar(conexao, ByteBuffer.wrap(RequisicaoHttp.resposta("408 Request Timeout")), false);
+      } else if (agora - conexao.ultimoUso > limite) {
+        fechar(conexao);
+      }
+    }
+  }
+
+  private void fechar(Conexao conexao) {
+    if (ativas.remove(conexao)) {
+      Metricas.conexaoFechada();
+    }
+    conexao.chave.cancel();
+    try {
+      conexao.canal.close();
+    } catch (IOException e) {
+      // Conexão já encerrada
+    }
+    fecharArquivo(conexao.arquivo);
+    conexao.arquivo = null;
+  }
+
+  private static void fecharArquivo(FileChannel arquivo) {
+    if (arquivo != null) {
+      try {
+        arquivo.close();
+      } catch (IOException e) {
+        // Nada a fazer
+      }
+    }
+  }
+
+  /**
+   * Descarta do buffer de entrada os bytes da requisição já atendida. Os que
+   * sobram são de uma requisição seguinte, cujo prazo começa agora.
+   */
+  private static void consumir(Conexao conexao, int tamanho) {
+    ByteBuffer entrada = conexao.entrada;
+    entrada.flip();
+    entrada.position(tamanho);
+    entrada.compact();
+    conexao.requisicao.reiniciar();
+    conexao.inicioRequisicao = entrada.position() > 0 ? System.currentTimeMillis() : 0;
+  }
+}
@@ -1,7 +1,104 @@
 import java.net.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class Site {
+  /**
+   * Página inicial com o formulário de busca, montada uma única vez.
+   */
+  public static final PaginaEstatica FORMULARIO = new PaginaEstatica("text/html; charset=UTF-8", getHtmlForm());
+
+  /**
+   * Template da página com os dados de um filme, compilado uma única vez.
+   */
+  private static final Modelo PAGINA_FILME = Modelo.compilar("<!DOCTYPE html>\n" +
+      "<html lang=\"pt-BR\">\n<head>\n<meta charset=\"UTF-8\">\n" +
+      "<title>{{titulo}}</title>\n" +
+      "<style>\n" +
+      "@keyframes slip-fade{0%{bottom:20px; opacity: 0}100%{bottom:0px; opacity: 1}}" +
+      "body{ position: relative; background: #202020; color:#f0f0f0; text-align: center; font-family:'Montserrat'; animation: slip-fade 1s ease-in-out;}"
+      +
+      "a{text-decoration: none; color: #f0f0f0; font-weight: bold;}" +
+      "</style>\n" +
+      "</head>\n<body>\n" +
+      "<h1>{{titulo}} ({{ano}})</h1>\n" +
+      "{{#poster}}<img src=\"{{poster:url}}\" alt=\"Poster do filme\" style=\"max-width:300px;\"><br>\n{{/poster}}" +
+      "{{^poster}}<p>Poster não disponível.</p>\n{{/poster}}" +
+      "<p><b>Diretor:</b> {{diretor}}</p>\n" +
+      "<p><b>Elenco:</b> {{elenco}}</p>\n" +
+      "<p><b>Sinopse:</b> {{sinopse}}</p>\n" +
+      "<p><a href=\"/\">Nova busca</a></p>\n" +
+      "</body>\n</html>",
+      "titulo", "ano", "diretor", "elenco", "sinopse", "poster");
+
+  /**
+   * Início da página de uma busca em lote; os cartões dos filmes são enviados
+   * em seguida, à medida que as consultas terminam.
+   */
+  private static final Modelo INICIO_LOTE = Modelo.compilar("<!DOCTYPE html>\n" +
+      "<html lang=\"pt-BR\">\n<head>\n<meta charset=\"UTF-8\">\n" +
+      "<title>BuscaFilmes - {{quantidade}} títulos</title>\n" +
+      "<style>\n" +
+      "body{ background: #202020; color:#f0f0f0; text-align: center; font-family:'Montserrat';}" +
+      "section{ display: inline-block; vertical-align: top; width: 260px; margin: 10px; padding: 10px; background: #2a2a2a; border-radius: 15px;}" +
+      "a{text-decoration: none; color: #f0f0f0; font-weight: bold;}" +
+      "</style>\n" +
+      "</head>\n<body>\n" +
+      "<h1>{{quantidade}} títulos</h1>\n",
+      "quantidade");
+
+  /**
+   * Cartão de um filme na busca em lote.
+   */
+  private static final Modelo CARTAO_FILME = Modelo.compilar("<section>\n" +
+      "<h2>{{titulo}} ({{ano}})</h2>\n" +
+      "{{#poster}}<img src=\"{{poster:url}}\" alt=\"Poster do filme\" style=\"max-width:150px;\"><br>\n{{/poster}}" +
+      "<p><b>Diretor:</b> {{diretor}}</p>\n" +
+      "<p><b>Elenco:</b> {{elenco}}</p>\n" +
+      "<p><a href=\"/buscar?t={{busca}}\">Detalhes</a></p>\n" +
+      "</section>\n",
+      "titulo", "ano", "diretor", "elenco", "poster", "busca");
+
+  /**
+   * Cartão de um título que não pôde ser mostrado na busca em lote.
+   */
+  private static final Modelo CARTAO_FALHA = Modelo.compilar("<section>\n" +
+      "<h2>{{busca}}</h2>\n" +
+      "<p>{{motivo}}</p>\n" +
+      "</section>\n",
+      "busca", "motivo");
+
+  /**
+   * Início da página de um título sem filme para mostrar; as sugestões do
+   * índice de títulos vêm em seguida.
+   */
+  private static final Modelo SEM_FILME = Modelo.compilar("<!DOCTYPE html>\n" +
+      "<html lang=\"pt-BR\">\n<head>\n<meta charset=\"UTF-8\">\n" +
+      "<title>BuscaFilmes - {{busca}}</title>\n" +
+      "<style>\n" +
+      "body{ background: #202020; color:#f0f0f0; text-align: center; font-family:'Montserrat';}" +
+      "ul{ list-style: none; padding: 0;}" +
+      "a{text-decoration: none; color: #f0f0f0; font-weight: bold;}" +
+      "</style>\n" +
+      "</head>\n<body>\n" +
+      "<h1>{{busca}}</h1>\n" +
+      "<p>{{motivo}}</p>\n",
+      "busca", "motivo");
+
+  private static final byte[] VOCE_QUIS_DIZER = "<p>Você quis dizer:</p>\n<ul>\n".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * Uma sugestão na página de título sem filme.
+   */
+  private static final Modelo SUGESTAO = Modelo.compilar(
+      "<li><a href=\"/buscar?t={{busca}}\">{{titulo}}{{#ano}} ({{ano}}){{/ano}}</a></li>\n",
+      "titulo", "ano", "busca");
+
+  private static final byte[] FIM_SUGESTOES = "</ul>\n".getBytes(StandardCharsets.UTF_8);
+
+  private static final byte[] FIM_PAGINA = "<p><a href=\"/\">Nova busca</a></p>\n</body>\n</html>"
+      .getBytes(StandardCharsets.UTF_8);
 
   /**
    * Gera e retorna o HTML e CSS da página inicial com o formulário de busca.
@@ -53,11 +150,23 @@ public class Site {
         "<body>\n" +
         "    <h1>BuscaFilmes</h1>\n" +
         "    <form action=\"/buscar\" method=\"GET\">\n" +
-        "        <input type=\"text\" name=\"t\" placeholder=\"Nome do filme\" required><br>\n" +
+        "        <input type=\"text\" name=\"t\" placeholder=\"Nome do filme\" list=\"sugestoes\" autocomplete=\"off\" required><br>\n" +
+        "        <datalist id=\"sugestoes\"></datalist>\n" +
         "        <input type=\"checkbox\" name=\"plot\">\n" +
         "        <label for=\"plot\">Sinopse Resumida?</label><br>\n" +
         "        <button type=\"submit\">Buscar</button>\n" +
         "    </form>\n" +
+        "    <script>\n" +
+        "        var campo = document.querySelector(\"input[name='t']\"), lista = document.getElementById('sugestoes'), pedido = 0;\n" +
+        "        campo.addEventListener('input', function () {\n" +
+        "            var numero = ++pedido;\n" +
+        "            if (campo.value.trim().length < 2) { lista.replaceChildren(); return; }\n" +
+        "            fetch('/sugerir?q=' + encodeURIComponent(campo.value)).then(function (r) { return r.json(); }).then(function (r) {\n" +
+        "                if (numero !== pedido) { return; }\n" +
+        "                lista.replaceChildren.apply(lista, r.sugestoes.map(function (s) { var o = document.createElement('option'); o.value = s.titulo; return o; }));\n" +
+        "            }).catch(function () {});\n" +
+        "        });\n" +
+        "    </script>\n" +
         "</body>\n" +
         "</html>";
   }
@@ -71,37 +180,107 @@ public class Site {
    *         elenco, etc.
    */
   public static String HTMLResponseForm(String json) {
-    String title = Cliente.extractFieldJSON(json, "Title");
-    String year = Cliente.extractFieldJSON(json, "Year");
-    String director = Cliente.extractFieldJSON(json, "Director");
-    String actors = Cliente.extractFieldJSON(json, "Actors");
-    String plot = Cliente.extractFieldJSON(json, "Plot");
-    String poster = Cliente.extractFieldJSON(json, "Poster");
-
-    StringBuilder sb = new StringBuilder();
-    sb.append("<!DOCTYPE html>\n");
-    sb.append("<html lang=\"pt-BR\">\n<head>\n<meta charset=\"UTF-8\">\n");
-    sb.append("<title>").append(title).append("</title>\n");
-    sb.append("<style>\n" +
-        "@keyframes slip-fade{0%{bottom:20px; opacity: 0}100%{bottom:0px; opacity: 1}}" +
-        "body{ position: relative; background: #202020; color:#f0f0f0; text-align: center; font-family:'Montserrat'; animation: slip-fade 1s ease-in-out;}"
-        +
-        "a{text-decoration: none; color: #f0f0f0; font-weight: bold;}");
-    sb.append("</style>\n");
-    sb.append("</head>\n<body>\n");
-    sb.append("<h1>").append(title).append(" (").append(year).append(")</h1>\n");
+    return HTMLResponseForm(LeitorJSON.lerFilme(json));
+  }
 
-    if (!poster.equals("N/A")) {
-      sb.append("<img src=\"").append(poster).append("\" alt=\"Poster do filme\" style=\"max-width:300px;\"><br>\n");
+  /**
+   * Monta o HTML e o CSS para exibir os dados de um filme já lido.
+   *
+   * @param filme os dados do filme.
+   * @return HTML e CSS formatado contendo informações como título, diretor,
+   *         elenco, etc.
+   */
+  public static String HTMLResponseForm(Filme filme) {
+    SaidaBytes saida = SaidaBytes.daThread();
+    renderizarFilme(filme, saida);
+    return saida.toString();
+  }
+
+  /**
+   * Escreve a página de um filme direto no buffer de saída, em UTF-8 e com os
+   * campos escapados.
+   *
+   * @param filme os dados do filme.
+   * @param saida o buffer de saída.
+   */
+  public static void renderizarFilme(Filme filme, SaidaBytes saida) {
+    PAGINA_FILME.renderizar(saida, filme.titulo(), filme.ano(), filme.diretor(), filme.elenco(), filme.sinopse(),
+        poster(filme));
+  }
+
+  /**
+   * O endereço do poster nas páginas: o do próprio servidor, quando o cache
+   * de posters conhece o filme, ou o da origem.
+   *
+   * @param filme os dados do filme.
+   * @return o endereço da imagem.
+   */
+  private static String poster(Filme filme) {
+    if (Cliente.POSTERS != null && Cliente.POSTERS.conhece(filme.imdbID())) {
+      return "/poster/" + filme.imdbID();
+    }
+    return filme.poster();
+  }
+
+  /**
+   * Escreve a página de um título sem filme para mostrar, porque não foi
+   * encontrado ou porque o limite da OMDb foi atingido, com os títulos
+   * parecidos já conhecidos pelo servidor.
+   *
+   * @param busca     o título buscado.
+   * @param motivo    a mensagem de erro da OMDb, ou o pedido para tentar mais
+   *                  tarde.
+   * @param sugestoes os títulos sugeridos, talvez nenhum.
+   * @param saida     o buffer de saída.
+   */
+  public static void renderizarSemFilme(String busca, String motivo, List<IndiceTitulos.Sugestao> sugestoes,
+      SaidaBytes saida) {
+    SEM_FILME.renderizar(saida, busca, motivo);
+    if (!sugestoes.isEmpty()) {
+      saida.escrever(VOCE_QUIS_DIZER);
+      for (IndiceTitulos.Sugestao sugestao : sugestoes) {
+        SUGESTAO.renderizar(saida, sugestao.titulo(), sugestao.ano(),
+            URLEncoder.encode(sugestao.titulo(), StandardCharsets.UTF_8));
+      }
+      saida.escrever(FIM_SUGESTOES);
+    }
+    saida.escrever(FIM_PAGINA);
+  }
+
+  /**
+   * Escreve o início da página de uma busca em lote.
+   *
+   * @param quantidade a quantidade de títulos buscados.
+   * @param saida      o buffer de saída.
+   */
+  public static void renderizarInicioLote(int quantidade, SaidaBytes saida) {
+    INICIO_LOTE.renderizar(saida, Integer.toString(quantidade));
+  }
+
+  /**
+   * Escreve o cartão de um filme da busca em lote, ou o motivo de não haver
+   * filme para o título.
+   *
+   * @param busca o título buscado.
+   * @param filme os dados do filme, ou {@code null} se a consulta falhou.
+   * @param falha o motivo da falha, quando não há filme.
+   * @param saida o buffer de saída.
+   */
+  public static void renderizarCartao(String busca, Filme filme, String falha, SaidaBytes saida) {
+    if (filme != null && filme.encontrado()) {
+      CARTAO_FILME.renderizar(saida, filme.titulo(), filme.ano(), filme.diretor(), filme.elenco(), poster(filme),
+          URLEncoder.encode(busca, StandardCharsets.UTF_8));
     } else {
-      sb.append("<p>Poster não disponível.</p>\n");
+      CARTAO_FALHA.renderizar(saida, busca, filme != null ? filme.erro() : falha);
     }
+  }
 
-    sb.append("<p><b>Diretor:</b> ").append(director).append("</p>\n");
-    sb.append("<p><b>Elenco:</b> ").append(actors).append("</p>\n");
-    sb.append("<p><b>Sinopse:</b> ").append(plot).append("</p>\n");
-    sb.append("<p><a href=\"/\">Nova busca</a></p>\n");
-    sb.append("</body>\n</html>");
-    return sb.toString();
+  /**
+   * Escreve o fim da página de uma busca em lote.
+   *
+   * @param saida o buffer de saída.
+   */
+  public static void renderizarFimLote(SaidaBytes saida) {
+    saida.escrever(FIM_PAGINA);
   }
 }
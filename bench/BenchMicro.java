@@ -0,0 +1,177 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A classe {@code BenchMicro} mede as etapas de uma busca sobre o corpus de
+ * respostas gravadas da OMDb: a leitura da linha de requisição, a leitura da
+ * query string, a extração dos campos do JSON, a montagem do HTML e a do
+ * documento da API JSON, além das sugestões de títulos por prefixo e com
+ * erros de digitação.
+ *
+ * A extração e a montagem também são medidas na implementação anterior
+ * ({@code extractFieldJSON} e {@code StringBuilder}), mantida aqui apenas
+ * como referência.
+ *
+ * Executar a partir da raiz do projeto:
+ *
+ * <pre>
+ * javac -encoding UTF-8 -d out *.java bench/*.java
+ * java -Dbench.saida=micro.json -cp out BenchMicro
+ * </pre>
+ */
+public class BenchMicro {
+  private static final String[] LINHAS = {
+      "GET / HTTP/1.1",
+      "GET /buscar?t=The+Matrix HTTP/1.1",
+      "GET /buscar?t=Cidade+de+Deus&plot=full HTTP/1.1",
+      "GET /buscar?t=Le+fabuleux+destin+d%27Am%C3%A9lie+Poulain HTTP/1.0",
+      "GET /favicon.ico HTTP/1.1",
+  };
+
+  public static void main(String[] args) throws Exception {
+    // Cliente é usado só para ler buscas; não deve abrir o acervo nem os posters em disco
+    System.getProperties().putIfAbsent("buscafilmes.acervo", "");
+    System.getProperties().putIfAbsent("buscafilmes.posters", "");
+    List<String> corpus = Medidor.corpus();
+    String[] jsons = corpus.toArray(new String[0]);
+    Filme[] filmes = corpus.stream().map(LeitorJSON::lerFilme).toArray(Filme[]::new);
+    String[] caminhos = Arrays.stream(LINHAS).map(l -> l.split(" ")[1]).filter(p -> p.startsWith("/buscar"))
+        .toArray(String[]::new);
+    Medidor medidor = new Medidor();
+
+    byte[][] requisicoes = Arrays.stream(LINHAS)
+        .map(l -> (l + "\r\nHost: localhost\r\nAccept-Encoding: gzip, deflate\r\nConnection: keep-alive\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1))
+        .toArray(byte[][]::new);
+    RequisicaoHttp leitor = new RequisicaoHttp();
+
+    // Divisão que Cliente.handleClient e ServidorNIO faziam antes de RequisicaoHttp
+    medidor.medir("requisicao.antiga", i -> lerAntigo(requisicoes[i % requisicoes.length]));
+    medidor.medir("requisicao.leitor", i -> {
+      byte[] requisicao = requisicoes[i % requisicoes.length];
+      leitor.reiniciar();
+      leitor.analisar(requisicao, requisicao.length);
+      return leitor.getPath().length();
+    });
+    medidor.medir("requisicao.query", i -> Cliente.lerBusca(caminhos[i % caminhos.length]).titulo().length());
+    medidor.medir("json.antigo", i -> extrairAntigo(jsons[i % jsons.length]));
+    medidor.medir("json.leitor", i -> LeitorJSON.lerFilme(jsons[i % jsons.length]).titulo().length());
+    medidor.medir("html.antigo", i -> {
+      Filme filme = filmes[i % filmes.length];
+      return montarAntigo(filme.titulo(), filme.ano(), filme.diretor(), filme.elenco(), filme.sinopse(),
+          filme.poster()).getBytes(StandardCharsets.UTF_8).length;
+    });
+    medidor.medir("html.modelo", i -> {
+      SaidaBytes saida = SaidaBytes.daThread();
+      Site.renderizarFilme(filmes[i % filmes.length], saida);
+      return saida.tamanho();
+    });
+    medidor.medir("api.json", i -> {
+      SaidaBytes saida = SaidaBytes.daThread();
+      ApiFilme.escreverFilme("busca", filmes[i % filmes.length], null, saida);
+      return saida.tamanho();
+    });
+    IndiceTitulos indice = new IndiceTitulos(10);
+    Arrays.stream(filmes).forEach(indice::adicionar);
+    String[] prefixos = Arrays.stream(filmes).map(f -> f.titulo().substring(0, 3)).toArray(String[]::new);
+    // Duas letras trocadas no meio do título
+    String[] erros = Arrays.stream(filmes).map(f -> {
+      char[] letras = f.titulo().toCharArray();
+      int meio = letras.length / 2;
+      char troca = letras[meio];
+      letras[meio] = letras[meio + 1];
+      letras[meio + 1] = troca;
+      return new String(letras);
+    }).toArray(String[]::new);
+    medidor.medir("sugestao.prefixo", i -> indice.sugerir(prefixos[i % prefixos.length]).size());
+    medidor.medir("sugestao.aproximada", i -> indice.sugerir(erros[i % erros.length]).size());
+    medidor.medir("busca.antiga", i -> renderizarAntigo(jsons[i % jsons.length])
+        .getBytes(StandardCharsets.UTF_8).length);
+    medidor.medir("busca.atual", i -> {
+      SaidaBytes saida = SaidaBytes.daThread();
+      Site.renderizarFilme(LeitorJSON.lerFilme(jsons[i % jsons.length]), saida);
+      return saida.tamanho();
+    });
+    medidor.gravar();
+  }
+
+  /**
+   * Leitura do cabeçalho como era feita em ServidorNIO: uma {@code String}
+   * para o cabeçalho inteiro, {@code split} nas linhas e na linha de
+   * requisição e {@code substring} em cada campo.
+   */
+  private static int lerAntigo(byte[] requisicao) {
+    String cabecalho = new String(requisicao, 0, requisicao.length, StandardCharsets.ISO_8859_1);
+    String[] linhas = cabecalho.split("\r\n");
+    String[] partes = linhas[0].split(" ");
+    int total = partes[1].length();
+    for (int i = 1; i < linhas.length; i++) {
+      int sep = linhas[i].indexOf(':');
+      if (sep > 0) {
+        total += linhas[i].substring(0, sep).trim().length() + linhas[i].substring(sep + 1).trim().length();
+      }
+    }
+    return total;
+  }
+
+  private static int extrairAntigo(String json) {
+    return extractFieldJSON(json, "Title").length() + extractFieldJSON(json, "Year").length()
+        + extractFieldJSON(json, "Director").length() + extractFieldJSON(json, "Actors").length()
+        + extractFieldJSON(json, "Plot").length() + extractFieldJSON(json, "Poster").length();
+  }
+
+  /**
+   * Cópia da implementação anterior, mantida apenas como referência de
+   * desempenho.
+   */
+  private static String extractFieldJSON(String json, String campo) {
+    String busca = "\"" + campo + "\":\"";
+    int idx = json.indexOf(busca);
+    if (idx == -1)
+      return "N/A";
+    int start = idx + busca.length();
+    int end = json.indexOf("\"", start);
+    if (end == -1)
+      return "N/A";
+    return json.substring(start, end);
+  }
+
+  private static String renderizarAntigo(String json) {
+    String title = extractFieldJSON(json, "Title");
+    String year = extractFieldJSON(json, "Year");
+    String director = extractFieldJSON(json, "Director");
+    String actors = extractFieldJSON(json, "Actors");
+    String plot = extractFieldJSON(json, "Plot");
+    String poster = extractFieldJSON(json, "Poster");
+    return montarAntigo(title, year, director, actors, plot, poster);
+  }
+
+  private static String montarAntigo(String title, String year, String director, String actors, String plot,
+      String poster) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<!DOCTYPE html>\n");
+    sb.append("<html lang=\"pt-BR\">\n<head>\n<meta charset=\"UTF-8\">\n");
+    sb.append("<title>").append(title).append("</title>\n");
+    sb.append("<style>\n" +
+        "@keyframes slip-fade{0%{bottom:20px; opacity: 0}100%{bottom:0px; opacity: 1}}" +
+        "body{ position: relative; background: #202020; color:#f0f0f0; text-align: center; font-family:'Montserrat'; animation: slip-fade 1s ease-in-out;}"
+        +
+        "a{text-decoration: none; color: #f0f0f0; font-weight: bold;}");
+    sb.append("</style>\n");
+    sb.append("</head>\n<body>\n");
+    sb.append("<h1>").append(title).append(" (").append(year).append(")</h1>\n");
+
+    if (!poster.equals("N/A")) {
+      sb.append("<img src=\"").append(poster).append("\" alt=\"Poster do filme\" style=\"max-width:300px;\"><br>\n");
+    } else {
+      sb.append("<p>Poster não disponível.</p>\n");
+    }
+
+    sb.append("<p><b>Diretor:</b> ").append(director).append("</p>\n");
+    sb.append("<p><b>Elenco:</b> ").append(actors).append("</p>\n");
+    sb.append("<p><b>Sinopse:</b> ").append(plot).append("</p>\n");
+    sb.append("<p><a href=\"/\">Nova busca</a></p>\n");
+    sb.append("</body>\n</html>");
+    return sb.toString();
+  }
+}
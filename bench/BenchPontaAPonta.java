@@ -0,0 +1,355 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A classe {@code BenchPontaAPonta} mede a vazão e a latência do servidor
+ * atendendo buscas pela interface de rede local.
+ *
+ * O {@link SimuladorOMDb} responde com as respostas gravadas do corpus e o
+ * servidor é iniciado em outro processo, apontando para ele. Clientes com
+ * conexões persistentes fazem buscas durante o tempo configurado, depois de
+ * um período de aquecimento descartado, e o resultado é gravado em JSON pelo
+ * {@link Medidor}.
+ *
+ * Sem uma vazão alvo, cada cliente faz a próxima busca assim que recebe a
+ * resposta anterior. Com {@code bench.e2e.rps}, as buscas são agendadas em
+ * intervalos fixos, divididas entre os clientes, e a latência conta a partir
+ * do instante agendado: se o servidor atrasa, as buscas seguintes esperam e
+ * esse tempo aparece nos percentis, em vez de o cliente simplesmente
+ * desacelerar. Os títulos podem seguir uma distribuição de Zipf, com poucos
+ * títulos muito buscados e uma cauda longa de títulos raros, como em uso
+ * real.
+ *
+ * Propriedades:
+ * <ul>
+ * <li>{@code bench.e2e.servidor}: modo do servidor, {@code bloqueante} ou
+ * {@code nio};</li>
+ * <li>{@code bench.e2e.clientes}: conexões simultâneas (16);</li>
+ * <li>{@code bench.e2e.aquecimento} e {@code bench.e2e.duracao}: segundos de
+ * aquecimento (3) e de medição (10);</li>
+ * <li>{@code bench.e2e.rps}: buscas por segundo agendadas, somando todos os
+ * clientes, ou 0 para buscar sem intervalo (0);</li>
+ * <li>{@code bench.e2e.titulos}: quantidade de títulos distintos buscados; os
+ * que passam do corpus recebem um número no fim (tamanho do corpus);</li>
+ * <li>{@code bench.e2e.zipf}: expoente da distribuição de Zipf dos títulos,
+ * ou 0 para buscá-los em sequência (0);</li>
+ * <li>{@code bench.e2e.titulosUnicos}: se cada busca usa um título novo,
+ * passando sempre pela OMDb em vez do cache (false).</li>
+ * </ul>
+ *
+ * O atraso, os erros e o gotejamento da OMDb simulada são configurados pelas
+ * propriedades {@code bench.omdb.*} do {@link SimuladorOMDb}. O limite de
+ * requisições à OMDb é desativado no servidor medido; propriedades
+ * {@code buscafilmes.*} passadas ao benchmark são repassadas ao servidor.
+ *
+ * Executar a partir da raiz do projeto:
+ *
+ * <pre>
+ * javac -encoding UTF-8 -d out *.java bench/*.java
+ * java -Dbench.e2e.servidor=nio -Dbench.saida=e2e.json -cp out BenchPontaAPonta
+ * java -Dbench.e2e.rps=2000 -Dbench.e2e.titulos=5000 -Dbench.e2e.zipf=1 -Dbench.omdb.atraso=80 \
+ *     -Dbench.omdb.distribuicao=lognormal -cp out BenchPontaAPonta
+ * </pre>
+ */
+public class BenchPontaAPonta {
+  private static final String SERVIDOR = System.getProperty("bench.e2e.servidor", "bloqueante");
+  private static final int CLIENTES = Integer.getInteger("bench.e2e.clientes", 16);
+  private static final int AQUECIMENTO = Integer.getInteger("bench.e2e.aquecimento", 3);
+  private static final int DURACAO = Integer.getInteger("bench.e2e.duracao", 10);
+  private static final int RPS = Integer.getInteger("bench.e2e.rps", 0);
+  private static final int TITULOS = Integer.getInteger("bench.e2e.titulos", 0);
+  private static final double ZIPF = Double.parseDouble(System.getProperty("bench.e2e.zipf", "0"));
+  private static final boolean TITULOS_UNICOS = Boolean.getBoolean("bench.e2e.titulosUnicos");
+
+  public static void main(String[] args) throws Exception {
+    // Cliente é usado só para ler buscas; não deve abrir o acervo nem os posters em disco
+    System.getProperties().putIfAbsent("buscafilmes.acervo", "");
+    System.getProperties().putIfAbsent("buscafilmes.posters", "");
+    List<String> corpus = Medidor.corpus();
+    List<String> titulos = new ArrayList<>();
+    for (int i = 0; i < Math.max(TITULOS, corpus.size()); i++) {
+      // O simulador ignora o número no fim e responde como ao título do corpus
+      String titulo = SimuladorOMDb.titulo(LeitorJSON.lerFilme(corpus.get(i % corpus.size())));
+      titulos.add(i < corpus.size() ? titulo : titulo + " " + i);
+    }
+
+    try (SimuladorOMDb omdb = new SimuladorOMDb(corpus, 0)) {
+      int porta = portaLivre();
+      Process servidor = iniciarServidor(porta, omdb.getPorta());
+      try {
+        aguardarPorta(porta);
+        Map<String, Object> resultado = executarClientes(porta, titulos);
+        Medidor medidor = new Medidor();
+        medidor.adicionar(resultado);
+        medidor.gravar();
+      } finally {
+        servidor.destroy();
+        servidor.waitFor(30, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  private static Process iniciarServidor(int porta, int portaOmdb) throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    List<String> comando = new ArrayList<>(List.of(java,
+        "-cp", System.getProperty("java.class.path"),
+        "-Dbuscafilmes.porta=" + porta,
+        "-Dbuscafilmes.servidor=" + SERVIDOR,
+        "-Dbuscafilmes.acervo=",
+        "-Dbuscafilmes.posters=",
+        "-Dbuscafilmes.omdb.host=127.0.0.1",
+        "-Dbuscafilmes.omdb.porta=" + portaOmdb,
+        "-Dbuscafilmes.maxRequisicoes=" + Integer.MAX_VALUE,
+        // O limite protege a cota da OMDb real, que o simulador não tem
+        "-Dbuscafilmes.omdb.cota=" + Integer.MAX_VALUE,
+        "-Dbuscafilmes.omdb.taxa=1000000",
+        "-Dbuscafilmes.omdb.rajada=1000000"));
+    // Propriedades do servidor passadas ao benchmark valem sobre as de cima
+    for (String nome : System.getProperties().stringPropertyNames()) {
+      if (nome.startsWith("buscafilmes.")) {
+        comando.add("-D" + nome + "=" + System.getProperty(nome));
+      }
+    }
+    comando.add("BuscaFilmes");
+    return new ProcessBuilder(comando)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+  }
+
+  private static Map<String, Object> executarClientes(int porta, List<String> titulos) throws Exception {
+    AtomicBoolean medindo = new AtomicBoolean();
+    AtomicBoolean parar = new AtomicBoolean();
+    AtomicLong sequencia = new AtomicLong();
+    LongAdder erros = new LongAdder();
+    Latencias[] latencias = new Latencias[CLIENTES];
+    Thread[] clientes = new Thread[CLIENTES];
+    Zipf zipf = ZIPF > 0 ? new Zipf(titulos.size(), ZIPF) : null;
+    long agenda = System.nanoTime();
+
+    for (int c = 0; c < CLIENTES; c++) {
+      Latencias minhas = latencias[c] = new Latencias();
+      Random sorteio = new Random(c);
+      clientes[c] = new Thread(() -> {
+        Conexao conexao = null;
+        while (!parar.get()) {
+          long n = sequencia.getAndIncrement();
+          String titulo = titulos.get(zipf != null ? zipf.sortear(sorteio) : (int) (n % titulos.size()));
+          if (TITULOS_UNICOS) {
+            titulo += " " + n;
+          }
+          String caminho = "/buscar?t=" + URLEncoder.encode(titulo, StandardCharsets.UTF_8);
+          long inicio;
+          if (RPS > 0) {
+            inicio = agenda + n * 1_000_000_000L / RPS;
+            long espera = inicio - System.nanoTime();
+            if (espera > 0) {
+              LockSupport.parkNanos(espera);
+            }
+          } else {
+            inicio = System.nanoTime();
+          }
+          try {
+            if (conexao == null) {
+              conexao = new Conexao(porta);
+            }
+            boolean ok = conexao.buscar(caminho);
+            if (medindo.get()) {
+              minhas.adicionar(System.nanoTime() - inicio);
+              if (!ok) {
+                erros.increment();
+              }
+            }
+            if (conexao.fechada) {
+              conexao.close();
+              conexao = null;
+            }
+          } catch (IOException e) {
+            if (medindo.get()) {
+              erros.increment();
+            }
+            if (conexao != null) {
+              conexao.close();
+              conexao = null;
+            }
+          }
+        }
+        if (conexao != null) {
+          conexao.close();
+        }
+      }, "cliente-" + c);
+      clientes[c].start();
+    }
+
+    Thread.sleep(AQUECIMENTO * 1000L);
+    medindo.set(true);
+    long inicio = System.nanoTime();
+    Thread.sleep(DURACAO * 1000L);
+    medindo.set(false);
+    double segundos = (System.nanoTime() - inicio) / 1e9;
+    parar.set(true);
+    for (Thread cliente : clientes) {
+      cliente.join();
+    }
+
+    long[] todas = Latencias.juntar(latencias);
+    Arrays.sort(todas);
+    Map<String, Object> resultado = new LinkedHashMap<>();
+    resultado.put("nome", "e2e." + SERVIDOR + (TITULOS_UNICOS ? ".omdb" : ".cache"));
+    resultado.put("clientes", CLIENTES);
+    resultado.put("rpsAlvo", RPS);
+    resultado.put("titulos", titulos.size());
+    resultado.put("zipf", ZIPF);
+    resultado.put("requisicoes", todas.length);
+    resultado.put("erros", erros.sum());
+    resultado.put("vazao", todas.length / segundos);
+    resultado.put("unidadeLatencia", "us");
+    resultado.put("p50", percentil(todas, 0.50));
+    resultado.put("p90", percentil(todas, 0.90));
+    resultado.put("p99", percentil(todas, 0.99));
+    resultado.put("p999", percentil(todas, 0.999));
+    resultado.put("maximo", todas.length == 0 ? 0.0 : todas[todas.length - 1] / 1000.0);
+    System.out.printf("%s: %.0f req/s, p50 %.0f us, p99 %.0f us, %d erros%n", resultado.get("nome"),
+        resultado.get("vazao"), resultado.get("p50"), resultado.get("p99"), erros.sum());
+    return resultado;
+  }
+
+  private static double percentil(long[] ordenadas, double fracao) {
+    if (ordenadas.length == 0) {
+      return 0;
+    }
+    int indice = (int) Math.min(ordenadas.length - 1, Math.ceil(fracao * ordenadas.length) - 1);
+    return ordenadas[Math.max(0, indice)] / 1000.0;
+  }
+
+  /**
+   * Latências de um cliente, em nanossegundos, sem criar objetos por amostra.
+   */
+  private static final class Latencias {
+    long[] valores = new long[1 << 16];
+    int tamanho;
+
+    void adicionar(long valor) {
+      if (tamanho == valores.length) {
+        valores = Arrays.copyOf(valores, tamanho * 2);
+      }
+      valores[tamanho++] = valor;
+    }
+
+    static long[] juntar(Latencias[] todas) {
+      long[] juntas = new long[Arrays.stream(todas).mapToInt(l -> l.tamanho).sum()];
+      int posicao = 0;
+      for (Latencias latencias : todas) {
+        System.arraycopy(latencias.valores, 0, juntas, posicao, latencias.tamanho);
+        posicao += latencias.tamanho;
+      }
+      return juntas;
+    }
+  }
+
+  /**
+   * Sorteia posições de 0 a {@code n - 1} com probabilidade proporcional a
+   * {@code 1 / (posicao + 1)^expoente}, pela busca binária na distribuição
+   * acumulada.
+   */
+  private static final class Zipf {
+    final double[] acumulada;
+
+    Zipf(int n, double expoente) {
+      acumulada = new double[n];
+      double soma = 0;
+      for (int i = 0; i < n; i++) {
+        soma += 1 / Math.pow(i + 1, expoente);
+        acumulada[i] = soma;
+      }
+      for (int i = 0; i < n; i++) {
+        acumulada[i] /= soma;
+      }
+    }
+
+    int sortear(Random sorteio) {
+      int posicao = Arrays.binarySearch(acumulada, sorteio.nextDouble());
+      return Math.min(posicao < 0 ? -posicao - 1 : posicao, acumulada.length - 1);
+    }
+  }
+
+  /**
+   * Conexão persistente de um cliente com o servidor.
+   */
+  private static final class Conexao implements Closeable {
+    final Socket socket;
+    final InputStream in;
+    final OutputStream out;
+    boolean fechada;
+
+    Conexao(int porta) throws IOException {
+      socket = new Socket(InetAddress.getLoopbackAddress(), porta);
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(30_000);
+      in = new BufferedInputStream(socket.getInputStream());
+      out = socket.getOutputStream();
+    }
+
+    /**
+     * Faz uma busca e consome a resposta inteira.
+     *
+     * @return {@code true} se a resposta foi 200.
+     */
+    boolean buscar(String caminho) throws IOException {
+      out.write(("GET " + caminho + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+      String status = Medidor.lerLinha(in);
+      int tamanho = -1;
+      String linha;
+      while (!(linha = Medidor.lerLinha(in)).isEmpty()) {
+        int sep = linha.indexOf(':');
+        String nome = linha.substring(0, Math.max(sep, 0)).trim();
+        if (nome.equalsIgnoreCase("Content-Length")) {
+          tamanho = Integer.parseInt(linha.substring(sep + 1).trim());
+        } else if (nome.equalsIgnoreCase("Connection") && linha.substring(sep + 1).trim().equalsIgnoreCase("close")) {
+          fechada = true;
+        }
+      }
+      if (tamanho < 0) {
+        throw new IOException("Resposta sem Content-Length: " + status);
+      }
+      in.skipNBytes(tamanho);
+      return status.startsWith("HTTP/1.1 200");
+    }
+
+    @Override
+    public void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Nada a fazer
+      }
+    }
+  }
+
+  private static int portaLivre() throws IOException {
+    try (ServerSocket livre = new ServerSocket(0)) {
+      return livre.getLocalPort();
+    }
+  }
+
+  private static void aguardarPorta(int porta) throws Exception {
+    long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+    while (true) {
+      try {
+        new Socket(InetAddress.getLoopbackAddress(), porta).close();
+        return;
+      } catch (ConnectException e) {
+        if (System.nanoTime() > limite) {
+          throw new IOException("Servidor não respondeu na porta " + porta);
+        }
+        Thread.sleep(100);
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A classe {@code Medidor} executa os microbenchmarks e guarda os resultados
+ * de todas as medições, gravados no fim em JSON para comparação entre versões.
+ *
+ * Cada medição roda {@code bench.aquecimento} rodadas descartadas, para que o
+ * JIT compile o código medido, e depois {@code bench.rodadas} rodadas de
+ * {@code bench.iteracoes} operações. O resultado traz a média, o mínimo, o
+ * máximo e o desvio padrão do tempo por operação entre as rodadas.
+ */
+public class Medidor {
+  private static final int AQUECIMENTO = Integer.getInteger("bench.aquecimento", 3);
+  private static final int RODADAS = Integer.getInteger("bench.rodadas", 5);
+  private static final int ITERACOES = Integer.getInteger("bench.iteracoes", 100_000);
+
+  /**
+   * Operação medida. O valor devolvido é acumulado para que o JIT não elimine
+   * o trabalho como código morto.
+   */
+  public interface Operacao {
+    int executar(int iteracao) throws Exception;
+  }
+
+  private final List<Map<String, Object>> resultados = new ArrayList<>();
+  private long sumidouro;
+
+  /**
+   * Mede uma operação e guarda o resultado.
+   *
+   * @param nome     o nome da medição no relatório.
+   * @param operacao a operação, chamada com o número da iteração.
+   * @throws Exception se a operação falhar.
+   */
+  public void medir(String nome, Operacao operacao) throws Exception {
+    double[] nsPorOperacao = new double[RODADAS];
+    for (int rodada = -AQUECIMENTO; rodada < RODADAS; rodada++) {
+      // Evita que o lixo de uma medição seja coletado durante a seguinte
+      System.gc();
+      long inicio = System.nanoTime();
+      for (int i = 0; i < ITERACOES; i++) {
+        sumidouro += operacao.executar(i);
+      }
+      long decorrido = System.nanoTime() - inicio;
+      if (rodada >= 0) {
+        nsPorOperacao[rodada] = (double) decorrido / ITERACOES;
+      }
+    }
+
+    double media = Arrays.stream(nsPorOperacao).average().orElse(0);
+    double variancia = Arrays.stream(nsPorOperacao).map(v -> (v - media) * (v - media)).sum() / RODADAS;
+    Map<String, Object> resultado = new LinkedHashMap<>();
+    resultado.put("nome", nome);
+    resultado.put("unidade", "ns/op");
+    resultado.put("media", media);
+    resultado.put("minimo", Arrays.stream(nsPorOperacao).min().orElse(0));
+    resultado.put("maximo", Arrays.stream(nsPorOperacao).max().orElse(0));
+    resultado.put("desvio", Math.sqrt(variancia));
+    resultado.put("rodadas", RODADAS);
+    resultado.put("iteracoes", ITERACOES);
+    resultados.add(resultado);
+    System.out.printf("%-28s %10.1f ns/op  (± %.1f)%n", nome, media, Math.sqrt(variancia));
+  }
+
+  /**
+   * Guarda um resultado medido por fora do {@link #medir(String, Operacao)},
+   * como o de uma medição de ponta a ponta.
+   *
+   * @param resultado as métricas, incluindo o {@code "nome"}.
+   */
+  public void adicionar(Map<String, Object> resultado) {
+    resultados.add(resultado);
+  }
+
+  /**
+   * Grava os resultados em JSON no arquivo de {@code bench.saida}, ou na saída
+   * padrão se a propriedade não estiver definida.
+   *
+   * @throws IOException em caso de falha na escrita.
+   */
+  public void gravar() throws IOException {
+    Map<String, Object> relatorio = new LinkedHashMap<>();
+    relatorio.put("data", Instant.now().toString());
+    relatorio.put("java", System.getProperty("java.version"));
+    relatorio.put("processadores", Runtime.getRuntime().availableProcessors());
+    relatorio.put("resultados", resultados);
+    String json = json(relatorio) + "\n";
+
+    String saida = System.getProperty("bench.saida");
+    if (saida == null) {
+      System.out.print(json);
+    } else {
+      Files.write(Paths.get(saida), json.getBytes(StandardCharsets.UTF_8));
+      System.out.println("Resultados gravados em " + saida + " (" + sumidouro + ")");
+    }
+  }
+
+  /**
+   * Lê os arquivos JSON do corpus de respostas gravadas da OMDb, em ordem
+   * alfabética.
+   *
+   * @return o conteúdo de cada arquivo.
+   * @throws IOException se o diretório de {@code bench.corpus} não puder ser
+   *                     lido.
+   */
+  public static List<String> corpus() throws IOException {
+    Path diretorio = Paths.get(System.getProperty("bench.corpus", "bench/corpus"));
+    List<Path> arquivos = new ArrayList<>();
+    try (DirectoryStream<Path> lista = Files.newDirectoryStream(diretorio, "*.json")) {
+      lista.forEach(arquivos::add);
+    }
+    Collections.sort(arquivos);
+    List<String> respostas = new ArrayList<>();
+    for (Path arquivo : arquivos) {
+      respostas.add(Files.readString(arquivo, StandardCharsets.UTF_8).trim());
+    }
+    if (respostas.isEmpty()) {
+      throw new IOException("Corpus vazio em " + diretorio);
+    }
+    return respostas;
+  }
+
+  /**
+   * Lê uma linha de uma mensagem HTTP, sem o CRLF.
+   *
+   * @param in o fluxo de entrada.
+   * @return a linha, ou vazio no fim do fluxo.
+   * @throws IOException em caso de falha na leitura.
+   */
+  static String lerLinha(InputStream in) throws IOException {
+    StringBuilder linha = new StringBuilder();
+    int b;
+    while ((b = in.read()) != -1 && b != '\n') {
+      if (b != '\r') {
+        linha.append((char) b);
+      }
+    }
+    return linha.toString();
+  }
+
+  private static String json(Object valor) {
+    if (valor instanceof Map) {
+      StringJoiner campos = new StringJoiner(", ", "{", "}");
+      ((Map<?, ?>) valor).forEach((chave, v) -> campos.add(json(chave) + ": " + json(v)));
+      return campos.toString();
+    }
+    if (valor instanceof List) {
+      StringJoiner itens = new StringJoiner(",\n  ", "[\n  ", "\n]");
+      ((List<?>) valor).forEach(v -> itens.add(json(v)));
+      return itens.toString();
+    }
+    if (valor instanceof Double numero) {
+      return String.format(Locale.ROOT, "%.2f", numero);
+    }
+    if (valor instanceof Number || valor instanceof Boolean) {
+      return valor.toString();
+    }
+    StringBuilder texto = new StringBuilder("\"");
+    for (char c : String.valueOf(valor).toCharArray()) {
+      if (c == '"' || c == '\\') {
+        texto.append('\\').append(c);
+      } else if (c < 0x20) {
+        texto.append(String.format("\\u%04x", (int) c));
+      } else {
+        texto.append(c);
+      }
+    }
+    return texto.append('"').toString();
+  }
+}
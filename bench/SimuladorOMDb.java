@@ -0,0 +1,189 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A classe {@code SimuladorOMDb} faz o papel da OMDb em testes de
+ * desempenho, sem depender da API real, que tem cota diária e latência
+ * variável.
+ *
+ * Cada busca recebe a resposta gravada do corpus correspondente ao título;
+ * títulos desconhecidos são distribuídos entre as respostas pelo hash, e um
+ * número no fim do título é ignorado, para que {@code "Matrix 42"} receba a
+ * resposta de {@code "Matrix"} sem passar pelo cache do servidor. O atraso
+ * de cada resposta segue a distribuição configurada, uma fração das
+ * respostas pode ser um erro 503 e outra fração pode ser enviada aos poucos,
+ * como em uma rede congestionada. Os sorteios usam uma semente fixa por
+ * conexão, para que as execuções sejam reproduzíveis.
+ *
+ * Propriedades:
+ * <ul>
+ * <li>{@code bench.omdb.atraso}: mediana do atraso, em milissegundos
+ * (0);</li>
+ * <li>{@code bench.omdb.distribuicao}: {@code fixa}, {@code exponencial} ou
+ * {@code lognormal} (fixa);</li>
+ * <li>{@code bench.omdb.dispersao}: desvio do logaritmo do atraso na
+ * distribuição lognormal (0.5);</li>
+ * <li>{@code bench.omdb.erros}: fração das respostas com erro 503 (0);</li>
+ * <li>{@code bench.omdb.gotejamento}: fração das respostas enviadas em
+ * trechos de 64 bytes (0);</li>
+ * <li>{@code bench.omdb.pausa}: milissegundos entre os trechos (20);</li>
+ * <li>{@code bench.omdb.semente}: semente dos sorteios (42).</li>
+ * </ul>
+ *
+ * Também pode ser executado sozinho, para apontar um servidor iniciado à mão
+ * para ele:
+ *
+ * <pre>
+ * java -Dbench.omdb.porta=9099 -Dbench.omdb.atraso=80 -cp out SimuladorOMDb
+ * java -Dbuscafilmes.omdb.host=127.0.0.1 -Dbuscafilmes.omdb.porta=9099 -cp out BuscaFilmes
+ * </pre>
+ */
+public class SimuladorOMDb implements Closeable {
+  private static final double ATRASO = Double.parseDouble(System.getProperty("bench.omdb.atraso", "0"));
+  private static final String DISTRIBUICAO = System.getProperty("bench.omdb.distribuicao", "fixa");
+  private static final double DISPERSAO = Double.parseDouble(System.getProperty("bench.omdb.dispersao", "0.5"));
+  private static final double ERROS = Double.parseDouble(System.getProperty("bench.omdb.erros", "0"));
+  private static final double GOTEJAMENTO = Double.parseDouble(System.getProperty("bench.omdb.gotejamento", "0"));
+  private static final int PAUSA = Integer.getInteger("bench.omdb.pausa", 20);
+  private static final long SEMENTE = Long.getLong("bench.omdb.semente", 42);
+  private static final int TRECHO = 64;
+
+  private static final byte[] ERRO = ("HTTP/1.1 503 Service Unavailable\r\nContent-Type: text/plain\r\n"
+      + "Content-Length: 19\r\n\r\nService Unavailable").getBytes(StandardCharsets.US_ASCII);
+
+  private final ServerSocket servidor;
+  private final Map<String, Integer> indices = new HashMap<>();
+  private final byte[][] respostas;
+  private final AtomicLong conexoes = new AtomicLong();
+
+  /**
+   * Abre o simulador e começa a atender em uma thread própria.
+   *
+   * @param corpus as respostas gravadas, de {@link Medidor#corpus()}.
+   * @param porta  a porta local, ou {@code 0} para uma porta livre.
+   * @throws IOException se a porta não puder ser aberta.
+   */
+  public SimuladorOMDb(List<String> corpus, int porta) throws IOException {
+    respostas = new byte[corpus.size()][];
+    for (int i = 0; i < respostas.length; i++) {
+      Filme filme = LeitorJSON.lerFilme(corpus.get(i));
+      indices.put(titulo(filme), i);
+      byte[] corpo = corpus.get(i).getBytes(StandardCharsets.UTF_8);
+      byte[] cabecalho = ("HTTP/1.1 200 OK\r\nContent-Type: application/json; charset=utf-8\r\n"
+          + "Content-Length: " + corpo.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+      respostas[i] = Arrays.copyOf(cabecalho, cabecalho.length + corpo.length);
+      System.arraycopy(corpo, 0, respostas[i], cabecalho.length, corpo.length);
+    }
+    servidor = new ServerSocket(porta, 128, InetAddress.getLoopbackAddress());
+    Thread aceitador = new Thread(this::aceitar, "simulador-omdb");
+    aceitador.setDaemon(true);
+    aceitador.start();
+  }
+
+  /**
+   * O título pelo qual uma resposta do corpus é buscada.
+   *
+   * @param filme a resposta lida.
+   * @return o título do filme, ou um título fixo para "Movie not found!".
+   */
+  public static String titulo(Filme filme) {
+    return filme.encontrado() ? filme.titulo() : "Titulo Inexistente";
+  }
+
+  /**
+   * @return a porta em que o simulador atende.
+   */
+  public int getPorta() {
+    return servidor.getLocalPort();
+  }
+
+  @Override
+  public void close() throws IOException {
+    servidor.close();
+  }
+
+  public static void main(String[] args) throws Exception {
+    // Cliente é usado só para ler buscas; não deve abrir o acervo nem os posters em disco
+    System.getProperties().putIfAbsent("buscafilmes.acervo", "");
+    System.getProperties().putIfAbsent("buscafilmes.posters", "");
+    SimuladorOMDb simulador = new SimuladorOMDb(Medidor.corpus(), Integer.getInteger("bench.omdb.porta", 9099));
+    System.out.println("Simulador da OMDb na porta " + simulador.getPorta() + " (atraso " + DISTRIBUICAO + " de "
+        + ATRASO + " ms, erros " + ERROS + ", gotejamento " + GOTEJAMENTO + ")");
+    Thread.currentThread().join();
+  }
+
+  private void aceitar() {
+    while (!servidor.isClosed()) {
+      Socket socket;
+      try {
+        socket = servidor.accept();
+      } catch (IOException e) {
+        return;
+      }
+      Random sorteio = new Random(SEMENTE + conexoes.getAndIncrement());
+      Thread conexao = new Thread(() -> atender(socket, sorteio), "simulador-conexao");
+      conexao.setDaemon(true);
+      conexao.start();
+    }
+  }
+
+  /**
+   * Responde às requisições de uma conexão persistente, em ordem.
+   */
+  private void atender(Socket socket, Random sorteio) {
+    try (Socket s = socket;
+        InputStream in = new BufferedInputStream(s.getInputStream());
+        OutputStream out = s.getOutputStream()) {
+      s.setTcpNoDelay(true);
+      String linha;
+      while (!(linha = Medidor.lerLinha(in)).isEmpty()) {
+        while (!Medidor.lerLinha(in).isEmpty()) {
+          // Cabeçalhos ignorados
+        }
+        String caminho = linha.split(" ")[1];
+        Cliente.Busca busca = Cliente.lerBusca(caminho);
+        String titulo = busca.titulo() == null ? "" : busca.titulo().replaceAll(" \\d+$", "");
+        long atraso = atraso(sorteio);
+        if (atraso > 0) {
+          TimeUnit.NANOSECONDS.sleep(atraso);
+        }
+        if (sorteio.nextDouble() < ERROS) {
+          out.write(ERRO);
+          continue;
+        }
+        Integer indice = indices.get(titulo);
+        byte[] resposta = respostas[indice != null ? indice : Math.floorMod(titulo.hashCode(), respostas.length)];
+        if (sorteio.nextDouble() < GOTEJAMENTO) {
+          for (int i = 0; i < resposta.length; i += TRECHO) {
+            out.write(resposta, i, Math.min(TRECHO, resposta.length - i));
+            out.flush();
+            Thread.sleep(PAUSA);
+          }
+        } else {
+          out.write(resposta);
+        }
+      }
+    } catch (IOException | InterruptedException e) {
+      // Conexão encerrada pelo servidor
+    }
+  }
+
+  /**
+   * Sorteia o atraso de uma resposta.
+   *
+   * @return o atraso em nanossegundos.
+   */
+  private static long atraso(Random sorteio) {
+    double ms = switch (DISTRIBUICAO) {
+      // Com a mesma mediana, a média da exponencial é maior
+      case "exponencial" -> -ATRASO / Math.log(2) * Math.log(1 - sorteio.nextDouble());
+      case "lognormal" -> ATRASO * Math.exp(DISPERSAO * sorteio.nextGaussian());
+      default -> ATRASO;
+    };
+    return (long) (ms * 1_000_000);
+  }
+}
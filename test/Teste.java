@@ -0,0 +1,60 @@
+import java.util.Objects;
+
+/**
+ * A classe {@code Teste} reúne as verificações usadas pelos testes. Uma
+ * verificação que não passa lança {@link AssertionError} com a descrição do
+ * que era esperado.
+ */
+public final class Teste {
+  /**
+   * Código de um caso de teste que deve lançar uma exceção.
+   */
+  @FunctionalInterface
+  public interface Codigo {
+    void executar() throws Exception;
+  }
+
+  private Teste() {
+  }
+
+  /**
+   * @param condicao  a condição esperada.
+   * @param descricao o que a condição significa.
+   */
+  public static void verificar(boolean condicao, String descricao) {
+    if (!condicao) {
+      throw new AssertionError(descricao);
+    }
+  }
+
+  /**
+   * @param esperado  o valor esperado.
+   * @param obtido    o valor obtido.
+   * @param descricao o que o valor significa.
+   */
+  public static void igual(Object esperado, Object obtido, String descricao) {
+    if (!Objects.equals(esperado, obtido)) {
+      throw new AssertionError(descricao + ": esperado <" + esperado + ">, obtido <" + obtido + ">");
+    }
+  }
+
+  /**
+   * Executa o código e verifica que ele lança uma exceção do tipo informado.
+   *
+   * @param tipo      o tipo esperado, que deve ser exatamente o da exceção.
+   * @param codigo    o código executado.
+   * @param descricao o que o código faz.
+   * @return a exceção lançada.
+   */
+  public static <T extends Throwable> T lanca(Class<T> tipo, Codigo codigo, String descricao) {
+    try {
+      codigo.executar();
+    } catch (Throwable e) {
+      if (e.getClass() != tipo) {
+        throw new AssertionError(descricao + ": esperado " + tipo.getName() + ", lançado " + e, e);
+      }
+      return tipo.cast(e);
+    }
+    throw new AssertionError(descricao + ": esperado " + tipo.getName() + ", nada lançado");
+  }
+}
@@ -0,0 +1,149 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Testes de {@link AcervoDisco}, em um diretório temporário.
+ */
+class TesteAcervoDisco {
+  private static Path diretorio() throws Exception {
+    Path diretorio = Files.createTempDirectory("acervo");
+    diretorio.toFile().deleteOnExit();
+    return diretorio;
+  }
+
+  static void respostasSobrevivemAoReinicioEACompactacao() throws Exception {
+    Path diretorio = diretorio();
+    // Mais chaves do que cabem no índice inicial
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      for (int i = 0; i < 2000; i++) {
+        acervo.guardar("short|filme " + i, "{\"Title\":\"Filme " + i + "\"}");
+      }
+      acervo.guardar("short|filme 1", "{\"Title\":\"Outro\"}");
+      Teste.igual(2000, acervo.getTamanho(), "regravação substitui a resposta");
+    }
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      Teste.igual("{\"Title\":\"Outro\"}", acervo.obter("short|filme 1").json(), "última versão após reabrir");
+      Teste.igual("{\"Title\":\"Filme 1999\"}", acervo.obter("short|filme 1999").json(), "após crescer o índice");
+      acervo.compactar();
+      Teste.igual("{\"Title\":\"Outro\"}", acervo.obter("short|filme 1").json(), "após compactar");
+      Teste.igual(2000, acervo.getTamanho(), "tamanho após compactar");
+      Teste.igual(null, acervo.obter("short|ausente"), "chave ausente");
+    }
+  }
+
+  static void registroIncompletoEDescartado() throws Exception {
+    Path diretorio = diretorio();
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      acervo.guardar("full|alien", "{\"Title\":\"Alien\"}");
+      acervo.guardar("full|aliens", "{\"Title\":\"Aliens\"}");
+    }
+    // Escrita interrompida no meio do último registro, sem o índice
+    Files.delete(diretorio.resolve("filmes.idx"));
+    try (FileChannel dados = FileChannel.open(diretorio.resolve("filmes.dat"), StandardOpenOption.WRITE)) {
+      dados.truncate(dados.size() - 3);
+    }
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      Teste.igual("{\"Title\":\"Alien\"}", acervo.obter("full|alien").json(), "registro completo");
+      Teste.igual(null, acervo.obter("full|aliens"), "registro incompleto");
+      Teste.igual(1, acervo.getTamanho(), "tamanho");
+      acervo.guardar("full|aliens", "{\"Title\":\"Aliens\"}");
+    }
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      Teste.igual("{\"Title\":\"Aliens\"}", acervo.obter("full|aliens").json(), "gravado depois do descarte");
+    }
+  }
+
+  static void registroGuardaADataDaGravacao() throws Exception {
+    Path diretorio = diretorio();
+    long antes = System.currentTimeMillis();
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      acervo.guardar("short|matrix", "{\"Title\":\"The Matrix\"}");
+      AcervoDisco.Registro registro = acervo.obter("short|matrix");
+      Teste.igual("{\"Title\":\"The Matrix\"}", registro.json(), "JSON guardado");
+      Teste.verificar(registro.gravadoEm() >= antes && registro.gravadoEm() <= System.currentTimeMillis(),
+          "data da gravação: " + registro.gravadoEm());
+      Teste.verificar(registro.idade() < 60_000, "idade: " + registro.idade());
+      Teste.igual(null, acervo.obter("short|outro"), "chave ausente");
+    }
+  }
+
+  static void dataSobreviveAReconstrucaoDoIndice() throws Exception {
+    Path diretorio = diretorio();
+    long gravadoEm;
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      acervo.guardar("full|alien", "{\"Title\":\"Alien\"}");
+      acervo.guardar("full|alien", "{\"Title\":\"Alien\",\"Year\":\"1979\"}");
+      gravadoEm = acervo.obter("full|alien").gravadoEm();
+    }
+    // Sem o índice, os registros são relidos do arquivo de dados
+    Files.delete(diretorio.resolve("filmes.idx"));
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      AcervoDisco.Registro registro = acervo.obter("full|alien");
+      Teste.igual("{\"Title\":\"Alien\",\"Year\":\"1979\"}", registro.json(), "última versão");
+      Teste.igual(gravadoEm, registro.gravadoEm(), "data da gravação");
+      acervo.compactar();
+      Teste.igual(gravadoEm, acervo.obter("full|alien").gravadoEm(), "data após compactar");
+      List<String> todos = new ArrayList<>();
+      acervo.percorrer(todos::add);
+      Teste.igual(List.of("{\"Title\":\"Alien\",\"Year\":\"1979\"}"), todos, "registros percorridos");
+    }
+  }
+
+  static void registroSemDataTemIdadeDesconhecida() throws Exception {
+    // Registro no formato anterior, sem a data da gravação
+    byte[] chave = "short|matrix".getBytes(StandardCharsets.UTF_8);
+    byte[] valor = "{\"Title\":\"The Matrix\"}".getBytes(StandardCharsets.UTF_8);
+    CRC32 crc = new CRC32();
+    crc.update(chave);
+    crc.update(valor);
+    ByteBuffer registro = ByteBuffer.allocate(16 + chave.length + valor.length);
+    registro.putInt(0x42465247).putInt(chave.length).putInt(valor.length).putInt((int) crc.getValue())
+        .put(chave).put(valor);
+    Path diretorio = diretorio();
+    Files.write(diretorio.resolve("filmes.dat"), registro.array());
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      AcervoDisco.Registro antigo = acervo.obter("short|matrix");
+      Teste.igual("{\"Title\":\"The Matrix\"}", antigo.json(), "JSON do registro antigo");
+      Teste.igual(0L, antigo.gravadoEm(), "data desconhecida");
+      Teste.igual(Long.MAX_VALUE, antigo.idade(), "idade desconhecida");
+      acervo.guardar("short|matrix", antigo.json());
+      Teste.verificar(acervo.obter("short|matrix").gravadoEm() > 0, "regravado com data");
+    }
+  }
+
+  static void percorrerNaoBloqueiaGravacoes() throws Exception {
+    Path diretorio = diretorio();
+    ExecutorService outra = Executors.newSingleThreadExecutor();
+    try (AcervoDisco acervo = AcervoDisco.abrir(diretorio)) {
+      for (int i = 0; i < 10; i++) {
+        acervo.guardar("short|filme " + i, "{\"Title\":\"Filme " + i + "\"}");
+      }
+      Set<String> todos = new HashSet<>();
+      int[] chamadas = { 0 };
+      acervo.percorrer(json -> {
+        todos.add(json);
+        if (chamadas[0]++ == 0) {
+          // Gravação e compactação em outra thread durante o percurso
+          try {
+            outra.submit(() -> {
+              acervo.guardar("short|filme 0", "{\"Title\":\"Filme 0\"}");
+              acervo.compactar();
+              return null;
+            }).get(5, TimeUnit.SECONDS);
+          } catch (Exception e) {
+            throw new AssertionError("gravação bloqueada pelo percurso", e);
+          }
+        }
+      });
+      Teste.igual(10, chamadas[0], "uma resposta por chave");
+      Teste.igual(10, todos.size(), "todas as chaves percorridas");
+    } finally {
+      outra.shutdownNow();
+    }
+  }
+}
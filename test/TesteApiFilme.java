@@ -0,0 +1,32 @@
+/**
+ * Testes do documento JSON de {@link ApiFilme}.
+ */
+class TesteApiFilme {
+  private static String documento(String busca, String json) {
+    SaidaBytes saida = new SaidaBytes(1024);
+    ApiFilme.escreverFilme(busca, LeitorJSON.lerFilme(json), null, saida);
+    return saida.toString();
+  }
+
+  static void camposNormalizados() {
+    Teste.igual("{\"busca\":\"matrix\",\"encontrado\":true,\"imdbID\":\"tt0133093\",\"titulo\":\"The Matrix\","
+        + "\"ano\":\"1999\",\"duracaoMinutos\":136,\"nota\":8.7,\"generos\":[\"Action\",\"Sci-Fi\"],"
+        + "\"diretores\":[\"Lana Wachowski\",\"Lilly Wachowski\"],\"elenco\":[],\"sinopse\":\"Diz \\\"oi\\\"\","
+        + "\"poster\":\"https://exemplo/m.jpg\"}",
+        documento("matrix", "{\"Title\":\"The Matrix\",\"Year\":\"1999\",\"Runtime\":\"136 min\","
+            + "\"imdbRating\":\"8.7\",\"Genre\":\"Action, Sci-Fi\",\"Director\":\"Lana Wachowski, Lilly Wachowski\","
+            + "\"Actors\":\"N/A\",\"Plot\":\"Diz \\\"oi\\\"\",\"Poster\":\"https://exemplo/m.jpg\","
+            + "\"imdbID\":\"tt0133093\",\"Response\":\"True\"}"),
+        "filme completo");
+  }
+
+  static void valoresAusentesViramNull() {
+    String documento = documento("x", "{\"Title\":\"X\",\"Year\":\"N/A\",\"Runtime\":\"N/A\",\"imdbRating\":\"8.\","
+        + "\"Poster\":\"javascript:alert(1)\",\"imdbID\":\"tt1\",\"Response\":\"True\"}");
+    Teste.verificar(documento.contains("\"ano\":null,\"duracaoMinutos\":null,\"nota\":8,"), documento);
+    Teste.verificar(documento.contains("\"generos\":[]"), documento);
+    Teste.verificar(documento.endsWith("\"sinopse\":null,\"poster\":null}"), documento);
+    Teste.igual("{\"busca\":\"y\",\"encontrado\":false,\"erro\":\"Movie not found!\"}",
+        documento("y", "{\"Response\":\"False\",\"Error\":\"Movie not found!\"}"), "não encontrado");
+  }
+}
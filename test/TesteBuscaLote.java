@@ -0,0 +1,29 @@
+import java.util.*;
+
+/**
+ * Testes da leitura e da validação de pedidos de {@link BuscaLote}.
+ */
+class TesteBuscaLote {
+  static void titulosDaQueryEDoCorpo() {
+    BuscaLote.Pedido pedido = BuscaLote.lerPedido("/buscar/lote?t=Alien&t=&t=The%20Matrix", null,
+        "Heat\r\n  \n Brazil \n");
+    Teste.igual(List.of("Alien", "The Matrix", "Heat", "Brazil"), pedido.titulos(), "query e linhas do corpo");
+    Teste.verificar(!pedido.sinopseResumida(), "sem plot");
+
+    pedido = BuscaLote.lerPedido("/buscar/lote?plot=short", "application/x-www-form-urlencoded; charset=UTF-8",
+        "t=Am%C3%A9lie&t=Up+\n");
+    Teste.igual(List.of("Amélie", "Up"), pedido.titulos(), "formulário no corpo");
+    Teste.verificar(pedido.sinopseResumida(), "plot na query");
+    Teste.verificar(BuscaLote.lerPedido("/buscar/lote", "application/x-www-form-urlencoded", "plot=short&t=Up")
+        .sinopseResumida(), "plot no formulário");
+  }
+
+  static void loteVazioOuGrandeDemaisERecusado() {
+    Teste.verificar(BuscaLote.validar(BuscaLote.lerPedido("/buscar/lote?t=%20", null, "")) != null, "vazio");
+    Teste.igual(null, BuscaLote.validar(new BuscaLote.Pedido(List.of("Alien"), false)), "um título");
+    List<String> titulos = Collections.nCopies(BuscaLote.MAXIMO + 1, "Alien");
+    Teste.verificar(BuscaLote.validar(new BuscaLote.Pedido(titulos, false)) != null, "além do máximo");
+    Teste.igual(null, BuscaLote.validar(new BuscaLote.Pedido(titulos.subList(0, BuscaLote.MAXIMO), false)),
+        "no máximo");
+  }
+}
@@ -0,0 +1,113 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Testes de {@link CacheDistribuido}: o anel de hash consistente, sem abrir
+ * portas, e o envio de pedidos a um dono simulado.
+ */
+class TesteCacheDistribuido {
+  private static final List<String> NOS = List.of("10.0.0.1:9300", "10.0.0.2:9300", "10.0.0.3:9300");
+  private static final int CHAVES = 3000;
+
+  private static CacheDistribuido grupo(List<String> nos, String local) {
+    return new CacheDistribuido(nos, local, 16, 60, 100, 1000, 1000, 1, LimiteOMDB.Prioridade.LOTE);
+  }
+
+  /**
+   * @return o endereço do dono da chave, visto por um nó do grupo.
+   */
+  private static String dono(CacheDistribuido grupo, String local, String chave) {
+    CacheDistribuido.No dono = grupo.dono(chave);
+    return dono == null ? local : dono.toString();
+  }
+
+  static void todosOsNosConcordamSobreODono() throws Exception {
+    Map<String, Integer> porNo = new HashMap<>();
+    List<CacheDistribuido> grupos = new ArrayList<>();
+    try {
+      for (String no : NOS) {
+        grupos.add(grupo(NOS, no));
+      }
+      // A ordem da lista e os repetidos não mudam o anel
+      grupos.add(grupo(List.of(NOS.get(2), NOS.get(0), NOS.get(1), NOS.get(0)), NOS.get(0)));
+      for (int i = 0; i < CHAVES; i++) {
+        String chave = CacheFilmes.chave("Filme " + i, i % 2 == 0);
+        String dono = dono(grupos.get(0), NOS.get(0), chave);
+        for (int j = 1; j < NOS.size(); j++) {
+          Teste.igual(dono, dono(grupos.get(j), NOS.get(j), chave), "dono de " + chave + " visto por " + NOS.get(j));
+        }
+        Teste.igual(dono, dono(grupos.get(3), NOS.get(0), chave), "dono de " + chave + " com a lista reordenada");
+        porNo.merge(dono, 1, Integer::sum);
+      }
+    } finally {
+      for (CacheDistribuido grupo : grupos) {
+        grupo.close();
+      }
+    }
+    for (String no : NOS) {
+      int chaves = porNo.getOrDefault(no, 0);
+      Teste.verificar(chaves > CHAVES / 5 && chaves < CHAVES / 2, "chaves de " + no + ": " + chaves);
+    }
+  }
+
+  static void saidaDeUmNoSoMoveAsChavesDele() throws Exception {
+    List<String> menos = NOS.subList(0, 2);
+    try (CacheDistribuido antes = grupo(NOS, NOS.get(0)); CacheDistribuido depois = grupo(menos, NOS.get(0))) {
+      for (int i = 0; i < CHAVES; i++) {
+        String chave = CacheFilmes.chave("Filme " + i, false);
+        String donoAntes = dono(antes, NOS.get(0), chave);
+        String donoDepois = dono(depois, NOS.get(0), chave);
+        if (!donoAntes.equals(NOS.get(2))) {
+          Teste.igual(donoAntes, donoDepois, "dono de " + chave + " após a saída de outro nó");
+        } else {
+          Teste.verificar(menos.contains(donoDepois), "nova dona de " + chave + ": " + donoDepois);
+        }
+      }
+    }
+  }
+
+  static void listaInvalidaERecusada() {
+    Teste.lanca(IllegalArgumentException.class, () -> grupo(NOS, "10.0.0.9:9300"), "nó local fora da lista");
+    Teste.lanca(IllegalArgumentException.class, () -> grupo(List.of("10.0.0.1"), "10.0.0.1"), "nó sem porta");
+  }
+
+  static void tituloLongoVaiInteiroAoDono() throws Exception {
+    try (ServerSocket falso = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      String outro = "127.0.0.1:" + falso.getLocalPort();
+      Thread dono = new Thread(() -> {
+        try (Socket s = falso.accept();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(s.getOutputStream())) {
+          in.readByte();
+          in.readBoolean();
+          in.readByte();
+          byte[] titulo = new byte[in.readInt()];
+          in.readFully(titulo);
+          byte[] json = ("{\"Tamanho\":" + titulo.length + "}").getBytes(StandardCharsets.UTF_8);
+          out.writeByte(0);
+          out.writeInt(json.length);
+          out.write(json);
+          out.flush();
+        } catch (IOException e) {
+          // O teste falha pela resposta ausente
+        }
+      });
+      dono.setDaemon(true);
+      dono.start();
+      try (CacheDistribuido grupo = grupo(List.of("127.0.0.1:1", outro), "127.0.0.1:1")) {
+        CacheDistribuido.No no = grupo.getNos().get(1);
+        // Além dos 64 KB de writeUTF
+        String titulo = "á".repeat(40_000);
+        Teste.igual("{\"Tamanho\":80000}", grupo.consultar(no, titulo, false, LimiteOMDB.Prioridade.LOTE),
+            "resposta do dono");
+
+        Teste.lanca(CacheDistribuido.Indisponivel.class,
+            () -> grupo.consultar(no, "a".repeat(2 << 20), false, LimiteOMDB.Prioridade.LOTE),
+            "título maior que o protocolo");
+        Teste.verificar(no.indisponivelAte == 0, "dono continua no anel");
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+import java.util.*;
+
+/**
+ * Testes de {@link CacheFilmes}.
+ */
+class TesteCacheFilmes {
+  static final RespostaFilme ENCONTRADO = RespostaFilme.ler("{\"Title\":\"The Matrix\",\"Response\":\"True\"}");
+  static final RespostaFilme NAO_ENCONTRADO = RespostaFilme.ler("{\"Response\":\"False\",\"Error\":\"Movie not found!\"}");
+
+  /**
+   * Procura chaves que caem no mesmo segmento de {@code chave}, usando um
+   * cache de uma entrada por segmento: a nova chave descarta a anterior.
+   */
+  private static List<String> mesmoSegmento(String chave, int quantidade) {
+    List<String> chaves = new ArrayList<>();
+    for (int i = 0; chaves.size() < quantidade; i++) {
+      CacheFilmes cache = new CacheFilmes(1, 60, 60);
+      cache.guardar(chave, ENCONTRADO);
+      cache.guardar("k" + i, ENCONTRADO);
+      if (cache.obterVencida(chave) == null) {
+        chaves.add("k" + i);
+      }
+    }
+    return chaves;
+  }
+
+  static void entradaExpiraAoFimDoTempoDeVida() throws Exception {
+    CacheFilmes cache = new CacheFilmes(64, 60, 10);
+    // Guardadas 50 ms antes de expirar
+    cache.guardar("encontrado", ENCONTRADO, 60_000_000_000L - 50_000_000L);
+    cache.guardar("ausente", NAO_ENCONTRADO, 10_000_000_000L - 50_000_000L);
+    cache.guardar("recente", NAO_ENCONTRADO);
+    Teste.igual(ENCONTRADO, cache.obter("encontrado"), "antes de expirar");
+    Teste.igual(NAO_ENCONTRADO, cache.obter("ausente"), "não encontrado antes de expirar");
+    Thread.sleep(100);
+    Teste.igual(null, cache.obter("encontrado"), "expirado");
+    Teste.igual(-1L, cache.restante("encontrado"), "restante de expirado");
+    Teste.igual(ENCONTRADO, cache.obterVencida("encontrado"), "expirado como reserva");
+    Teste.igual(null, cache.obter("ausente"), "não encontrado expirado");
+    long restante = cache.restante("recente");
+    Teste.verificar(restante > 9_000_000_000L && restante <= 10_000_000_000L,
+        "não encontrado usa o tempo de vida menor: " + restante);
+    Teste.igual(2L, cache.getAcertos(), "acertos");
+    Teste.igual(2L, cache.getFalhas(), "falhas");
+  }
+
+  static void errosDaApiNaoSaoGuardados() {
+    CacheFilmes cache = new CacheFilmes(64, 60, 10);
+    cache.guardar("k", RespostaFilme.ler("{\"Response\":\"False\",\"Error\":\"Request limit reached!\"}"));
+    Teste.igual(null, cache.obterVencida("k"), "limite da API");
+    Teste.igual(0, cache.getTamanho(), "tamanho");
+  }
+
+  static void capacidadeDescartaAMenosUsada() {
+    List<String> outras = mesmoSegmento("a", 2);
+    String b = outras.get(0);
+    String c = outras.get(1);
+    // 16 segmentos de duas entradas
+    CacheFilmes cache = new CacheFilmes(32, 60, 10);
+    cache.guardar("a", ENCONTRADO);
+    cache.guardar(b, ENCONTRADO);
+    Teste.igual(ENCONTRADO, cache.obter("a"), "uso de a");
+    cache.guardar(c, ENCONTRADO);
+    Teste.igual(ENCONTRADO, cache.obterVencida("a"), "a, usada há pouco, fica");
+    Teste.igual(null, cache.obterVencida(b), "b, a menos usada, sai");
+    Teste.igual(ENCONTRADO, cache.obterVencida(c), "c entra");
+    Teste.igual(1L, cache.getRemocoes(), "remoções");
+    Teste.igual(2, cache.getTamanho(), "tamanho");
+  }
+
+  static void respostaAntigaDoAcervoFicaComoVencida() {
+    CacheFilmes cache = new CacheFilmes(64, 60, 10);
+    Teste.verificar(cache.guardar("k", ENCONTRADO, 30_000_000_000L), "dentro do tempo de vida");
+    long restante = cache.restante("k");
+    Teste.verificar(restante > 0 && restante <= 30_000_000_000L, "restante descontada a idade: " + restante);
+
+    Teste.verificar(!cache.guardar("v", ENCONTRADO, 61_000_000_000L), "além do tempo de vida");
+    Teste.igual(null, cache.obter("v"), "vencida não é servida");
+    Teste.igual(ENCONTRADO, cache.obterVencida("v"), "vencida como reserva");
+
+    Teste.verificar(!cache.guardar("d", ENCONTRADO, Long.MAX_VALUE), "idade desconhecida");
+    Teste.igual(ENCONTRADO, cache.obterVencida("d"), "idade desconhecida como reserva");
+  }
+}
@@ -0,0 +1,116 @@
+import java.io.*;
+import java.net.*;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Testes de {@link CachePosters}, em um diretório temporário.
+ */
+class TesteCachePosters {
+  private static Path diretorio() throws IOException {
+    return Files.createTempDirectory("teste-posters");
+  }
+
+  private static void apagar(Path diretorio) throws IOException {
+    try (Stream<Path> arquivos = Files.walk(diretorio)) {
+      for (Path arquivo : (Iterable<Path>) arquivos.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(arquivo);
+      }
+    }
+  }
+
+  static void soEnderecosHttpDeIdsValidos() throws Exception {
+    Path diretorio = diretorio();
+    try {
+      CachePosters posters = CachePosters.abrir(diretorio, 1 << 20, 1000);
+      posters.registrar(LeitorJSON.lerFilme("{\"imdbID\":\"tt1\",\"Poster\":\"https://exemplo/1.jpg\","
+          + "\"Response\":\"True\"}"));
+      posters.registrar(LeitorJSON.lerFilme("{\"imdbID\":\"tt2\",\"Poster\":\"javascript:alert(1)\","
+          + "\"Response\":\"True\"}"));
+      posters.registrar(LeitorJSON.lerFilme("{\"imdbID\":\"../tt3\",\"Poster\":\"https://exemplo/3.jpg\","
+          + "\"Response\":\"True\"}"));
+      Teste.verificar(posters.conhece("tt1"), "endereço https");
+      Teste.verificar(!posters.conhece("tt2"), "outro esquema");
+      Teste.verificar(!posters.conhece("../tt3"), "identificador inválido");
+      Teste.igual(null, posters.obter("tt2"), "poster desconhecido");
+    } finally {
+      apagar(diretorio);
+    }
+  }
+
+  static void capacidadeApagaOMenosUsado() throws Exception {
+    Path diretorio = diretorio();
+    try {
+      Path antigo = Files.write(diretorio.resolve("tt1.jpg"), new byte[60]);
+      Path recente = Files.write(diretorio.resolve("tt2.png"), new byte[60]);
+      Files.write(diretorio.resolve("tt3.tmp"), new byte[10]);
+      antigo.toFile().setLastModified(System.currentTimeMillis() - 60_000);
+      CachePosters posters = CachePosters.abrir(diretorio, 100, 1000);
+      Teste.verificar(!Files.exists(antigo), "mais antigo apagado");
+      Teste.verificar(Files.exists(recente), "recente mantido");
+      Teste.verificar(!Files.exists(diretorio.resolve("tt3.tmp")), "download interrompido apagado");
+      Teste.igual(60L, posters.getOcupado(), "ocupado");
+      Teste.igual(1L, posters.getRemocoes(), "remoções");
+    } finally {
+      apagar(diretorio);
+    }
+  }
+
+  static void downloadLentoEsgotaOPrazo() throws Exception {
+    Path diretorio = diretorio();
+    // Origem que envia o cabeçalho na hora e depois um byte a cada 100 ms
+    try (ServerSocket origem = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      Thread servidor = new Thread(() -> {
+        try (Socket s = origem.accept()) {
+          BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+          while (!in.readLine().isEmpty()) {
+          }
+          OutputStream out = s.getOutputStream();
+          out.write("HTTP/1.1 200 OK\r\nContent-Type: image/jpeg\r\nContent-Length: 1000\r\n\r\n"
+              .getBytes(StandardCharsets.US_ASCII));
+          for (int i = 0; i < 1000; i++) {
+            out.write('x');
+            out.flush();
+            Thread.sleep(100);
+          }
+        } catch (IOException | InterruptedException e) {
+          // Cliente desistiu
+        }
+      });
+      servidor.setDaemon(true);
+      servidor.start();
+
+      CachePosters posters = CachePosters.abrir(diretorio, 1 << 20, 300);
+      posters.registrar(RespostaFilme.ler("{\"imdbID\":\"tt1\",\"Poster\":\"http://127.0.0.1:" + origem.getLocalPort()
+          + "/p.jpg\",\"Response\":\"True\"}").filme());
+      long inicio = System.nanoTime();
+      Teste.lanca(HttpTimeoutException.class, () -> posters.obter("tt1"), "corpo que não termina");
+      long duracao = (System.nanoTime() - inicio) / 1_000_000;
+      Teste.verificar(duracao < 1500, "prazo do download inteiro: " + duracao + " ms");
+      Teste.igual(0L, posters.getOcupado(), "nada guardado");
+      try (Stream<Path> arquivos = Files.list(diretorio)) {
+        Teste.igual(0L, arquivos.count(), "arquivo temporário apagado");
+      }
+    } finally {
+      apagar(diretorio);
+    }
+  }
+
+  static void mesmaImagemComOutraExtensaoApagaAAntiga() throws Exception {
+    Path diretorio = diretorio();
+    try {
+      Path jpg = Files.write(diretorio.resolve("tt1.jpg"), new byte[100]);
+      Path png = Files.write(diretorio.resolve("tt1.png"), new byte[40]);
+      jpg.toFile().setLastModified(System.currentTimeMillis() - 60_000);
+      CachePosters posters = CachePosters.abrir(diretorio, 1 << 20, 1000);
+      Teste.verificar(!Files.exists(jpg), "arquivo antigo apagado");
+      Teste.verificar(Files.exists(png), "arquivo recente mantido");
+      Teste.igual(40L, posters.getOcupado(), "ocupado conta só o recente");
+    } finally {
+      apagar(diretorio);
+    }
+  }
+}
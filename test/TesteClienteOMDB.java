@@ -0,0 +1,211 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Testes de {@link ClienteOMDB}, contra um servidor local que responde 503
+ * às primeiras requisições.
+ */
+class TesteClienteOMDB {
+  /**
+   * Servidor HTTP mínimo: responde 503 às {@code falhas} primeiras
+   * requisições e 200 às demais, contando todas.
+   */
+  private static final class Servidor implements Closeable {
+    final ServerSocket socket;
+    final AtomicInteger recebidas = new AtomicInteger();
+
+    Servidor(int falhas) throws IOException {
+      socket = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+      Thread aceitador = new Thread(() -> {
+        while (!socket.isClosed()) {
+          try (Socket conexao = socket.accept()) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(conexao.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = conexao.getOutputStream();
+            String linha;
+            while ((linha = in.readLine()) != null) {
+              if (!linha.isEmpty()) {
+                continue;
+              }
+              String corpo = recebidas.incrementAndGet() <= falhas ? "falha" : "{\"Response\":\"True\"}";
+              String status = corpo.equals("falha") ? "503 Service Unavailable" : "200 OK";
+              out.write(("HTTP/1.1 " + status + "\r\nContent-Length: " + corpo.length() + "\r\n\r\n" + corpo)
+                  .getBytes(StandardCharsets.US_ASCII));
+              out.flush();
+            }
+          } catch (IOException e) {
+            // Servidor fechado
+          }
+        }
+      }, "teste-omdb");
+      aceitador.setDaemon(true);
+      aceitador.start();
+    }
+
+    ClienteOMDB cliente(int tentativas) {
+      return new ClienteOMDB("127.0.0.1", socket.getLocalPort(), 2, 1000, 1000, tentativas);
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  static void cadaTentativaMontaSeuCaminho() throws Exception {
+    try (Servidor servidor = new Servidor(2)) {
+      ClienteOMDB cliente = servidor.cliente(3);
+      AtomicInteger montados = new AtomicInteger();
+      ClienteOMDB.Resposta resposta = cliente.get(() -> "/?n=" + montados.incrementAndGet());
+      Teste.igual(200, resposta.status(), "status da última tentativa");
+      Teste.igual(3, servidor.recebidas.get(), "requisições recebidas");
+      Teste.igual(3, montados.get(), "caminhos montados");
+      cliente.close();
+    }
+  }
+
+  static void tempoMaximoSomaTodasAsTentativas() {
+    ClienteOMDB cliente = new ClienteOMDB("127.0.0.1", 9, 2, 1000, 2000, 3);
+    // 3 × (espera por conexão + conexão + leitura + fila) + pausas de 200 e 400
+    Teste.igual(3 * (1000 + 1000 + 2000 + 500) + 200 + 400L, cliente.getTempoMaximo(500), "pior caso");
+    cliente.close();
+  }
+
+  static void cadaTentativaReservaNoLimite() throws Exception {
+    try (Servidor servidor = new Servidor(Integer.MAX_VALUE)) {
+      ClienteOMDB cliente = servidor.cliente(3);
+      LimiteOMDB limite = new LimiteOMDB(new String[] { "chave" }, 2, 1000, 1000, 0);
+      LimiteOMDB.Esgotado erro = Teste.lanca(LimiteOMDB.Esgotado.class,
+          () -> cliente.get(() -> "/?apikey=" + limite.reservar(LimiteOMDB.Prioridade.INTERATIVA)),
+          "terceira tentativa sem cota");
+      Teste.verificar(erro.getMessage() != null, "mensagem da cota esgotada");
+      Teste.igual(2, servidor.recebidas.get(), "requisições enviadas");
+      Teste.igual(0, limite.getRestante(0), "cota restante");
+      cliente.close();
+    }
+  }
+
+  static void semConexaoLivreNadaEReservado() throws Exception {
+    try (Servidor servidor = new Servidor(0)) {
+      ClienteOMDB cliente = new ClienteOMDB("127.0.0.1", servidor.socket.getLocalPort(), 0, 50, 1000, 2);
+      LimiteOMDB limite = new LimiteOMDB(new String[] { "chave" }, 5, 1000, 1000, 0);
+      ClienteOMDB.Caminho caminho = () -> "/?apikey=" + limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+      Teste.lanca(SocketTimeoutException.class, () -> cliente.get(caminho), "espera por conexão esgotada");
+      Teste.lanca(ClienteOMDB.Ocupado.class, () -> cliente.getSeLivre(caminho, 0), "sem vaga além da reserva");
+      Teste.igual(5, limite.getRestante(0), "cota intacta");
+      Teste.igual(0, servidor.recebidas.get(), "requisições enviadas");
+      cliente.close();
+    }
+  }
+
+  static void conexaoRecusadaDevolveAReserva() throws Exception {
+    int porta;
+    try (ServerSocket livre = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      porta = livre.getLocalPort();
+    }
+    ClienteOMDB cliente = new ClienteOMDB("127.0.0.1", porta, 2, 1000, 1000, 2);
+    AtomicInteger montados = new AtomicInteger();
+    AtomicInteger cancelados = new AtomicInteger();
+    Teste.lanca(ConnectException.class, () -> cliente.get(new ClienteOMDB.Caminho() {
+      @Override
+      public String montar() {
+        montados.incrementAndGet();
+        return "/";
+      }
+
+      @Override
+      public void cancelar() {
+        cancelados.incrementAndGet();
+      }
+    }), "porta fechada");
+    Teste.igual(2, montados.get(), "tentativas montadas");
+    Teste.igual(2, cancelados.get(), "tentativas canceladas");
+    cliente.close();
+  }
+
+  /**
+   * Servidor que envia as respostas dadas, uma por requisição, e conta as
+   * conexões aceitas.
+   */
+  private static ServerSocket gravado(AtomicInteger conexoes, byte[]... respostas) throws IOException {
+    ServerSocket socket = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+    Thread aceitador = new Thread(() -> {
+      int proxima = 0;
+      while (!socket.isClosed()) {
+        try (Socket conexao = socket.accept()) {
+          conexoes.incrementAndGet();
+          BufferedReader in = new BufferedReader(
+              new InputStreamReader(conexao.getInputStream(), StandardCharsets.US_ASCII));
+          String linha;
+          while ((linha = in.readLine()) != null && proxima < respostas.length) {
+            if (linha.isEmpty()) {
+              conexao.getOutputStream().write(respostas[proxima++]);
+              conexao.getOutputStream().flush();
+            }
+          }
+        } catch (IOException e) {
+          // Servidor fechado
+        }
+      }
+    }, "teste-omdb-gravado");
+    aceitador.setDaemon(true);
+    aceitador.start();
+    return socket;
+  }
+
+  static void corpoELidoDoFluxoComChunksEContentLength() throws Exception {
+    // "é" dividido entre dois chunks e aspas escapadas na sinopse
+    byte[] inicio = "{\"Title\":\"Amélie\",\"Plot\":\"Diz \\\"oi\\\"\"".getBytes(StandardCharsets.UTF_8);
+    String fim = ",\"Response\":\"True\"}";
+    int corte = 13;
+    ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+    chunked.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+    chunked.write((Integer.toHexString(corte) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    chunked.write(inicio, 0, corte);
+    chunked.write(("\r\n" + Integer.toHexString(inicio.length - corte + fim.length()) + ";x=1\r\n")
+        .getBytes(StandardCharsets.US_ASCII));
+    chunked.write(inicio, corte, inicio.length - corte);
+    chunked.write((fim + "\r\n0\r\nX-Trailer: 1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    byte[] json = "{\"Title\":\"Alien\",\"Response\":\"True\"} ".getBytes(StandardCharsets.UTF_8);
+    byte[] comTamanho = ("HTTP/1.1 200 OK\r\nContent-Length: " + json.length + "\r\n\r\n" + new String(json,
+        StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+
+    AtomicInteger conexoes = new AtomicInteger();
+    try (ServerSocket servidor = gravado(conexoes, chunked.toByteArray(), comTamanho)) {
+      ClienteOMDB cliente = new ClienteOMDB("127.0.0.1", servidor.getLocalPort(), 1, 1000, 1000, 1);
+      ClienteOMDB.Resposta resposta = cliente.get(() -> "/");
+      Teste.igual("Amélie", resposta.filme().titulo(), "título com caractere dividido");
+      Teste.igual("Diz \"oi\"", resposta.filme().sinopse(), "sinopse com escapes");
+      Teste.igual(new String(inicio, StandardCharsets.UTF_8) + fim, resposta.corpo(),
+          "texto do corpo em chunks");
+
+      resposta = cliente.get(() -> "/");
+      Teste.igual("Alien", resposta.filme().titulo(), "título com Content-Length");
+      Teste.igual("{\"Title\":\"Alien\",\"Response\":\"True\"} ", resposta.corpo(), "corpo lido até o fim");
+      Teste.igual(1, conexoes.get(), "conexão reaproveitada após os dois corpos");
+      cliente.close();
+    }
+  }
+
+  static void respostaForaDosLimitesERecusada() throws Exception {
+    byte[][] respostas = {
+        "HTTP/1.1 200 OK\r\nContent-Length: 4294967297\r\n\r\n{}".getBytes(StandardCharsets.US_ASCII),
+        "HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n{}".getBytes(StandardCharsets.US_ASCII),
+        ("HTTP/1.1 200 OK\r\nX-Longo: " + "a".repeat(20_000) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII),
+        "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n-1\r\n{}".getBytes(StandardCharsets.US_ASCII),
+        ("HTTP/1.1 200 OK\r\nContent-Length: 2000000\r\n\r\n").getBytes(StandardCharsets.US_ASCII),
+    };
+    String[] casos = { "Content-Length além de int", "Content-Length negativo", "linha sem fim",
+        "chunk negativo", "corpo além do limite" };
+    AtomicInteger conexoes = new AtomicInteger();
+    try (ServerSocket servidor = gravado(conexoes, respostas)) {
+      ClienteOMDB cliente = new ClienteOMDB("127.0.0.1", servidor.getLocalPort(), 1, 1000, 1000, 1);
+      for (String caso : casos) {
+        Teste.lanca(IOException.class, () -> cliente.get(() -> "/"), caso);
+      }
+      cliente.close();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+import java.io.*;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Testes de {@link ConsultasEmAndamento}.
+ */
+class TesteConsultasEmAndamento {
+  /**
+   * Inicia uma consulta que só termina depois que outra thread passa a
+   * aguardá-la, e devolve o resultado (ou a exceção) de cada uma.
+   */
+  private static Object[] consultarJuntos(ConsultasEmAndamento<String> consultas,
+      ConsultasEmAndamento.Consulta<String> consulta) throws Exception {
+    ExecutorService threads = Executors.newFixedThreadPool(2);
+    try {
+      Future<Object> lider = threads.submit(() -> resultado(() -> consultas.executar("k", () -> {
+        // Só termina quando a segunda thread estiver aguardando
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (consultas.getAgrupadas() == 0 && System.nanoTime() < limite) {
+          Thread.onSpinWait();
+        }
+        return consulta.executar();
+      })));
+      while (!consultas.emAndamento("k")) {
+        Thread.onSpinWait();
+      }
+      Future<Object> seguidor = threads.submit(() -> resultado(() -> consultas.executar("k", () -> "segunda")));
+      return new Object[] { lider.get(10, TimeUnit.SECONDS), seguidor.get(10, TimeUnit.SECONDS) };
+    } finally {
+      threads.shutdownNow();
+    }
+  }
+
+  private static Object resultado(Callable<String> chamada) {
+    try {
+      return chamada.call();
+    } catch (Exception e) {
+      return e;
+    }
+  }
+
+  static void consultasSimultaneasCompartilhamUmaExecucao() throws Exception {
+    ConsultasEmAndamento<String> consultas = new ConsultasEmAndamento<>(5000);
+    AtomicInteger execucoes = new AtomicInteger();
+    Object[] resultados = consultarJuntos(consultas, () -> {
+      execucoes.incrementAndGet();
+      return "json";
+    });
+    Teste.igual("json", resultados[0], "resultado de quem consultou");
+    Teste.igual("json", resultados[1], "resultado de quem aguardou");
+    Teste.igual(1, execucoes.get(), "execuções da consulta");
+    Teste.igual(1L, consultas.getAgrupadas(), "consultas agrupadas");
+    Teste.verificar(!consultas.emAndamento("k"), "consulta concluída sai do andamento");
+  }
+
+  static void falhaDaConsultaChegaATodos() throws Exception {
+    Object[] resultados = consultarJuntos(new ConsultasEmAndamento<String>(5000), () -> {
+      throw new IOException("falhou");
+    });
+    for (Object resultado : resultados) {
+      Teste.verificar(resultado instanceof IOException, "esperado IOException, obtido " + resultado);
+      Teste.verificar(((Exception) resultado).getMessage().contains("falhou"), "mensagem: " + resultado);
+    }
+  }
+
+  static void cotaEsgotadaChegaATodosComOMesmoTipo() throws Exception {
+    ConsultasEmAndamento<String> consultas = new ConsultasEmAndamento<>(5000);
+    Object[] resultados = consultarJuntos(consultas, () -> {
+      throw new LimiteOMDB.Esgotado("sem cota");
+    });
+    for (Object resultado : resultados) {
+      Teste.verificar(resultado instanceof LimiteOMDB.Esgotado, "esperado Esgotado, obtido " + resultado);
+      Teste.igual("sem cota", ((Exception) resultado).getMessage(), "mensagem");
+    }
+    Teste.verificar(resultados[0] != resultados[1], "exceção própria de quem aguardou");
+    Teste.verificar(((Exception) resultados[1]).getCause() == resultados[0], "erro da consulta como causa");
+  }
+
+  static void cadaThreadRecebeSuaPropriaExcecao() throws Exception {
+    Object[] resultados = consultarJuntos(new ConsultasEmAndamento<String>(5000), () -> {
+      throw new SocketTimeoutException("lenta");
+    });
+    Teste.verificar(resultados[0] instanceof SocketTimeoutException, "quem consultou recebe o original");
+    Teste.verificar(resultados[1] instanceof IOException, "esperado IOException, obtido " + resultados[1]);
+    Teste.igual("lenta", ((Exception) resultados[1]).getMessage(), "mensagem");
+    Teste.verificar(((Exception) resultados[1]).getCause() == resultados[0], "erro da consulta como causa");
+    Teste.igual(0, ((Exception) resultados[0]).getSuppressed().length, "original intacto");
+  }
+
+  static void ocupadoEErrosDeExecucaoMantemOTipo() throws Exception {
+    Object[] ocupado = consultarJuntos(new ConsultasEmAndamento<String>(5000), () -> {
+      throw new ClienteOMDB.Ocupado("sem conexão livre");
+    });
+    Teste.verificar(ocupado[1] instanceof ClienteOMDB.Ocupado, "esperado Ocupado, obtido " + ocupado[1]);
+    Object[] invalido = consultarJuntos(new ConsultasEmAndamento<String>(5000), () -> {
+      throw new IllegalStateException("defeito");
+    });
+    Teste.verificar(invalido[1] instanceof IllegalStateException,
+        "esperado IllegalStateException, obtido " + invalido[1]);
+    Teste.verificar(((Exception) invalido[1]).getCause() == invalido[0], "defeito da consulta como causa");
+  }
+
+  static void esperaAlemDoLimiteFalha() throws Exception {
+    ConsultasEmAndamento<String> consultas = new ConsultasEmAndamento<>(50);
+    CountDownLatch liberar = new CountDownLatch(1);
+    Thread lider = new Thread(() -> resultado(() -> consultas.executar("k", () -> {
+      try {
+        liberar.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return "tarde";
+    })));
+    lider.start();
+    while (!consultas.emAndamento("k")) {
+      Thread.onSpinWait();
+    }
+    Teste.lanca(InterruptedIOException.class, () -> consultas.executar("k", () -> "outra"), "espera esgotada");
+    liberar.countDown();
+    lider.join();
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Testes de {@link Histograma}.
+ */
+class TesteHistograma {
+  private static String texto(Histograma histograma, String rotulos) {
+    SaidaBytes saida = new SaidaBytes(4096);
+    histograma.escrever(saida, "t", rotulos);
+    return saida.toString();
+  }
+
+  static void duracoesCaemNaFaixaDaPotenciaDeDois() {
+    Histograma histograma = new Histograma();
+    histograma.registrar(500);
+    histograma.registrar(1_500);
+    histograma.registrar(3_000_000);
+    histograma.registrar(600_000_000_000L);
+    histograma.registrar(-1);
+    String texto = texto(histograma, "");
+    Teste.verificar(texto.contains("t_bucket{le=\"0.000001\"} 2\n"), "abaixo de 1 µs e negativa: " + texto);
+    Teste.verificar(texto.contains("t_bucket{le=\"0.000002\"} 3\n"), "entre 1 e 2 µs");
+    Teste.verificar(texto.contains("t_bucket{le=\"0.002048\"} 3\n"), "3 ms ainda não");
+    Teste.verificar(texto.contains("t_bucket{le=\"0.004096\"} 4\n"), "3 ms na faixa de 4 ms");
+    Teste.verificar(texto.contains("t_bucket{le=\"67.108864\"} 4\n"), "última faixa finita");
+    Teste.verificar(texto.contains("t_bucket{le=\"+Inf\"} 5\n"), "excedente");
+    Teste.verificar(texto.contains("t_count 5\n"), "total");
+    Teste.verificar(texto.contains("t_sum 600.003001999\n"), "soma em segundos: " + texto);
+  }
+
+  static void rotulosVemAntesDoLimite() {
+    Histograma histograma = new Histograma();
+    histograma.registrar(1_000);
+    String texto = texto(histograma, "rota=\"buscar\"");
+    Teste.verificar(texto.startsWith("t_bucket{rota=\"buscar\",le=\"0.000001\"} 0\n"), texto);
+    Teste.verificar(texto.contains("t_count{rota=\"buscar\"} 1\n"), texto);
+    Teste.igual(Histograma.FAIXAS + 2, texto.split("\n").length, "linhas");
+  }
+}
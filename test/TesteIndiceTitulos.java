@@ -0,0 +1,48 @@
+import java.util.*;
+
+/**
+ * Testes de {@link IndiceTitulos}.
+ */
+class TesteIndiceTitulos {
+  private static IndiceTitulos indice(String... titulos) {
+    IndiceTitulos indice = new IndiceTitulos(5);
+    for (int i = 0; i < titulos.length; i++) {
+      indice.adicionar(LeitorJSON.lerFilme("{\"Title\":\"" + titulos[i] + "\",\"Year\":\"19" + (70 + i)
+          + "\",\"imdbID\":\"tt" + i + "\",\"Response\":\"True\"}"));
+    }
+    return indice;
+  }
+
+  private static List<String> titulos(List<IndiceTitulos.Sugestao> sugestoes) {
+    List<String> titulos = new ArrayList<>();
+    for (IndiceTitulos.Sugestao sugestao : sugestoes) {
+      titulos.add(sugestao.titulo() + (sugestao.aproximada() ? "~" : ""));
+    }
+    return titulos;
+  }
+
+  static void prefixoDeQualquerPalavra() {
+    IndiceTitulos indice = indice("The Matrix", "The Matrix Reloaded", "Amélie", "Matilda", "Alien");
+    Teste.igual(List.of("The Matrix", "The Matrix Reloaded", "Matilda~"), titulos(indice.sugerir("MATR")),
+        "palavra do meio e depois as parecidas");
+    Teste.igual(List.of("Matilda", "The Matrix", "The Matrix Reloaded"), titulos(indice.sugerir("mat")),
+        "mais curtos primeiro");
+    Teste.igual(List.of("Amélie"), titulos(indice.sugerir("ame")), "sem acento");
+    Teste.igual(List.of(), titulos(indice.sugerir("  ")), "busca vazia");
+  }
+
+  static void erroDeDigitacaoSugereOParecido() {
+    IndiceTitulos indice = indice("The Matrix", "Alien", "Gladiator");
+    Teste.igual(List.of("The Matrix~"), titulos(indice.sugerir("matirx")), "letras trocadas");
+    Teste.igual(List.of("Gladiator~"), titulos(indice.sugerir("gladiatro")), "fim trocado");
+    Teste.igual(List.of(), titulos(indice.sugerir("xyzw")), "nada parecido");
+  }
+
+  static void filmeRepetidoOuNaoEncontradoNaoEntra() {
+    IndiceTitulos indice = indice("Alien");
+    indice.adicionar(LeitorJSON.lerFilme("{\"Title\":\"Alien\",\"Year\":\"1970\",\"imdbID\":\"tt0\","
+        + "\"Response\":\"True\"}"));
+    indice.adicionar(LeitorJSON.lerFilme("{\"Response\":\"False\",\"Error\":\"Movie not found!\"}"));
+    Teste.igual(1, indice.getTamanho(), "tamanho");
+  }
+}
@@ -0,0 +1,56 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Testes de {@link LeitorJSON}.
+ */
+class TesteLeitorJSON {
+  static void camposConhecidosComEscapes() {
+    Filme filme = LeitorJSON.lerFilme("{\"Title\":\"Am\\u00e9lie \\ud83c\\udfac\",\"Year\":\"2001\","
+        + "\"Ratings\":[{\"Source\":\"IMDb\",\"Value\":\"8.3/10\"}],\"Metascore\":69,\"Extra\":null,"
+        + "\"Plot\":\"Diz \\\"oi\\\"\\n\\\\ fim\",\"imdbID\":\"tt0211915\",\"Response\":\"True\"}");
+    Teste.igual("Amélie 🎬", filme.titulo(), "escape unicode e par substituto");
+    Teste.igual("2001", filme.ano(), "campo sem escape");
+    Teste.igual("Diz \"oi\"\n\\ fim", filme.sinopse(), "aspas, quebra de linha e barra");
+    Teste.igual("tt0211915", filme.imdbID(), "campo depois de vetor, número e null");
+    Teste.igual("N/A", filme.diretor(), "campo ausente");
+    Teste.verificar(filme.encontrado(), "Response True");
+  }
+
+  static void respostaDeErro() {
+    Filme filme = LeitorJSON.lerFilme("{\"Response\":\"False\",\"Error\":\"Movie not found!\"}");
+    Teste.verificar(!filme.encontrado(), "Response False");
+    Teste.igual("Movie not found!", filme.erro(), "erro da API");
+  }
+
+  static void jsonMalformadoMantemOsCamposLidos() {
+    Filme filme = LeitorJSON.lerFilme("{\"Title\":\"Alien\",\"Year\":\"19");
+    Teste.igual("Alien", filme.titulo(), "campo lido antes do erro");
+    Teste.igual("N/A", filme.ano(), "texto sem fim");
+    Teste.igual("N/A", LeitorJSON.lerFilme("<html>").titulo(), "não é JSON");
+    Teste.igual("N/A", LeitorJSON.lerFilme("").titulo(), "vazio");
+  }
+
+  /**
+   * Fluxo que entrega um byte por leitura, para que os caracteres de vários
+   * bytes fiquem divididos entre leituras.
+   */
+  private static InputStream aos(byte[] bytes) {
+    return new ByteArrayInputStream(bytes) {
+      @Override
+      public synchronized int read(byte[] destino, int inicio, int quantidade) {
+        return super.read(destino, inicio, Math.min(1, quantidade));
+      }
+    };
+  }
+
+  static void fluxoDecodificaUtf8() throws Exception {
+    String json = "{\"Title\":\"Amélie 東京 🎬\",\"Plot\":\"a\\\"b\",\"Response\":\"True\"}";
+    Filme filme = LeitorJSON.lerFilme(aos(json.getBytes(StandardCharsets.UTF_8)));
+    Teste.igual(LeitorJSON.lerFilme(json), filme, "mesmo filme que a leitura de String");
+    byte[] invalido = { '{', '"', 'T', 'i', 't', 'l', 'e', '"', ':', '"', 'a', (byte) 0xFF, 'b', '"', '}' };
+    Teste.igual("a\uFFFDb", LeitorJSON.lerFilme(aos(invalido)).titulo(), "byte inválido em UTF-8");
+    invalido[11] = (byte) 0xC3;
+    Teste.igual("a\uFFFDb", LeitorJSON.lerFilme(aos(invalido)).titulo(), "sequência interrompida");
+  }
+}
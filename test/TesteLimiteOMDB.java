@@ -0,0 +1,102 @@
+/**
+ * Testes de {@link LimiteOMDB}: a cota diária por chave e o ritmo das
+ * requisições (GCRA).
+ */
+class TesteLimiteOMDB {
+  /**
+   * Limite com balde grande o bastante para não interferir na cota.
+   */
+  private static LimiteOMDB semRitmo(String[] chaves, int cota) {
+    return new LimiteOMDB(chaves, cota, 1000, 1000, 0);
+  }
+
+  static void cotaDiariaUsaAsChavesEmRodizio() throws Exception {
+    LimiteOMDB limite = semRitmo(new String[] { "a", "b" }, 2);
+    String usadas = "";
+    for (int i = 0; i < 4; i++) {
+      usadas += limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+    }
+    Teste.igual("abab", usadas, "chaves em rodízio");
+    Teste.igual(0, limite.getRestante(0), "restante da primeira");
+    Teste.igual(0, limite.getRestante(1), "restante da segunda");
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.INTERATIVA),
+        "cota de todas as chaves esgotada");
+    Teste.igual(1L, limite.getNegadas(LimiteOMDB.Prioridade.INTERATIVA), "negadas");
+
+    limite.devolver("b");
+    Teste.igual(1, limite.getRestante(1), "reserva devolvida");
+    Teste.igual("b", limite.reservar(LimiteOMDB.Prioridade.INTERATIVA), "chave com cota devolvida");
+    limite.devolver("desconhecida");
+    Teste.igual(0, limite.getRestante(0), "chave desconhecida não altera a cota");
+  }
+
+  static void chaveRecusadaPelaOmdbFicaEsgotada() throws Exception {
+    LimiteOMDB limite = semRitmo(new String[] { "a", "b" }, 5);
+    limite.esgotar("a");
+    Teste.igual(0, limite.getRestante(0), "restante da chave esgotada");
+    for (int i = 0; i < 5; i++) {
+      Teste.igual("b", limite.reservar(LimiteOMDB.Prioridade.INTERATIVA), "só a outra chave");
+    }
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.INTERATIVA),
+        "nenhuma chave com cota");
+  }
+
+  static void prioridadesMenoresDeixamReservaDaCota() throws Exception {
+    LimiteOMDB limite = semRitmo(new String[] { "a" }, 10);
+    for (int i = 0; i < 7; i++) {
+      limite.reservar(LimiteOMDB.Prioridade.AQUECIMENTO);
+    }
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.AQUECIMENTO),
+        "aquecimento deixa 30%");
+    for (int i = 0; i < 2; i++) {
+      limite.reservar(LimiteOMDB.Prioridade.LOTE);
+    }
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.LOTE), "lote deixa 10%");
+    limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.INTERATIVA),
+        "interativa usa até o fim");
+    Teste.igual(1L, limite.getNegadas(LimiteOMDB.Prioridade.AQUECIMENTO), "negadas do aquecimento");
+    Teste.igual(1L, limite.getNegadas(LimiteOMDB.Prioridade.LOTE), "negadas do lote");
+  }
+
+  static void rajadaEDepoisUmaPorIntervalo() throws Exception {
+    // Uma ficha por segundo: nenhuma volta durante o teste
+    LimiteOMDB limite = new LimiteOMDB(new String[] { "a" }, 100, 1, 3, 0);
+    for (int i = 0; i < 2; i++) {
+      limite.reservar(LimiteOMDB.Prioridade.LOTE);
+    }
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.LOTE),
+        "lote deixa 25% do balde");
+    Teste.igual(98, limite.getRestante(0), "ficha negada devolve a cota");
+    limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.INTERATIVA),
+        "balde vazio sem espera");
+    Teste.igual(97, limite.getRestante(0), "restante após a rajada");
+  }
+
+  static void interativaAguardaNaFilaELoteNao() throws Exception {
+    // Uma ficha a cada 50 ms, sem rajada, e até 200 ms de espera
+    LimiteOMDB limite = new LimiteOMDB(new String[] { "a" }, 100, 20, 1, 200);
+    limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+    long inicio = System.nanoTime();
+    limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+    long aguardado = (System.nanoTime() - inicio) / 1_000_000;
+    Teste.verificar(aguardado >= 40, "interativa aguarda a próxima ficha: " + aguardado + " ms");
+    inicio = System.nanoTime();
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.LOTE), "lote não aguarda");
+    aguardado = (System.nanoTime() - inicio) / 1_000_000;
+    Teste.verificar(aguardado < 40, "lote recusado sem aguardar: " + aguardado + " ms");
+  }
+
+  static void devolverRetornaCotaEFicha() throws Exception {
+    // Uma ficha por segundo, sem rajada
+    LimiteOMDB limite = new LimiteOMDB(new String[] { "a" }, 10, 1, 1, 0);
+    String chave = limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.INTERATIVA), "balde vazio");
+    limite.devolver(chave);
+    Teste.igual(10, limite.getRestante(0), "cota devolvida");
+    limite.reservar(LimiteOMDB.Prioridade.INTERATIVA);
+    Teste.lanca(LimiteOMDB.Esgotado.class, () -> limite.reservar(LimiteOMDB.Prioridade.INTERATIVA),
+        "só uma ficha devolvida");
+  }
+}
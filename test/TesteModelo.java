@@ -0,0 +1,49 @@
+/**
+ * Testes de {@link Modelo}.
+ */
+class TesteModelo {
+  private static String renderizar(Modelo modelo, String... valores) {
+    SaidaBytes saida = new SaidaBytes(64);
+    modelo.renderizar(saida, valores);
+    return saida.toString();
+  }
+
+  static void textoEEscapadoParaHtml() {
+    Modelo modelo = Modelo.compilar("<p title=\"{{t}}\">{{ t }}</p>", "t");
+    Teste.igual("<p title=\"&lt;b&gt;&quot;A&quot; &amp; &#39;B&#39;\">&lt;b&gt;&quot;A&quot; &amp; &#39;B&#39;</p>",
+        renderizar(modelo, "<b>\"A\" & 'B'"), "caracteres especiais");
+    Teste.igual("<p title=\"Amélie 東京 🎬\">Amélie 東京 🎬</p>",
+        renderizar(modelo, "Amélie 東京 🎬"), "texto fora do ASCII em UTF-8");
+    Teste.igual("<p title=\"a?b\">a?b</p>", renderizar(modelo, "a\uD83Cb"), "substituto isolado");
+    Teste.igual("<p title=\"\"></p>", renderizar(modelo, (String) null), "valor nulo");
+  }
+
+  static void urlSoAceitaHttpECaminhosDoServidor() {
+    Modelo modelo = Modelo.compilar("<img src=\"{{u:url}}\">", "u");
+    Teste.igual("<img src=\"https://exemplo/a.jpg?l=1&amp;a=2\">", renderizar(modelo, "https://exemplo/a.jpg?l=1&a=2"),
+        "https");
+    Teste.igual("<img src=\"http://exemplo/&quot; onerror=&quot;x\">",
+        renderizar(modelo, "http://exemplo/\" onerror=\"x"), "aspas escapadas");
+    Teste.igual("<img src=\"/poster/tt0133093\">", renderizar(modelo, "/poster/tt0133093"), "caminho do servidor");
+    Teste.igual("<img src=\"\">", renderizar(modelo, "javascript:alert(1)"), "outro esquema");
+    Teste.igual("<img src=\"\">", renderizar(modelo, "//exemplo/a.jpg"), "caminho relativo ao esquema");
+    Teste.igual("<img src=\"\">", renderizar(modelo, "N/A"), "N/A");
+  }
+
+  static void secoesDependemDoValor() {
+    Modelo modelo = Modelo.compilar("{{#p}}[{{p}}]{{/p}}{{^p}}sem{{/p}}", "p");
+    Teste.igual("[x]", renderizar(modelo, "x"), "valor presente");
+    Teste.igual("sem", renderizar(modelo, "N/A"), "N/A");
+    Teste.igual("sem", renderizar(modelo, ""), "vazio");
+    Teste.igual("sem", renderizar(modelo, (String) null), "nulo");
+  }
+
+  static void templateInvalidoERecusado() {
+    Teste.lanca(IllegalArgumentException.class, () -> Modelo.compilar("{{x}}", "t"), "campo desconhecido");
+    Teste.lanca(IllegalArgumentException.class, () -> Modelo.compilar("{{#t}}a", "t"), "seção não fechada");
+    Teste.lanca(IllegalArgumentException.class, () -> Modelo.compilar("a{{/t}}", "t"), "seção fechada sem abrir");
+    Teste.lanca(IllegalArgumentException.class, () -> Modelo.compilar("{{t", "t"), "marcação não fechada");
+    Modelo modelo = Modelo.compilar("{{a}}{{b}}", "a", "b");
+    Teste.lanca(IllegalArgumentException.class, () -> renderizar(modelo, "a"), "valores a menos");
+  }
+}
@@ -0,0 +1,64 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Testes de {@link PaginaEstatica}.
+ */
+class TestePaginaEstatica {
+  private static final PaginaEstatica PAGINA = new PaginaEstatica("text/plain", "conteúdo ".repeat(100));
+
+  /**
+   * Devolve o cabeçalho da resposta escolhida para a requisição.
+   */
+  private static String cabecalho(String ifNoneMatch, String acceptEncoding) throws Exception {
+    ByteArrayOutputStream saida = new ByteArrayOutputStream();
+    PAGINA.escrever(saida, ifNoneMatch, acceptEncoding, true);
+    String texto = saida.toString(StandardCharsets.ISO_8859_1);
+    return texto.substring(0, texto.indexOf("\r\n\r\n") + 2);
+  }
+
+  static void respostaConformeOsCabecalhos() throws Exception {
+    String original = cabecalho(null, null);
+    Teste.verificar(original.startsWith("HTTP/1.1 200"), original);
+    Teste.verificar(original.contains("ETag: " + PAGINA.getEtag() + "\r\n"), original);
+    Teste.verificar(!original.contains("Content-Encoding"), original);
+    Teste.verificar(cabecalho(null, "deflate, gzip").contains("Content-Encoding: gzip\r\n"), "gzip aceito");
+    Teste.verificar(!cabecalho(null, "gzip;q=0").contains("Content-Encoding"), "gzip recusado com q=0");
+    Teste.verificar(cabecalho(PAGINA.getEtag(), null).startsWith("HTTP/1.1 304"), "ETag já guardado");
+    Teste.verificar(cabecalho("\"outro\"", null).startsWith("HTTP/1.1 200"), "outro ETag");
+  }
+
+  static void cadaVarianteTemSeuEtag() throws Exception {
+    String original = cabecalho(null, null);
+    String gzip = cabecalho(null, "gzip, deflate");
+    Teste.verificar(!PAGINA.getEtag().equals(PAGINA.getEtagGzip()), "ETags diferentes");
+    String etag = PAGINA.getEtag();
+    Teste.igual(etag.substring(0, etag.length() - 1) + "-gz\"", PAGINA.getEtagGzip(), "ETag do gzip");
+    Teste.verificar(original.contains("ETag: " + PAGINA.getEtag() + "\r\n"), original);
+    Teste.verificar(!original.contains("Content-Encoding"), original);
+    Teste.verificar(gzip.contains("ETag: " + PAGINA.getEtagGzip() + "\r\n"), gzip);
+    Teste.verificar(gzip.contains("Content-Encoding: gzip\r\n"), gzip);
+  }
+
+  static void naoModificadaSoParaAVarianteServida() throws Exception {
+    String etag = PAGINA.getEtag();
+    String etagGzip = PAGINA.getEtagGzip();
+    Teste.verificar(cabecalho(etag, null).startsWith("HTTP/1.1 304"), "original já guardado");
+    Teste.verificar(cabecalho(etagGzip, "gzip").startsWith("HTTP/1.1 304"), "gzip já guardado");
+    Teste.verificar(cabecalho(etagGzip, "gzip").contains("ETag: " + etagGzip + "\r\n"), "ETag no 304 do gzip");
+    Teste.verificar(cabecalho(etag, "gzip").startsWith("HTTP/1.1 200"), "tem o original, recebe gzip");
+    Teste.verificar(cabecalho(etagGzip, null).startsWith("HTTP/1.1 200"), "tem o gzip, recebe o original");
+    Teste.verificar(cabecalho(etagGzip, "gzip;q=0").startsWith("HTTP/1.1 200"), "gzip recusado com q=0");
+    Teste.verificar(cabecalho("\"outro\", W/" + etagGzip, "gzip").startsWith("HTTP/1.1 304"), "lista e W/");
+    Teste.verificar(cabecalho("*", null).startsWith("HTTP/1.1 304"), "qualquer ETag");
+  }
+
+  static void ifNoneMatchAceitaListaFracoEAsterisco() {
+    String etag = "\"abc\"";
+    Teste.verificar(PaginaEstatica.coincide(etag, etag), "igual");
+    Teste.verificar(PaginaEstatica.coincide("\"x\", W/\"abc\"", etag), "lista com W/");
+    Teste.verificar(PaginaEstatica.coincide("*", etag), "asterisco");
+    Teste.verificar(!PaginaEstatica.coincide("\"abcd\"", etag), "outro ETag");
+    Teste.verificar(!PaginaEstatica.coincide(null, etag), "sem cabeçalho");
+  }
+}
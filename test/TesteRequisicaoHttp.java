@@ -0,0 +1,140 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Testes de {@link RequisicaoHttp}.
+ */
+class TesteRequisicaoHttp {
+  /**
+   * Analisa a requisição inteira de uma vez.
+   */
+  private static RequisicaoHttp analisar(String texto) {
+    RequisicaoHttp requisicao = new RequisicaoHttp();
+    byte[] dados = texto.getBytes(StandardCharsets.ISO_8859_1);
+    requisicao.analisar(dados, dados.length);
+    return requisicao;
+  }
+
+  private static void recusada(String texto, String status, String descricao) {
+    RequisicaoHttp requisicao = analisar(texto);
+    Teste.igual(status, requisicao.getErro(), descricao);
+  }
+
+  static void transferEncodingERecusado() {
+    recusada("POST /buscar/lote HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nt=abc\r\n0\r\n\r\n",
+        "501 Not Implemented", "corpo chunked");
+    recusada("POST /buscar/lote HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n",
+        "501 Not Implemented", "outra codificação");
+    recusada("POST /buscar/lote HTTP/1.1\r\ntransfer-encoding: chunked\r\nContent-Length: 5\r\n\r\nt=abc",
+        "400 Bad Request", "Transfer-Encoding com Content-Length");
+    recusada("POST /buscar/lote HTTP/1.1\r\nContent-Length: 5\r\nTransfer-Encoding: chunked\r\n\r\nt=abc",
+        "400 Bad Request", "Content-Length antes de Transfer-Encoding");
+  }
+
+  static void contentLengthRepetidoERecusado() {
+    recusada("POST / HTTP/1.1\r\nContent-Length: 5\r\nContent-Length: 6\r\n\r\n", "400 Bad Request",
+        "valores diferentes");
+    recusada("POST / HTTP/1.1\r\nContent-Length: 0\r\nContent-Length: 5\r\n\r\n", "400 Bad Request",
+        "zero e depois outro valor");
+    recusada("POST / HTTP/1.1\r\nContent-Length: 5\r\nContent-Length: 5\r\n\r\n", "400 Bad Request",
+        "mesmo valor repetido");
+    recusada("POST / HTTP/1.1\r\nContent-Length: 5, 5\r\n\r\n", "400 Bad Request", "lista de valores");
+    recusada("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n", "400 Bad Request", "negativo");
+  }
+
+  static void contentLengthUnicoDelimitaOCorpo() {
+    String texto = "POST /buscar/lote HTTP/1.1\r\nContent-Length: 5\r\n\r\nt=abc";
+    byte[] dados = texto.getBytes(StandardCharsets.ISO_8859_1);
+    RequisicaoHttp requisicao = new RequisicaoHttp();
+    Teste.igual(RequisicaoHttp.Estado.COMPLETA, requisicao.analisar(dados, dados.length), "estado");
+    Teste.igual(5L, requisicao.getContentLength(), "tamanho do corpo");
+    Teste.igual(texto.length() - 5, requisicao.getFimCabecalho(), "início do corpo");
+  }
+
+  static void limitesDeTamanho() {
+    String alvo = "/" + "a".repeat(RequisicaoHttp.MAXIMO_URI);
+    recusada("GET " + alvo + " HTTP/1.1\r\n\r\n", "414 URI Too Long", "alvo longo demais");
+    recusada("GET " + alvo + "a".repeat(64), "414 URI Too Long", "linha de requisição ainda sem fim");
+    recusada("GET / HTTP/1.1\r\nX-A: " + "b".repeat(RequisicaoHttp.MAXIMO_LINHA) + "\r\n\r\n",
+        "431 Request Header Fields Too Large", "campo longo demais");
+    recusada("GET / HTTP/1.1\r\n" + "X-A: b\r\n".repeat(RequisicaoHttp.MAXIMO_CAMPOS + 1) + "\r\n",
+        "431 Request Header Fields Too Large", "campos demais");
+    String campo = "X-A: " + "b".repeat(200) + "\r\n";
+    recusada("GET / HTTP/1.1\r\n" + campo.repeat(RequisicaoHttp.MAXIMO_CABECALHO / campo.length() + 1),
+        "431 Request Header Fields Too Large", "cabeçalho sem fim maior que o buffer");
+    Teste.igual(null, analisar("GET /" + "a".repeat(RequisicaoHttp.MAXIMO_URI - 1) + " HTTP/1.1\r\n\r\n").getErro(),
+        "alvo no limite");
+  }
+
+  static void versaoDesconhecidaERecusada() {
+    recusada("GET / HTTP/2.0\r\n\r\n", "505 HTTP Version Not Supported", "HTTP/2.0");
+    recusada("GET / HTTP/1.2\r\n\r\n", "505 HTTP Version Not Supported", "HTTP/1.2");
+    recusada("GET / HTTP/1.10\r\n\r\n", "400 Bad Request", "versão com três dígitos");
+    recusada("GET / http/1.1\r\n\r\n", "400 Bad Request", "protocolo em minúsculas");
+    recusada("GET / HTTP/1.x\r\n\r\n", "400 Bad Request", "versão sem dígito");
+    recusada("GET /\r\n\r\n", "400 Bad Request", "sem versão");
+  }
+
+  static void entradaInvalidaERecusada() {
+    recusada("GET  / HTTP/1.1\r\n\r\n", "400 Bad Request", "espaço duplo");
+    recusada("G(T / HTTP/1.1\r\n\r\n", "400 Bad Request", "método que não é token");
+    recusada("GET http://exemplo/ HTTP/1.1\r\n\r\n", "400 Bad Request", "alvo absoluto");
+    recusada("GET /a%zz HTTP/1.1\r\n\r\n", "400 Bad Request", "escape inválido");
+    recusada("GET /a%2 HTTP/1.1\r\n\r\n", "400 Bad Request", "escape incompleto");
+    recusada("GET /a\u0001b HTTP/1.1\r\n\r\n", "400 Bad Request", "caractere de controle no alvo");
+    recusada("GET / HTTP/1.1\r\nHost : x\r\n\r\n", "400 Bad Request", "espaço antes dos dois-pontos");
+    recusada("GET / HTTP/1.1\r\nX-A: b\r\n c\r\n\r\n", "400 Bad Request", "continuação obsoleta");
+    recusada("GET / HTTP/1.1\r\n: x\r\n\r\n", "400 Bad Request", "campo sem nome");
+    recusada("POST / HTTP/1.1\r\nContent-Length: 5a\r\n\r\n", "400 Bad Request", "tamanho não numérico");
+    recusada("POST / HTTP/1.1\r\nContent-Length: " + "9".repeat(19) + "\r\n\r\n", "400 Bad Request",
+        "tamanho maior que um long");
+  }
+
+  static void leituraIncrementalGuardaOsCampos() {
+    String texto = "\r\nGET /buscar?t=Alien HTTP/1.1\r\nIf-None-Match: \"x\"\r\nACCEPT-ENCODING:  gzip \r\n"
+        + "Content-Type: text/plain\nConnection: close\r\n\r\n";
+    byte[] dados = texto.getBytes(StandardCharsets.ISO_8859_1);
+    RequisicaoHttp requisicao = new RequisicaoHttp();
+    for (int i = 1; i < dados.length; i++) {
+      Teste.igual(RequisicaoHttp.Estado.INCOMPLETA, requisicao.analisar(dados, i), "com " + i + " bytes");
+    }
+    Teste.igual(RequisicaoHttp.Estado.COMPLETA, requisicao.analisar(dados, dados.length), "estado");
+    Teste.igual("GET", requisicao.getMethod(), "método");
+    Teste.igual("/buscar?t=Alien", requisicao.getPath(), "alvo");
+    Teste.igual("HTTP/1.1", requisicao.getVersion(), "versão");
+    Teste.igual("\"x\"", requisicao.getIfNoneMatch(), "If-None-Match");
+    Teste.igual("gzip", requisicao.getAcceptEncoding(), "Accept-Encoding sem espaços");
+    Teste.igual("text/plain", requisicao.getContentType(), "Content-Type após linha só com LF");
+    Teste.verificar(!requisicao.isKeepAlive(), "Connection: close");
+    Teste.igual(dados.length, requisicao.getFimCabecalho(), "fim do cabeçalho");
+
+    Teste.verificar(analisar("GET / HTTP/1.1\r\n\r\n").isKeepAlive(), "HTTP/1.1 mantém a conexão");
+    Teste.verificar(!analisar("GET / HTTP/1.0\r\n\r\n").isKeepAlive(), "HTTP/1.0 encerra a conexão");
+    Teste.verificar(analisar("GET / HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n").isKeepAlive(),
+        "HTTP/1.0 com keep-alive");
+  }
+
+  static void requisicoesEmPipelineSaoLidasEmSequencia() {
+    String primeira = "POST /buscar/lote HTTP/1.1\r\nContent-Length: 5\r\n\r\n";
+    String segunda = "GET /sugerir?q=al HTTP/1.1\r\n\r\n";
+    String terceira = "GET /nada HTTP/1.1\r\n";
+    byte[] dados = (primeira + "t=abc" + segunda + terceira).getBytes(StandardCharsets.ISO_8859_1);
+    RequisicaoHttp requisicao = new RequisicaoHttp();
+    Teste.igual(RequisicaoHttp.Estado.COMPLETA, requisicao.analisar(dados, dados.length), "primeira");
+    Teste.igual("/buscar/lote", requisicao.getPath(), "alvo da primeira");
+    Teste.igual(primeira.length(), requisicao.getFimCabecalho(), "fim da primeira");
+
+    // Como as conexões fazem: o que sobra depois do corpo vai para o início
+    int consumidos = requisicao.getFimCabecalho() + (int) requisicao.getContentLength();
+    int restantes = dados.length - consumidos;
+    System.arraycopy(dados, consumidos, dados, 0, restantes);
+    requisicao.reiniciar();
+    Teste.igual(RequisicaoHttp.Estado.COMPLETA, requisicao.analisar(dados, restantes), "segunda");
+    Teste.igual("/sugerir?q=al", requisicao.getPath(), "alvo da segunda");
+
+    consumidos = requisicao.getFimCabecalho();
+    restantes -= consumidos;
+    System.arraycopy(dados, consumidos, dados, 0, restantes);
+    requisicao.reiniciar();
+    Teste.igual(RequisicaoHttp.Estado.INCOMPLETA, requisicao.analisar(dados, restantes), "terceira incompleta");
+  }
+}
@@ -0,0 +1,65 @@
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * A classe {@code Testes} executa os testes do projeto, sem dependências
+ * externas: cada classe de teste tem métodos estáticos, sem parâmetros, que
+ * verificam um comportamento com {@link Teste} e são executados em ordem
+ * alfabética. O processo termina com código 1 se algum falhar.
+ *
+ * <pre>
+ * javac -encoding UTF-8 -d out *.java test/*.java
+ * java -cp out Testes
+ * </pre>
+ */
+public class Testes {
+  private static final Class<?>[] CLASSES = {
+      TesteAcervoDisco.class,
+      TesteApiFilme.class,
+      TesteBuscaLote.class,
+      TesteCacheDistribuido.class,
+      TesteCacheFilmes.class,
+      TesteCachePosters.class,
+      TesteClienteOMDB.class,
+      TesteConsultasEmAndamento.class,
+      TesteHistograma.class,
+      TesteIndiceTitulos.class,
+      TesteLeitorJSON.class,
+      TesteLimiteOMDB.class,
+      TesteModelo.class,
+      TestePaginaEstatica.class,
+      TesteRequisicaoHttp.class,
+  };
+
+  public static void main(String[] args) throws Exception {
+    // Cliente não deve abrir o acervo nem os posters em disco
+    System.getProperties().putIfAbsent("buscafilmes.acervo", "");
+    System.getProperties().putIfAbsent("buscafilmes.posters", "");
+    int executados = 0;
+    List<String> falhas = new ArrayList<>();
+    for (Class<?> classe : CLASSES) {
+      Method[] metodos = classe.getDeclaredMethods();
+      Arrays.sort(metodos, Comparator.comparing(Method::getName));
+      for (Method metodo : metodos) {
+        int modificadores = metodo.getModifiers();
+        if (!Modifier.isStatic(modificadores) || Modifier.isPrivate(modificadores)
+            || metodo.getParameterCount() > 0 || metodo.isSynthetic()) {
+          continue;
+        }
+        String nome = classe.getName() + "." + metodo.getName();
+        executados++;
+        try {
+          metodo.setAccessible(true);
+          metodo.invoke(null);
+          System.out.println("ok    " + nome);
+        } catch (InvocationTargetException e) {
+          falhas.add(nome);
+          System.out.println("FALHA " + nome + ": " + e.getCause());
+          e.getCause().printStackTrace(System.out);
+        }
+      }
+    }
+    System.out.println(executados + " testes, " + falhas.size() + " falhas");
+    System.exit(falhas.isEmpty() ? 0 : 1);
+  }
+}